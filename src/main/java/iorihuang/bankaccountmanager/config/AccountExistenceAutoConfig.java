@@ -0,0 +1,75 @@
+package iorihuang.bankaccountmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.helper.existence.AccountExistenceFilter;
+import iorihuang.bankaccountmanager.helper.existence.AccountExistenceProperties;
+import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.repository.BankAccountRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.List;
+
+/**
+ * bloom filter and negative cache of account numbers, built by a keyset scan of all accounts at startup,
+ * creations of other nodes are received by redis pub/sub
+ */
+@Slf4j
+@Configuration
+@EnableConfigurationProperties(AccountExistenceProperties.class)
+@ConditionalOnProperty(prefix = "accountexistence", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class AccountExistenceAutoConfig {
+    @Bean
+    public AccountExistenceFilter accountExistenceFilter(AccountExistenceProperties properties, ObjectProvider<StringRedisTemplate> redisTemplate, ObjectProvider<MeterRegistry> registry) {
+        return new AccountExistenceFilter(properties, redisTemplate.getIfAvailable(), registry.getIfAvailable());
+    }
+
+    /**
+     * subscribe creations of other nodes, none without redis,
+     * the factory is looked up lazily as user configurations are processed before the redis auto-configuration
+     */
+    @Bean
+    public RedisMessageListenerContainer accountCreatedListenerContainer(ObjectProvider<RedisConnectionFactory> connectionFactoryProvider, AccountExistenceFilter filter, AccountExistenceProperties properties) {
+        RedisConnectionFactory connectionFactory = connectionFactoryProvider.getIfAvailable();
+        if (null == connectionFactory) {
+            return null;
+        }
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(filter, new ChannelTopic(properties.getChannel()));
+        return container;
+    }
+
+    /**
+     * scan before the application is ready, accounts created meanwhile are put by the service as well
+     */
+    @Bean
+    public ApplicationRunner accountExistenceLoader(AccountExistenceFilter filter, BankAccountRepository repository, AccountExistenceProperties properties) {
+        return args -> {
+            long lastId = 0;
+            long start = System.currentTimeMillis();
+            while (true) {
+                List<BankAccount> accounts = repository.scanAccountNumbers(lastId, properties.getScanBatchSize());
+                if (accounts.isEmpty()) {
+                    break;
+                }
+                filter.load(accounts.stream().map(BankAccount::getAccountNumber).toList());
+                lastId = accounts.get(accounts.size() - 1).getId();
+                if (accounts.size() < properties.getScanBatchSize()) {
+                    break;
+                }
+            }
+            filter.ready();
+            log.info("Account existence filter loaded in {} ms", System.currentTimeMillis() - start);
+        };
+    }
+}
@@ -0,0 +1,77 @@
+package iorihuang.bankaccountmanager.config;
+
+import iorihuang.bankaccountmanager.constant.AccountConst;
+import iorihuang.bankaccountmanager.helper.lock.*;
+import iorihuang.bankaccountmanager.helper.retry.VersionRetryPolicy;
+import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdHelper;
+import iorihuang.bankaccountmanager.repository.BankAccountRepository;
+import iorihuang.bankaccountmanager.repository.DbAccountLockProvider;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+/**
+ * account lock backend chosen by accountlock.backend: local, redis(default), db or optimistic
+ */
+@Configuration
+@EnableConfigurationProperties(AccountLockProperties.class)
+@Slf4j
+public class AccountLockAutoConfig {
+    @Bean
+    @ConditionalOnProperty(prefix = "accountlock", name = "backend", havingValue = "redis", matchIfMissing = true)
+    public AccountLockProvider redisAccountLockProvider(ObjectProvider<StringRedisTemplate> redisTemplate,
+                                                        ObjectProvider<LocalStripedLock> localStripedLock,
+                                                        ObjectProvider<LockBackoff> lockBackoff,
+                                                        ObjectProvider<LockWaitProperties> lockWaitProperties,
+                                                        ObjectProvider<LockWatchdog> lockWatchdog,
+                                                        ObjectProvider<LockWatchdogProperties> lockWatchdogProperties,
+                                                        AccountLockProperties properties,
+                                                        @Qualifier("verHelper") ObjectProvider<SnowFlakeIdHelper> verHelper) {
+        StringRedisTemplate template = redisTemplate.getIfAvailable();
+        if (null == template) {
+            // local locks do not exclude other nodes, so the application should not start as if accounts were locked
+            throw new IllegalStateException("No redis for account locks of backend redis, set accountlock.backend=local for a single node");
+        }
+        LockWatchdog watchdog = lockWatchdog.getIfAvailable();
+        LockWatchdogProperties watchdogProperties = lockWatchdogProperties.getIfAvailable();
+        long expireSeconds = null != watchdog && null != watchdogProperties ? watchdogProperties.getLeaseSeconds() : AccountConst.ACCOUNT_CHANGE_LOCK_SEC;
+        LockWaitProperties waitProperties = lockWaitProperties.getIfAvailable();
+        return new RedisAccountLockProvider(template, localStripedLock.getIfAvailable(), lockBackoff.getIfAvailable(),
+                null == waitProperties ? 0 : waitProperties.getMaxWaitMillis(), watchdog, expireSeconds,
+                properties.isFencing() ? verHelper.getIfAvailable() : null);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "accountlock", name = "backend", havingValue = "local")
+    public AccountLockProvider localAccountLockProvider(ObjectProvider<LocalStripedLock> localStripedLock, ObjectProvider<LockWaitProperties> lockWaitProperties) {
+        return localProvider(localStripedLock, lockWaitProperties);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "accountlock", name = "backend", havingValue = "db")
+    public AccountLockProvider dbAccountLockProvider(BankAccountRepository repository, @Qualifier("primaryTransactionManager") DataSourceTransactionManager transactionManager) {
+        return new DbAccountLockProvider(repository, transactionManager, AccountConst.ACCOUNT_CHANGE_LOCK_SEC);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "accountlock", name = "backend", havingValue = "optimistic")
+    public AccountLockProvider optimisticAccountLockProvider(ObjectProvider<VersionRetryPolicy> versionRetryPolicy) {
+        if (null == versionRetryPolicy.getIfAvailable()) {
+            log.warn("Optimistic account locks without version-retry, every conflict is returned to the client");
+        }
+        return new OptimisticAccountLockProvider();
+    }
+
+    private static AccountLockProvider localProvider(ObjectProvider<LocalStripedLock> localStripedLock, ObjectProvider<LockWaitProperties> lockWaitProperties) {
+        LocalLockProperties defaults = new LocalLockProperties();
+        LocalStripedLock localLock = localStripedLock.getIfAvailable(() -> new LocalStripedLock(defaults.getStripes(), defaults.getWaitMillis(), null));
+        LockWaitProperties waitProperties = lockWaitProperties.getIfAvailable();
+        return new LocalAccountLockProvider(localLock, null == waitProperties ? defaults.getWaitMillis() : waitProperties.getMaxWaitMillis());
+    }
+}
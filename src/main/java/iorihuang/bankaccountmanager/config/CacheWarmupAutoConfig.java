@@ -0,0 +1,37 @@
+package iorihuang.bankaccountmanager.config;
+
+import iorihuang.bankaccountmanager.controller.CacheWarmupEndpoint;
+import iorihuang.bankaccountmanager.helper.warmup.CacheWarmupProperties;
+import iorihuang.bankaccountmanager.repository.BankAccountRepository;
+import iorihuang.bankaccountmanager.repository.BankAccountSlotRepository;
+import iorihuang.bankaccountmanager.service.AccountCacheWarmer;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * hot accounts of the account cache are kept in a local snapshot and preloaded at startup,
+ * runners are done before the application is ready, so readiness waits for the warm-up
+ */
+@Configuration
+@EnableConfigurationProperties(CacheWarmupProperties.class)
+@ConditionalOnProperty(prefix = "cachewarmup", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class CacheWarmupAutoConfig {
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public AccountCacheWarmer accountCacheWarmer(CacheManager cacheManager, BankAccountRepository repository, BankAccountSlotRepository slotRepository, CacheWarmupProperties properties) {
+        return new AccountCacheWarmer(cacheManager, repository, slotRepository, properties);
+    }
+
+    @Bean
+    public ApplicationRunner accountCacheWarmupRunner(AccountCacheWarmer warmer) {
+        return args -> warmer.warmUp();
+    }
+
+    @Bean
+    public CacheWarmupEndpoint cacheWarmupEndpoint(AccountCacheWarmer warmer) {
+        return new CacheWarmupEndpoint(warmer);
+    }
+}
@@ -0,0 +1,22 @@
+package iorihuang.bankaccountmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.helper.groupcommit.GroupCommitExecutor;
+import iorihuang.bankaccountmanager.helper.groupcommit.GroupCommitProperties;
+import iorihuang.bankaccountmanager.repository.BankAccountTrans;
+import iorihuang.bankaccountmanager.repository.TransferCommand;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(GroupCommitProperties.class)
+@ConditionalOnProperty(prefix = "groupcommit", name = "enabled", havingValue = "true")
+public class GroupCommitAutoConfig {
+    @Bean(name = "transferGroupCommitExecutor", destroyMethod = "close")
+    public GroupCommitExecutor<TransferCommand> transferGroupCommitExecutor(GroupCommitProperties properties, BankAccountTrans trans, ObjectProvider<MeterRegistry> registry) {
+        return new GroupCommitExecutor<>("transfer", properties.getWindowMicros(), properties.getMaxBatchSize(), properties.getQueueSize(), trans::transferBatch, registry.getIfAvailable());
+    }
+}
@@ -0,0 +1,34 @@
+package iorihuang.bankaccountmanager.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.helper.idempotency.IdempotencyFilter;
+import iorihuang.bankaccountmanager.helper.idempotency.IdempotencyProperties;
+import iorihuang.bankaccountmanager.helper.idempotency.IdempotencyStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * idempotency keys of write APIs, local caffeine as L1 and redis as L2
+ */
+@Configuration
+@EnableConfigurationProperties(IdempotencyProperties.class)
+@ConditionalOnProperty(prefix = "idempotency", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class IdempotencyAutoConfig {
+    @Bean
+    public IdempotencyStore idempotencyStore(IdempotencyProperties properties, ObjectProvider<StringRedisTemplate> redisTemplate) {
+        return new IdempotencyStore(redisTemplate.getIfAvailable(), properties.getTtlSeconds(), properties.getLocalMaximumSize(), properties.getInFlightSeconds());
+    }
+
+    @Bean
+    public FilterRegistrationBean<IdempotencyFilter> idempotencyFilter(IdempotencyStore store, IdempotencyProperties properties, ObjectMapper objectMapper, ObjectProvider<MeterRegistry> registry) {
+        FilterRegistrationBean<IdempotencyFilter> registration = new FilterRegistrationBean<>(new IdempotencyFilter(store, properties, objectMapper, registry.getIfAvailable()));
+        registration.addUrlPatterns("/op/api/*");
+        return registration;
+    }
+}
@@ -0,0 +1,46 @@
+package iorihuang.bankaccountmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdHelper;
+import iorihuang.bankaccountmanager.repository.BankAccountTrans;
+import iorihuang.bankaccountmanager.service.ledger.LedgerEngine;
+import iorihuang.bankaccountmanager.service.ledger.LedgerProperties;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * ledger engine owns balances in memory, only enable it on a single node
+ */
+@Configuration
+@EnableConfigurationProperties(LedgerProperties.class)
+@ConditionalOnProperty(prefix = "ledger", name = "enabled", havingValue = "true")
+public class LedgerAutoConfig {
+    @Bean(name = "ledgerEngine", initMethod = "start", destroyMethod = "close")
+    public LedgerEngine ledgerEngine(LedgerProperties properties, BankAccountTrans trans,
+                                     @Qualifier("idHelper") SnowFlakeIdHelper idHelper,
+                                     @Qualifier("verHelper") SnowFlakeIdHelper verHelper,
+                                     ObjectProvider<CacheManager> cacheManager,
+                                     ObjectProvider<MeterRegistry> registry) throws Exception {
+        CacheManager caches = cacheManager.getIfAvailable();
+        // accounts read from db between the ack and the projection are cached with the balance before the transfer
+        Consumer<Collection<String>> onProjected = null == caches ? null : accountNumbers -> {
+            for (String name : List.of("account", "accountEntity")) {
+                Cache cache = caches.getCache(name);
+                if (null != cache) {
+                    accountNumbers.forEach(cache::evict);
+                }
+            }
+        };
+        return new LedgerEngine(properties, trans, idHelper, verHelper, onProjected, registry.getIfAvailable());
+    }
+}
@@ -0,0 +1,20 @@
+package iorihuang.bankaccountmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.helper.lock.LocalLockProperties;
+import iorihuang.bankaccountmanager.helper.lock.LocalStripedLock;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(LocalLockProperties.class)
+@ConditionalOnProperty(prefix = "locallock", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class LocalLockAutoConfig {
+    @Bean
+    public LocalStripedLock localStripedLock(LocalLockProperties properties, ObjectProvider<MeterRegistry> registry) {
+        return new LocalStripedLock(properties.getStripes(), properties.getWaitMillis(), registry.getIfAvailable());
+    }
+}
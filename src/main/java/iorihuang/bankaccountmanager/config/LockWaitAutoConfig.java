@@ -0,0 +1,36 @@
+package iorihuang.bankaccountmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.helper.deadline.RequestDeadlineFilter;
+import iorihuang.bankaccountmanager.helper.deadline.RequestDeadlineProperties;
+import iorihuang.bankaccountmanager.helper.lock.LockBackoff;
+import iorihuang.bankaccountmanager.helper.lock.LockWaitProperties;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * wait for busy account locks within the request deadline
+ */
+@Configuration
+@EnableConfigurationProperties({LockWaitProperties.class, RequestDeadlineProperties.class})
+@ConditionalOnProperty(prefix = "lockwait", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class LockWaitAutoConfig {
+    @Bean
+    public LockBackoff lockBackoff(LockWaitProperties properties, ObjectProvider<MeterRegistry> registry) {
+        return new LockBackoff(properties.getSpins(), properties.getMinParkMicros(), properties.getMaxParkMicros(), registry.getIfAvailable());
+    }
+
+    @Bean
+    public FilterRegistrationBean<RequestDeadlineFilter> requestDeadlineFilter(RequestDeadlineProperties properties) {
+        FilterRegistrationBean<RequestDeadlineFilter> registration = new FilterRegistrationBean<>(new RequestDeadlineFilter(properties));
+        registration.addUrlPatterns("/op/api/*");
+        // the deadline starts before any other filter
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,24 @@
+package iorihuang.bankaccountmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.helper.lock.LockWatchdog;
+import iorihuang.bankaccountmanager.helper.lock.LockWatchdogProperties;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * one timer wheel thread renews ttl of all held account locks
+ */
+@Configuration
+@EnableConfigurationProperties(LockWatchdogProperties.class)
+@ConditionalOnProperty(prefix = "lockwatchdog", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class LockWatchdogAutoConfig {
+    @Bean(destroyMethod = "close")
+    public LockWatchdog lockWatchdog(LockWatchdogProperties properties, ObjectProvider<StringRedisTemplate> redisTemplate, ObjectProvider<MeterRegistry> registry) {
+        return new LockWatchdog(redisTemplate.getIfAvailable(), properties.getTickMillis(), properties.getWheelSize(), properties.getMaxLeaseMillis(), registry.getIfAvailable());
+    }
+}
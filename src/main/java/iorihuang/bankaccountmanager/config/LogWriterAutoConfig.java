@@ -0,0 +1,33 @@
+package iorihuang.bankaccountmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.helper.ringbuffer.LogWriterProperties;
+import iorihuang.bankaccountmanager.helper.ringbuffer.RingBufferBatchWriter;
+import iorihuang.bankaccountmanager.model.BankAccountBalanceLog;
+import iorihuang.bankaccountmanager.repository.BalanceLogReplayer;
+import iorihuang.bankaccountmanager.repository.BankAccountBalanceLogRepository;
+import iorihuang.bankaccountmanager.repository.BankAccountTransferLogRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * single consumer ring buffer of balance logs of transfers, flushed by batchInsert and closed(flushed) on shutdown,
+ * balance logs lost are replayed from the transfer logs committed with the balances
+ */
+@Configuration
+@EnableConfigurationProperties(LogWriterProperties.class)
+@ConditionalOnProperty(prefix = "logwriter", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class LogWriterAutoConfig {
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public BalanceLogReplayer balanceLogReplayer(LogWriterProperties properties, BankAccountTransferLogRepository transferLogRepository, BankAccountBalanceLogRepository balanceLogRepository, ObjectProvider<MeterRegistry> registry) {
+        return new BalanceLogReplayer(transferLogRepository, balanceLogRepository, properties.getBatchSize(), properties.getReplayIntervalMillis(), properties.getReplayGraceMillis(), properties.getReplayWindowMinutes(), registry.getIfAvailable());
+    }
+
+    @Bean(name = "balanceLogWriter", destroyMethod = "close")
+    public RingBufferBatchWriter<BankAccountBalanceLog> balanceLogWriter(LogWriterProperties properties, BalanceLogReplayer replayer, ObjectProvider<MeterRegistry> registry) {
+        return new RingBufferBatchWriter<>("balance-log", properties.getBufferSize(), properties.getBatchSize(), properties.getPublishTimeoutMillis(), properties.getFlushRetry(), replayer::insert, registry.getIfAvailable());
+    }
+}
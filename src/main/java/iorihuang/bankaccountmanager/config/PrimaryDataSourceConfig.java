@@ -1,6 +1,7 @@
 package iorihuang.bankaccountmanager.config;
 
 import com.zaxxer.hikari.HikariDataSource;
+import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.mybatis.spring.SqlSessionFactoryBean;
 import org.mybatis.spring.SqlSessionTemplate;
@@ -51,6 +52,15 @@ public class PrimaryDataSourceConfig {
         return new SqlSessionTemplate(sqlSessionFactory);
     }
 
+    /**
+     * JDBC batch executor, statements are sent on flushStatements or commit.
+     * Can not be mixed with primarySqlSessionTemplate in one transaction.
+     */
+    @Bean(name = "primaryBatchSqlSessionTemplate")
+    public SqlSessionTemplate primaryBatchSqlSessionTemplate(@Qualifier("primarySqlSessionFactory") SqlSessionFactory sqlSessionFactory) {
+        return new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    }
+
     @Primary
     @Bean(name = "primaryTransactionManager")
     public DataSourceTransactionManager primaryTransactionManager(@Qualifier("primaryDataSource") DataSource dataSource) {
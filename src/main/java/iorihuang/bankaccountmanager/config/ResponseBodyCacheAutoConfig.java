@@ -0,0 +1,24 @@
+package iorihuang.bankaccountmanager.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.helper.response.ResponseBodyCache;
+import iorihuang.bankaccountmanager.helper.response.ResponseBodyCacheProperties;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * serialized response bodies of account reads, written to the servlet output stream without jackson on hit
+ */
+@Configuration
+@EnableConfigurationProperties(ResponseBodyCacheProperties.class)
+@ConditionalOnProperty(prefix = "responsecache", name = "enabled", havingValue = "true")
+public class ResponseBodyCacheAutoConfig {
+    @Bean
+    public ResponseBodyCache responseBodyCache(ResponseBodyCacheProperties properties, ObjectMapper objectMapper, ObjectProvider<MeterRegistry> registry) {
+        return new ResponseBodyCache(objectMapper, properties.getMaximumSize(), properties.isPatchTs(), registry.getIfAvailable());
+    }
+}
@@ -0,0 +1,84 @@
+package iorihuang.bankaccountmanager.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.dto.BankAccountDTO;
+import iorihuang.bankaccountmanager.helper.cache.CacheRefresher;
+import iorihuang.bankaccountmanager.helper.cache.SingleFlight;
+import iorihuang.bankaccountmanager.helper.cache.TwoLevelCacheManager;
+import iorihuang.bankaccountmanager.helper.cache.TwoLevelCacheProperties;
+import iorihuang.bankaccountmanager.helper.offheap.AccountRecordCodec;
+import iorihuang.bankaccountmanager.helper.offheap.OffHeapCodec;
+import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.repository.BankAccountRepository;
+import iorihuang.bankaccountmanager.repository.BankAccountSlotRepository;
+import iorihuang.bankaccountmanager.service.AccountCacheRefresher;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * spring caches of local caffeine as L1 and redis as L2, invalidations are published by redis pub/sub,
+ * it replaces the caffeine cache manager of spring.cache.type
+ */
+@Configuration
+@EnableConfigurationProperties({TwoLevelCacheProperties.class, CacheProperties.class})
+@ConditionalOnProperty(prefix = "twolevelcache", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class TwoLevelCacheAutoConfig {
+    /**
+     * value types of caches kept in redis
+     */
+    private static final Map<String, Class<?>> VALUE_TYPES = Map.of("account", BankAccountDTO.class, "accountEntity", BankAccount.class);
+
+    /**
+     * refresh ahead of the account cache, also the version probe of validated reads
+     */
+    @Bean
+    public AccountCacheRefresher accountCacheRefresher(BankAccountRepository repository, BankAccountSlotRepository slotRepository) {
+        return new AccountCacheRefresher(repository, slotRepository);
+    }
+
+    @Bean
+    public TwoLevelCacheManager cacheManager(TwoLevelCacheProperties properties, CacheProperties cacheProperties, AccountCacheRefresher accountCacheRefresher, ObjectProvider<StringRedisTemplate> redisTemplate, ObjectMapper objectMapper, ObjectProvider<MeterRegistry> registry) {
+        // the entity cache is only read by writes, it expires without refresh
+        Map<String, CacheRefresher> refreshers = Map.of("account", accountCacheRefresher);
+        // only the read cache is large enough to be kept off heap
+        Map<String, OffHeapCodec<?>> offHeapCodecs = Map.of("account", new AccountRecordCodec());
+        return new TwoLevelCacheManager(cacheProperties.getCacheNames(), VALUE_TYPES, refreshers, offHeapCodecs, redisTemplate.getIfAvailable(), objectMapper, properties, registry.getIfAvailable());
+    }
+
+    /**
+     * db reads of entity cache misses in the service, shared by concurrent misses of an account
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "twolevelcache", name = "single-flight", havingValue = "true", matchIfMissing = true)
+    public SingleFlight<String, Optional<BankAccount>> accountEntityLoads(ObjectProvider<MeterRegistry> registry) {
+        return new SingleFlight<>("accountEntity", registry.getIfAvailable());
+    }
+
+    /**
+     * subscribe invalidations of other nodes, none without redis,
+     * the factory is looked up lazily as user configurations are processed before the redis auto-configuration
+     */
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(ObjectProvider<RedisConnectionFactory> connectionFactoryProvider, TwoLevelCacheManager cacheManager, TwoLevelCacheProperties properties) {
+        RedisConnectionFactory connectionFactory = connectionFactoryProvider.getIfAvailable();
+        if (null == connectionFactory) {
+            return null;
+        }
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cacheManager, new ChannelTopic(properties.getChannel()));
+        return container;
+    }
+}
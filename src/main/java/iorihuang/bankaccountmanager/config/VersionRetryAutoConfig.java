@@ -0,0 +1,20 @@
+package iorihuang.bankaccountmanager.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.helper.retry.VersionRetryPolicy;
+import iorihuang.bankaccountmanager.helper.retry.VersionRetryProperties;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(VersionRetryProperties.class)
+@ConditionalOnProperty(prefix = "version-retry", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class VersionRetryAutoConfig {
+    @Bean
+    public VersionRetryPolicy versionRetryPolicy(VersionRetryProperties properties, ObjectProvider<MeterRegistry> registry) {
+        return new VersionRetryPolicy(properties.getMaxAttempts(), properties.getBackoffMillis(), properties.getMaxBackoffMillis(), registry.getIfAvailable());
+    }
+}
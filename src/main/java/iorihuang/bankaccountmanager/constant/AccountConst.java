@@ -22,6 +22,33 @@ public final class AccountConst {
      * This is used to prevent concurrent modifications to the same account or balance.
      */
     public static final int ACCOUNT_CHANGE_LOCK_SEC = 3;
+    /**
+     * Key prefix of account locks
+     */
+    public static final String ACCOUNT_LOCK_KEY_PREFIX = "account:op:lock:";
+
+    /**
+     * Max transfers of one batch transfer request
+     */
+    public static final int TRANSFER_BATCH_MAX_SIZE = 5000;
+    /**
+     * Max accounts locked by one call of batch transfer, transfers beyond it go to the next group
+     */
+    public static final int TRANSFER_BATCH_LOCK_MAX_SIZE = 200;
+    /**
+     * Max account numbers of one IN query
+     */
+    public static final int IN_QUERY_MAX_SIZE = 1000;
+
+    /**
+     * Max balance slots of one hot account
+     */
+    public static final int ACCOUNT_SLOTS_MAX = 64;
+
+    /**
+     * Consistency of account reads validated against the version in db, cached accounts are returned as is otherwise
+     */
+    public static final String READ_VALIDATED = "validated";
 
     /**
      * JPA unique constraint error message
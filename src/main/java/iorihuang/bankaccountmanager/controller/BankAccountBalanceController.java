@@ -1,7 +1,9 @@
 package iorihuang.bankaccountmanager.controller;
 
 import io.micrometer.observation.annotation.Observed;
+import iorihuang.bankaccountmanager.dto.BankTransferBatchDTO;
 import iorihuang.bankaccountmanager.dto.BankTransferDTO;
+import iorihuang.bankaccountmanager.dto.TransferBatchRequest;
 import iorihuang.bankaccountmanager.dto.TransferRequest;
 import iorihuang.bankaccountmanager.exception.AccountError;
 import iorihuang.bankaccountmanager.exception.AccountException;
@@ -32,5 +34,15 @@ public class BankAccountBalanceController extends BaseController {
         BankTransferDTO dto = service.transfer(request);
         return buildResponse(dto);
     }
+
+    /**
+     * Transfer in batch for bulk jobs, returns a result for each transfer in request order
+     */
+    @PostMapping("/transfer/batch")
+    @Observed(name = "bank.account.transfer.batch")
+    public ResponseEntity<?> transferBatch(@RequestBody @Valid TransferBatchRequest request) throws AccountError, AccountException {
+        BankTransferBatchDTO dto = service.transferBatch(request.getTransfers());
+        return buildResponse(dto);
+    }
 }
 
@@ -1,16 +1,24 @@
 package iorihuang.bankaccountmanager.controller;
 
 import io.micrometer.observation.annotation.Observed;
+import iorihuang.bankaccountmanager.constant.AccountConst;
 import iorihuang.bankaccountmanager.dto.BankAccountDTO;
 import iorihuang.bankaccountmanager.dto.BankAccountListDTO;
+import iorihuang.bankaccountmanager.dto.DTOResponse;
 import iorihuang.bankaccountmanager.exception.AccountError;
 import iorihuang.bankaccountmanager.exception.AccountException;
+import iorihuang.bankaccountmanager.helper.response.ResponseBodyCache;
 import iorihuang.bankaccountmanager.service.BankAccountService;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+
 /**
  * Account Information Query Interface
  */
@@ -21,6 +29,9 @@ import org.springframework.web.bind.annotation.*;
 @Observed(name = "info.controller")
 public class BankAccountInfoController extends BaseController {
     private final BankAccountService service;
+    // serialized bodies of account reads by version, serialized by each request if absent
+    @Autowired(required = false)
+    private ResponseBodyCache responseBodyCache;
 
     /**
      * Query account list, using account ID for pagination to reduce potential performance issues with large pagination
@@ -41,13 +52,24 @@ public class BankAccountInfoController extends BaseController {
      * Query detailed account information
      *
      * @param accountNumber the account number
+     * @param consistency   "validated" to check the cached account against the version in db, for balance critical callers,
+     *                      otherwise the cached account is returned as is until it expires
      * @return
      */
     @GetMapping("/{accountNumber}")
     @Observed(name = "bank.account.get")
-    public ResponseEntity<?> get(@PathVariable String accountNumber) throws AccountError, AccountException {
-        BankAccountDTO dto = service.getAccount(accountNumber);
-        return buildResponse(dto);
+    public ResponseEntity<?> get(@PathVariable String accountNumber, @RequestParam(required = false) String consistency, HttpServletResponse response) throws AccountError, AccountException, IOException {
+        BankAccountDTO dto = AccountConst.READ_VALIDATED.equals(consistency) ? service.getValidatedAccount(accountNumber) : service.getAccount(accountNumber);
+        // balance of hot account changes without version
+        if (null == responseBodyCache || null == dto.getVer() || null != dto.getSlots()) {
+            return buildResponse(dto);
+        }
+        byte[] body = responseBodyCache.get(accountNumber, dto.getVer(), () -> new DTOResponse<BankAccountDTO>().setTs(null).setCode(1).setData(dto));
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        responseBodyCache.write(body, response.getOutputStream());
+        // written to the response already
+        return null;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package iorihuang.bankaccountmanager.controller;
+
+import io.micrometer.observation.annotation.Observed;
+import iorihuang.bankaccountmanager.dto.BankAccountDTO;
+import iorihuang.bankaccountmanager.dto.SplitSlotsRequest;
+import iorihuang.bankaccountmanager.exception.AccountError;
+import iorihuang.bankaccountmanager.exception.AccountException;
+import iorihuang.bankaccountmanager.service.BankAccountService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * hot account balance slots management
+ */
+@RestController
+@RequestMapping("/op/api/accounts/slots/v1")
+@RequiredArgsConstructor
+@Slf4j
+@Observed(name = "slot.controller")
+public class BankAccountSlotController extends BaseController {
+    private final BankAccountService service;
+
+    /**
+     * Split balance of account into slots, credits are spread across slots
+     *
+     * @return account info with aggregated balance
+     */
+    @PostMapping("/split/{accountNumber}")
+    @Observed(name = "bank.account.slots.split")
+    public ResponseEntity<?> split(@PathVariable String accountNumber, @RequestBody @Valid SplitSlotsRequest request) throws AccountError, AccountException {
+        BankAccountDTO dto = service.splitAccountSlots(accountNumber, request.getSlots());
+        return buildResponse(dto);
+    }
+
+    /**
+     * Merge balance of slots back to account
+     *
+     * @return account info
+     */
+    @PostMapping("/merge/{accountNumber}")
+    @Observed(name = "bank.account.slots.merge")
+    public ResponseEntity<?> merge(@PathVariable String accountNumber) throws AccountError, AccountException {
+        BankAccountDTO dto = service.mergeAccountSlots(accountNumber);
+        return buildResponse(dto);
+    }
+}
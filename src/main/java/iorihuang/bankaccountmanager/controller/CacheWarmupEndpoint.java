@@ -0,0 +1,22 @@
+package iorihuang.bankaccountmanager.controller;
+
+import iorihuang.bankaccountmanager.service.AccountCacheWarmer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.Map;
+
+/**
+ * Progress of the account cache warm-up, /actuator/cachewarmup
+ */
+@Endpoint(id = "cachewarmup")
+@RequiredArgsConstructor
+public class CacheWarmupEndpoint {
+    private final AccountCacheWarmer warmer;
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return warmer.status();
+    }
+}
@@ -4,6 +4,7 @@ import iorihuang.bankaccountmanager.dto.DTOResponse;
 import iorihuang.bankaccountmanager.exception.AccountError;
 import iorihuang.bankaccountmanager.exception.AccountException;
 import iorihuang.bankaccountmanager.exception.CodeE;
+import iorihuang.bankaccountmanager.exception.ExpCode;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
@@ -26,6 +27,14 @@ public class GlobalExceptionHandler {
 
     @ExceptionHandler(AccountError.class)
     public ResponseEntity<?> handleAccountError(AccountError ex) {
+        if (ex.getCode() == ExpCode.TransferResultUnknown.getCode()) {
+            // the client should check the result instead of retrying the transfer
+            DTOResponse<?> body = new DTOResponse<>();
+            body.setCode(0);
+            body.setError(ex.getCode());
+            body.setMsg(ex.getMessage());
+            return new ResponseEntity<>(body, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
         return buildResponse(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage());
 //        return buildResponse(ex);
     }
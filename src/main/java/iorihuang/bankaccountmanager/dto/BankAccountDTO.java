@@ -1,8 +1,10 @@
 package iorihuang.bankaccountmanager.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import iorihuang.bankaccountmanager.constant.AccountConst;
+import iorihuang.bankaccountmanager.helper.cache.CacheVersioned;
 import lombok.Data;
 import lombok.experimental.Accessors;
 
@@ -17,7 +19,7 @@ import java.util.Objects;
 @Data
 @Accessors(chain = true)
 @JsonInclude(JsonInclude.Include.NON_NULL)
-public class BankAccountDTO {
+public class BankAccountDTO implements CacheVersioned {
     /**
      * using String instead of Long for id to avoid long overflow issues
      */
@@ -43,8 +45,17 @@ public class BankAccountDTO {
      * @see iorihuang.bankaccountmanager.model.bankaccount.AccountState
      */
     private Integer state;
+    /**
+     * balance slots of hot account, absent for normal account
+     */
+    private Integer slots;
     @JsonProperty("updated_at")
     private String updatedAt;
+    /**
+     * version of the account, kept in cache only
+     */
+    @JsonIgnore
+    private Long ver;
 
     /**
      * Set the account id
@@ -78,4 +89,14 @@ public class BankAccountDTO {
         this.updatedAt = updatedAt.format(AccountConst.DATE_TIME_FORMATTER);
         return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public long cacheVersion() {
+        return null == ver ? 0 : ver;
+    }
+
+    @Override
+    public void restoreCacheVersion(long version) {
+        this.ver = version;
+    }
+}
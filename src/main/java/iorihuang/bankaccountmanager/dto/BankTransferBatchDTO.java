@@ -0,0 +1,38 @@
+package iorihuang.bankaccountmanager.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object for batch transfer, one result for each transfer in request order
+ */
+@Data
+@Accessors(chain = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BankTransferBatchDTO {
+    private List<Item> results;
+
+    @Data
+    @Accessors(chain = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Item {
+        /**
+         * index of the transfer in request
+         */
+        private int index;
+        /**
+         * code of op result, 0 means fail, 1 means success
+         */
+        private int code;
+        /**
+         * error code if failed
+         */
+        private int error;
+        private String msg;
+        private BankAccountDTO from;
+        private BankAccountDTO to;
+    }
+}
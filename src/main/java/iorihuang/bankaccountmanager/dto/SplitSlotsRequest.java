@@ -0,0 +1,17 @@
+package iorihuang.bankaccountmanager.dto;
+
+import iorihuang.bankaccountmanager.constant.AccountConst;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+@Data
+@Accessors(chain = true)
+public class SplitSlotsRequest {
+    @NotNull(message = "Slots cannot be empty")
+    @Min(value = 2, message = "Slots must be at least 2")
+    @Max(value = AccountConst.ACCOUNT_SLOTS_MAX, message = "Too many slots")
+    private Integer slots;
+}
@@ -0,0 +1,19 @@
+package iorihuang.bankaccountmanager.dto;
+
+import iorihuang.bankaccountmanager.constant.AccountConst;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+@Data
+@Accessors(chain = true)
+public class TransferBatchRequest {
+    @NotEmpty(message = "Transfers cannot be empty")
+    @Size(max = AccountConst.TRANSFER_BATCH_MAX_SIZE, message = "Too many transfers in one batch")
+    @Valid
+    private List<TransferRequest> transfers;
+}
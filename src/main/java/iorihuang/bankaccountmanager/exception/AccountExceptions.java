@@ -40,4 +40,8 @@ public class AccountExceptions {
         return new InsufficientBalanceException("Insufficient balance in account " + accountId + " for withdrawal of " + amount);
     }
 
+    public static AccountVersionConflictException versionConflict(String accountId) {
+        return new AccountVersionConflictException("Account with ID " + accountId + " changed by concurrent operation.");
+    }
+
 }
\ No newline at end of file
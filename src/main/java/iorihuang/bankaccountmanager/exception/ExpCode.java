@@ -12,11 +12,13 @@ public enum ExpCode {
     InsufficientBalance(10006, "Insufficient balance for the operation"),
     TransferAccountLimit(10007, "Account limit to transfer balance "),
     AccountConcurrentLimit(10008, "Account current operation limit"),
+    AccountVersionConflict(10009, "Account changed by concurrent operation"),
     DbCreateAccountErr(20001, "Database error while creating account"),
     DbDeleteAccountErr(20002, "Database error while delete account"),
     DbUpdateAccountErr(20003, "Database error while update account"),
     DbTransferBalanceErr(20004, "Database error while transfer balance"),
     DbReadAccountErr(20005, "Database error while read account"),
+    TransferResultUnknown(20006, "Transfer result unknown, it may still be committed"),
     ;
     private final int code;
     private final String message;
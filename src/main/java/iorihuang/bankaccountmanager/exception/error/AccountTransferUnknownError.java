@@ -0,0 +1,13 @@
+package iorihuang.bankaccountmanager.exception.error;
+
+import iorihuang.bankaccountmanager.exception.AccountError;
+import iorihuang.bankaccountmanager.exception.ExpCode;
+
+/**
+ * The transfer was handed over but not confirmed in time, it may still be committed
+ */
+public class AccountTransferUnknownError extends AccountError {
+    public AccountTransferUnknownError(Throwable cause, String message) {
+        super(ExpCode.TransferResultUnknown.getCode(), cause, message);
+    }
+}
@@ -0,0 +1,13 @@
+package iorihuang.bankaccountmanager.exception.exception;
+
+import iorihuang.bankaccountmanager.exception.AccountException;
+import iorihuang.bankaccountmanager.exception.ExpCode;
+
+/**
+ * the guarded update found the version, state or balance changed after read
+ */
+public class AccountVersionConflictException extends AccountException {
+    public AccountVersionConflictException(String message) {
+        super(ExpCode.AccountVersionConflict.getCode(), message);
+    }
+}
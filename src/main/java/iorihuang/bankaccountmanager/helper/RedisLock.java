@@ -1,26 +1,53 @@
 package iorihuang.bankaccountmanager.helper;
 
+import iorihuang.bankaccountmanager.helper.lock.AccountLock;
+import iorihuang.bankaccountmanager.helper.lock.LockWatchdog;
+import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdHelper;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * Redis distributed lock that supports automatic release via try-with-resources
  */
-public class RedisLock implements AutoCloseable {
-    private final StringRedisTemplate redisTemplate;
-    private final String lockKey;
-    private final String lockValue;
-    private final long expireSeconds;
-    private boolean locked;
+public class RedisLock implements AccountLock {
+    /**
+     * delete the keys still holding the value of this lock, one round trip for all keys
+     */
+    protected static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "local n = 0 " +
+                    "for i, key in ipairs(KEYS) do " +
+                    "if redis.call('get', key) == ARGV[1] then n = n + redis.call('del', key) end " +
+                    "end " +
+                    "return n", Long.class);
+
+    protected final StringRedisTemplate redisTemplate;
+    protected final String lockKey;
+    protected final String lockValue;
+    protected final long expireSeconds;
+    protected boolean locked;
+    private LockWatchdog.Lease lease;
+    private long fenceToken;
 
     public RedisLock(StringRedisTemplate redisTemplate, String lockKey, long expireSeconds) {
+        this(redisTemplate, lockKey, expireSeconds, true);
+    }
+
+    /**
+     * @param acquire acquire the lock key in constructor, sub classes acquire their own keys if false
+     */
+    protected RedisLock(StringRedisTemplate redisTemplate, String lockKey, long expireSeconds, boolean acquire) {
         this.redisTemplate = redisTemplate;
         this.lockKey = lockKey;
-        this.lockValue = String.valueOf(System.currentTimeMillis());
+        // unique of each lock, so a lock never releases the key taken by another after expired
+        this.lockValue = UUID.randomUUID().toString();
         this.expireSeconds = expireSeconds;
-        this.locked = tryLock();
+        this.locked = acquire && tryLock();
     }
 
     /**
@@ -38,23 +65,70 @@ public class RedisLock implements AutoCloseable {
     /**
      * Check if the lock is acquired successfully
      */
+    @Override
     public boolean isLocked() {
         return locked;
     }
 
     /**
-     * Release the lock
+     * Keys held by this lock
      */
+    protected List<String> heldKeys() {
+        return List.of(lockKey);
+    }
+
+    /**
+     * Renew the ttl of the keys by the watchdog while the lock is held
+     *
+     * @param watchdog nullable
+     * @return this lock
+     */
+    public RedisLock watch(LockWatchdog watchdog) {
+        if (null != watchdog && null != redisTemplate && locked && null == lease) {
+            lease = watchdog.register(heldKeys(), lockValue, expireSeconds * 1000);
+        }
+        return this;
+    }
+
+    /**
+     * Issue a fence token to this grant, the next grant can only happen after this one released or expired,
+     * so its token is greater as long as clock skew between nodes is less than the lock ttl
+     *
+     * @param tokenHelper snowflake id helper in time order, nullable
+     * @return this lock
+     */
+    public RedisLock fence(SnowFlakeIdHelper tokenHelper) {
+        if (null != tokenHelper && null != redisTemplate && locked && 0 == fenceToken) {
+            fenceToken = tokenHelper.genId();
+        }
+        return this;
+    }
+
     @Override
-    public void close() {
-        if (null == redisTemplate) {
-            return;
+    public long fenceToken() {
+        return fenceToken;
+    }
+
+    /**
+     * Release the keys by compare-and-delete
+     */
+    protected void release(List<String> keys) {
+        if (null != lease) {
+            lease.cancel();
+            lease = null;
         }
-        ValueOperations<String, String> ops = redisTemplate.opsForValue();
-        String val = ops.get(lockKey);
-        if (locked && lockValue.equals(val)) {
-            redisTemplate.delete(lockKey);
+        if (null == redisTemplate || !locked) {
+            return;
         }
+        locked = false;
+        redisTemplate.execute(RELEASE_SCRIPT, keys, lockValue);
     }
-}
 
+    /**
+     * Release the lock
+     */
+    @Override
+    public void close() {
+        release(List.of(lockKey));
+    }
+}
@@ -0,0 +1,141 @@
+package iorihuang.bankaccountmanager.helper;
+
+import iorihuang.bankaccountmanager.helper.lock.LockBackoff;
+import iorihuang.bankaccountmanager.helper.lock.LocalStripedLock;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Redis lock of several keys, all or none of the keys are taken by one Lua call, and released by one Lua call.
+ * ------------------
+ * keys are sorted, so locks of the same keys are always requested in the same order
+ * ------------------
+ * keys should be in the same hash slot in redis cluster
+ * ------------------
+ * with a local striped lock, stripes of the keys are locked before redis and released after redis,
+ * so only one waiter of the keys in this JVM polls redis
+ * ------------------
+ * with a backoff, the lock retries until the wait budget is used up instead of failing at once
+ */
+public class RedisMultiLock extends RedisLock {
+    /**
+     * set all keys only if none of them exists
+     */
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "for i, key in ipairs(KEYS) do " +
+                    "if redis.call('exists', key) == 1 then return 0 end " +
+                    "end " +
+                    "for i, key in ipairs(KEYS) do " +
+                    "redis.call('set', key, ARGV[1], 'PX', ARGV[2]) " +
+                    "end " +
+                    "return 1", Long.class);
+
+    private final List<String> lockKeys;
+    private final LocalStripedLock localLock;
+    private final LockBackoff backoff;
+    private final long waitNanos;
+    private int[] stripes;
+
+    /**
+     * @param redisTemplate redis template, keys are not locked if null
+     * @param lockKeys      keys to lock, duplicated keys are locked once
+     * @param expireSeconds expire time of all keys
+     */
+    public RedisMultiLock(StringRedisTemplate redisTemplate, Collection<String> lockKeys, long expireSeconds) {
+        this(redisTemplate, lockKeys, expireSeconds, null, null, 0);
+    }
+
+    /**
+     * @param redisTemplate redis template, keys are not locked if null
+     * @param lockKeys      keys to lock, duplicated keys are locked once
+     * @param expireSeconds expire time of all keys
+     * @param localLock     in-process lock taken before redis, nullable
+     * @param backoff       backoff between attempts while waiting, fail fast if null
+     * @param waitNanos     max time to wait for the lock, including the local lock, used only with backoff
+     */
+    public RedisMultiLock(StringRedisTemplate redisTemplate, Collection<String> lockKeys, long expireSeconds, LocalStripedLock localLock, LockBackoff backoff, long waitNanos) {
+        super(redisTemplate, String.join(",", new TreeSet<>(lockKeys)), expireSeconds, false);
+        this.lockKeys = new ArrayList<>(new TreeSet<>(lockKeys));
+        this.localLock = localLock;
+        this.backoff = backoff;
+        this.waitNanos = null == backoff ? 0 : Math.max(0, waitNanos);
+        this.locked = tryLockAll();
+    }
+
+    private boolean tryLockAll() {
+        long start = System.nanoTime();
+        if (null != localLock) {
+            stripes = null == backoff ? localLock.lock(lockKeys) : localLock.lock(lockKeys, waitNanos);
+            if (null == stripes) {
+                record(start, false);
+                return false;
+            }
+        }
+        boolean success = false;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                success = tryLockRedis();
+                if (success || null == backoff || !backoff.idle(attempt, waitNanos - (System.nanoTime() - start))) {
+                    break;
+                }
+            }
+            record(start, success);
+            return success;
+        } finally {
+            if (!success) {
+                unlockLocal();
+            }
+        }
+    }
+
+    private void record(long start, boolean acquired) {
+        if (null != backoff) {
+            backoff.record(System.nanoTime() - start, acquired);
+        }
+    }
+
+    private boolean tryLockRedis() {
+        if (null == redisTemplate) {
+            return true;
+        }
+        if (lockKeys.isEmpty()) {
+            return true;
+        }
+        Long result = redisTemplate.execute(ACQUIRE_SCRIPT, lockKeys, lockValue, String.valueOf(expireSeconds * 1000));
+        return null != result && result == 1L;
+    }
+
+    private void unlockLocal() {
+        if (null != stripes) {
+            localLock.unlock(stripes);
+            stripes = null;
+        }
+    }
+
+    public List<String> getLockKeys() {
+        return lockKeys;
+    }
+
+    @Override
+    protected List<String> heldKeys() {
+        return lockKeys;
+    }
+
+    /**
+     * Release all keys still held by this lock
+     */
+    @Override
+    public void close() {
+        try {
+            release(lockKeys);
+        } finally {
+            unlockLocal();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package iorihuang.bankaccountmanager.helper.cache;
+
+/**
+ * Reload a cached value in background before it expires, the current value is served while reloading
+ */
+public interface CacheRefresher {
+    /**
+     * @param key     key in string form
+     * @param current value in L1, null if absent
+     * @return the current value if not changed, the new value if changed, null if it is gone
+     */
+    Object reload(String key, Object current) throws Exception;
+}
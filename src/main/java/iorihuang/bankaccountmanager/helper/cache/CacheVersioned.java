@@ -0,0 +1,16 @@
+package iorihuang.bankaccountmanager.helper.cache;
+
+/**
+ * Cached value with a version, the two level cache never replaces a newer version with an older one
+ */
+public interface CacheVersioned {
+    /**
+     * version of the value, 0 if unknown
+     */
+    long cacheVersion();
+
+    /**
+     * restore the version kept beside the value in L2
+     */
+    void restoreCacheVersion(long version);
+}
@@ -0,0 +1,77 @@
+package iorihuang.bankaccountmanager.helper.cache;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Caffeine loader of L1 with refreshAfterWrite, a read after the refresh time reloads the entry on a bounded executor,
+ * the old value is served until the reload is done, and kept if the executor is full or the reload fails
+ */
+class RefreshAheadLoader implements CacheLoader<String, Object> {
+    private final CacheRefresher refresher;
+    private final Executor executor;
+
+    private final Counter reloaded;
+    private final Counter unchanged;
+    private final Counter rejected;
+
+    RefreshAheadLoader(String name, CacheRefresher refresher, Executor executor, MeterRegistry registry) {
+        this.refresher = refresher;
+        this.executor = executor;
+        if (null != registry) {
+            this.reloaded = counter(registry, name, "reloaded");
+            this.unchanged = counter(registry, name, "unchanged");
+            this.rejected = counter(registry, name, "rejected");
+        } else {
+            this.reloaded = null;
+            this.unchanged = null;
+            this.rejected = null;
+        }
+    }
+
+    private static Counter counter(MeterRegistry registry, String name, String result) {
+        return Counter.builder("cache.level.refreshes")
+                .tag("cache", name)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static void increment(Counter counter) {
+        if (null != counter) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * L1 is only read by getIfPresent, a missing key is loaded by the cache caller instead
+     */
+    @Override
+    public Object load(String key) throws Exception {
+        return refresher.reload(key, null);
+    }
+
+    @Override
+    public CompletableFuture<Object> asyncReload(String key, Object oldValue, Executor ignored) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    Object value = refresher.reload(key, oldValue);
+                    increment(value == oldValue ? unchanged : reloaded);
+                    return value;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            // executor is full, keep the old value until the next refresh
+            increment(rejected);
+            return CompletableFuture.completedFuture(oldValue);
+        }
+    }
+}
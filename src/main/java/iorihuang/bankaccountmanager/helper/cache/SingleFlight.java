@@ -0,0 +1,98 @@
+package iorihuang.bankaccountmanager.helper.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Concurrent loads of the same key share one in-flight load, such as db reads of cache misses.
+ * ------------------
+ * the first caller of a key loads it in its own thread, callers meanwhile wait for its result or its exception,
+ * the key is removed once loaded, so a load never returns a value older than the start of the first caller
+ * ------------------
+ * the loader must not load the same key of the same single flight, or it waits for itself
+ */
+public class SingleFlight<K, V> {
+    @FunctionalInterface
+    public interface Loader<V, E extends Exception> {
+        V load() throws E;
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter loaded;
+    private final Counter shared;
+
+    /**
+     * @param name     name of the single flight, used as metrics tag
+     * @param registry metrics registry, nullable
+     */
+    public SingleFlight(String name, MeterRegistry registry) {
+        if (null != registry) {
+            this.loaded = Counter.builder("singleflight.loads").tag("name", name).tag("result", "loaded").register(registry);
+            this.shared = Counter.builder("singleflight.loads").tag("name", name).tag("result", "shared").register(registry);
+        } else {
+            this.loaded = null;
+            this.shared = null;
+        }
+    }
+
+    /**
+     * Load the key, or wait for the load in flight of the key
+     *
+     * @param key    key
+     * @param loader load the value, called only by the first caller
+     * @return value loaded, shared by all callers of the load
+     * @throws E exception of the loader, thrown to all callers of the load
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Exception> V load(K key, Loader<V, E> loader) throws E {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (null != existing) {
+            increment(shared);
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw (E) cause;
+            } catch (InterruptedException e) {
+                // stop waiting, load it by this caller
+                Thread.currentThread().interrupt();
+                return loader.load();
+            }
+        }
+        increment(loaded);
+        try {
+            V value = loader.load();
+            flight.complete(value);
+            return value;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Keys being loaded
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    private static void increment(Counter counter) {
+        if (null != counter) {
+            counter.increment();
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package iorihuang.bankaccountmanager.helper.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.helper.offheap.OffHeapCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Spring cache of local caffeine as L1 and redis json as L2.
+ * ------------------
+ * get: L1 -> off-heap (filled into L1) -> L2 (filled into L1 and off-heap) -> loader (put into all),
+ * concurrent misses of a key share one load by single flight
+ * put: L1, off-heap and L2 keep the newer one if the value is versioned, so a stale write never replaces a newer one,
+ * then publish the key (with the version if versioned) so older entries in L1 and off-heap of other nodes are dropped,
+ * values filled by the loader of get are not published
+ * evict: L1 -> off-heap -> L2 -> publish the key so L1 and off-heap of other nodes are invalidated
+ * ------------------
+ * the optional off-heap level keeps far more entries than L1 out of the gc heap, L1 stays small for the hottest ones
+ * ------------------
+ * L2 value is the version padded to 20 digits + "\n" + json, compared as string by a lua script
+ * ------------------
+ * keys are used in string form in both levels, null values are not cached,
+ * errors of redis degrade to L1 only, L2 is skipped if the value type is unknown
+ */
+@Slf4j
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+    /**
+     * set the value unless the version kept is greater, one round trip
+     */
+    private static final RedisScript<Long> PUT_SCRIPT = new DefaultRedisScript<>(
+            "local cur = redis.call('get', KEYS[1]) " +
+                    "if cur and string.sub(cur, 1, 20) > ARGV[1] then return 0 end " +
+                    "redis.call('set', KEYS[1], ARGV[1] .. '\\n' .. ARGV[2], 'PX', ARGV[3]) " +
+                    "return 1", Long.class);
+    private static final int VERSION_LENGTH = 20;
+
+    private final String name;
+    private final Cache<String, Object> local;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Class<?> valueType;
+    private final String keyPrefix;
+    private final Duration l2Ttl;
+    private final TwoLevelCacheManager manager;
+    private final SingleFlight<String, Object> loads;
+    private final OffHeapCache<?> offHeap;
+
+    private final Counter l1Hit;
+    private final Counter l1Miss;
+    private final Counter l2Hit;
+    private final Counter l2Miss;
+    private final Counter stale;
+
+    /**
+     * @param name          cache name
+     * @param local         L1
+     * @param redisTemplate L2, nullable
+     * @param objectMapper  json of L2 values
+     * @param valueType     type of values, L2 is skipped if null
+     * @param keyPrefix     prefix of redis keys
+     * @param l2Ttl         ttl of L2
+     * @param manager       publish invalidations
+     * @param loads         share loads of concurrent misses, every miss loads by itself if null
+     * @param offHeap       level between L1 and L2, nullable
+     * @param registry      metrics registry, nullable
+     */
+    public TwoLevelCache(String name, Cache<String, Object> local, StringRedisTemplate redisTemplate, ObjectMapper objectMapper, Class<?> valueType, String keyPrefix, Duration l2Ttl, TwoLevelCacheManager manager, SingleFlight<String, Object> loads, OffHeapCache<?> offHeap, MeterRegistry registry) {
+        super(false);
+        this.name = name;
+        this.local = local;
+        this.redisTemplate = null == valueType ? null : redisTemplate;
+        this.objectMapper = objectMapper;
+        this.valueType = valueType;
+        this.keyPrefix = keyPrefix + name + ":";
+        this.l2Ttl = l2Ttl;
+        this.manager = manager;
+        this.loads = loads;
+        this.offHeap = offHeap;
+        if (null != registry) {
+            this.l1Hit = counter(registry, name, "l1", "hit");
+            this.l1Miss = counter(registry, name, "l1", "miss");
+            this.l2Hit = counter(registry, name, "l2", "hit");
+            this.l2Miss = counter(registry, name, "l2", "miss");
+            this.stale = Counter.builder("cache.level.stale.puts").tag("cache", name).register(registry);
+        } else {
+            this.l1Hit = null;
+            this.l1Miss = null;
+            this.l2Hit = null;
+            this.l2Miss = null;
+            this.stale = null;
+        }
+    }
+
+    private static Counter counter(MeterRegistry registry, String name, String level, String result) {
+        return Counter.builder("cache.level.gets")
+                .tag("cache", name)
+                .tag("level", level)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static void increment(Counter counter) {
+        if (null != counter) {
+            counter.increment();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return local;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        String cacheKey = String.valueOf(key);
+        Object value = local.getIfPresent(cacheKey);
+        if (null != value) {
+            increment(l1Hit);
+            return value;
+        }
+        increment(l1Miss);
+        if (null != offHeap) {
+            value = offHeap.get(cacheKey);
+            if (null != value) {
+                return putLocal(cacheKey, value);
+            }
+        }
+        value = getRemote(cacheKey);
+        if (null != value) {
+            Object kept = putLocal(cacheKey, value);
+            if (kept == value && null != offHeap) {
+                offHeap.put(cacheKey, value);
+            }
+            return kept;
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object value = lookup(key);
+        if (null != value) {
+            return (T) value;
+        }
+        try {
+            if (null == loads) {
+                return (T) load(key, valueLoader);
+            }
+            return (T) loads.load(String.valueOf(key), () -> load(key, valueLoader));
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    private Object load(Object key, Callable<?> valueLoader) throws Exception {
+        Object value = valueLoader.call();
+        put(String.valueOf(key), value, false);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        put(String.valueOf(key), value, true);
+    }
+
+    /**
+     * @param publish publish the put to other nodes, false for values filled from db
+     */
+    private void put(String cacheKey, Object value, boolean publish) {
+        if (null == value) {
+            return;
+        }
+        Object kept = putLocal(cacheKey, value);
+        if (kept != value) {
+            return;
+        }
+        if (null != offHeap && !offHeap.put(cacheKey, value)) {
+            // a newer version is kept off heap, read it next time
+            local.asMap().remove(cacheKey, value);
+            return;
+        }
+        if (!putRemote(cacheKey, value)) {
+            // a newer version is kept in L2, read it next time
+            local.asMap().remove(cacheKey, value);
+            if (null != offHeap) {
+                offHeap.evict(cacheKey);
+            }
+            return;
+        }
+        if (!publish) {
+            return;
+        }
+        if (value instanceof CacheVersioned versioned) {
+            manager.publishPut(name, cacheKey, versioned.cacheVersion());
+        } else {
+            manager.publishEvict(name, cacheKey);
+        }
+    }
+
+    /**
+     * put into L1 unless a newer version is kept
+     *
+     * @return value kept in L1
+     */
+    private Object putLocal(String key, Object value) {
+        if (!(value instanceof CacheVersioned versioned)) {
+            local.put(key, value);
+            return value;
+        }
+        return local.asMap().compute(key, (k, old) -> {
+            if (old instanceof CacheVersioned kept && kept.cacheVersion() > versioned.cacheVersion()) {
+                increment(stale);
+                return old;
+            }
+            return value;
+        });
+    }
+
+    private static long versionOf(Object value) {
+        return value instanceof CacheVersioned versioned ? versioned.cacheVersion() : 0;
+    }
+
+    @Override
+    public void evict(Object key) {
+        String cacheKey = String.valueOf(key);
+        // redis first, a miss of this node before the delete would refill L1 with the old value from redis,
+        // and invalidations published by this node are skipped by itself
+        if (null != redisTemplate) {
+            try {
+                redisTemplate.delete(keyPrefix + cacheKey);
+            } catch (Exception e) {
+                log.warn("Two level cache {} evict from redis fail: {}", name, cacheKey, e);
+            }
+        }
+        evictLocal(cacheKey);
+        manager.publishEvict(name, cacheKey);
+    }
+
+    @Override
+    public void clear() {
+        if (null != redisTemplate) {
+            try {
+                redisTemplate.execute((RedisCallback<Void>) connection -> {
+                    ScanOptions options = ScanOptions.scanOptions().match(keyPrefix + "*").count(1000).build();
+                    try (Cursor<byte[]> cursor = connection.keyCommands().scan(options)) {
+                        while (cursor.hasNext()) {
+                            connection.keyCommands().del(cursor.next());
+                        }
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                log.warn("Two level cache {} clear redis fail", name, e);
+            }
+        }
+        // after redis, the same as evict
+        clearLocal();
+        manager.publishClear(name);
+    }
+
+    /**
+     * Invalidate L1 and off-heap only, by invalidations of other nodes
+     */
+    void evictLocal(String key) {
+        // off-heap first, so a miss of L1 in between never refills it with the old value
+        if (null != offHeap) {
+            offHeap.evict(key);
+        }
+        local.invalidate(key);
+    }
+
+    /**
+     * Invalidate L1 and off-heap entries older than the version only, by puts of other nodes
+     */
+    void evictLocalOlder(String key, long version) {
+        if (null != offHeap) {
+            offHeap.evictOlder(key, version);
+        }
+        local.asMap().computeIfPresent(key, (k, old) ->
+                old instanceof CacheVersioned kept && kept.cacheVersion() >= version ? old : null);
+    }
+
+    /**
+     * Invalidate all of L1 and off-heap only, by invalidations of other nodes
+     */
+    void clearLocal() {
+        if (null != offHeap) {
+            offHeap.clear();
+        }
+        local.invalidateAll();
+    }
+
+    private Object getRemote(String key) {
+        if (null == redisTemplate) {
+            return null;
+        }
+        try {
+            String json = redisTemplate.opsForValue().get(keyPrefix + key);
+            if (null == json) {
+                increment(l2Miss);
+                return null;
+            }
+            increment(l2Hit);
+            int split = json.indexOf('\n');
+            Object value = objectMapper.readValue(json.substring(split + 1), valueType);
+            if (value instanceof CacheVersioned versioned) {
+                versioned.restoreCacheVersion(Long.parseLong(json.substring(0, split)));
+            }
+            return value;
+        } catch (Exception e) {
+            log.warn("Two level cache {} get from redis fail: {}", name, key, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return false if a newer version is kept in L2
+     */
+    private boolean putRemote(String key, Object value) {
+        if (null == redisTemplate || !valueType.isInstance(value)) {
+            return true;
+        }
+        try {
+            String version = String.format("%0" + VERSION_LENGTH + "d", Math.max(0, versionOf(value)));
+            Long written = redisTemplate.execute(PUT_SCRIPT, List.of(keyPrefix + key), version, objectMapper.writeValueAsString(value), String.valueOf(l2Ttl.toMillis()));
+            if (null != written && written == 0L) {
+                increment(stale);
+                return false;
+            }
+        } catch (Exception e) {
+            log.warn("Two level cache {} put to redis fail: {}", name, key, e);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,191 @@
+package iorihuang.bankaccountmanager.helper.cache;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.helper.offheap.OffHeapCache;
+import iorihuang.bankaccountmanager.helper.offheap.OffHeapCodec;
+import iorihuang.bankaccountmanager.helper.offheap.OffHeapStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractCacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Manager of two level caches, also the listener of invalidations published by other nodes.
+ * ------------------
+ * message: node id + "\n" + cache name + "\n" + key, an empty key clears the whole L1 of the cache,
+ * a put of a versioned value appends "\n" + version, other nodes only drop local entries older than it,
+ * messages of this node are skipped
+ * ------------------
+ * L1 of a cache with a refresher is refreshed ahead of expiry by a bounded executor shared by all caches
+ * ------------------
+ * a cache with an off-heap codec keeps an off-heap level between L1 and L2 if off-heap memory is configured
+ */
+@Slf4j
+public class TwoLevelCacheManager extends AbstractCacheManager implements MessageListener, DisposableBean {
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Collection<String> cacheNames;
+    private final Map<String, Class<?>> valueTypes;
+    private final Map<String, CacheRefresher> refreshers;
+    private final Map<String, OffHeapCodec<?>> offHeapCodecs;
+    private final ThreadPoolExecutor refreshExecutor;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final TwoLevelCacheProperties properties;
+    private final MeterRegistry registry;
+
+    /**
+     * @param cacheNames    caches created at startup, others are created on first use
+     * @param valueTypes    value type of each cache, caches without type use L1 only
+     * @param refreshers    refresher of each cache, caches without refresher expire without refresh
+     * @param offHeapCodecs codec of each cache kept off heap, caches without codec are kept in L1 and L2 only
+     * @param redisTemplate L2 and invalidations, nullable
+     * @param objectMapper  json of L2 values, copied to use fields only, so custom setters of DTOs are bypassed
+     * @param properties    properties
+     * @param registry      metrics registry, nullable
+     */
+    public TwoLevelCacheManager(Collection<String> cacheNames, Map<String, Class<?>> valueTypes, Map<String, CacheRefresher> refreshers, Map<String, OffHeapCodec<?>> offHeapCodecs, StringRedisTemplate redisTemplate, ObjectMapper objectMapper, TwoLevelCacheProperties properties, MeterRegistry registry) {
+        this.cacheNames = cacheNames;
+        this.valueTypes = valueTypes;
+        this.refreshers = refreshers;
+        this.offHeapCodecs = offHeapCodecs;
+        if (refreshers.isEmpty() || properties.getL1RefreshAfterSeconds() <= 0) {
+            this.refreshExecutor = null;
+        } else {
+            AtomicInteger threads = new AtomicInteger();
+            this.refreshExecutor = new ThreadPoolExecutor(properties.getRefreshThreads(), properties.getRefreshThreads(),
+                    60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(properties.getRefreshQueueSize()), r -> {
+                Thread thread = new Thread(r, "cache-refresh-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+        }
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper.copy()
+                .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+                .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        this.properties = properties;
+        this.registry = registry;
+    }
+
+    @Override
+    protected Collection<? extends Cache> loadCaches() {
+        List<Cache> caches = new ArrayList<>(cacheNames.size());
+        for (String name : cacheNames) {
+            caches.add(createCache(name));
+        }
+        return caches;
+    }
+
+    @Override
+    protected Cache getMissingCache(String name) {
+        return createCache(name);
+    }
+
+    private TwoLevelCache createCache(String name) {
+        Caffeine<Object, Object> caffeine = Caffeine.newBuilder()
+                .maximumSize(properties.getL1MaximumSize())
+                .expireAfterWrite(properties.getL1ExpireSeconds(), TimeUnit.SECONDS);
+        CacheRefresher refresher = refreshers.get(name);
+        com.github.benmanes.caffeine.cache.Cache<String, Object> local;
+        if (null == refresher || null == refreshExecutor) {
+            local = caffeine.build();
+        } else {
+            local = caffeine.refreshAfterWrite(properties.getL1RefreshAfterSeconds(), TimeUnit.SECONDS)
+                    .build(new RefreshAheadLoader(name, refresher, refreshExecutor, registry));
+        }
+        return new TwoLevelCache(name, local, redisTemplate, objectMapper, valueTypes.get(name),
+                properties.getKeyPrefix(), Duration.ofSeconds(properties.getL2ExpireSeconds()), this,
+                properties.isSingleFlight() ? new SingleFlight<>(name, registry) : null, offHeapCache(name, offHeapCodecs.get(name)), registry);
+    }
+
+    private <T> OffHeapCache<T> offHeapCache(String name, OffHeapCodec<T> codec) {
+        if (null == codec || properties.getOffHeapMaxMemoryMb() <= 0) {
+            return null;
+        }
+        OffHeapStore store = new OffHeapStore(properties.getOffHeapMaxMemoryMb() * 1024 * 1024,
+                properties.getOffHeapRecordSize(), properties.getOffHeapSegments());
+        return new OffHeapCache<>(name, store, codec, TimeUnit.SECONDS.toMillis(properties.getOffHeapExpireSeconds()), registry);
+    }
+
+    @Override
+    public void destroy() {
+        if (null != refreshExecutor) {
+            refreshExecutor.shutdownNow();
+        }
+    }
+
+    void publishEvict(String name, String key) {
+        publish(name + "\n" + key);
+    }
+
+    void publishPut(String name, String key, long version) {
+        publish(name + "\n" + key + "\n" + version);
+    }
+
+    void publishClear(String name) {
+        publish(name + "\n");
+    }
+
+    private void publish(String message) {
+        if (null == redisTemplate) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(properties.getChannel(), nodeId + "\n" + message);
+        } catch (Exception e) {
+            log.warn("Two level cache publish invalidation fail: {}", message, e);
+        }
+    }
+
+    /**
+     * Invalidation published by a node
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        onInvalidation(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    void onInvalidation(String message) {
+        String[] parts = message.split("\n", 3);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        Cache cache = lookupCache(parts[1]);
+        if (!(cache instanceof TwoLevelCache twoLevelCache)) {
+            return;
+        }
+        if (parts[2].isEmpty()) {
+            twoLevelCache.clearLocal();
+            return;
+        }
+        int split = parts[2].lastIndexOf('\n');
+        if (split < 0) {
+            twoLevelCache.evictLocal(parts[2]);
+            return;
+        }
+        try {
+            twoLevelCache.evictLocalOlder(parts[2].substring(0, split), Long.parseLong(parts[2].substring(split + 1)));
+        } catch (NumberFormatException e) {
+            twoLevelCache.evictLocal(parts[2]);
+        }
+    }
+}
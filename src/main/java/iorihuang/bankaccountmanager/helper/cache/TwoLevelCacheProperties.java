@@ -0,0 +1,74 @@
+package iorihuang.bankaccountmanager.helper.cache;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "twolevelcache")
+public class TwoLevelCacheProperties {
+    /**
+     * local caffeine as L1 and redis as L2 for spring caches, replaces spring.cache.type if true
+     */
+    private boolean enabled = true;
+    /**
+     * max entries of L1 of each cache
+     */
+    private int l1MaximumSize = 10000;
+    /**
+     * ttl of L1, also the upper bound of staleness if an invalidation message is lost
+     */
+    private long l1ExpireSeconds = 60;
+    /**
+     * reload L1 entries read after this time in background while the old value is served,
+     * only caches with a refresher, 0 disables it, should be less than l1ExpireSeconds
+     */
+    private long l1RefreshAfterSeconds = 45;
+    /**
+     * threads of background refreshes shared by all caches
+     */
+    private int refreshThreads = 2;
+    /**
+     * refreshes waiting for threads, refreshes beyond it are skipped and the old value is kept
+     */
+    private int refreshQueueSize = 1000;
+    /**
+     * direct memory of the off-heap level of each cache with a codec, between L1 and L2, default to 0(disabled),
+     * enabled per deployment, -XX:MaxDirectMemorySize should cover it, the index takes 1/16 to 1/8 more
+     */
+    private long offHeapMaxMemoryMb = 0;
+    /**
+     * bytes of an off-heap record, 28 bytes of header + key + encoded value, longer values are read from L2
+     */
+    private int offHeapRecordSize = 256;
+    /**
+     * segments of the off-heap level, each one has its own lock, slab and index
+     */
+    private int offHeapSegments = 16;
+    /**
+     * ttl of the off-heap level, also the upper bound of staleness if an invalidation message is lost
+     */
+    private long offHeapExpireSeconds = 60;
+    /**
+     * ttl of L2
+     */
+    private long l2ExpireSeconds = 600;
+    /**
+     * prefix of redis keys, key is prefix + cache name + ":" + key
+     */
+    private String keyPrefix = "cache:";
+    /**
+     * redis pub/sub channel of invalidations
+     */
+    private String channel = "cache:invalidate";
+    /**
+     * write accounts changed by transfers into the cache after commit instead of evicting them,
+     * the cache keeps the newer version if writes race
+     */
+    private boolean writeThrough = true;
+    /**
+     * concurrent misses of a key share one load, for both cached reads and entity reads of writes
+     */
+    private boolean singleFlight = true;
+}
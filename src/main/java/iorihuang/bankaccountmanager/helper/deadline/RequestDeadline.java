@@ -0,0 +1,38 @@
+package iorihuang.bankaccountmanager.helper.deadline;
+
+/**
+ * Deadline of the request handled by current thread, set by RequestDeadlineFilter
+ */
+public final class RequestDeadline {
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * Set deadline of current thread
+     *
+     * @param timeoutNanos time from now
+     */
+    public static void start(long timeoutNanos) {
+        DEADLINE.set(System.nanoTime() + timeoutNanos);
+    }
+
+    public static void clear() {
+        DEADLINE.remove();
+    }
+
+    /**
+     * Time left of current request, capped by max
+     *
+     * @param maxNanos max value, also used if no deadline is set
+     * @return 0 if expired
+     */
+    public static long remainingNanos(long maxNanos) {
+        Long deadline = DEADLINE.get();
+        if (null == deadline) {
+            return maxNanos;
+        }
+        return Math.max(0, Math.min(maxNanos, deadline - System.nanoTime()));
+    }
+}
@@ -0,0 +1,40 @@
+package iorihuang.bankaccountmanager.helper.deadline;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Start the request deadline from the timeout header, or the default timeout
+ */
+public class RequestDeadlineFilter extends OncePerRequestFilter {
+    private final RequestDeadlineProperties properties;
+
+    public RequestDeadlineFilter(RequestDeadlineProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        long timeoutMillis = properties.getDefaultTimeoutMillis();
+        String header = request.getHeader(properties.getHeader());
+        if (null != header) {
+            try {
+                timeoutMillis = Math.min(properties.getMaxTimeoutMillis(), Math.max(0, Long.parseLong(header.trim())));
+            } catch (NumberFormatException e) {
+                // keep the default timeout
+            }
+        }
+        RequestDeadline.start(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package iorihuang.bankaccountmanager.helper.deadline;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "deadline")
+public class RequestDeadlineProperties {
+    /**
+     * request header of the timeout in millis given by client
+     */
+    private String header = "X-Request-Timeout-Millis";
+    /**
+     * timeout of requests without the header
+     */
+    private long defaultTimeoutMillis = 3000;
+    /**
+     * max timeout accepted from the header
+     */
+    private long maxTimeoutMillis = 30000;
+}
@@ -0,0 +1,195 @@
+package iorihuang.bankaccountmanager.helper.existence;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Existence of account numbers kept in memory: a bloom filter of all account numbers and a negative cache of
+ * the ones confirmed absent by db.
+ * ------------------
+ * negative cache: a number in it is not read from db, it expires in seconds so a lost creation message is bounded
+ * bloom filter: a number absent in it is only likely absent, as creations of other nodes arrive by fire-and-forget
+ * pub/sub, so it is confirmed by an index only probe of db instead of the whole row, and put back if found
+ * ------------------
+ * startup: load(numbers) page by page -> ready(), everything might exist before ready
+ * create: created(number) puts it into the bloom filter and publishes it to other nodes by redis pub/sub
+ * message: node id + "\n" + account number, messages of this node are skipped
+ * ------------------
+ * a creation seen while an absent number is read from db drops the negative entry, see mark() and absent()
+ */
+@Slf4j
+public class AccountExistenceFilter implements MessageListener {
+    private final String nodeId = UUID.randomUUID().toString();
+    private final BloomFilter bloomFilter;
+    private final Cache<String, Boolean> negativeCache;
+    private final StringRedisTemplate redisTemplate;
+    private final String channel;
+    private volatile boolean ready = false;
+    /**
+     * creations seen by this node, from this node or other nodes
+     */
+    private final AtomicLong creations = new AtomicLong();
+
+    private final Counter bloomAbsentCounter;
+    private final Counter negativeHitCounter;
+    private final Counter passCounter;
+    private final Counter bloomMissedCounter;
+
+    /**
+     * @param properties    properties of the filter
+     * @param redisTemplate publish created account numbers to other nodes, nullable for single node
+     * @param registry      metrics registry, nullable
+     */
+    public AccountExistenceFilter(AccountExistenceProperties properties, StringRedisTemplate redisTemplate, MeterRegistry registry) {
+        this.bloomFilter = new BloomFilter(properties.getExpectedInsertions(), properties.getFalsePositiveRate());
+        this.negativeCache = Caffeine.newBuilder()
+                .maximumSize(properties.getNegativeMaximumSize())
+                .expireAfterWrite(properties.getNegativeExpireSeconds(), TimeUnit.SECONDS)
+                .build();
+        this.redisTemplate = redisTemplate;
+        this.channel = properties.getChannel();
+        if (null != registry) {
+            this.bloomAbsentCounter = Counter.builder("account.existence.checks").tag("result", "bloom_absent").register(registry);
+            this.negativeHitCounter = Counter.builder("account.existence.checks").tag("result", "negative_hit").register(registry);
+            this.passCounter = Counter.builder("account.existence.checks").tag("result", "pass").register(registry);
+            this.bloomMissedCounter = Counter.builder("account.existence.checks").tag("result", "bloom_missed").register(registry);
+        } else {
+            this.bloomAbsentCounter = null;
+            this.negativeHitCounter = null;
+            this.passCounter = null;
+            this.bloomMissedCounter = null;
+        }
+    }
+
+    /**
+     * @return false if the account number is confirmed absent by db within the ttl of the negative cache,
+     * true if it should be read from db
+     */
+    public boolean mightExist(String accountNumber) {
+        if (null != negativeCache.getIfPresent(accountNumber)) {
+            increment(negativeHitCounter);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the account number is absent in the bloom filter, it should be confirmed by db,
+     * false if it should be read from db
+     */
+    public boolean likelyAbsent(String accountNumber) {
+        if (ready && !bloomFilter.mightContain(accountNumber)) {
+            increment(bloomAbsentCounter);
+            return true;
+        }
+        increment(passCounter);
+        return false;
+    }
+
+    /**
+     * @return mark of creations seen, taken before reading db
+     */
+    public long mark() {
+        return creations.get();
+    }
+
+    /**
+     * The account number is read from db and not found, after mark() is taken
+     */
+    public void absent(String accountNumber, long mark) {
+        negativeCache.put(accountNumber, Boolean.TRUE);
+        // a creation seen during the db read may be the one of this number, the negative entry would be stale
+        if (creations.get() != mark) {
+            negativeCache.invalidate(accountNumber);
+        }
+    }
+
+    /**
+     * The account number is absent in the bloom filter but found by db, its creation message is lost
+     */
+    public void found(String accountNumber) {
+        increment(bloomMissedCounter);
+        put(accountNumber);
+    }
+
+    /**
+     * The account is created or found existing by this node
+     */
+    public void created(String accountNumber) {
+        put(accountNumber);
+        if (null == redisTemplate) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(channel, nodeId + "\n" + accountNumber);
+        } catch (Exception e) {
+            log.warn("Account existence publish creation fail: {}", accountNumber, e);
+        }
+    }
+
+    /**
+     * Load existing account numbers, a page of the startup scan
+     */
+    public void load(Collection<String> accountNumbers) {
+        for (String accountNumber : accountNumbers) {
+            bloomFilter.put(accountNumber);
+        }
+    }
+
+    /**
+     * All existing account numbers are loaded, the bloom filter starts to reject absent ones
+     */
+    public void ready() {
+        this.ready = true;
+        if (bloomFilter.getInsertions() > bloomFilter.getExpectedInsertions()) {
+            log.warn("Account existence filter holds {} accounts more than expected {}, false positive rate grows",
+                    bloomFilter.getInsertions(), bloomFilter.getExpectedInsertions());
+        }
+        log.info("Account existence filter ready with {} accounts in {} bits and {} hashes",
+                bloomFilter.getInsertions(), bloomFilter.getBitSize(), bloomFilter.getHashes());
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Account number created by a node
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        onCreated(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    void onCreated(String message) {
+        String[] parts = message.split("\n", 2);
+        if (parts.length < 2 || nodeId.equals(parts[0])) {
+            return;
+        }
+        put(parts[1]);
+    }
+
+    private void put(String accountNumber) {
+        bloomFilter.put(accountNumber);
+        creations.incrementAndGet();
+        negativeCache.invalidate(accountNumber);
+    }
+
+    private static void increment(Counter counter) {
+        if (null != counter) {
+            counter.increment();
+        }
+    }
+}
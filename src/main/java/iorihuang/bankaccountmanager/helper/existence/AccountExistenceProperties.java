@@ -0,0 +1,39 @@
+package iorihuang.bankaccountmanager.helper.existence;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "accountexistence")
+public class AccountExistenceProperties {
+    /**
+     * skip db reads of account numbers that do not exist by a bloom filter and a negative cache
+     */
+    private boolean enabled = true;
+    /**
+     * expected count of accounts, false positive rate grows if exceeded
+     */
+    private long expectedInsertions = 1_000_000;
+    /**
+     * false positive rate of the bloom filter, a false positive is read from db once and then kept in the negative cache
+     */
+    private double falsePositiveRate = 0.01;
+    /**
+     * max entries of the negative cache
+     */
+    private int negativeMaximumSize = 100_000;
+    /**
+     * ttl of the negative cache, also the upper bound of staleness if a creation message is lost
+     */
+    private long negativeExpireSeconds = 5;
+    /**
+     * rows of one page while scanning account numbers at startup
+     */
+    private int scanBatchSize = 1000;
+    /**
+     * redis pub/sub channel of account numbers created by other nodes
+     */
+    private String channel = "account:created";
+}
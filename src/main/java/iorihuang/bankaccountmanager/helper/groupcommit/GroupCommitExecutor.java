@@ -0,0 +1,168 @@
+package iorihuang.bankaccountmanager.helper.groupcommit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit executor, collects items arriving within a window(or up to max batch size)
+ * and hands them to the batch handler in one call, such as one JDBC transaction.
+ * ------------------
+ * the handler records the outcome of each item on the item itself,
+ * the future of each item completes with the item after the handler returns(committed),
+ * or completes exceptionally with the handler's exception(the whole batch failed)
+ */
+@Slf4j
+public class GroupCommitExecutor<T> implements AutoCloseable {
+    @FunctionalInterface
+    public interface BatchHandler<T> {
+        void handle(List<T> batch) throws Exception;
+    }
+
+    private record Entry<T>(T item, CompletableFuture<T> future) {
+    }
+
+    private final String name;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BatchHandler<T> handler;
+    private final BlockingQueue<Entry<T>> queue;
+    private final Thread committer;
+    private volatile boolean running = true;
+
+    private final Timer commitTimer;
+    private final DistributionSummary batchSizeSummary;
+    private final Counter failedCounter;
+
+    /**
+     * @param name         name of the executor, used as metrics tag and thread name
+     * @param windowMicros max time to wait for more items after the first item of a batch arrived
+     * @param maxBatchSize commit immediately once the batch reaches this size
+     * @param queueSize    max pending items, submit is rejected while full
+     * @param handler      batch handler
+     * @param registry     metrics registry, nullable
+     */
+    public GroupCommitExecutor(String name, long windowMicros, int maxBatchSize, int queueSize, BatchHandler<T> handler, MeterRegistry registry) {
+        this.name = name;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.handler = handler;
+        this.queue = new LinkedBlockingQueue<>(queueSize);
+        if (null != registry) {
+            this.commitTimer = Timer.builder("groupcommit.commit.latency").tag("executor", name).publishPercentiles(0.5, 0.99).register(registry);
+            this.batchSizeSummary = DistributionSummary.builder("groupcommit.batch.size").tag("executor", name).register(registry);
+            this.failedCounter = Counter.builder("groupcommit.batch.failed").tag("executor", name).register(registry);
+        } else {
+            this.commitTimer = null;
+            this.batchSizeSummary = null;
+            this.failedCounter = null;
+        }
+        this.committer = new Thread(this::commitLoop, "groupcommit-" + name);
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Submit an item to the next group commit
+     *
+     * @return future completes with the item after its batch handled,
+     * completes exceptionally with RejectedExecutionException if the executor is full or closed
+     */
+    public CompletableFuture<T> submit(T item) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!running || !queue.offer(new Entry<>(item, future))) {
+            future.completeExceptionally(new RejectedExecutionException("group commit " + name + " rejected"));
+        }
+        return future;
+    }
+
+    private void commitLoop() {
+        List<Entry<T>> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry<T> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (null == first) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Entry<T> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (null != next) {
+                        batch.add(next);
+                    }
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (Throwable e) {
+                log.error("group commit {} loop error", name, e);
+            } finally {
+                for (Entry<T> entry : batch) {
+                    entry.future().completeExceptionally(new IllegalStateException("group commit " + name + " aborted"));
+                }
+                batch.clear();
+            }
+        }
+        log.info("group commit {} stopped", name);
+    }
+
+    private void commit(List<Entry<T>> batch) {
+        List<T> items = new ArrayList<>(batch.size());
+        for (Entry<T> entry : batch) {
+            items.add(entry.item());
+        }
+        long start = System.nanoTime();
+        try {
+            handler.handle(items);
+        } catch (Exception e) {
+            log.error("group commit {} batch of {} failed", name, items.size(), e);
+            if (null != failedCounter) {
+                failedCounter.increment();
+            }
+            for (Entry<T> entry : batch) {
+                entry.future().completeExceptionally(e);
+            }
+            return;
+        }
+        if (null != commitTimer) {
+            commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizeSummary.record(items.size());
+        }
+        for (Entry<T> entry : batch) {
+            entry.future().complete(entry.item());
+        }
+    }
+
+    /**
+     * Stop accepting items, commit the pending items and wait for the committer to stop
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            committer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package iorihuang.bankaccountmanager.helper.groupcommit;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "groupcommit")
+public class GroupCommitProperties {
+    /**
+     * apply concurrent transfers in one transaction, default to false
+     */
+    private boolean enabled = false;
+    /**
+     * max time to wait for more transfers after the first transfer of a batch arrived
+     */
+    private long windowMicros = 2000;
+    /**
+     * commit immediately once the batch reaches this size
+     */
+    private int maxBatchSize = 64;
+    /**
+     * max pending transfers, transfers are committed one by one while full
+     */
+    private int queueSize = 4096;
+    /**
+     * max time for a caller to wait for its batch, should be less than the account lock time
+     */
+    private long timeoutMillis = 2000;
+}
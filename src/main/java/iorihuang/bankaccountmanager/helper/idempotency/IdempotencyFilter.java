@@ -0,0 +1,247 @@
+package iorihuang.bankaccountmanager.helper.idempotency;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.dto.DTOResponse;
+import iorihuang.bankaccountmanager.exception.ExpCode;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+
+/**
+ * Replay the stored response of a write request with a used Idempotency-Key,
+ * without touching the database or taking any lock.
+ * ------------------
+ * the key is scoped by method and path, a request of the key in progress gets a concurrent error,
+ * the key is bound to the sha-256 of the request body, a request of the key with another body is rejected.
+ * ------------------
+ * business errors are returned with status 200, so a response is stored by the code and error of its body:
+ * successes and final business errors(not found, insufficient balance...) are stored,
+ * server errors(5xx) and transient errors(lock busy, version conflict, db error) are not, so the request can be retried.
+ * a transfer timed out may still be committed, its unknown result is stored as well, so a retry never runs it twice.
+ */
+@Slf4j
+public class IdempotencyFilter extends OncePerRequestFilter {
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    /**
+     * errors that may pass on retry, lock wait beyond the deadline is also a concurrent limit
+     */
+    private static final Set<Integer> TRANSIENT_ERRORS = Set.of(ExpCode.AccountConcurrentLimit.getCode(), ExpCode.AccountVersionConflict.getCode());
+
+    private final IdempotencyStore store;
+    private final IdempotencyProperties properties;
+    private final ObjectMapper objectMapper;
+    private final Counter replayedCounter;
+    private final Counter conflictCounter;
+    private final Counter storedCounter;
+    private final Counter mismatchCounter;
+
+    public IdempotencyFilter(IdempotencyStore store, IdempotencyProperties properties, ObjectMapper objectMapper, MeterRegistry registry) {
+        this.store = store;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        if (null != registry) {
+            this.replayedCounter = Counter.builder("idempotency.replayed").register(registry);
+            this.conflictCounter = Counter.builder("idempotency.conflict").register(registry);
+            this.storedCounter = Counter.builder("idempotency.stored").register(registry);
+            this.mismatchCounter = Counter.builder("idempotency.mismatch").register(registry);
+        } else {
+            this.replayedCounter = null;
+            this.conflictCounter = null;
+            this.storedCounter = null;
+            this.mismatchCounter = null;
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!HttpMethod.POST.matches(method) && !HttpMethod.PUT.matches(method) && !HttpMethod.DELETE.matches(method)) {
+            return true;
+        }
+        return null == request.getHeader(properties.getHeader());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        String idempotencyKey = request.getHeader(properties.getHeader());
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > properties.getMaxKeyLength()) {
+            writeError(response, ExpCode.AccountInvalidParam, "Invalid " + properties.getHeader());
+            return;
+        }
+        String key = request.getMethod() + ":" + request.getRequestURI() + ":" + idempotencyKey;
+        BodyCachingRequest cached = new BodyCachingRequest(request);
+        String digest = digest(cached.body);
+        IdempotencyStore.StoredResponse stored = store.get(key);
+        if (null != stored) {
+            replay(response, stored, digest, idempotencyKey);
+            return;
+        }
+        if (!store.reserve(key)) {
+            increment(conflictCounter);
+            writeError(response, ExpCode.AccountConcurrentLimit, "Request of " + properties.getHeader() + " is in progress: " + idempotencyKey);
+            return;
+        }
+        try {
+            // the request of the key may have finished between the read and the reserve, it saves before release
+            stored = store.get(key);
+            if (null != stored) {
+                replay(response, stored, digest, idempotencyKey);
+                return;
+            }
+            ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+            try {
+                chain.doFilter(cached, wrapper);
+                if (storable(wrapper.getStatus(), wrapper.getContentAsByteArray())) {
+                    store.save(key, new IdempotencyStore.StoredResponse(wrapper.getStatus(), wrapper.getContentAsByteArray(), digest));
+                    increment(storedCounter);
+                }
+            } finally {
+                wrapper.copyBodyToResponse();
+            }
+        } finally {
+            store.release(key);
+        }
+    }
+
+    /**
+     * Write the stored response, or an error if the key is reused by a request of another body
+     */
+    private void replay(HttpServletResponse response, IdempotencyStore.StoredResponse stored, String digest, String idempotencyKey) throws IOException {
+        if (null != stored.digest() && !stored.digest().equals(digest)) {
+            increment(mismatchCounter);
+            writeError(response, ExpCode.AccountInvalidParam, properties.getHeader() + " is reused with a different request body: " + idempotencyKey);
+            return;
+        }
+        increment(replayedCounter);
+        response.setStatus(stored.status());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setHeader(REPLAYED_HEADER, "true");
+        response.getOutputStream().write(stored.body());
+    }
+
+    /**
+     * @return hex of the sha-256 of the request body
+     */
+    private static String digest(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform is required to support sha-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return true if the response is final or its result is unknown, a body not of DTOResponse is judged by the status only
+     */
+    private boolean storable(int status, byte[] body) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(body);
+        } catch (IOException e) {
+            node = null;
+        }
+        if (null != node && ExpCode.TransferResultUnknown.getCode() == node.path("error").asInt()) {
+            return true;
+        }
+        if (status >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR) {
+            return false;
+        }
+        if (null == node || !node.has("code")) {
+            return true;
+        }
+        if (1 == node.path("code").asInt()) {
+            return true;
+        }
+        int error = node.path("error").asInt();
+        // db errors of AccountError are infra errors even if returned with status 200
+        return !TRANSIENT_ERRORS.contains(error) && error < ExpCode.DbCreateAccountErr.getCode();
+    }
+
+    private void writeError(HttpServletResponse response, ExpCode code, String message) throws IOException {
+        DTOResponse<?> body = new DTOResponse<>();
+        body.setCode(0);
+        body.setError(code.getCode());
+        body.setMsg(message);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+
+    private static void increment(Counter counter) {
+        if (null != counter) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * Request of the body read ahead, so the body can be digested before the chain reads it
+     */
+    private static class BodyCachingRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        BodyCachingRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            this.body = request.getInputStream().readAllBytes();
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() <= 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException("Body is read ahead");
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return input.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(), null == encoding ? StandardCharsets.UTF_8.name() : encoding));
+        }
+    }
+}
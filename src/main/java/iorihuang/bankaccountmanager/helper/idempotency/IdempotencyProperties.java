@@ -0,0 +1,36 @@
+package iorihuang.bankaccountmanager.helper.idempotency;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "idempotency")
+public class IdempotencyProperties {
+    /**
+     * replay the stored response of write requests with the same Idempotency-Key, default to true,
+     * requests without the header are not affected
+     */
+    private boolean enabled = true;
+    /**
+     * request header of the key
+     */
+    private String header = "Idempotency-Key";
+    /**
+     * max length of the key
+     */
+    private int maxKeyLength = 64;
+    /**
+     * time to keep the stored responses, in both local cache and redis
+     */
+    private long ttlSeconds = 86400;
+    /**
+     * max stored responses in local cache
+     */
+    private int localMaximumSize = 100000;
+    /**
+     * time to keep the in-progress marker, it should be longer than the slowest request
+     */
+    private long inFlightSeconds = 30;
+}
@@ -0,0 +1,136 @@
+package iorihuang.bankaccountmanager.helper.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two-level store of responses by idempotency key.
+ * ------------------
+ * L1: local caffeine cache, L2: redis shared by nodes, both evicted by ttl.
+ * a response is stored as status, digest of the request body and body bytes, redis value is "status:digest:body",
+ * the digest is hex or empty so it never contains ':'.
+ * ------------------
+ * redis is optional, errors of redis degrade to L1 only.
+ */
+@Slf4j
+public class IdempotencyStore {
+    private static final String KEY_PREFIX = "idem:resp:";
+    private static final String IN_FLIGHT_PREFIX = "idem:lock:";
+
+    /**
+     * @param digest digest of the request body, null if unknown
+     */
+    public record StoredResponse(int status, byte[] body, String digest) {
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final Cache<String, StoredResponse> local;
+    private final ConcurrentHashMap<String, Boolean> localInFlight = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final Duration inFlightTtl;
+
+    /**
+     * @param redisTemplate    L2 store, nullable
+     * @param ttlSeconds       time to keep stored responses
+     * @param localMaximumSize max stored responses of L1
+     * @param inFlightSeconds  time to keep the in-progress marker in redis
+     */
+    public IdempotencyStore(StringRedisTemplate redisTemplate, long ttlSeconds, int localMaximumSize, long inFlightSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.inFlightTtl = Duration.ofSeconds(inFlightSeconds);
+        this.local = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Stored response of the key, L1 first, then L2
+     *
+     * @return null if absent
+     */
+    public StoredResponse get(String key) {
+        StoredResponse response = local.getIfPresent(key);
+        if (null != response || null == redisTemplate) {
+            return response;
+        }
+        try {
+            String value = redisTemplate.opsForValue().get(KEY_PREFIX + key);
+            if (null == value) {
+                return null;
+            }
+            int split = value.indexOf(':');
+            int next = value.indexOf(':', split + 1);
+            String digest = value.substring(split + 1, next);
+            response = new StoredResponse(Integer.parseInt(value.substring(0, split)), value.substring(next + 1).getBytes(StandardCharsets.UTF_8), digest.isEmpty() ? null : digest);
+            local.put(key, response);
+            return response;
+        } catch (Exception e) {
+            log.warn("Idempotency store get from redis fail: {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Mark the key in progress, only one request of the key can run at a time
+     *
+     * @return false if another request of the key is in progress
+     */
+    public boolean reserve(String key) {
+        if (null != localInFlight.putIfAbsent(key, Boolean.TRUE)) {
+            return false;
+        }
+        if (null == redisTemplate) {
+            return true;
+        }
+        try {
+            if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(IN_FLIGHT_PREFIX + key, "1", inFlightTtl))) {
+                return true;
+            }
+        } catch (Exception e) {
+            log.warn("Idempotency store reserve in redis fail: {}", key, e);
+            return true;
+        }
+        localInFlight.remove(key);
+        return false;
+    }
+
+    /**
+     * Store the response of the key
+     */
+    public void save(String key, StoredResponse response) {
+        local.put(key, response);
+        if (null == redisTemplate) {
+            return;
+        }
+        try {
+            String digest = null == response.digest() ? "" : response.digest();
+            redisTemplate.opsForValue().set(KEY_PREFIX + key, response.status() + ":" + digest + ":" + new String(response.body(), StandardCharsets.UTF_8), ttl);
+        } catch (Exception e) {
+            log.warn("Idempotency store save to redis fail: {}", key, e);
+        }
+    }
+
+    /**
+     * Clear the in-progress marker of the key
+     */
+    public void release(String key) {
+        localInFlight.remove(key);
+        if (null == redisTemplate) {
+            return;
+        }
+        try {
+            redisTemplate.delete(IN_FLIGHT_PREFIX + key);
+        } catch (Exception e) {
+            log.warn("Idempotency store release in redis fail: {}", key, e);
+        }
+    }
+}
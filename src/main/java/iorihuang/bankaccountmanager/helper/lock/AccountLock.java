@@ -0,0 +1,47 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+/**
+ * Lock of accounts held by the current operation, released via try-with-resources
+ */
+public interface AccountLock extends AutoCloseable {
+    /**
+     * Nothing locked, writes rely on the guarded updates only
+     */
+    AccountLock NONE = new AccountLock() {
+        @Override
+        public boolean isLocked() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * Check if the lock is acquired successfully
+     */
+    boolean isLocked();
+
+    /**
+     * The lock is a database transaction on the current thread, writes of the holder join it,
+     * so they must run on the current thread
+     */
+    default boolean holdsTransaction() {
+        return false;
+    }
+
+    /**
+     * Fence token issued with the grant of this lock, newer grants get greater tokens,
+     * writes carrying a token older than the one written are rejected, 0 means not fenced
+     */
+    default long fenceToken() {
+        return 0;
+    }
+
+    /**
+     * Release the lock
+     */
+    @Override
+    void close();
+}
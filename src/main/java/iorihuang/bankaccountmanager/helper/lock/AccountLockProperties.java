@@ -0,0 +1,22 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "accountlock")
+public class AccountLockProperties {
+    /**
+     * local: in-JVM striped locks, single node only;
+     * redis: local striped locks then redis locks, default;
+     * db: SELECT ... FOR UPDATE on bank_account in a transaction the writes join;
+     * optimistic: no lock, conflicts are detected by the versioned updates and retried in service
+     */
+    private String backend = "redis";
+    /**
+     * issue a fence token with each redis lock grant, checked by the account updates
+     */
+    private boolean fencing = true;
+}
@@ -0,0 +1,14 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+/**
+ * Lock accounts before changing them, the backend is chosen by accountlock.backend
+ */
+public interface AccountLockProvider {
+    /**
+     * Lock all accounts, all or none of them are locked
+     *
+     * @param accountNumbers accounts to lock
+     * @return lock to check and release
+     */
+    AccountLock lock(String... accountNumbers);
+}
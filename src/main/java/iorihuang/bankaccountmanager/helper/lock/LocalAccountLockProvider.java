@@ -0,0 +1,57 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+import iorihuang.bankaccountmanager.constant.AccountConst;
+import iorihuang.bankaccountmanager.helper.deadline.RequestDeadline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accounts locked by in-JVM striped locks only, for single node deployments
+ */
+public class LocalAccountLockProvider implements AccountLockProvider {
+    private final LocalStripedLock localLock;
+    private final long maxWaitNanos;
+
+    /**
+     * @param localLock     striped locks
+     * @param maxWaitMillis max time to wait for the locks, the time left of the request deadline is used if less
+     */
+    public LocalAccountLockProvider(LocalStripedLock localLock, long maxWaitMillis) {
+        this.localLock = localLock;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    @Override
+    public AccountLock lock(String... accountNumbers) {
+        List<String> lockKeys = new ArrayList<>(accountNumbers.length);
+        for (String accountNumber : accountNumbers) {
+            lockKeys.add(AccountConst.ACCOUNT_LOCK_KEY_PREFIX + accountNumber);
+        }
+        return new LocalAccountLock(localLock, localLock.lock(lockKeys, RequestDeadline.remainingNanos(maxWaitNanos)));
+    }
+
+    private static final class LocalAccountLock implements AccountLock {
+        private final LocalStripedLock localLock;
+        private int[] stripes;
+
+        private LocalAccountLock(LocalStripedLock localLock, int[] stripes) {
+            this.localLock = localLock;
+            this.stripes = stripes;
+        }
+
+        @Override
+        public boolean isLocked() {
+            return null != stripes;
+        }
+
+        @Override
+        public void close() {
+            if (null != stripes) {
+                localLock.unlock(stripes);
+                stripes = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "locallock")
+public class LocalLockProperties {
+    /**
+     * take an in-process striped lock before the redis lock, default to true
+     */
+    private boolean enabled = true;
+    /**
+     * stripes of locks, will be rounded up to power of 2
+     */
+    private int stripes = 1024;
+    /**
+     * max time to wait for the local lock, the local contenders queue in memory
+     */
+    private long waitMillis = 1000;
+}
@@ -0,0 +1,131 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process lock striped by key hash, taken before the redis lock,
+ * so contenders in the same JVM queue in memory and only the winner goes to redis.
+ * ------------------
+ * stripes of several keys are locked in index order, the wait is bounded, so stripes never deadlock
+ * ------------------
+ * different keys may share a stripe, that only serializes them in this JVM
+ */
+public class LocalStripedLock {
+    private final ReentrantLock[] locks;
+    private final int mask;
+    private final long waitNanos;
+
+    private final Timer waitTimer;
+    private final Counter contendedCounter;
+    private final Counter timeoutCounter;
+
+    /**
+     * @param stripes    stripes of locks, will be rounded up to power of 2
+     * @param waitMillis max time to wait for all stripes
+     * @param registry   metrics registry, nullable
+     */
+    public LocalStripedLock(int stripes, long waitMillis, MeterRegistry registry) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+        this.waitNanos = TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        if (null != registry) {
+            this.waitTimer = Timer.builder("account.lock.local.wait")
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+            this.contendedCounter = Counter.builder("account.lock.local.contended").register(registry);
+            this.timeoutCounter = Counter.builder("account.lock.local.timeout").register(registry);
+        } else {
+            this.waitTimer = null;
+            this.contendedCounter = null;
+            this.timeoutCounter = null;
+        }
+    }
+
+    private int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Lock stripes of the keys in index order
+     *
+     * @param keys keys to lock
+     * @return stripes locked, or null if timeout(nothing is held then)
+     */
+    public int[] lock(Collection<String> keys) {
+        return lock(keys, waitNanos);
+    }
+
+    /**
+     * Lock stripes of the keys in index order
+     *
+     * @param keys      keys to lock
+     * @param waitNanos max time to wait for all stripes
+     * @return stripes locked, or null if timeout(nothing is held then)
+     */
+    public int[] lock(Collection<String> keys, long waitNanos) {
+        TreeSet<Integer> sorted = new TreeSet<>();
+        for (String key : keys) {
+            sorted.add(stripe(key));
+        }
+        int[] stripes = sorted.stream().mapToInt(Integer::intValue).toArray();
+        long start = System.nanoTime();
+        boolean contended = false;
+        for (int i = 0; i < stripes.length; i++) {
+            ReentrantLock lock = locks[stripes[i]];
+            if (lock.tryLock()) {
+                continue;
+            }
+            contended = true;
+            boolean acquired;
+            try {
+                acquired = lock.tryLock(Math.max(0, waitNanos - (System.nanoTime() - start)), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                unlock(stripes, i);
+                increment(timeoutCounter);
+                return null;
+            }
+        }
+        if (contended) {
+            increment(contendedCounter);
+            if (null != waitTimer) {
+                waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+        return stripes;
+    }
+
+    /**
+     * Unlock stripes returned by lock
+     */
+    public void unlock(int[] stripes) {
+        unlock(stripes, stripes.length);
+    }
+
+    private void unlock(int[] stripes, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+
+    private static void increment(Counter counter) {
+        if (null != counter) {
+            counter.increment();
+        }
+    }
+}
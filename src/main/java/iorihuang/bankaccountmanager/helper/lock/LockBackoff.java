@@ -0,0 +1,78 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Spin-then-park backoff between attempts of a lock.
+ * ------------------
+ * the first spins attempts retry at once with a spin hint,
+ * later attempts park random(minPark, min(maxPark, minPark * 2^n)) bounded by the wait budget left
+ */
+public class LockBackoff {
+    private final int spins;
+    private final long minParkNanos;
+    private final long maxParkNanos;
+
+    private final Timer acquiredTimer;
+    private final Timer timeoutTimer;
+
+    /**
+     * @param spins         attempts retried at once before parking
+     * @param minParkMicros min park time after spins
+     * @param maxParkMicros max park time of one attempt
+     * @param registry      metrics registry, nullable
+     */
+    public LockBackoff(int spins, long minParkMicros, long maxParkMicros, MeterRegistry registry) {
+        this.spins = Math.max(0, spins);
+        this.minParkNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(1, minParkMicros));
+        this.maxParkNanos = Math.max(this.minParkNanos, TimeUnit.MICROSECONDS.toNanos(maxParkMicros));
+        if (null != registry) {
+            this.acquiredTimer = Timer.builder("account.lock.wait")
+                    .tag("result", "acquired")
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+            this.timeoutTimer = Timer.builder("account.lock.wait")
+                    .tag("result", "timeout")
+                    .register(registry);
+        } else {
+            this.acquiredTimer = null;
+            this.timeoutTimer = null;
+        }
+    }
+
+    /**
+     * Wait before the next attempt
+     *
+     * @param attempt        attempt failed, from 1
+     * @param remainingNanos wait budget left
+     * @return false if no budget left for another attempt
+     */
+    public boolean idle(int attempt, long remainingNanos) {
+        if (remainingNanos <= 0) {
+            return false;
+        }
+        if (attempt <= spins) {
+            Thread.onSpinWait();
+            return true;
+        }
+        long ceiling = Math.min(maxParkNanos, minParkNanos << Math.min(attempt - spins - 1, 20));
+        long park = Math.min(remainingNanos, ThreadLocalRandom.current().nextLong(minParkNanos, ceiling + 1));
+        LockSupport.parkNanos(park);
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Record time spent to acquire a lock
+     */
+    public void record(long nanos, boolean acquired) {
+        Timer timer = acquired ? acquiredTimer : timeoutTimer;
+        if (null != timer) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "lockwait")
+public class LockWaitProperties {
+    /**
+     * wait for busy account locks until the request deadline instead of failing at once, default to true
+     */
+    private boolean enabled = true;
+    /**
+     * max time to wait for a lock, the time left of the request deadline is used if less
+     */
+    private long maxWaitMillis = 500;
+    /**
+     * attempts retried at once before parking
+     */
+    private int spins = 2;
+    /**
+     * min park time between attempts
+     */
+    private long minParkMicros = 200;
+    /**
+     * max park time between attempts
+     */
+    private long maxParkMicros = 20000;
+}
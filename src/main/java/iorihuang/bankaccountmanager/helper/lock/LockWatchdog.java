@@ -0,0 +1,271 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Renew ttl of held redis locks by one hashed timer wheel thread for all locks.
+ * ------------------
+ * a lease is renewed at 1/3 of its ttl, all leases due in the same tick are renewed by one Lua call,
+ * a key is only renewed if it still holds the value of the lock
+ * ------------------
+ * register/cancel are lock-free, buckets are only touched by the wheel thread
+ */
+@Slf4j
+public class LockWatchdog implements AutoCloseable {
+    /**
+     * pexpire each key if it holds the value, ARGV is value and ttl in millis of each key
+     */
+    private static final RedisScript<List> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "local r = {} " +
+                    "for i, key in ipairs(KEYS) do " +
+                    "if redis.call('get', key) == ARGV[i * 2 - 1] then r[i] = redis.call('pexpire', key, ARGV[i * 2]) else r[i] = 0 end " +
+                    "end " +
+                    "return r", List.class);
+    private static final int RENEW_BATCH_KEYS = 256;
+
+    /**
+     * renewal of one lock
+     */
+    public static final class Lease {
+        private final List<String> keys;
+        private final String value;
+        private final long ttlMillis;
+        private final long maxNanos;
+        private volatile boolean cancelled;
+        private volatile boolean lost;
+        private long rounds;
+
+        private Lease(List<String> keys, String value, long ttlMillis, long maxNanos) {
+            this.keys = keys;
+            this.value = value;
+            this.ttlMillis = ttlMillis;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * Stop renewing, called before the lock is released
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * A key of the lock expired or was taken by others before renewed
+         */
+        public boolean isLost() {
+            return lost;
+        }
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final long tickNanos;
+    private final int mask;
+    private final long maxLeaseNanos;
+    private final ArrayDeque<Lease>[] buckets;
+    private final ConcurrentLinkedQueue<Lease> registered = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick;
+
+    private final Counter renewedCounter;
+    private final Counter lostCounter;
+
+    /**
+     * @param redisTemplate  redis template, nothing is renewed if null
+     * @param tickMillis     tick of the timer wheel
+     * @param wheelSize      buckets of the timer wheel, will be rounded up to power of 2
+     * @param maxLeaseMillis stop renewing a lock held longer than this
+     * @param registry       metrics registry, nullable
+     */
+    @SuppressWarnings("unchecked")
+    public LockWatchdog(StringRedisTemplate redisTemplate, long tickMillis, int wheelSize, long maxLeaseMillis, MeterRegistry registry) {
+        this.redisTemplate = redisTemplate;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = wheelSize <= 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+        this.mask = size - 1;
+        this.maxLeaseNanos = TimeUnit.MILLISECONDS.toNanos(maxLeaseMillis);
+        this.buckets = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            this.buckets[i] = new ArrayDeque<>();
+        }
+        if (null != registry) {
+            Gauge.builder("account.lock.watchdog.active", active, AtomicInteger::get).register(registry);
+            this.renewedCounter = Counter.builder("account.lock.watchdog.renewed").register(registry);
+            this.lostCounter = Counter.builder("account.lock.watchdog.lost").register(registry);
+        } else {
+            this.renewedCounter = null;
+            this.lostCounter = null;
+        }
+        this.worker = new Thread(this::loop, "lock-watchdog");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Start renewing the keys held with the value
+     *
+     * @return lease to cancel before release, null if nothing to renew
+     */
+    public Lease register(List<String> keys, String value, long ttlMillis) {
+        if (null == redisTemplate || keys.isEmpty() || !running) {
+            return null;
+        }
+        Lease lease = new Lease(keys, value, ttlMillis, System.nanoTime() + maxLeaseNanos);
+        active.incrementAndGet();
+        registered.add(lease);
+        return lease;
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    private void loop() {
+        long start = System.nanoTime();
+        while (running) {
+            long deadline = start + (tick + 1) * tickNanos;
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+                continue;
+            }
+            try {
+                schedule();
+                expire(buckets[(int) (tick & mask)]);
+            } catch (Exception e) {
+                log.error("lock watchdog tick fail", e);
+            }
+            tick++;
+        }
+        log.info("lock watchdog stopped");
+    }
+
+    /**
+     * move registered leases into buckets, renewed at 1/3 of ttl
+     */
+    private void schedule() {
+        Lease lease;
+        while (null != (lease = registered.poll())) {
+            place(lease);
+        }
+    }
+
+    private void place(Lease lease) {
+        long ticks = Math.max(1, TimeUnit.MILLISECONDS.toNanos(lease.ttlMillis) / 3 / tickNanos);
+        lease.rounds = (ticks - 1) / buckets.length;
+        buckets[(int) ((tick + ticks) & mask)].add(lease);
+    }
+
+    private void expire(ArrayDeque<Lease> bucket) {
+        List<Lease> due = new ArrayList<>();
+        long now = System.nanoTime();
+        for (int i = bucket.size(); i > 0; i--) {
+            Lease lease = bucket.poll();
+            if (lease.cancelled || now - lease.maxNanos >= 0) {
+                active.decrementAndGet();
+            } else if (lease.rounds > 0) {
+                lease.rounds--;
+                bucket.add(lease);
+            } else {
+                due.add(lease);
+            }
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        List<Lease> batch = new ArrayList<>();
+        int keys = 0;
+        for (Lease lease : due) {
+            batch.add(lease);
+            keys += lease.keys.size();
+            if (keys >= RENEW_BATCH_KEYS) {
+                renew(batch);
+                batch.clear();
+                keys = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            renew(batch);
+        }
+    }
+
+    /**
+     * renew leases by one Lua call, reschedule the renewed ones
+     */
+    private void renew(List<Lease> leases) {
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        for (Lease lease : leases) {
+            for (String key : lease.keys) {
+                keys.add(key);
+                args.add(lease.value);
+                args.add(String.valueOf(lease.ttlMillis));
+            }
+        }
+        List<?> results;
+        try {
+            results = redisTemplate.execute(RENEW_SCRIPT, keys, args.toArray());
+        } catch (Exception e) {
+            // keep renewing at next round, the keys still live for 2/3 of ttl
+            log.warn("lock watchdog renew {} keys fail", keys.size(), e);
+            leases.forEach(this::place);
+            return;
+        }
+        int index = 0;
+        for (Lease lease : leases) {
+            boolean renewed = true;
+            for (int i = 0; i < lease.keys.size(); i++, index++) {
+                Object result = null == results || index >= results.size() ? null : results.get(index);
+                if (!(result instanceof Number number) || number.longValue() != 1L) {
+                    renewed = false;
+                }
+            }
+            if (renewed && !lease.cancelled) {
+                increment(renewedCounter);
+                place(lease);
+                continue;
+            }
+            if (!renewed && !lease.cancelled) {
+                lease.lost = true;
+                increment(lostCounter);
+                log.warn("lock watchdog lost lock keys: {}", lease.keys);
+            }
+            active.decrementAndGet();
+        }
+    }
+
+    private static void increment(Counter counter) {
+        if (null != counter) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * Stop renewing all leases
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "lockwatchdog")
+public class LockWatchdogProperties {
+    /**
+     * renew ttl of held redis locks, so locks can use a short ttl, default to true
+     */
+    private boolean enabled = true;
+    /**
+     * ttl of account locks while the watchdog is enabled, locks left by crashed nodes expire after it
+     */
+    private long leaseSeconds = 1;
+    /**
+     * tick of the timer wheel
+     */
+    private long tickMillis = 50;
+    /**
+     * buckets of the timer wheel, will be rounded up to power of 2
+     */
+    private int wheelSize = 512;
+    /**
+     * stop renewing a lock held longer than this, in case the holder hangs
+     */
+    private long maxLeaseMillis = 30000;
+}
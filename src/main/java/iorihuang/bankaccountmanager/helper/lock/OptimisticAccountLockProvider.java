@@ -0,0 +1,14 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+/**
+ * No lock at all, concurrent writes are detected by the updates guarded by version, state and balance,
+ * the loser is rolled back and retried in service by the version retry policy.
+ * ------------------
+ * wins on low contention by saving the lock round trips, loses on hot accounts by wasted transactions
+ */
+public class OptimisticAccountLockProvider implements AccountLockProvider {
+    @Override
+    public AccountLock lock(String... accountNumbers) {
+        return AccountLock.NONE;
+    }
+}
@@ -0,0 +1,56 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+import iorihuang.bankaccountmanager.constant.AccountConst;
+import iorihuang.bankaccountmanager.helper.RedisMultiLock;
+import iorihuang.bankaccountmanager.helper.deadline.RequestDeadline;
+import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdHelper;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accounts locked by the local striped lock if present, then by redis in one call,
+ * busy locks are waited within the request deadline if backoff is present,
+ * the lock uses a short lease renewed by the watchdog if present,
+ * each grant gets a fence token checked by the account updates if the token helper is present
+ */
+public class RedisAccountLockProvider implements AccountLockProvider {
+    private final StringRedisTemplate redisTemplate;
+    private final LocalStripedLock localLock;
+    private final LockBackoff backoff;
+    private final long maxWaitNanos;
+    private final LockWatchdog watchdog;
+    private final long expireSeconds;
+    private final SnowFlakeIdHelper tokenHelper;
+
+    /**
+     * @param redisTemplate redis template
+     * @param localLock     in-process lock taken before redis, nullable
+     * @param backoff       backoff between attempts while waiting, fail fast if null
+     * @param maxWaitMillis max time to wait for busy locks, used only with backoff
+     * @param watchdog      renew ttl of held locks, nullable
+     * @param expireSeconds ttl of the lock keys
+     * @param tokenHelper   issue fence tokens, not fenced if null
+     */
+    public RedisAccountLockProvider(StringRedisTemplate redisTemplate, LocalStripedLock localLock, LockBackoff backoff, long maxWaitMillis, LockWatchdog watchdog, long expireSeconds, SnowFlakeIdHelper tokenHelper) {
+        this.redisTemplate = redisTemplate;
+        this.localLock = localLock;
+        this.backoff = backoff;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.watchdog = watchdog;
+        this.expireSeconds = expireSeconds;
+        this.tokenHelper = tokenHelper;
+    }
+
+    @Override
+    public AccountLock lock(String... accountNumbers) {
+        List<String> lockKeys = new ArrayList<>(accountNumbers.length);
+        for (String accountNumber : accountNumbers) {
+            lockKeys.add(AccountConst.ACCOUNT_LOCK_KEY_PREFIX + accountNumber);
+        }
+        long waitNanos = null == backoff ? 0 : RequestDeadline.remainingNanos(maxWaitNanos);
+        return new RedisMultiLock(redisTemplate, lockKeys, expireSeconds, localLock, backoff, waitNanos).fence(tokenHelper).watch(watchdog);
+    }
+}
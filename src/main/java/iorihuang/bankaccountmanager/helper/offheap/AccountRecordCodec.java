@@ -0,0 +1,101 @@
+package iorihuang.bankaccountmanager.helper.offheap;
+
+import iorihuang.bankaccountmanager.constant.AccountConst;
+import iorihuang.bankaccountmanager.dto.BankAccountDTO;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * Fixed layout of a cached account
+ * ------------------
+ * nulls(1) id(8) accountType(4) state(4) slots(4), then accountNumber ownerId ownerName contactInfo balance updatedAt,
+ * each as length(2, -1 for null) + utf-8 bytes, the version is kept by the store
+ */
+public class AccountRecordCodec implements OffHeapCodec<BankAccountDTO> {
+    private static final int NULL_ID = 1;
+    private static final int NULL_ACCOUNT_TYPE = 1 << 1;
+    private static final int NULL_STATE = 1 << 2;
+    private static final int NULL_SLOTS = 1 << 3;
+    private static final int FIXED = 1 + 8 + 4 + 4 + 4;
+
+    @Override
+    public Class<BankAccountDTO> type() {
+        return BankAccountDTO.class;
+    }
+
+    @Override
+    public byte[] encode(BankAccountDTO value) {
+        byte[][] strings = {bytes(value.getAccountNumber()), bytes(value.getOwnerId()), bytes(value.getOwnerName()),
+                bytes(value.getContactInfo()), bytes(value.getBalance()), bytes(value.getUpdatedAt())};
+        int length = FIXED;
+        for (byte[] string : strings) {
+            length += 2 + (null == string ? 0 : string.length);
+        }
+        ByteBuffer out = ByteBuffer.allocate(length);
+        int nulls = (null == value.getId() ? NULL_ID : 0)
+                | (null == value.getAccountType() ? NULL_ACCOUNT_TYPE : 0)
+                | (null == value.getState() ? NULL_STATE : 0)
+                | (null == value.getSlots() ? NULL_SLOTS : 0);
+        out.put((byte) nulls);
+        out.putLong(null == value.getId() ? 0 : Long.parseLong(value.getId()));
+        out.putInt(null == value.getAccountType() ? 0 : value.getAccountType());
+        out.putInt(null == value.getState() ? 0 : value.getState());
+        out.putInt(null == value.getSlots() ? 0 : value.getSlots());
+        for (byte[] string : strings) {
+            if (null == string) {
+                out.putShort((short) -1);
+            } else {
+                out.putShort((short) string.length);
+                out.put(string);
+            }
+        }
+        return out.array();
+    }
+
+    @Override
+    public BankAccountDTO decode(ByteBuffer in, long version) {
+        int nulls = in.get();
+        long id = in.getLong();
+        int accountType = in.getInt();
+        int state = in.getInt();
+        int slots = in.getInt();
+        BankAccountDTO dto = new BankAccountDTO()
+                .setAccountType(0 == (nulls & NULL_ACCOUNT_TYPE) ? accountType : null)
+                .setState(0 == (nulls & NULL_STATE) ? state : null)
+                .setSlots(0 == (nulls & NULL_SLOTS) ? slots : null)
+                .setAccountNumber(string(in))
+                .setOwnerId(string(in))
+                .setOwnerName(string(in))
+                .setContactInfo(string(in));
+        if (0 == (nulls & NULL_ID)) {
+            dto.setId(id);
+        }
+        String balance = string(in);
+        if (null != balance) {
+            dto.setBalance(new BigDecimal(balance));
+        }
+        String updatedAt = string(in);
+        if (null != updatedAt) {
+            dto.setUpdatedAt(LocalDateTime.parse(updatedAt, AccountConst.DATE_TIME_FORMATTER));
+        }
+        dto.setVer(version);
+        return dto;
+    }
+
+    private static byte[] bytes(String value) {
+        return null == value ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,101 @@
+package iorihuang.bankaccountmanager.helper.offheap;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.helper.cache.CacheVersioned;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Values of a cache encoded into an off-heap store, the level between the local caffeine and redis
+ * ------------------
+ * values of other types and values longer than a record are skipped, so they are read from the next level
+ */
+public class OffHeapCache<T> {
+    private final OffHeapStore store;
+    private final OffHeapCodec<T> codec;
+    private final long ttlMillis;
+
+    private final Counter hit;
+    private final Counter miss;
+    private final Counter oversize;
+
+    /**
+     * @param name      cache name
+     * @param store     store of records
+     * @param codec     codec of values
+     * @param ttlMillis time to live of records
+     * @param registry  metrics registry, nullable
+     */
+    public OffHeapCache(String name, OffHeapStore store, OffHeapCodec<T> codec, long ttlMillis, MeterRegistry registry) {
+        this.store = store;
+        this.codec = codec;
+        this.ttlMillis = ttlMillis;
+        if (null != registry) {
+            this.hit = counter(registry, name, "hit");
+            this.miss = counter(registry, name, "miss");
+            this.oversize = Counter.builder("cache.offheap.oversize").tag("cache", name).register(registry);
+            Gauge.builder("cache.offheap.entries", store, OffHeapStore::size).tag("cache", name).register(registry);
+            Gauge.builder("cache.offheap.capacity", store, OffHeapStore::capacity).tag("cache", name).register(registry);
+            Gauge.builder("cache.offheap.evictions", store, OffHeapStore::evictions).tag("cache", name).register(registry);
+        } else {
+            this.hit = null;
+            this.miss = null;
+            this.oversize = null;
+        }
+    }
+
+    private static Counter counter(MeterRegistry registry, String name, String result) {
+        return Counter.builder("cache.level.gets")
+                .tag("cache", name)
+                .tag("level", "offheap")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static void increment(Counter counter) {
+        if (null != counter) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * @return value decoded, null if absent or expired
+     */
+    public T get(String key) {
+        T value = store.get(key, codec);
+        increment(null == value ? miss : hit);
+        return value;
+    }
+
+    /**
+     * @return false if a newer version is kept
+     */
+    public boolean put(String key, Object value) {
+        if (!codec.type().isInstance(value)) {
+            return true;
+        }
+        byte[] record = codec.encode(codec.type().cast(value));
+        if (key.getBytes(StandardCharsets.UTF_8).length + record.length > store.maxPayload()) {
+            increment(oversize);
+        }
+        long version = value instanceof CacheVersioned versioned ? versioned.cacheVersion() : 0;
+        return store.put(key, version, record, ttlMillis);
+    }
+
+    public void evict(String key) {
+        store.remove(key);
+    }
+
+    /**
+     * evict the value if its version is older than the given one
+     */
+    public void evictOlder(String key, long version) {
+        store.removeOlder(key, version);
+    }
+
+    public void clear() {
+        store.clear();
+    }
+}
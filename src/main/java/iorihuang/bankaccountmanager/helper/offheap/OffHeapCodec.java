@@ -0,0 +1,21 @@
+package iorihuang.bankaccountmanager.helper.offheap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encode values into records of the off-heap store and decode them back
+ */
+public interface OffHeapCodec<T> {
+    /**
+     * type of values encoded, other values are not kept off heap
+     */
+    Class<T> type();
+
+    byte[] encode(T value);
+
+    /**
+     * @param value   bytes of the record, only valid while decoding
+     * @param version version kept beside the value
+     */
+    T decode(ByteBuffer value, long version);
+}
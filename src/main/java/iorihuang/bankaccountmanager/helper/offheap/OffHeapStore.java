@@ -0,0 +1,377 @@
+package iorihuang.bankaccountmanager.helper.offheap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Versioned records of string keys kept in direct memory, so millions of entries cost the gc almost nothing.
+ * ------------------
+ * segment: a slab of fixed size record slots + an open addressing index, guarded by a read write lock,
+ * segment of a key is picked by the high bits of its hash, slot of the index by the low bits
+ * ------------------
+ * index entry: hash (32 bits) + slot + 1 (32 bits), 0 is empty, linear probing with backward shift deletion
+ * record: hash(4) used(1) ref(1) keyLength(2) valueLength(4) version(8) expireAt(8) key value
+ * ------------------
+ * put: keeps the newer version unless the kept one is expired, records longer than the slot are not kept
+ * eviction: clock over the slots of a segment, a read sets the reference bit, the hand clears it or evicts the slot
+ */
+public class OffHeapStore {
+    private static final int HASH = 0;
+    private static final int USED = 4;
+    private static final int REF = 5;
+    private static final int KEY_LENGTH = 6;
+    private static final int VALUE_LENGTH = 8;
+    private static final int VERSION = 12;
+    private static final int EXPIRE_AT = 20;
+    private static final int HEADER = 28;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final int recordSize;
+
+    /**
+     * @param maxBytes    direct memory of slabs, indexes take 1/16 to 1/8 more with records of 256 bytes
+     * @param recordSize  bytes of a record slot, header included
+     * @param segments    segments of independent locks, rounded up to a power of 2
+     */
+    public OffHeapStore(long maxBytes, int recordSize, int segments) {
+        if (recordSize <= HEADER || recordSize > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("record size should be within (" + HEADER + ", " + Short.MAX_VALUE + "]");
+        }
+        int count = 1;
+        while (count < segments) {
+            count <<= 1;
+        }
+        long slots = maxBytes / recordSize / count;
+        if (slots <= 0 || slots * recordSize > Integer.MAX_VALUE || slots * 4 * Long.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("slab and index of a segment should be within (0, 2GB), max bytes: " + maxBytes + ", segments: " + count);
+        }
+        this.recordSize = recordSize;
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment((int) slots, recordSize);
+        }
+    }
+
+    /**
+     * murmur3 finalizer of the string hash, so both the high and the low bits are spread
+     */
+    private static int hash(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private Segment segmentOf(int hash) {
+        // shift of 32 is a no-op in java, so a single segment is picked by the mask
+        return segments[(hash >>> segmentShift) & (segments.length - 1)];
+    }
+
+    /**
+     * @return value decoded from the record, null if absent or expired
+     */
+    public <T> T get(String key, OffHeapCodec<T> codec) {
+        int hash = hash(key);
+        return segmentOf(hash).get(key.getBytes(StandardCharsets.UTF_8), hash, codec, System.currentTimeMillis());
+    }
+
+    /**
+     * @param ttlMillis time to live of the record
+     * @return false if a newer version is kept, true if the value is kept or too long to be kept
+     */
+    public boolean put(String key, long version, byte[] value, long ttlMillis) {
+        int hash = hash(key);
+        return segmentOf(hash).put(key.getBytes(StandardCharsets.UTF_8), hash, version, value, ttlMillis, System.currentTimeMillis());
+    }
+
+    public void remove(String key) {
+        int hash = hash(key);
+        segmentOf(hash).remove(key.getBytes(StandardCharsets.UTF_8), hash, Long.MAX_VALUE);
+    }
+
+    /**
+     * remove the record if its version is older than the given one
+     */
+    public void removeOlder(String key, long version) {
+        int hash = hash(key);
+        segmentOf(hash).remove(key.getBytes(StandardCharsets.UTF_8), hash, version);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return records kept, expired ones included until they are evicted
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * @return max records kept
+     */
+    public long capacity() {
+        return (long) segments.length * segments[0].slots;
+    }
+
+    /**
+     * @return records evicted by the clock to make room for new ones
+     */
+    public long evictions() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            evictions += segment.evictions;
+        }
+        return evictions;
+    }
+
+    /**
+     * @return max bytes of a key and its value kept in a record
+     */
+    public int maxPayload() {
+        return recordSize - HEADER;
+    }
+
+    private static final class Segment {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final ByteBuffer slab;
+        private final ByteBuffer index;
+        private final int recordSize;
+        private final int slots;
+        private final int mask;
+        /**
+         * slots never used are taken from the end of the allocated ones, freed slots are linked by their value length
+         */
+        private int allocated;
+        private int freeHead = -1;
+        private int hand;
+        private volatile int size;
+        private volatile long evictions;
+
+        Segment(int slots, int recordSize) {
+            this.slots = slots;
+            this.recordSize = recordSize;
+            this.slab = ByteBuffer.allocateDirect(slots * recordSize);
+            // load factor of the index is kept under 0.5
+            int capacity = Integer.highestOneBit(Math.max(2, slots) - 1) << 2;
+            this.mask = capacity - 1;
+            this.index = ByteBuffer.allocateDirect(capacity * Long.BYTES);
+        }
+
+        <T> T get(byte[] key, int hash, OffHeapCodec<T> codec, long now) {
+            lock.readLock().lock();
+            try {
+                int position = find(key, hash);
+                if (position < 0) {
+                    return null;
+                }
+                int offset = slotOf(position) * recordSize;
+                if (slab.getLong(offset + EXPIRE_AT) <= now) {
+                    return null;
+                }
+                // racing readers only ever set the bit, the hand clears it under the write lock
+                slab.put(offset + REF, (byte) 1);
+                int valueOffset = offset + HEADER + key.length;
+                return codec.decode(slab.slice(valueOffset, slab.getInt(offset + VALUE_LENGTH)), slab.getLong(offset + VERSION));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        boolean put(byte[] key, int hash, long version, byte[] value, long ttlMillis, long now) {
+            lock.writeLock().lock();
+            try {
+                int position = find(key, hash);
+                if (HEADER + key.length + value.length > recordSize) {
+                    // the old value would be stale, so it is removed
+                    if (position >= 0) {
+                        delete(position);
+                    }
+                    return true;
+                }
+                int slot;
+                if (position >= 0) {
+                    slot = slotOf(position);
+                    int offset = slot * recordSize;
+                    if (slab.getLong(offset + VERSION) > version && slab.getLong(offset + EXPIRE_AT) > now) {
+                        return false;
+                    }
+                } else {
+                    slot = allocate(now);
+                    insert(hash, slot);
+                    size++;
+                }
+                write(slot, key, hash, version, value, now + ttlMillis);
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(byte[] key, int hash, long olderThan) {
+            lock.writeLock().lock();
+            try {
+                int position = find(key, hash);
+                if (position >= 0 && slab.getLong(slotOf(position) * recordSize + VERSION) < olderThan) {
+                    delete(position);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void clear() {
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i <= mask; i++) {
+                    index.putLong(i * Long.BYTES, 0);
+                }
+                for (int slot = 0; slot < allocated; slot++) {
+                    slab.put(slot * recordSize + USED, (byte) 0);
+                }
+                allocated = 0;
+                freeHead = -1;
+                hand = 0;
+                size = 0;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private int slotOf(int position) {
+            return (int) index.getLong(position * Long.BYTES) - 1;
+        }
+
+        /**
+         * @return position of the key in the index, -1 if absent
+         */
+        private int find(byte[] key, int hash) {
+            int position = hash & mask;
+            while (true) {
+                long entry = index.getLong(position * Long.BYTES);
+                if (0 == entry) {
+                    return -1;
+                }
+                if ((int) (entry >>> 32) == hash && keyEquals((int) entry - 1, key)) {
+                    return position;
+                }
+                position = (position + 1) & mask;
+            }
+        }
+
+        private boolean keyEquals(int slot, byte[] key) {
+            int offset = slot * recordSize;
+            if (slab.getShort(offset + KEY_LENGTH) != key.length) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (slab.get(offset + HEADER + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void insert(int hash, int slot) {
+            int position = hash & mask;
+            while (0 != index.getLong(position * Long.BYTES)) {
+                position = (position + 1) & mask;
+            }
+            index.putLong(position * Long.BYTES, ((long) hash << 32) | (slot + 1L));
+        }
+
+        /**
+         * remove the entry of the index and free its slot, entries after it are shifted back,
+         * so no tombstone is left and a probe always stops at the first empty entry
+         */
+        private void delete(int position) {
+            int slot = slotOf(position);
+            unlink(position);
+            int offset = slot * recordSize;
+            slab.put(offset + USED, (byte) 0);
+            slab.putInt(offset + VALUE_LENGTH, freeHead);
+            freeHead = slot;
+            size--;
+        }
+
+        private void unlink(int position) {
+            int hole = position;
+            int next = position;
+            while (true) {
+                next = (next + 1) & mask;
+                long entry = index.getLong(next * Long.BYTES);
+                if (0 == entry) {
+                    break;
+                }
+                int home = (int) (entry >>> 32) & mask;
+                // the entry stays if its home is cyclically within (hole, next]
+                boolean stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+                if (!stays) {
+                    index.putLong(hole * Long.BYTES, entry);
+                    hole = next;
+                }
+            }
+            index.putLong(hole * Long.BYTES, 0);
+        }
+
+        /**
+         * a free slot, or a slot evicted by the clock if all are used
+         */
+        private int allocate(long now) {
+            if (freeHead >= 0) {
+                int slot = freeHead;
+                freeHead = slab.getInt(slot * recordSize + VALUE_LENGTH);
+                return slot;
+            }
+            if (allocated < slots) {
+                return allocated++;
+            }
+            // every used slot is cleared in the first round at most, so the second round always finds one
+            while (true) {
+                int slot = hand;
+                hand = (hand + 1) % slots;
+                int offset = slot * recordSize;
+                if (0 == slab.get(offset + USED)) {
+                    continue;
+                }
+                if (0 != slab.get(offset + REF) && slab.getLong(offset + EXPIRE_AT) > now) {
+                    slab.put(offset + REF, (byte) 0);
+                    continue;
+                }
+                byte[] key = new byte[slab.getShort(offset + KEY_LENGTH)];
+                slab.get(offset + HEADER, key);
+                unlink(find(key, slab.getInt(offset + HASH)));
+                slab.put(offset + USED, (byte) 0);
+                size--;
+                evictions++;
+                return slot;
+            }
+        }
+
+        private void write(int slot, byte[] key, int hash, long version, byte[] value, long expireAt) {
+            int offset = slot * recordSize;
+            slab.putInt(offset + HASH, hash);
+            slab.put(offset + USED, (byte) 1);
+            slab.put(offset + REF, (byte) 1);
+            slab.putShort(offset + KEY_LENGTH, (short) key.length);
+            slab.putInt(offset + VALUE_LENGTH, value.length);
+            slab.putLong(offset + VERSION, version);
+            slab.putLong(offset + EXPIRE_AT, expireAt);
+            slab.put(offset + HEADER, key);
+            slab.put(offset + HEADER + key.length, value);
+        }
+    }
+}
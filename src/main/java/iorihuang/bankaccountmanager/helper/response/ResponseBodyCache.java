@@ -0,0 +1,95 @@
+package iorihuang.bankaccountmanager.helper.response;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * Serialized json response bodies kept by key and version, so a read of an unchanged value is not serialized again.
+ * ------------------
+ * body is serialized without ts, such as {"code":1,"msg":"","error":0,"data":{...}},
+ * ts is patched in front of the other fields while writing: {"ts":"1700000000000", + body without its "{"
+ * ------------------
+ * one body per key, a body of another version is replaced, bodies are shared so they must not be changed
+ */
+public class ResponseBodyCache {
+    private static final byte[] TS_PREFIX = "{\"ts\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TS_SUFFIX = "\",".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+    private final Cache<String, Body> bodies;
+    private final boolean patchTs;
+
+    private final Counter hit;
+    private final Counter miss;
+
+    private record Body(long version, byte[] bytes) {
+    }
+
+    /**
+     * @param objectMapper json of bodies, ts of the body must be null and left out by it
+     * @param maximumSize  max bodies kept
+     * @param patchTs      write ts in front of the body
+     * @param registry     metrics registry, nullable
+     */
+    public ResponseBodyCache(ObjectMapper objectMapper, int maximumSize, boolean patchTs, MeterRegistry registry) {
+        this.objectMapper = objectMapper;
+        this.bodies = Caffeine.newBuilder().maximumSize(maximumSize).build();
+        this.patchTs = patchTs;
+        if (null != registry) {
+            this.hit = Counter.builder("response.body.cache.gets").tag("result", "hit").register(registry);
+            this.miss = Counter.builder("response.body.cache.gets").tag("result", "miss").register(registry);
+        } else {
+            this.hit = null;
+            this.miss = null;
+        }
+    }
+
+    /**
+     * Serialized body of the key in the version, serialized and kept if absent or of another version
+     *
+     * @param key     key such as account number
+     * @param version version of the value in the body
+     * @param body    body to serialize on miss
+     * @return body bytes without ts
+     */
+    public byte[] get(String key, long version, Supplier<?> body) throws JsonProcessingException {
+        Body kept = bodies.getIfPresent(key);
+        if (null != kept && kept.version() == version) {
+            increment(hit);
+            return kept.bytes();
+        }
+        increment(miss);
+        byte[] bytes = objectMapper.writeValueAsBytes(body.get());
+        bodies.put(key, new Body(version, bytes));
+        return bytes;
+    }
+
+    /**
+     * Write the body with ts patched if enabled
+     */
+    public void write(byte[] body, OutputStream out) throws IOException {
+        if (!patchTs || body.length < 2) {
+            out.write(body);
+            return;
+        }
+        out.write(TS_PREFIX);
+        out.write(String.valueOf(System.currentTimeMillis()).getBytes(StandardCharsets.US_ASCII));
+        out.write(TS_SUFFIX);
+        out.write(body, 1, body.length - 1);
+    }
+
+    private static void increment(Counter counter) {
+        if (null != counter) {
+            counter.increment();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package iorihuang.bankaccountmanager.helper.response;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "responsecache")
+public class ResponseBodyCacheProperties {
+    /**
+     * write serialized response bytes of account reads kept by account and version, default to false
+     */
+    private boolean enabled = false;
+    /**
+     * max responses kept, one per account
+     */
+    private int maximumSize = 10000;
+    /**
+     * patch the ts field of each response with the current time, ts is left out if false
+     */
+    private boolean patchTs = true;
+}
@@ -0,0 +1,70 @@
+package iorihuang.bankaccountmanager.helper.retry;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded retry of version conflicts with full jitter exponential backoff.
+ * ------------------
+ * attempt n(from 1) waits random(0, min(maxBackoff, backoff * 2^(n-1))) before the next attempt
+ * ------------------
+ * metrics tagged by op: account.version.conflict, account.version.retry, account.version.retry.exhausted
+ */
+public class VersionRetryPolicy {
+    private final int maxAttempts;
+    private final long backoffNanos;
+    private final long maxBackoffNanos;
+    private final MeterRegistry registry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxAttempts      max attempts including the first one
+     * @param backoffMillis    base backoff before the first retry
+     * @param maxBackoffMillis max backoff of a retry
+     * @param registry         metrics registry, nullable
+     */
+    public VersionRetryPolicy(int maxAttempts, long backoffMillis, long maxBackoffMillis, MeterRegistry registry) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, backoffMillis));
+        this.maxBackoffNanos = Math.max(this.backoffNanos, TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis));
+        this.registry = registry;
+    }
+
+    /**
+     * Record a conflict of the attempt, and wait before the next attempt if allowed
+     *
+     * @param op      operation, used as metrics tag
+     * @param attempt attempt failed, from 1
+     * @return false if attempts exhausted
+     */
+    public boolean retry(String op, int attempt) {
+        increment("account.version.conflict", op);
+        if (attempt >= maxAttempts) {
+            increment("account.version.retry.exhausted", op);
+            return false;
+        }
+        increment("account.version.retry", op);
+        long backoff = Math.min(maxBackoffNanos, backoffNanos << Math.min(attempt - 1, 20));
+        if (backoff > 0) {
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(backoff + 1));
+        }
+        return true;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    private void increment(String name, String op) {
+        if (null == registry) {
+            return;
+        }
+        counters.computeIfAbsent(name + ":" + op, k -> Counter.builder(name).tag("op", op).register(registry)).increment();
+    }
+}
@@ -0,0 +1,27 @@
+package iorihuang.bankaccountmanager.helper.retry;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "version-retry")
+public class VersionRetryProperties {
+    /**
+     * retry in service on version conflicts, default to true
+     */
+    private boolean enabled = true;
+    /**
+     * max attempts including the first one
+     */
+    private int maxAttempts = 3;
+    /**
+     * base backoff before the first retry, doubled on each retry
+     */
+    private long backoffMillis = 2;
+    /**
+     * max backoff of a retry, the account lock is held while waiting
+     */
+    private long maxBackoffMillis = 20;
+}
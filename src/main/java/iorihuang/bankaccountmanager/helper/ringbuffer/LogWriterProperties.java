@@ -0,0 +1,46 @@
+package iorihuang.bankaccountmanager.helper.ringbuffer;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "logwriter")
+public class LogWriterProperties {
+    /**
+     * write balance logs of transfers asynchronously after committed, default to true,
+     * the transfer log is still inserted in the transaction, balance logs missing are rebuilt from it
+     */
+    private boolean enabled = true;
+    /**
+     * ring buffer size, will be rounded up to power of 2
+     */
+    private int bufferSize = 16384;
+    /**
+     * max records of one batchInsert
+     */
+    private int batchSize = 256;
+    /**
+     * backpressure: max time to wait for a free slot while buffer is full,
+     * logs will be inserted synchronously after timeout
+     */
+    private long publishTimeoutMillis = 50;
+    /**
+     * retry times of a failed batchInsert before dropping the records to the replay
+     */
+    private int flushRetry = 3;
+    /**
+     * interval to rebuild balance logs missing from transfer logs(lost by a crash or a failed flush)
+     */
+    private long replayIntervalMillis = 10000;
+    /**
+     * transfer logs younger than this are not replayed, their balance logs may still be in a ring buffer,
+     * it should be longer than a transfer transaction, since the transfer log is created before commit
+     */
+    private long replayGraceMillis = 60000;
+    /**
+     * transfer logs older than this on startup are not replayed
+     */
+    private long replayWindowMinutes = 1440;
+}
@@ -0,0 +1,241 @@
+package iorihuang.bankaccountmanager.helper.ringbuffer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Disruptor-style bounded ring buffer, multi producers and a single consumer thread,
+ * the consumer drains published records to the handler in micro-batches.
+ * ------------------
+ * producer: claim sequence by CAS -> write slot -> publish slot with its sequence
+ * consumer: wait for the next published sequence -> drain contiguous published slots -> handler
+ * ------------------
+ * if the buffer is full, producer parks until publish timeout, then returns false and the caller should write synchronously
+ */
+@Slf4j
+public class RingBufferBatchWriter<T> implements AutoCloseable {
+    private final String name;
+    private final int bufferSize;
+    private final int mask;
+    private final int batchSize;
+    private final long publishTimeoutNanos;
+    private final int flushRetry;
+    private final Consumer<List<T>> handler;
+
+    private final AtomicReferenceArray<T> entries;
+    /**
+     * sequence of the record published in each slot, -1 means never published
+     */
+    private final AtomicLongArray published;
+    /**
+     * next sequence to claim by producers
+     */
+    private final AtomicLong claimSequence = new AtomicLong(0);
+    /**
+     * next sequence to consume, only written by the consumer thread
+     */
+    private final AtomicLong consumeSequence = new AtomicLong(0);
+
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    private final Timer flushTimer;
+    private final Counter flushedCounter;
+    private final Counter failedCounter;
+    private final Counter rejectedCounter;
+
+    /**
+     * @param name                 name of the writer, used as metrics tag and thread name
+     * @param bufferSize           buffer size, will be rounded up to power of 2
+     * @param batchSize            max records of one flush
+     * @param publishTimeoutMillis max time to wait for a free slot while buffer is full
+     * @param flushRetry           retry times of a failed flush before dropping it to error log
+     * @param handler              batch handler, such as batchInsert of mapper
+     * @param registry             metrics registry, nullable
+     */
+    public RingBufferBatchWriter(String name, int bufferSize, int batchSize, long publishTimeoutMillis, int flushRetry, Consumer<List<T>> handler, MeterRegistry registry) {
+        this.name = name;
+        this.bufferSize = roundUpToPowerOf2(bufferSize);
+        this.mask = this.bufferSize - 1;
+        this.batchSize = Math.max(1, batchSize);
+        this.publishTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(publishTimeoutMillis);
+        this.flushRetry = Math.max(0, flushRetry);
+        this.handler = handler;
+        this.entries = new AtomicReferenceArray<>(this.bufferSize);
+        this.published = new AtomicLongArray(this.bufferSize);
+        for (int i = 0; i < this.bufferSize; i++) {
+            this.published.set(i, -1);
+        }
+
+        if (null != registry) {
+            Gauge.builder("ringbuffer.writer.queue.depth", this, RingBufferBatchWriter::size)
+                    .tag("writer", name)
+                    .register(registry);
+            this.flushTimer = Timer.builder("ringbuffer.writer.flush.latency")
+                    .tag("writer", name)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+            this.flushedCounter = Counter.builder("ringbuffer.writer.flushed").tag("writer", name).register(registry);
+            this.failedCounter = Counter.builder("ringbuffer.writer.failed").tag("writer", name).register(registry);
+            this.rejectedCounter = Counter.builder("ringbuffer.writer.rejected").tag("writer", name).register(registry);
+        } else {
+            this.flushTimer = null;
+            this.flushedCounter = null;
+            this.failedCounter = null;
+            this.rejectedCounter = null;
+        }
+
+        this.consumer = new Thread(this::consumeLoop, "ringbuffer-writer-" + name);
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    private static int roundUpToPowerOf2(int size) {
+        if (size <= 1) {
+            return 2;
+        }
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    /**
+     * Publish a record, park while buffer is full until publish timeout
+     *
+     * @param record record to write
+     * @return false if the writer is closed or buffer is still full after timeout
+     */
+    public boolean publish(T record) {
+        if (!running) {
+            increment(rejectedCounter);
+            return false;
+        }
+        long deadline = System.nanoTime() + publishTimeoutNanos;
+        long sequence;
+        while (true) {
+            sequence = claimSequence.get();
+            if (sequence - consumeSequence.get() >= bufferSize) {
+                // backpressure: buffer is full
+                if (!running || System.nanoTime() - deadline >= 0) {
+                    increment(rejectedCounter);
+                    return false;
+                }
+                LockSupport.parkNanos(1_000);
+                continue;
+            }
+            if (claimSequence.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        int index = (int) (sequence & mask);
+        entries.set(index, record);
+        published.set(index, sequence);
+        LockSupport.unpark(consumer);
+        return true;
+    }
+
+    /**
+     * Records waiting to be flushed
+     */
+    public long size() {
+        return Math.max(0, claimSequence.get() - consumeSequence.get());
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    private void consumeLoop() {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (running || size() > 0) {
+            long next = consumeSequence.get();
+            int drained = drain(next, batch);
+            if (drained == 0) {
+                // claimed but not published yet, or no record at all, producers will unpark us after publish
+                LockSupport.parkNanos(1_000_000);
+                continue;
+            }
+            flush(batch);
+            batch.clear();
+            consumeSequence.set(next + drained);
+        }
+        log.info("ringbuffer writer {} stopped", name);
+    }
+
+    /**
+     * drain contiguous published records from sequence
+     */
+    private int drain(long sequence, List<T> batch) {
+        int drained = 0;
+        while (drained < batchSize) {
+            long current = sequence + drained;
+            int index = (int) (current & mask);
+            if (published.get(index) != current) {
+                break;
+            }
+            batch.add(entries.getAndSet(index, null));
+            drained++;
+        }
+        return drained;
+    }
+
+    private void flush(List<T> batch) {
+        for (int times = 0; ; times++) {
+            long start = System.nanoTime();
+            try {
+                handler.accept(batch);
+                if (null != flushTimer) {
+                    flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    flushedCounter.increment(batch.size());
+                }
+                return;
+            } catch (Exception e) {
+                if (times < flushRetry) {
+                    log.warn("ringbuffer writer {} flush {} records fail, retry {}", name, batch.size(), times + 1, e);
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10L << times));
+                    continue;
+                }
+                increment(failedCounter);
+                // the owner of the writer should be able to rebuild the records dropped
+                log.error("ringbuffer writer {} drop {} records after {} retries: {}", name, batch.size(), flushRetry, batch, e);
+                return;
+            }
+        }
+    }
+
+    private static void increment(Counter counter) {
+        if (null != counter) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * Stop accepting records, flush all published records and wait for the consumer to stop
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (size() > 0) {
+            log.error("ringbuffer writer {} closed with {} records not flushed", name, size());
+        }
+    }
+}
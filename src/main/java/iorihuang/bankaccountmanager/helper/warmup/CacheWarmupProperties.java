@@ -0,0 +1,31 @@
+package iorihuang.bankaccountmanager.helper.warmup;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "cachewarmup")
+public class CacheWarmupProperties {
+    /**
+     * preload hot accounts of the last run into the account cache before the application is ready, default to true
+     */
+    private boolean enabled = true;
+    /**
+     * local file of hot account numbers, should be on a volume kept across restarts
+     */
+    private String snapshotFile = "data/hot-accounts.snapshot";
+    /**
+     * hot accounts kept in the snapshot, the hottest ones of the local cache by its frequency sketch
+     */
+    private int topN = 1000;
+    /**
+     * interval of writing the snapshot, it is also written at shutdown
+     */
+    private long snapshotIntervalSeconds = 300;
+    /**
+     * accounts of one multi-row query while preloading
+     */
+    private int batchSize = 500;
+}
@@ -0,0 +1,66 @@
+package iorihuang.bankaccountmanager.helper.warmup;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hot keys of a caffeine cache kept in a local file, one key per line from the hottest
+ * ------------------
+ * the hottest keys are picked by the frequency sketch of the size bounded caffeine cache,
+ * the file is written to a temp file then moved, so a crash never leaves a partial snapshot
+ */
+public class HotKeySnapshot {
+    private final Path file;
+
+    public HotKeySnapshot(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * The hottest keys of a caffeine cache, empty if the cache is not size bounded
+     */
+    public static List<String> hottest(Cache<?, ?> cache, int limit) {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.hottest(limit).keySet().stream().map(String::valueOf).toList())
+                .orElse(Collections.emptyList());
+    }
+
+    public void write(List<String> keys) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (null != dir) {
+            Files.createDirectories(dir);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, keys, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return keys of the snapshot, empty if absent
+     */
+    public List<String> read() throws IOException {
+        if (!Files.exists(file)) {
+            return Collections.emptyList();
+        }
+        List<String> keys = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String key = line.trim();
+            if (!key.isEmpty()) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
@@ -1,5 +1,7 @@
 package iorihuang.bankaccountmanager.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import iorihuang.bankaccountmanager.helper.cache.CacheVersioned;
 import iorihuang.bankaccountmanager.model.bankaccount.AccountState;
 import iorihuang.bankaccountmanager.model.bankaccount.AccountType;
 import lombok.AllArgsConstructor;
@@ -13,8 +15,8 @@ import java.time.LocalDateTime;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
-public class BankAccount {
+@Builder(toBuilder = true)
+public class BankAccount implements CacheVersioned {
     private Long id;
 
     private String accountNumber;
@@ -35,12 +37,36 @@ public class BankAccount {
 
     private Long ver; // Version for optimistic locking
 
+    private Integer slots; // Balance slots of hot account, 0 for normal account
+
+    private BigDecimal slotBalance; // Sum balance of slots, not a column
+
+    @JsonIgnore
+    private Long fenceToken; // Fence token of the lock held by the writer, written by guarded updates but not read
+
     private LocalDateTime createdAt;
 
     private LocalDateTime updatedAt;
 
     private LocalDateTime deletedAt;
 
+    /**
+     * Whether the balance is split into slots
+     */
+    public boolean isHot() {
+        return this.slots != null && this.slots > 0;
+    }
+
+    /**
+     * Balance of the account row plus balance of slots
+     */
+    public BigDecimal getTotalBalance() {
+        if (this.slotBalance == null) {
+            return this.balance;
+        }
+        return this.balance == null ? this.slotBalance : this.balance.add(this.slotBalance);
+    }
+
     /**
      * Get account type as enum
      *
@@ -82,4 +108,14 @@ public class BankAccount {
     public void setStateEnum(AccountState state) {
         this.state = state != null ? state.getCode() : null;
     }
+
+    @Override
+    public long cacheVersion() {
+        return null == ver ? 0 : ver;
+    }
+
+    @Override
+    public void restoreCacheVersion(long version) {
+        this.ver = version;
+    }
 }
\ No newline at end of file
@@ -21,5 +21,9 @@ public class BankAccountBalanceLog {
     private BigDecimal changeAmount;
     private Integer changeType;
     private String changeDesc;
+    /**
+     * id of the transfer if written asynchronously after commit, null otherwise
+     */
+    private Long transferId;
     private LocalDateTime createdAt;
 }
@@ -0,0 +1,27 @@
+package iorihuang.bankaccountmanager.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Balance slot of hot account
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BankAccountSlot {
+    private Long id;
+    private Long accountId;
+    private String accountNumber;
+    private Integer slotNo;
+    private BigDecimal balance;
+    private Long ver;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
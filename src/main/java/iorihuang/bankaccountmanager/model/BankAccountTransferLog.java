@@ -23,5 +23,9 @@ public class BankAccountTransferLog {
     private BigDecimal afterBalanceFrom;
     private BigDecimal beforeBalanceTo;
     private BigDecimal afterBalanceTo;
+    /**
+     * id of the transfer, null if its balance logs are not written asynchronously
+     */
+    private Long transferId;
     private LocalDateTime createdAt;
 }
@@ -0,0 +1,25 @@
+package iorihuang.bankaccountmanager.repository;
+
+import iorihuang.bankaccountmanager.model.BankAccount;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Net balance change of one account, guarded by the balance and version read before
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BalanceChange {
+    /**
+     * account with the balance and version read before
+     */
+    private BankAccount account;
+    private BigDecimal newBalance;
+    private long newVersion;
+}
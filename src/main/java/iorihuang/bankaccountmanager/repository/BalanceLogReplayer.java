@@ -0,0 +1,187 @@
+package iorihuang.bankaccountmanager.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import iorihuang.bankaccountmanager.model.BankAccountBalanceLog;
+import iorihuang.bankaccountmanager.model.BankAccountTransferLog;
+import iorihuang.bankaccountmanager.model.bankaccountbalancelog.BalanceChangeType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert balance logs of transfers written after commit, and rebuild the ones lost from the transfer logs.
+ * ------------------
+ * the transfer log is inserted in the transaction of the balances, with the transfer id and the balances before and after,
+ * so both balance logs of a committed transfer can always be derived from it.
+ * the ring buffer writer drops its records on a crash or a failed flush,
+ * the replay periodically finds transfer logs without their balance logs and inserts them.
+ * ------------------
+ * balance logs are unique by (transfer_id, account_id), a log inserted by both the writer and the replay is kept once.
+ */
+@Slf4j
+public class BalanceLogReplayer implements AutoCloseable {
+    private final BankAccountTransferLogRepository transferLogRepository;
+    private final BankAccountBalanceLogRepository balanceLogRepository;
+    private final int batchSize;
+    private final long intervalMillis;
+    private final long graceMillis;
+    private final Counter replayedCounter;
+    private final Counter duplicateCounter;
+    private ScheduledExecutorService scheduler;
+    /**
+     * transfer logs created before it are replayed, only touched by the replay thread
+     */
+    private LocalDateTime since;
+
+    /**
+     * @param batchSize      max transfer logs of one query
+     * @param intervalMillis interval of replay rounds, 0 for no schedule
+     * @param graceMillis    transfer logs younger than it are not replayed
+     * @param windowMinutes  transfer logs older than it on start are not replayed
+     * @param registry       metrics registry, nullable
+     */
+    public BalanceLogReplayer(BankAccountTransferLogRepository transferLogRepository, BankAccountBalanceLogRepository balanceLogRepository, int batchSize, long intervalMillis, long graceMillis, long windowMinutes, MeterRegistry registry) {
+        this.transferLogRepository = transferLogRepository;
+        this.balanceLogRepository = balanceLogRepository;
+        this.batchSize = Math.max(1, batchSize);
+        this.intervalMillis = intervalMillis;
+        this.graceMillis = graceMillis;
+        this.since = LocalDateTime.now().minusMinutes(windowMinutes);
+        if (null != registry) {
+            this.replayedCounter = Counter.builder("balance.log.replayed").register(registry);
+            this.duplicateCounter = Counter.builder("balance.log.duplicate").register(registry);
+        } else {
+            this.replayedCounter = null;
+            this.duplicateCounter = null;
+        }
+    }
+
+    /**
+     * Replay on schedule, the first round runs right after started
+     */
+    public void start() {
+        if (intervalMillis <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "balance-log-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                int replayed = replay();
+                if (replayed > 0) {
+                    log.warn("Balance logs of {} transfers replayed", replayed);
+                }
+            } catch (Exception e) {
+                log.error("Balance logs replay fail since {}", since, e);
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Insert balance logs, the ones inserted already are skipped
+     */
+    public void insert(List<BankAccountBalanceLog> logs) {
+        try {
+            balanceLogRepository.batchInsert(logs);
+            return;
+        } catch (DuplicateKeyException e) {
+            // some of them are inserted by the replay or by the writer, insert one by one
+        }
+        for (BankAccountBalanceLog balanceLog : logs) {
+            try {
+                balanceLogRepository.insert(balanceLog);
+            } catch (DuplicateKeyException e) {
+                increment(duplicateCounter);
+            }
+        }
+    }
+
+    /**
+     * Insert balance logs missing from the transfer logs created before the grace period
+     *
+     * @return transfers replayed
+     */
+    public int replay() {
+        LocalDateTime before = LocalDateTime.now().minusNanos(TimeUnit.MILLISECONDS.toNanos(graceMillis));
+        int replayed = 0;
+        while (true) {
+            // the ones replayed are not found again
+            List<BankAccountTransferLog> missing = transferLogRepository.findWithoutBalanceLogs(since, before, batchSize);
+            if (missing.isEmpty()) {
+                break;
+            }
+            List<BankAccountBalanceLog> logs = new ArrayList<>(missing.size() * 2);
+            for (BankAccountTransferLog transferLog : missing) {
+                logs.addAll(balanceLogs(transferLog));
+            }
+            insert(logs);
+            replayed += missing.size();
+            if (null != replayedCounter) {
+                replayedCounter.increment(missing.size());
+            }
+            if (missing.size() < batchSize) {
+                break;
+            }
+        }
+        since = before;
+        return replayed;
+    }
+
+    /**
+     * Balance logs of both accounts derived from the transfer log
+     */
+    public static List<BankAccountBalanceLog> balanceLogs(BankAccountTransferLog transferLog) {
+        BankAccountBalanceLog from = BankAccountBalanceLog.builder()
+                .accountId(transferLog.getFromAccountId())
+                .accountNumber(transferLog.getFromAccountNumber())
+                .beforeBalance(transferLog.getBeforeBalanceFrom())
+                .afterBalance(transferLog.getAfterBalanceFrom())
+                .changeAmount(transferLog.getAmount().negate())
+                .changeType(BalanceChangeType.TRANSFER_OUT.getCode()) // 4:转出
+                .changeDesc("转账转出")
+                .transferId(transferLog.getTransferId())
+                .createdAt(transferLog.getCreatedAt())
+                .build();
+        BankAccountBalanceLog to = BankAccountBalanceLog.builder()
+                .accountId(transferLog.getToAccountId())
+                .accountNumber(transferLog.getToAccountNumber())
+                .beforeBalance(transferLog.getBeforeBalanceTo())
+                .afterBalance(transferLog.getAfterBalanceTo())
+                .changeAmount(transferLog.getAmount())
+                .changeType(BalanceChangeType.TRANSFER_IN.getCode()) // 3:转入
+                .changeDesc("转账转入")
+                .transferId(transferLog.getTransferId())
+                .createdAt(transferLog.getCreatedAt())
+                .build();
+        return List.of(from, to);
+    }
+
+    private static void increment(Counter counter) {
+        if (null != counter) {
+            counter.increment();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (null == scheduler) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
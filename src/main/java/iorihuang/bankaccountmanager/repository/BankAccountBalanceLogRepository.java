@@ -15,9 +15,9 @@ public interface BankAccountBalanceLogRepository {
      */
     @Insert({
         "<script>",
-        "INSERT INTO bank_account_balance_log (account_id, account_number, before_balance, after_balance, change_amount, change_type, change_desc, created_at) VALUES ",
+        "INSERT INTO bank_account_balance_log (account_id, account_number, before_balance, after_balance, change_amount, change_type, change_desc, transfer_id, created_at) VALUES ",
         "<foreach collection='logs' item='log' separator=','>",
-        "(#{log.accountId}, #{log.accountNumber}, #{log.beforeBalance}, #{log.afterBalance}, #{log.changeAmount}, #{log.changeType}, #{log.changeDesc}, #{log.createdAt})",
+        "(#{log.accountId}, #{log.accountNumber}, #{log.beforeBalance}, #{log.afterBalance}, #{log.changeAmount}, #{log.changeType}, #{log.changeDesc}, #{log.transferId}, #{log.createdAt})",
         "</foreach>",
         "</script>"
     })
@@ -26,7 +26,7 @@ public interface BankAccountBalanceLogRepository {
     /**
      * 插入单条余额变更流水
      */
-    @Insert("INSERT INTO bank_account_balance_log (account_id, account_number, before_balance, after_balance, change_amount, change_type, change_desc, created_at) VALUES (#{accountId}, #{accountNumber}, #{beforeBalance}, #{afterBalance}, #{changeAmount}, #{changeType}, #{changeDesc}, #{createdAt})")
+    @Insert("INSERT INTO bank_account_balance_log (account_id, account_number, before_balance, after_balance, change_amount, change_type, change_desc, transfer_id, created_at) VALUES (#{accountId}, #{accountNumber}, #{beforeBalance}, #{afterBalance}, #{changeAmount}, #{changeType}, #{changeDesc}, #{transferId}, #{createdAt})")
     @Options(useGeneratedKeys = true, keyProperty = "id")
     int insert(BankAccountBalanceLog log);
 }
@@ -4,40 +4,119 @@ import iorihuang.bankaccountmanager.model.BankAccount;
 import org.apache.ibatis.annotations.*;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import io.micrometer.observation.annotation.Observed;
 
+/**
+ * guarded updates also check fence_token: a non-zero fence token of the lock holder is rejected if a newer one
+ * has been written, so a holder whose lock has expired can not overwrite the next holder, 0 means not fenced
+ */
 @Mapper
 @Observed(name = "bank.account.repository")
 public interface BankAccountRepository {
-    @Select("SELECT id, account_number, account_type, owner_id, owner_name, contact_info, balance, balance_at, state, ver, created_at, updated_at, deleted_at FROM bank_account WHERE state = #{state} AND id < #{lastId} ORDER BY id DESC LIMIT #{limit}")
+    @Select("SELECT id, account_number, account_type, owner_id, owner_name, contact_info, balance, balance_at, state, ver, slots, created_at, updated_at, deleted_at FROM bank_account WHERE state = #{state} AND id < #{lastId} ORDER BY id DESC LIMIT #{limit}")
     @Observed(name = "bank.account.repository.find-by-state")
     List<BankAccount> findByState(@Param("state") int state, @Param("lastId") long lastId, @Param("limit") int limit);
 
-    @Select("SELECT id, account_number, account_type, owner_id, owner_name, contact_info, balance, balance_at, state, ver, created_at, updated_at, deleted_at FROM bank_account WHERE account_number = #{accountNumber} LIMIT 1")
+    @Select("SELECT id, account_number FROM bank_account WHERE id > #{lastId} ORDER BY id LIMIT #{limit}")
+    @Observed(name = "bank.account.repository.scan-account-numbers")
+    List<BankAccount> scanAccountNumbers(@Param("lastId") long lastId, @Param("limit") int limit);
+
+    @Select("SELECT id, account_number, account_type, owner_id, owner_name, contact_info, balance, balance_at, state, ver, slots, created_at, updated_at, deleted_at FROM bank_account WHERE account_number = #{accountNumber} LIMIT 1")
     @Observed(name = "bank.account.repository.find-by-account-number")
     Optional<BankAccount> findByAccountNumber(@Param("accountNumber") String accountNumber);
 
-    @Update("UPDATE bank_account SET state = #{newState}, updated_at = #{updateAt}, ver = #{newVersion} WHERE id = #{id} AND account_number = #{accountNumber} AND state = #{state} AND ver = #{version} LIMIT 1")
+    /**
+     * lock rows of the accounts until the transaction ends, in account number order
+     */
+    @Select({
+            "<script>",
+            "SELECT id FROM bank_account WHERE account_number IN ",
+            "<foreach collection='accountNumbers' item='accountNumber' open='(' separator=',' close=')'>",
+            "#{accountNumber}",
+            "</foreach>",
+            " ORDER BY account_number FOR UPDATE",
+            "</script>"
+    })
+    @Observed(name = "bank.account.repository.lock-by-account-numbers")
+    List<Long> lockByAccountNumbers(@Param("accountNumbers") Collection<String> accountNumbers);
+
+    /**
+     * existence of an account number answered by the unique index, confirms an absence of the bloom filter
+     */
+    @Select("SELECT EXISTS (SELECT 1 FROM bank_account WHERE account_number = #{accountNumber})")
+    @Observed(name = "bank.account.repository.exists-by-account-number")
+    boolean existsByAccountNumber(@Param("accountNumber") String accountNumber);
+
+    /**
+     * read only the version, answered by the covering index idx_account_ver,
+     * used by refreshes and validated reads of the account cache
+     */
+    @Select("SELECT ver FROM bank_account WHERE account_number = #{accountNumber} LIMIT 1")
+    @Observed(name = "bank.account.repository.find-version-by-account-number")
+    Optional<Long> findVersionByAccountNumber(@Param("accountNumber") String accountNumber);
+
+    @Select("SELECT id, account_number, balance, slots, state, ver FROM bank_account WHERE id = #{id} LIMIT 1")
+    @Observed(name = "bank.account.repository.find-balance-version-by-id")
+    Optional<BankAccount> findBalanceVersionById(@Param("id") long id);
+
+    @Select({
+            "<script>",
+            "SELECT id, account_number, account_type, owner_id, owner_name, contact_info, balance, balance_at, state, ver, slots, created_at, updated_at, deleted_at FROM bank_account WHERE account_number IN ",
+            "<foreach collection='accountNumbers' item='accountNumber' open='(' separator=',' close=')'>",
+            "#{accountNumber}",
+            "</foreach>",
+            "</script>"
+    })
+    @Observed(name = "bank.account.repository.find-by-account-numbers")
+    List<BankAccount> findByAccountNumbers(@Param("accountNumbers") Collection<String> accountNumbers);
+
+    @Update("UPDATE bank_account SET state = #{newState}, updated_at = #{updateAt}, ver = #{newVersion}, fence_token = GREATEST(fence_token, #{fenceToken}) WHERE id = #{id} AND account_number = #{accountNumber} AND state = #{state} AND ver = #{version} AND (#{fenceToken} = 0 OR fence_token <= #{fenceToken}) LIMIT 1")
     @Observed(name = "bank.account.repository.frozen-account")
-    int frozenAccountByIdAndVersion(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("state") int state, @Param("version") long version, @Param("newState") int newState, @Param("updateAt") LocalDateTime updateAt, @Param("newVersion") long newVersion);
+    int frozenAccountByIdAndVersion(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("state") int state, @Param("version") long version, @Param("newState") int newState, @Param("updateAt") LocalDateTime updateAt, @Param("newVersion") long newVersion, @Param("fenceToken") long fenceToken);
 
-    @Update("UPDATE bank_account SET state = #{newState}, deleted_at = #{deletedAt}, ver = #{newVersion} WHERE id = #{id} AND account_number = #{accountNumber} AND state = #{state} AND ver = #{version} AND balance = 0 LIMIT 1")
+    @Update("UPDATE bank_account SET state = #{newState}, deleted_at = #{deletedAt}, ver = #{newVersion}, fence_token = GREATEST(fence_token, #{fenceToken}) WHERE id = #{id} AND account_number = #{accountNumber} AND state = #{state} AND ver = #{version} AND balance = 0 AND slots = 0 AND (#{fenceToken} = 0 OR fence_token <= #{fenceToken}) LIMIT 1")
     @Observed(name = "bank.account.repository.close-account")
-    int closeAccountByIdAndVersion(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("state") int state, @Param("version") long version, @Param("newState") int newState, @Param("deletedAt") LocalDateTime deletedAt, @Param("newVersion") long newVersion);
+    int closeAccountByIdAndVersion(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("state") int state, @Param("version") long version, @Param("newState") int newState, @Param("deletedAt") LocalDateTime deletedAt, @Param("newVersion") long newVersion, @Param("fenceToken") long fenceToken);
 
-    @Update("UPDATE bank_account SET owner_name = #{ownerName}, contact_info = #{contactInfo}, updated_at = #{updatedAt}, ver = #{newVersion} WHERE id = #{id} AND account_number = #{accountNumber} AND state = #{state} AND ver = #{version} LIMIT 1")
+    @Update("UPDATE bank_account SET owner_name = #{ownerName}, contact_info = #{contactInfo}, updated_at = #{updatedAt}, ver = #{newVersion}, fence_token = GREATEST(fence_token, #{fenceToken}) WHERE id = #{id} AND account_number = #{accountNumber} AND state = #{state} AND ver = #{version} AND (#{fenceToken} = 0 OR fence_token <= #{fenceToken}) LIMIT 1")
     @Observed(name = "bank.account.repository.update-account")
-    int updateAccountByIdAndVersion(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("state") int state, @Param("version") long version, @Param("ownerName") String ownerName, @Param("contactInfo") String contactInfo, @Param("updatedAt") LocalDateTime updatedAt, @Param("newVersion") long newVersion);
+    int updateAccountByIdAndVersion(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("state") int state, @Param("version") long version, @Param("ownerName") String ownerName, @Param("contactInfo") String contactInfo, @Param("updatedAt") LocalDateTime updatedAt, @Param("newVersion") long newVersion, @Param("fenceToken") long fenceToken);
 
-    @Update("UPDATE bank_account SET balance = balance - #{amount}, updated_at = #{updatedAt}, ver = #{newVersion} WHERE id = #{id} AND account_number = #{accountNumber} AND state = #{state} AND ver = #{version} AND balance = #{balance} AND balance >= #{amount} LIMIT 1")
+    @Update("UPDATE bank_account SET balance = balance - #{amount}, updated_at = #{updatedAt}, ver = #{newVersion}, fence_token = GREATEST(fence_token, #{fenceToken}) WHERE id = #{id} AND account_number = #{accountNumber} AND state = #{state} AND ver = #{version} AND balance = #{balance} AND balance >= #{amount} AND (#{fenceToken} = 0 OR fence_token <= #{fenceToken}) LIMIT 1")
     @Observed(name = "bank.account.repository.reduce-balance")
-    int reduceBalanceByIdAndVersion(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("state") int state, @Param("version") long version, @Param("balance") BigDecimal balance, @Param("amount") BigDecimal amount, @Param("updatedAt") LocalDateTime updatedAt, @Param("newVersion") long newVersion);
+    int reduceBalanceByIdAndVersion(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("state") int state, @Param("version") long version, @Param("balance") BigDecimal balance, @Param("amount") BigDecimal amount, @Param("updatedAt") LocalDateTime updatedAt, @Param("newVersion") long newVersion, @Param("fenceToken") long fenceToken);
 
-    @Update("UPDATE bank_account SET balance = balance + #{amount}, updated_at = #{updatedAt}, ver = #{newVersion} WHERE id = #{id} AND account_number = #{accountNumber} AND state = #{state} AND ver = #{version} AND balance = #{balance} LIMIT 1")
+    @Update("UPDATE bank_account SET balance = balance + #{amount}, updated_at = #{updatedAt}, ver = #{newVersion}, fence_token = GREATEST(fence_token, #{fenceToken}) WHERE id = #{id} AND account_number = #{accountNumber} AND state = #{state} AND ver = #{version} AND balance = #{balance} AND (#{fenceToken} = 0 OR fence_token <= #{fenceToken}) LIMIT 1")
     @Observed(name = "bank.account.repository.increase-balance")
-    int increaseBalanceByIdAndVersion(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("state") int state, @Param("version") long version, @Param("balance") BigDecimal balance, @Param("amount") BigDecimal amount, @Param("updatedAt") LocalDateTime updatedAt, @Param("newVersion") long newVersion);
+    int increaseBalanceByIdAndVersion(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("state") int state, @Param("version") long version, @Param("balance") BigDecimal balance, @Param("amount") BigDecimal amount, @Param("updatedAt") LocalDateTime updatedAt, @Param("newVersion") long newVersion, @Param("fenceToken") long fenceToken);
+
+    @Update("UPDATE bank_account SET balance = #{newBalance}, updated_at = #{updatedAt}, ver = #{newVersion}, fence_token = GREATEST(fence_token, #{fenceToken}) WHERE id = #{id} AND account_number = #{accountNumber} AND state = #{state} AND ver = #{version} AND balance = #{balance} AND (#{fenceToken} = 0 OR fence_token <= #{fenceToken}) LIMIT 1")
+    @Observed(name = "bank.account.repository.update-balance")
+    int updateBalanceByIdAndVersion(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("state") int state, @Param("version") long version, @Param("balance") BigDecimal balance, @Param("newBalance") BigDecimal newBalance, @Param("updatedAt") LocalDateTime updatedAt, @Param("newVersion") long newVersion, @Param("fenceToken") long fenceToken);
+
+    /**
+     * move balance of the account row to slots
+     */
+    @Update("UPDATE bank_account SET balance = 0, slots = #{slots}, updated_at = #{updatedAt}, ver = #{newVersion}, fence_token = GREATEST(fence_token, #{fenceToken}) WHERE id = #{id} AND account_number = #{accountNumber} AND state = #{state} AND ver = #{version} AND balance = #{balance} AND slots = 0 AND (#{fenceToken} = 0 OR fence_token <= #{fenceToken}) LIMIT 1")
+    @Observed(name = "bank.account.repository.split-slots")
+    int splitSlotsByIdAndVersion(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("state") int state, @Param("version") long version, @Param("balance") BigDecimal balance, @Param("slots") int slots, @Param("updatedAt") LocalDateTime updatedAt, @Param("newVersion") long newVersion, @Param("fenceToken") long fenceToken);
+
+    /**
+     * move balance of slots back to the account row
+     */
+    @Update("UPDATE bank_account SET balance = balance + #{amount}, slots = 0, updated_at = #{updatedAt}, ver = #{newVersion}, fence_token = GREATEST(fence_token, #{fenceToken}) WHERE id = #{id} AND account_number = #{accountNumber} AND ver = #{version} AND slots = #{slots} AND (#{fenceToken} = 0 OR fence_token <= #{fenceToken}) LIMIT 1")
+    @Observed(name = "bank.account.repository.merge-slots")
+    int mergeSlotsByIdAndVersion(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("version") long version, @Param("slots") int slots, @Param("amount") BigDecimal amount, @Param("updatedAt") LocalDateTime updatedAt, @Param("newVersion") long newVersion, @Param("fenceToken") long fenceToken);
+
+    /**
+     * project balance owned by the ledger engine, the engine is the only writer of balance so no version guard
+     */
+    @Update("UPDATE bank_account SET balance = #{balance}, updated_at = #{updatedAt}, ver = #{newVersion} WHERE id = #{id} AND account_number = #{accountNumber} LIMIT 1")
+    @Observed(name = "bank.account.repository.project-balance")
+    int projectBalanceById(@Param("id") long id, @Param("accountNumber") String accountNumber, @Param("balance") BigDecimal balance, @Param("updatedAt") LocalDateTime updatedAt, @Param("newVersion") long newVersion);
 
     @Insert("INSERT INTO bank_account (id, account_number, account_type, owner_id, owner_name, contact_info, balance, balance_at, state, ver, created_at, updated_at, deleted_at) VALUES (#{id}, #{accountNumber}, #{accountType}, #{ownerId}, #{ownerName}, #{contactInfo}, #{balance}, #{balanceAt}, #{state}, #{ver}, #{createdAt}, #{updatedAt}, #{deletedAt})")
     int insert(BankAccount account);
@@ -0,0 +1,55 @@
+package iorihuang.bankaccountmanager.repository;
+
+import io.micrometer.observation.annotation.Observed;
+import iorihuang.bankaccountmanager.model.BankAccountSlot;
+import org.apache.ibatis.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+@Observed(name = "bank.account.slot.repository")
+public interface BankAccountSlotRepository {
+    @Insert({
+        "<script>",
+        "INSERT INTO bank_account_slot (account_id, account_number, slot_no, balance, ver, created_at, updated_at) VALUES ",
+        "<foreach collection='slots' item='slot' separator=','>",
+        "(#{slot.accountId}, #{slot.accountNumber}, #{slot.slotNo}, #{slot.balance}, #{slot.ver}, #{slot.createdAt}, #{slot.updatedAt})",
+        "</foreach>",
+        "</script>"
+    })
+    int batchInsert(@Param("slots") List<BankAccountSlot> slots);
+
+    @Select("SELECT id, account_id, account_number, slot_no, balance, ver, created_at, updated_at FROM bank_account_slot WHERE account_number = #{accountNumber} ORDER BY slot_no")
+    @Observed(name = "bank.account.slot.repository.find-by-account-number")
+    List<BankAccountSlot> findByAccountNumber(@Param("accountNumber") String accountNumber);
+
+    @Select("SELECT id, account_id, account_number, slot_no, balance, ver, created_at, updated_at FROM bank_account_slot WHERE account_number = #{accountNumber} ORDER BY slot_no FOR UPDATE")
+    @Observed(name = "bank.account.slot.repository.find-by-account-number-for-update")
+    List<BankAccountSlot> findByAccountNumberForUpdate(@Param("accountNumber") String accountNumber);
+
+    @Select("SELECT COALESCE(SUM(balance), 0) FROM bank_account_slot WHERE account_number = #{accountNumber}")
+    @Observed(name = "bank.account.slot.repository.sum-balance")
+    BigDecimal sumBalanceByAccountNumber(@Param("accountNumber") String accountNumber);
+
+    /**
+     * credit a slot without version guard, concurrent credits only wait for the row lock of the slot,
+     * the account row is guarded by state, slots and fence token instead: the subquery of an update is a locking read,
+     * so a freeze, merge or newer lock holder of the account either waits for this credit or fails it
+     */
+    @Update("UPDATE bank_account_slot SET balance = balance + #{amount}, updated_at = #{updatedAt}, ver = #{newVersion} WHERE account_number = #{accountNumber} AND slot_no = #{slotNo} AND EXISTS (SELECT 1 FROM bank_account WHERE account_number = #{accountNumber} AND state = #{state} AND slots = #{slots} AND (#{fenceToken} = 0 OR fence_token <= #{fenceToken})) LIMIT 1")
+    @Observed(name = "bank.account.slot.repository.increase-balance")
+    int increaseBalance(@Param("accountNumber") String accountNumber, @Param("slotNo") int slotNo, @Param("amount") BigDecimal amount, @Param("updatedAt") LocalDateTime updatedAt, @Param("newVersion") long newVersion, @Param("state") int state, @Param("slots") int slots, @Param("fenceToken") long fenceToken);
+
+    /**
+     * debit a slot only if its balance is enough, the account row is guarded as the credit
+     */
+    @Update("UPDATE bank_account_slot SET balance = balance - #{amount}, updated_at = #{updatedAt}, ver = #{newVersion} WHERE account_number = #{accountNumber} AND slot_no = #{slotNo} AND balance >= #{amount} AND EXISTS (SELECT 1 FROM bank_account WHERE account_number = #{accountNumber} AND state = #{state} AND slots = #{slots} AND (#{fenceToken} = 0 OR fence_token <= #{fenceToken})) LIMIT 1")
+    @Observed(name = "bank.account.slot.repository.reduce-balance")
+    int reduceBalance(@Param("accountNumber") String accountNumber, @Param("slotNo") int slotNo, @Param("amount") BigDecimal amount, @Param("updatedAt") LocalDateTime updatedAt, @Param("newVersion") long newVersion, @Param("state") int state, @Param("slots") int slots, @Param("fenceToken") long fenceToken);
+
+    @Delete("DELETE FROM bank_account_slot WHERE account_number = #{accountNumber}")
+    @Observed(name = "bank.account.slot.repository.delete-by-account-number")
+    int deleteByAccountNumber(@Param("accountNumber") String accountNumber);
+}
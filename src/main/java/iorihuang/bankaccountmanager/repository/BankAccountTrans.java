@@ -1,25 +1,39 @@
 package iorihuang.bankaccountmanager.repository;
 
+import iorihuang.bankaccountmanager.constant.AccountConst;
 import iorihuang.bankaccountmanager.exception.AccountError;
 import iorihuang.bankaccountmanager.exception.AccountException;
 import iorihuang.bankaccountmanager.exception.AccountExceptions;
 import iorihuang.bankaccountmanager.exception.error.*;
+import iorihuang.bankaccountmanager.helper.ringbuffer.RingBufferBatchWriter;
 import iorihuang.bankaccountmanager.model.BankAccount;
 import iorihuang.bankaccountmanager.model.BankAccountBalanceLog;
 import iorihuang.bankaccountmanager.model.BankAccountChangeLog;
+import iorihuang.bankaccountmanager.model.BankAccountSlot;
 import iorihuang.bankaccountmanager.model.BankAccountTransferLog;
 import iorihuang.bankaccountmanager.model.bankaccount.AccountState;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.BatchResult;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDateTime;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
 
 import static iorihuang.bankaccountmanager.constant.AccountConst.DUPLICATE_KEY;
 import static iorihuang.bankaccountmanager.constant.AccountConst.UNIQUE_CONSTRAINT;
@@ -35,6 +49,17 @@ public class BankAccountTrans {
     private final BankAccountChangeLogRepository changeLogRepository;
     private final BankAccountBalanceLogRepository balanceLogRepository;
     private final BankAccountTransferLogRepository transferLogRepository;
+    private final BankAccountSlotRepository slotRepository;
+    // JDBC batch executor for batch transfer
+    @Autowired
+    @Qualifier("primaryBatchSqlSessionTemplate")
+    private SqlSessionTemplate batchSqlSessionTemplate;
+    // ring buffer of balance logs of transfers written after commit, absent when the log writer is disabled
+    @Autowired(required = false)
+    @Qualifier("balanceLogWriter")
+    private RingBufferBatchWriter<BankAccountBalanceLog> balanceLogWriter;
+    @Autowired(required = false)
+    private BalanceLogReplayer balanceLogReplayer;
 
     /**
      * Create a bank account with transaction management
@@ -44,7 +69,7 @@ public class BankAccountTrans {
      * @param balanceLog
      * @return
      */
-    @Transactional(transactionManager = "primaryTransactionManager", rollbackFor = Throwable.class, isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRES_NEW)
+    @Transactional(transactionManager = "primaryTransactionManager", rollbackFor = Throwable.class, isolation = Isolation.REPEATABLE_READ, propagation = Propagation.NESTED)
     public BankAccount createAccount(BankAccount account, BankAccountChangeLog changeLog, BankAccountBalanceLog balanceLog) throws AccountError, AccountException {
         try {
             repository.insert(account);
@@ -80,10 +105,10 @@ public class BankAccountTrans {
      * @param contactInfo
      * @param newVersion
      * @param changeLog
-     * @return updated time
+     * @return account with the values written
      */
-    @Transactional(transactionManager = "primaryTransactionManager", rollbackFor = Throwable.class, isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRES_NEW)
-    public LocalDateTime updateAccount(BankAccount account, String ownerName, String contactInfo, long newVersion, BankAccountChangeLog changeLog) throws AccountError, AccountException {
+    @Transactional(transactionManager = "primaryTransactionManager", rollbackFor = Throwable.class, isolation = Isolation.REPEATABLE_READ, propagation = Propagation.NESTED)
+    public BankAccount updateAccount(BankAccount account, String ownerName, String contactInfo, long newVersion, BankAccountChangeLog changeLog) throws AccountError, AccountException {
         LocalDateTime now = LocalDateTime.now();
         String accountNumber = account.getAccountNumber();
         try {
@@ -95,11 +120,13 @@ public class BankAccountTrans {
                     ownerName,
                     contactInfo,
                     now,
-                    newVersion
+                    newVersion,
+                    fenceToken(account)
             );
             if (updatedRows == 0) {
-                log.error("Account update fail with no rows updated:{}", accountNumber);
-                throw AccountExceptions.updateAccount(accountNumber);
+                // state or version changed after read
+                log.warn("Account update fail with no rows updated:{}", accountNumber);
+                throw AccountExceptions.versionConflict(accountNumber);
             }
             if (changeLog != null) {
                 changeLogRepository.insert(changeLog);
@@ -110,7 +137,12 @@ public class BankAccountTrans {
             }
             throw new AccountUpdateError(e, "Account update error: " + account.getAccountNumber());
         }
-        return now;
+        return account.toBuilder()
+                .ownerName(ownerName)
+                .contactInfo(contactInfo)
+                .ver(newVersion)
+                .updatedAt(now)
+                .build();
     }
 
     /**
@@ -120,10 +152,10 @@ public class BankAccountTrans {
      * @param newState   new state
      * @param newVersion new version
      * @param changeLog
-     * @return delete timestamp
+     * @return account with the values written
      */
-    @Transactional(transactionManager = "primaryTransactionManager", rollbackFor = Throwable.class, isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRES_NEW)
-    public LocalDateTime deleteAccount(BankAccount account, AccountState newState, long newVersion, BankAccountChangeLog changeLog) throws AccountError, AccountException {
+    @Transactional(transactionManager = "primaryTransactionManager", rollbackFor = Throwable.class, isolation = Isolation.REPEATABLE_READ, propagation = Propagation.NESTED)
+    public BankAccount deleteAccount(BankAccount account, AccountState newState, long newVersion, BankAccountChangeLog changeLog) throws AccountError, AccountException {
         String accountNumber = account.getAccountNumber();
         LocalDateTime now = LocalDateTime.now();
         try {
@@ -137,7 +169,8 @@ public class BankAccountTrans {
                             account.getVer(),
                             newState.getCode(), // Set new state to CLOSED
                             now, // Deletion timestamp
-                            newVersion // New version number
+                            newVersion, // New version number
+                            fenceToken(account)
                     );
                     break;
                 case FROZEN:
@@ -148,7 +181,8 @@ public class BankAccountTrans {
                             account.getVer(),
                             newState.getCode(), // Set new state to FROZEN
                             now, // update timestamp
-                            newVersion // New version number
+                            newVersion, // New version number
+                            fenceToken(account)
                     );
                     break;
             }
@@ -164,7 +198,11 @@ public class BankAccountTrans {
             }
             throw new AccountDeleteError(e, "Account delete error: " + account.getAccountNumber());
         }
-        return now;
+        BankAccount.BankAccountBuilder deleted = account.toBuilder()
+                .state(newState.getCode())
+                .ver(newVersion);
+        // close sets deleted time, frozen sets updated time
+        return newState == AccountState.CLOSED ? deleted.deletedAt(now).build() : deleted.updatedAt(now).build();
     }
 
     /**
@@ -176,41 +214,349 @@ public class BankAccountTrans {
      * @param version
      * @param fromBalanceLog
      * @param toBalanceLog
-     * @return
+     * @return state of both accounts written
+     */
+    @Transactional(transactionManager = "primaryTransactionManager", rollbackFor = Throwable.class, isolation = Isolation.REPEATABLE_READ, propagation = Propagation.NESTED)
+    public TransferResult transfer(BankAccount from, BankAccount to, BigDecimal amount, long version, BankAccountBalanceLog fromBalanceLog, BankAccountBalanceLog toBalanceLog, BankAccountTransferLog transferLog) throws AccountError, AccountException {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            updateBalances(from, to, amount, version, now);
+            writeLogs(transferLog == null ? List.of() : List.of(transferLog), Stream.of(fromBalanceLog, toBalanceLog).filter(Objects::nonNull).toList());
+        } catch (Exception e) {
+            if (e instanceof AccountException) {
+                throw e;
+            }
+            throw new AccountTransferError(e, "Account transfer error from " + from.getAccountNumber() + " to " + to.getAccountNumber());
+        }
+        return TransferResult.of(from, to, amount, version, now);
+    }
+
+    /**
+     * Apply a batch of transfers in one transaction(group commit),
+     * each transfer is guarded by a savepoint, so a conflict only rolls back itself.
+     * The outcome of each transfer is written back to the command,
+     * and is only meaningful after this method returns(committed).
+     *
+     * @param commands transfers to apply
      */
     @Transactional(transactionManager = "primaryTransactionManager", rollbackFor = Throwable.class, isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRES_NEW)
-    public LocalDateTime transfer(BankAccount from, BankAccount to, BigDecimal amount, long version, BankAccountBalanceLog fromBalanceLog, BankAccountBalanceLog toBalanceLog, BankAccountTransferLog transferLog) throws AccountError, AccountException {
+    public void transferBatch(List<TransferCommand> commands) throws AccountError {
         LocalDateTime now = LocalDateTime.now();
+        TransactionStatus status = TransactionAspectSupport.currentTransactionStatus();
+        List<BankAccountTransferLog> transferLogs = new ArrayList<>(commands.size());
+        List<BankAccountBalanceLog> balanceLogs = new ArrayList<>(commands.size() * 2);
         try {
-            // Update the 'from' account balance
-            int updateFrom = repository.reduceBalanceByIdAndVersion(from.getId(), from.getAccountNumber(), from.getState(), from.getVer(), from.getBalance(), amount, now, version);
-            if (updateFrom <= 0) {
-                throw AccountExceptions.insufficientBalance(from.getAccountNumber(), amount);
+            for (TransferCommand command : commands) {
+                BankAccount from = command.getFrom();
+                BankAccount to = command.getTo();
+                Object savepoint = status.createSavepoint();
+                try {
+                    updateBalances(from, to, command.getAmount(), command.getVersion(), now);
+                } catch (Exception e) {
+                    status.rollbackToSavepoint(savepoint);
+                    command.setError(e instanceof AccountException ? e : new AccountTransferError(e, "Account transfer error from " + from.getAccountNumber() + " to " + to.getAccountNumber()));
+                    continue;
+                }
+                status.releaseSavepoint(savepoint);
+                command.setResult(TransferResult.of(from, to, command.getAmount(), command.getVersion(), now));
+                if (command.getTransferLog() != null) {
+                    transferLogs.add(command.getTransferLog());
+                }
+                if (command.getFromBalanceLog() != null) {
+                    balanceLogs.add(command.getFromBalanceLog());
+                }
+                if (command.getToBalanceLog() != null) {
+                    balanceLogs.add(command.getToBalanceLog());
+                }
             }
-            // Update the 'to' account balance
-            int updateTo = repository.increaseBalanceByIdAndVersion(to.getId(), to.getAccountNumber(), to.getState(), to.getVer(), to.getBalance(), amount, now, version);
-            if (updateTo <= 0) {
-                throw AccountExceptions.updateAccount(from.getAccountNumber());
+            writeLogs(transferLogs, balanceLogs);
+        } catch (Exception e) {
+            throw new AccountTransferError(e, "Account batch transfer error with size " + commands.size());
+        }
+    }
+
+    /**
+     * Apply net balance changes of a batch transfer in one transaction with JDBC batching,
+     * any conflict rolls back the whole batch
+     *
+     * @param changes      net balance change of each account
+     * @param transferLogs transfer logs
+     * @param balanceLogs  balance logs
+     * @param now          updated time
+     */
+    @Transactional(transactionManager = "primaryTransactionManager", rollbackFor = Throwable.class, isolation = Isolation.REPEATABLE_READ, propagation = Propagation.NESTED)
+    public void applyBalances(List<BalanceChange> changes, List<BankAccountTransferLog> transferLogs, List<BankAccountBalanceLog> balanceLogs, LocalDateTime now) throws AccountError, AccountException {
+        try {
+            // the executor type of the session can not be changed in an outer transaction, such as the one of db account locks
+            boolean batch = TransactionAspectSupport.currentTransactionStatus().isNewTransaction();
+            BankAccountRepository accountRepository = batch ? batchSqlSessionTemplate.getMapper(BankAccountRepository.class) : repository;
+            List<Integer> counts = new ArrayList<>(changes.size());
+            for (BalanceChange change : changes) {
+                BankAccount account = change.getAccount();
+                counts.add(accountRepository.updateBalanceByIdAndVersion(account.getId(), account.getAccountNumber(), account.getState(), account.getVer(), account.getBalance(), change.getNewBalance(), now, change.getNewVersion(), fenceToken(account)));
             }
-            if (transferLog != null) {
-                transferLogRepository.insert(transferLog);
+            if (batch) {
+                counts.clear();
+                for (BatchResult result : batchSqlSessionTemplate.flushStatements()) {
+                    for (int count : result.getUpdateCounts()) {
+                        counts.add(count);
+                    }
+                }
+            }
+            for (int index = 0; index < counts.size(); index++) {
+                if (counts.get(index) == 0) {
+                    String accountNumber = changes.get(index).getAccount().getAccountNumber();
+                    log.error("Account batch transfer fail with no rows updated:{}", accountNumber);
+                    throw AccountExceptions.versionConflict(accountNumber);
+                }
             }
-            //todo move to disruptor
-            if (fromBalanceLog != null) {
-                balanceLogRepository.insert(fromBalanceLog);
+            BankAccountTransferLogRepository accountTransferLogRepository = batch ? batchSqlSessionTemplate.getMapper(BankAccountTransferLogRepository.class) : transferLogRepository;
+            for (int i = 0; i < transferLogs.size(); i += AccountConst.IN_QUERY_MAX_SIZE) {
+                accountTransferLogRepository.batchInsert(transferLogs.subList(i, Math.min(transferLogs.size(), i + AccountConst.IN_QUERY_MAX_SIZE)));
             }
-            if (toBalanceLog != null) {
-                balanceLogRepository.insert(toBalanceLog);
+            BankAccountBalanceLogRepository accountBalanceLogRepository = batch ? batchSqlSessionTemplate.getMapper(BankAccountBalanceLogRepository.class) : balanceLogRepository;
+            for (int i = 0; i < balanceLogs.size(); i += AccountConst.IN_QUERY_MAX_SIZE) {
+                accountBalanceLogRepository.batchInsert(balanceLogs.subList(i, Math.min(balanceLogs.size(), i + AccountConst.IN_QUERY_MAX_SIZE)));
+            }
+            if (batch) {
+                batchSqlSessionTemplate.flushStatements();
             }
         } catch (Exception e) {
             if (e instanceof AccountException) {
                 throw e;
             }
-            throw new AccountTransferError(e, "Account transfer error from " + from.getAccountNumber() + " to " + to.getAccountNumber());
+            throw new AccountTransferError(e, "Account batch transfer error with accounts " + changes.size());
+        }
+    }
+
+    /**
+     * Split balance of the account row into slots of hot account
+     *
+     * @param account    account with slots 0
+     * @param slots      slots to split into
+     * @param newVersion new version
+     * @return updated time
+     */
+    @Transactional(transactionManager = "primaryTransactionManager", rollbackFor = Throwable.class, isolation = Isolation.REPEATABLE_READ, propagation = Propagation.NESTED)
+    public LocalDateTime splitSlots(BankAccount account, int slots, long newVersion) throws AccountError, AccountException {
+        LocalDateTime now = LocalDateTime.now();
+        String accountNumber = account.getAccountNumber();
+        try {
+            int updatedRows = repository.splitSlotsByIdAndVersion(account.getId(), accountNumber, account.getState(), account.getVer(), account.getBalance(), slots, now, newVersion, fenceToken(account));
+            if (updatedRows <= 0) {
+                log.error("Account split slots fail with no rows updated:{}", accountNumber);
+                throw AccountExceptions.updateAccount(accountNumber);
+            }
+            // evenly split, the remainder goes to slot 0
+            BigDecimal share = account.getBalance().divide(BigDecimal.valueOf(slots), AccountConst.BALANCE_SAVE_DOTS, RoundingMode.FLOOR);
+            BigDecimal first = account.getBalance().subtract(share.multiply(BigDecimal.valueOf(slots - 1)));
+            List<BankAccountSlot> list = new ArrayList<>(slots);
+            for (int i = 0; i < slots; i++) {
+                list.add(BankAccountSlot.builder()
+                        .accountId(account.getId())
+                        .accountNumber(accountNumber)
+                        .slotNo(i)
+                        .balance(i == 0 ? first : share)
+                        .ver(newVersion)
+                        .createdAt(now)
+                        .updatedAt(now)
+                        .build());
+            }
+            slotRepository.batchInsert(list);
+        } catch (Exception e) {
+            if (e instanceof AccountException) {
+                throw e;
+            }
+            throw new AccountUpdateError(e, "Account split slots error: " + accountNumber);
+        }
+        return now;
+    }
+
+    /**
+     * Merge balance of slots back to the account row, credits to the deleted slots fail and roll back
+     *
+     * @param account    hot account
+     * @param newVersion new version
+     * @return updated time
+     */
+    @Transactional(transactionManager = "primaryTransactionManager", rollbackFor = Throwable.class, isolation = Isolation.REPEATABLE_READ, propagation = Propagation.NESTED)
+    public LocalDateTime mergeSlots(BankAccount account, long newVersion) throws AccountError, AccountException {
+        LocalDateTime now = LocalDateTime.now();
+        String accountNumber = account.getAccountNumber();
+        try {
+            BigDecimal amount = slotRepository.findByAccountNumberForUpdate(accountNumber).stream()
+                    .map(BankAccountSlot::getBalance)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            slotRepository.deleteByAccountNumber(accountNumber);
+            int updatedRows = repository.mergeSlotsByIdAndVersion(account.getId(), accountNumber, account.getVer(), account.getSlots(), amount, now, newVersion, fenceToken(account));
+            if (updatedRows <= 0) {
+                log.error("Account merge slots fail with no rows updated:{}", accountNumber);
+                throw AccountExceptions.updateAccount(accountNumber);
+            }
+        } catch (Exception e) {
+            if (e instanceof AccountException) {
+                throw e;
+            }
+            throw new AccountUpdateError(e, "Account merge slots error: " + accountNumber);
         }
         return now;
     }
 
+    /**
+     * Project balances applied by the ledger engine to database
+     *
+     * @param accounts     latest balance, version and updated time of each account
+     * @param transferLogs transfer logs
+     * @param balanceLogs  balance logs
+     */
+    @Transactional(transactionManager = "primaryTransactionManager", rollbackFor = Throwable.class, isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRES_NEW)
+    public void projectBalances(List<BankAccount> accounts, List<BankAccountTransferLog> transferLogs, List<BankAccountBalanceLog> balanceLogs) throws AccountError {
+        try {
+            for (BankAccount account : accounts) {
+                int updatedRows = repository.projectBalanceById(account.getId(), account.getAccountNumber(), account.getBalance(), account.getUpdatedAt(), account.getVer());
+                if (updatedRows <= 0) {
+                    log.error("Ledger projection fail with no rows updated:{}", account.getAccountNumber());
+                }
+            }
+            writeLogs(transferLogs, balanceLogs);
+        } catch (Exception e) {
+            throw new AccountTransferError(e, "Ledger projection error with accounts " + accounts.size());
+        }
+    }
+
+    /**
+     * reduce 'from' and increase 'to' balance with version guard
+     */
+    private void updateBalances(BankAccount from, BankAccount to, BigDecimal amount, long version, LocalDateTime now) throws AccountException {
+        // Update the 'from' account balance
+        if (from.isHot()) {
+            reduceSlots(from, amount, version, now);
+        } else {
+            int updateFrom = repository.reduceBalanceByIdAndVersion(from.getId(), from.getAccountNumber(), from.getState(), from.getVer(), from.getBalance(), amount, now, version, fenceToken(from));
+            if (updateFrom <= 0) {
+                // balance read is checked by the caller, so the account changed after read
+                throw AccountExceptions.versionConflict(from.getAccountNumber());
+            }
+        }
+        // Update the 'to' account balance
+        if (to.isHot()) {
+            increaseSlot(to, amount, version, now);
+        } else {
+            int updateTo = repository.increaseBalanceByIdAndVersion(to.getId(), to.getAccountNumber(), to.getState(), to.getVer(), to.getBalance(), amount, now, version, fenceToken(to));
+            if (updateTo <= 0) {
+                throw AccountExceptions.versionConflict(to.getAccountNumber());
+            }
+        }
+    }
+
+    /**
+     * credit a random slot of hot account, so concurrent credits rarely wait for the same row
+     */
+    private void increaseSlot(BankAccount account, BigDecimal amount, long version, LocalDateTime now) throws AccountException {
+        int slotNo = ThreadLocalRandom.current().nextInt(account.getSlots());
+        if (slotRepository.increaseBalance(account.getAccountNumber(), slotNo, amount, now, version, account.getState(), account.getSlots(), fenceToken(account)) <= 0) {
+            // slots merged, account frozen or locked by a newer holder after read
+            throw AccountExceptions.versionConflict(account.getAccountNumber());
+        }
+    }
+
+    /**
+     * debit hot account: one slot with enough balance from a random start first,
+     * then drain slots from the richest if no single slot is enough
+     * ------------------
+     * debits are serialized by the account lock and credits only add, so balances read are lower bounds,
+     * a slot debit within its read balance fails only if the account row changed after read
+     */
+    private void reduceSlots(BankAccount account, BigDecimal amount, long version, LocalDateTime now) throws AccountException {
+        String accountNumber = account.getAccountNumber();
+        List<BankAccountSlot> slots = slotRepository.findByAccountNumber(accountNumber);
+        if (!slots.isEmpty()) {
+            int start = ThreadLocalRandom.current().nextInt(slots.size());
+            for (int i = 0; i < slots.size(); i++) {
+                BankAccountSlot slot = slots.get((start + i) % slots.size());
+                if (slot.getBalance().compareTo(amount) >= 0) {
+                    reduceSlot(account, slot.getSlotNo(), amount, version, now);
+                    return;
+                }
+            }
+        }
+        BigDecimal remaining = amount;
+        slots.sort(Comparator.comparing(BankAccountSlot::getBalance).reversed());
+        for (BankAccountSlot slot : slots) {
+            BigDecimal part = slot.getBalance().min(remaining);
+            if (part.signum() <= 0) {
+                break;
+            }
+            reduceSlot(account, slot.getSlotNo(), part, version, now);
+            remaining = remaining.subtract(part);
+            if (remaining.signum() == 0) {
+                return;
+            }
+        }
+        // debits of drained slots are rolled back with the transaction
+        throw AccountExceptions.insufficientBalance(accountNumber, amount);
+    }
+
+    private void reduceSlot(BankAccount account, int slotNo, BigDecimal amount, long version, LocalDateTime now) throws AccountException {
+        if (slotRepository.reduceBalance(account.getAccountNumber(), slotNo, amount, now, version, account.getState(), account.getSlots(), fenceToken(account)) <= 0) {
+            // debits of other slots are rolled back with the transaction
+            throw AccountExceptions.versionConflict(account.getAccountNumber());
+        }
+    }
+
+    /**
+     * Insert transfer logs in the transaction of the balances, by one multi-row insert of each chunk,
+     * so logs are committed or rolled back together with the balances and never lost after commit.
+     * balance logs carrying a transfer id are published to the log writer after commit instead,
+     * the ones lost are rebuilt from their transfer log by the replay
+     */
+    private void writeLogs(List<BankAccountTransferLog> transferLogs, List<BankAccountBalanceLog> balanceLogs) {
+        for (int i = 0; i < transferLogs.size(); i += AccountConst.IN_QUERY_MAX_SIZE) {
+            transferLogRepository.batchInsert(transferLogs.subList(i, Math.min(transferLogs.size(), i + AccountConst.IN_QUERY_MAX_SIZE)));
+        }
+        if (null != balanceLogWriter && TransactionSynchronizationManager.isSynchronizationActive()
+                && !balanceLogs.isEmpty() && balanceLogs.stream().allMatch(l -> null != l.getTransferId())) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishBalanceLogs(balanceLogs);
+                }
+            });
+            return;
+        }
+        for (int i = 0; i < balanceLogs.size(); i += AccountConst.IN_QUERY_MAX_SIZE) {
+            balanceLogRepository.batchInsert(balanceLogs.subList(i, Math.min(balanceLogs.size(), i + AccountConst.IN_QUERY_MAX_SIZE)));
+        }
+    }
+
+    /**
+     * Publish balance logs committed to the log writer, insert them directly when the ring buffer is full
+     */
+    private void publishBalanceLogs(List<BankAccountBalanceLog> balanceLogs) {
+        List<BankAccountBalanceLog> rejected = new ArrayList<>();
+        for (BankAccountBalanceLog balanceLog : balanceLogs) {
+            if (!balanceLogWriter.publish(balanceLog)) {
+                rejected.add(balanceLog);
+            }
+        }
+        if (rejected.isEmpty()) {
+            return;
+        }
+        try {
+            balanceLogReplayer.insert(rejected);
+        } catch (Exception e) {
+            // the transfer is committed already, its balance logs are rebuilt by the replay
+            log.error("Balance logs of transfer {} insert fail, left to the replay", rejected.get(0).getTransferId(), e);
+        }
+    }
+
+    /**
+     * fence token carried by the account, 0 if not fenced
+     */
+    private static long fenceToken(BankAccount account) {
+        return null == account.getFenceToken() ? 0 : account.getFenceToken();
+    }
+
     /**
      * 强制新事务读取，避免JPA一级缓存影��
      */
@@ -5,7 +5,9 @@ import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
@@ -15,9 +17,9 @@ public interface BankAccountTransferLogRepository {
      */
     @Insert({
         "<script>",
-        "INSERT INTO bank_account_transfer_log (from_account_id, from_account_number, to_account_id, to_account_number, amount, before_balance_from, after_balance_from, before_balance_to, after_balance_to, created_at) VALUES ",
+        "INSERT INTO bank_account_transfer_log (from_account_id, from_account_number, to_account_id, to_account_number, amount, before_balance_from, after_balance_from, before_balance_to, after_balance_to, transfer_id, created_at) VALUES ",
         "<foreach collection='logs' item='log' separator=','>",
-        "(#{log.fromAccountId}, #{log.fromAccountNumber}, #{log.toAccountId}, #{log.toAccountNumber}, #{log.amount}, #{log.beforeBalanceFrom}, #{log.afterBalanceFrom}, #{log.beforeBalanceTo}, #{log.afterBalanceTo}, #{log.createdAt})",
+        "(#{log.fromAccountId}, #{log.fromAccountNumber}, #{log.toAccountId}, #{log.toAccountNumber}, #{log.amount}, #{log.beforeBalanceFrom}, #{log.afterBalanceFrom}, #{log.beforeBalanceTo}, #{log.afterBalanceTo}, #{log.transferId}, #{log.createdAt})",
         "</foreach>",
         "</script>"
     })
@@ -26,7 +28,13 @@ public interface BankAccountTransferLogRepository {
     /**
      * 插入单条转账流水
      */
-    @Insert("INSERT INTO bank_account_transfer_log (from_account_id, from_account_number, to_account_id, to_account_number, amount, before_balance_from, after_balance_from, before_balance_to, after_balance_to, created_at) VALUES (#{fromAccountId}, #{fromAccountNumber}, #{toAccountId}, #{toAccountNumber}, #{amount}, #{beforeBalanceFrom}, #{afterBalanceFrom}, #{beforeBalanceTo}, #{afterBalanceTo}, #{createdAt})")
+    @Insert("INSERT INTO bank_account_transfer_log (from_account_id, from_account_number, to_account_id, to_account_number, amount, before_balance_from, after_balance_from, before_balance_to, after_balance_to, transfer_id, created_at) VALUES (#{fromAccountId}, #{fromAccountNumber}, #{toAccountId}, #{toAccountNumber}, #{amount}, #{beforeBalanceFrom}, #{afterBalanceFrom}, #{beforeBalanceTo}, #{afterBalanceTo}, #{transferId}, #{createdAt})")
     @Options(useGeneratedKeys = true, keyProperty = "id")
     int insert(BankAccountTransferLog log);
+
+    /**
+     * 查询异步写入的余额流水缺失的转账流水
+     */
+    @Select("SELECT t.id, t.from_account_id, t.from_account_number, t.to_account_id, t.to_account_number, t.amount, t.before_balance_from, t.after_balance_from, t.before_balance_to, t.after_balance_to, t.transfer_id, t.created_at FROM bank_account_transfer_log t WHERE t.created_at > #{since} AND t.created_at <= #{before} AND t.transfer_id IS NOT NULL AND (NOT EXISTS (SELECT 1 FROM bank_account_balance_log b WHERE b.transfer_id = t.transfer_id AND b.account_id = t.from_account_id) OR NOT EXISTS (SELECT 1 FROM bank_account_balance_log b WHERE b.transfer_id = t.transfer_id AND b.account_id = t.to_account_id)) ORDER BY t.created_at LIMIT #{limit}")
+    List<BankAccountTransferLog> findWithoutBalanceLogs(@Param("since") LocalDateTime since, @Param("before") LocalDateTime before, @Param("limit") int limit);
 }
@@ -0,0 +1,98 @@
+package iorihuang.bankaccountmanager.repository;
+
+import iorihuang.bankaccountmanager.helper.lock.AccountLock;
+import iorihuang.bankaccountmanager.helper.lock.AccountLockProvider;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.TreeSet;
+
+/**
+ * Accounts locked by SELECT ... FOR UPDATE on bank_account in a transaction of the current thread.
+ * ------------------
+ * writes of BankAccountTrans join the transaction by savepoints(NESTED), so they see the locked rows,
+ * a failed write only rolls back to its savepoint, the transaction is committed on close
+ * ------------------
+ * row locks are only taken on existing accounts, creation is still guarded by the unique key
+ */
+@Slf4j
+public class DbAccountLockProvider implements AccountLockProvider {
+    private final BankAccountRepository repository;
+    private final PlatformTransactionManager transactionManager;
+    private final DefaultTransactionDefinition definition;
+
+    /**
+     * @param repository         account repository
+     * @param transactionManager transaction manager of bank_account
+     * @param timeoutSeconds     timeout of the transaction, including the wait for row locks
+     */
+    public DbAccountLockProvider(BankAccountRepository repository, PlatformTransactionManager transactionManager, int timeoutSeconds) {
+        this.repository = repository;
+        this.transactionManager = transactionManager;
+        this.definition = new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRED);
+        this.definition.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        this.definition.setTimeout(timeoutSeconds);
+        this.definition.setName("account-lock");
+    }
+
+    @Override
+    public AccountLock lock(String... accountNumbers) {
+        TreeSet<String> sorted = new TreeSet<>();
+        for (String accountNumber : accountNumbers) {
+            sorted.add(accountNumber);
+        }
+        // the rows are locked in the transaction already active, it is released by its owner
+        boolean participating = TransactionSynchronizationManager.isActualTransactionActive();
+        TransactionStatus status = participating ? null : transactionManager.getTransaction(definition);
+        try {
+            repository.lockByAccountNumbers(sorted);
+        } catch (Exception e) {
+            log.warn("Account row lock fail: {}", sorted, e);
+            if (null != status) {
+                transactionManager.rollback(status);
+            }
+            return new DbAccountLock(transactionManager, null, false);
+        }
+        return new DbAccountLock(transactionManager, status, true);
+    }
+
+    private static final class DbAccountLock implements AccountLock {
+        private final PlatformTransactionManager transactionManager;
+        private TransactionStatus status;
+        private final boolean locked;
+
+        private DbAccountLock(PlatformTransactionManager transactionManager, TransactionStatus status, boolean locked) {
+            this.transactionManager = transactionManager;
+            this.status = status;
+            this.locked = locked;
+        }
+
+        @Override
+        public boolean isLocked() {
+            return locked;
+        }
+
+        @Override
+        public boolean holdsTransaction() {
+            return locked;
+        }
+
+        @Override
+        public void close() {
+            if (null == status) {
+                return;
+            }
+            TransactionStatus current = status;
+            status = null;
+            if (current.isRollbackOnly()) {
+                transactionManager.rollback(current);
+            } else {
+                transactionManager.commit(current);
+            }
+        }
+    }
+}
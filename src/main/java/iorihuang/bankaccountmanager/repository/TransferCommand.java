@@ -0,0 +1,37 @@
+package iorihuang.bankaccountmanager.repository;
+
+import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.model.BankAccountBalanceLog;
+import iorihuang.bankaccountmanager.model.BankAccountTransferLog;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * One transfer of a group commit batch, the outcome is written back by BankAccountTrans
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TransferCommand {
+    private BankAccount from;
+    private BankAccount to;
+    private BigDecimal amount;
+    private long version;
+    private BankAccountBalanceLog fromBalanceLog;
+    private BankAccountBalanceLog toBalanceLog;
+    private BankAccountTransferLog transferLog;
+
+    /**
+     * state of both accounts if the transfer is applied
+     */
+    private TransferResult result;
+    /**
+     * AccountException or AccountError if the transfer is rolled back
+     */
+    private Exception error;
+}
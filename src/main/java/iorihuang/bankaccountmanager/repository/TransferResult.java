@@ -0,0 +1,44 @@
+package iorihuang.bankaccountmanager.repository;
+
+import iorihuang.bankaccountmanager.model.BankAccount;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * State of both accounts written by a transfer, computed from the values applied
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TransferResult {
+    private BankAccount from;
+    private BankAccount to;
+    private LocalDateTime updatedAt;
+
+    /**
+     * @param from    'from' account read before the transfer
+     * @param to      'to' account read before the transfer
+     * @param amount  amount transferred
+     * @param version new version written
+     * @param now     updated time written
+     */
+    public static TransferResult of(BankAccount from, BankAccount to, BigDecimal amount, long version, LocalDateTime now) {
+        return new TransferResult(applied(from, amount.negate(), version, now), applied(to, amount, version, now), now);
+    }
+
+    private static BankAccount applied(BankAccount account, BigDecimal change, long version, LocalDateTime now) {
+        BankAccount.BankAccountBuilder builder = account.toBuilder().updatedAt(now);
+        if (account.isHot()) {
+            // slots are changed, the account row and its version are not
+            BigDecimal slotBalance = null == account.getSlotBalance() ? BigDecimal.ZERO : account.getSlotBalance();
+            return builder.slotBalance(slotBalance.add(change)).build();
+        }
+        return builder.balance(account.getBalance().add(change)).ver(version).build();
+    }
+}
@@ -0,0 +1,43 @@
+package iorihuang.bankaccountmanager.service;
+
+import iorihuang.bankaccountmanager.dto.BankAccountDTO;
+import iorihuang.bankaccountmanager.helper.cache.CacheRefresher;
+import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.repository.BankAccountRepository;
+import iorihuang.bankaccountmanager.repository.BankAccountSlotRepository;
+
+import java.util.Optional;
+
+/**
+ * Refresh ahead of the account cache: only the version is read if the account is not hot,
+ * the whole account is read only if the version has moved.
+ * hot accounts are always read again as credits to their slots do not move the version.
+ * it also validates the cached account of validated reads
+ */
+public class AccountCacheRefresher implements CacheRefresher {
+    private final BankAccountRepository repository;
+    private final BankAccountSlotRepository slotRepository;
+
+    public AccountCacheRefresher(BankAccountRepository repository, BankAccountSlotRepository slotRepository) {
+        this.repository = repository;
+        this.slotRepository = slotRepository;
+    }
+
+    @Override
+    public Object reload(String accountNumber, Object current) {
+        if (current instanceof BankAccountDTO cached && null == cached.getSlots()) {
+            Optional<Long> ver = repository.findVersionByAccountNumber(accountNumber);
+            if (ver.isEmpty()) {
+                return null;
+            }
+            if (ver.get() == cached.cacheVersion()) {
+                return current;
+            }
+        }
+        Optional<BankAccount> account = repository.findByAccountNumber(accountNumber);
+        if (account.isPresent() && account.get().isHot()) {
+            account.get().setSlotBalance(slotRepository.sumBalanceByAccountNumber(accountNumber));
+        }
+        return account.map(BankAccountServiceImpl::toDTO).orElse(null);
+    }
+}
@@ -0,0 +1,145 @@
+package iorihuang.bankaccountmanager.service;
+
+import iorihuang.bankaccountmanager.helper.warmup.CacheWarmupProperties;
+import iorihuang.bankaccountmanager.helper.warmup.HotKeySnapshot;
+import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.repository.BankAccountRepository;
+import iorihuang.bankaccountmanager.repository.BankAccountSlotRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot accounts of the account cache are written to a local snapshot on a schedule and at shutdown,
+ * and preloaded into the cache by multi-row queries at startup before the application is ready.
+ * ------------------
+ * state: idle -> warming -> done or failed, a failed warm-up only leaves the cache cold
+ */
+@Slf4j
+public class AccountCacheWarmer implements AutoCloseable {
+    private final CacheManager cacheManager;
+    private final BankAccountRepository repository;
+    private final BankAccountSlotRepository slotRepository;
+    private final CacheWarmupProperties properties;
+    private final HotKeySnapshot snapshot;
+    private ScheduledExecutorService scheduler;
+
+    private volatile String state = "idle";
+    private volatile int total;
+    private volatile int loaded;
+    private volatile long durationMillis;
+    private volatile long lastSnapshotAt;
+    private volatile int lastSnapshotSize;
+
+    public AccountCacheWarmer(CacheManager cacheManager, BankAccountRepository repository, BankAccountSlotRepository slotRepository, CacheWarmupProperties properties) {
+        this.cacheManager = cacheManager;
+        this.repository = repository;
+        this.slotRepository = slotRepository;
+        this.properties = properties;
+        this.snapshot = new HotKeySnapshot(Path.of(properties.getSnapshotFile()));
+    }
+
+    /**
+     * Start writing snapshots on schedule
+     */
+    public void start() {
+        if (properties.getSnapshotIntervalSeconds() <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "account-cache-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::snapshot, properties.getSnapshotIntervalSeconds(), properties.getSnapshotIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Preload accounts of the snapshot into the account cache
+     */
+    public void warmUp() {
+        Cache cache = cacheManager.getCache("account");
+        if (null == cache) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        state = "warming";
+        try {
+            List<String> accountNumbers = snapshot.read();
+            total = accountNumbers.size();
+            for (int from = 0; from < accountNumbers.size(); from += properties.getBatchSize()) {
+                List<String> batch = accountNumbers.subList(from, Math.min(accountNumbers.size(), from + properties.getBatchSize()));
+                for (BankAccount account : repository.findByAccountNumbers(batch)) {
+                    if (account.isHot()) {
+                        account.setSlotBalance(slotRepository.sumBalanceByAccountNumber(account.getAccountNumber()));
+                    }
+                    cache.put(account.getAccountNumber(), BankAccountServiceImpl.toDTO(account));
+                }
+                loaded = from + batch.size();
+            }
+            state = "done";
+        } catch (Exception e) {
+            state = "failed";
+            log.warn("Account cache warm-up fail from {}", snapshot.getFile(), e);
+        } finally {
+            durationMillis = System.currentTimeMillis() - start;
+        }
+        log.info("Account cache warm-up {} with {}/{} accounts in {} ms", state, loaded, total, durationMillis);
+    }
+
+    /**
+     * Write the hottest accounts of the account cache to the snapshot
+     */
+    public void snapshot() {
+        Cache cache = cacheManager.getCache("account");
+        if (null == cache || !(cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> local)) {
+            return;
+        }
+        try {
+            List<String> hottest = HotKeySnapshot.hottest(local, properties.getTopN());
+            if (hottest.isEmpty()) {
+                // keep the last snapshot if nothing is read yet, such as right after startup
+                return;
+            }
+            snapshot.write(hottest);
+            lastSnapshotAt = System.currentTimeMillis();
+            lastSnapshotSize = hottest.size();
+        } catch (Exception e) {
+            log.warn("Account cache snapshot write fail to {}", snapshot.getFile(), e);
+        }
+    }
+
+    /**
+     * Progress of the warm-up and the last snapshot, for the actuator endpoint
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state);
+        status.put("total", total);
+        status.put("loaded", loaded);
+        status.put("durationMillis", durationMillis);
+        status.put("snapshotFile", snapshot.getFile().toString());
+        status.put("lastSnapshotAt", lastSnapshotAt);
+        status.put("lastSnapshotSize", lastSnapshotSize);
+        return status;
+    }
+
+    /**
+     * Stop the schedule and write the last snapshot
+     */
+    @Override
+    public void close() {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+        }
+        snapshot();
+    }
+}
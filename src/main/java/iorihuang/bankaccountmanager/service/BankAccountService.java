@@ -4,6 +4,8 @@ import iorihuang.bankaccountmanager.dto.*;
 import iorihuang.bankaccountmanager.exception.AccountError;
 import iorihuang.bankaccountmanager.exception.AccountException;
 
+import java.util.List;
+
 public interface BankAccountService {
     BankAccountDTO createAccount(CreateAccountRequest request) throws AccountError, AccountException;
 
@@ -15,6 +17,14 @@ public interface BankAccountService {
 
     BankAccountDTO getAccount(String accountNumber) throws AccountException, AccountError;
 
+    BankAccountDTO getValidatedAccount(String accountNumber) throws AccountException, AccountError;
+
     BankTransferDTO transfer(TransferRequest request) throws AccountException, AccountError;
+
+    BankTransferBatchDTO transferBatch(List<TransferRequest> requests) throws AccountException, AccountError;
+
+    BankAccountDTO splitAccountSlots(String accountNumber, int slots) throws AccountException, AccountError;
+
+    BankAccountDTO mergeAccountSlots(String accountNumber) throws AccountException, AccountError;
 }
 
@@ -6,11 +6,21 @@ import iorihuang.bankaccountmanager.dto.*;
 import iorihuang.bankaccountmanager.exception.AccountError;
 import iorihuang.bankaccountmanager.exception.AccountException;
 import iorihuang.bankaccountmanager.exception.AccountExceptions;
+import iorihuang.bankaccountmanager.exception.CodeE;
 import iorihuang.bankaccountmanager.exception.ExpCode;
 import iorihuang.bankaccountmanager.exception.error.AccountReadError;
+import iorihuang.bankaccountmanager.exception.error.AccountTransferError;
+import iorihuang.bankaccountmanager.exception.error.AccountTransferUnknownError;
 import iorihuang.bankaccountmanager.exception.error.AccountUpdateError;
 import iorihuang.bankaccountmanager.exception.exception.*;
-import iorihuang.bankaccountmanager.helper.RedisLock;
+import iorihuang.bankaccountmanager.helper.cache.SingleFlight;
+import iorihuang.bankaccountmanager.helper.cache.TwoLevelCacheProperties;
+import iorihuang.bankaccountmanager.helper.existence.AccountExistenceFilter;
+import iorihuang.bankaccountmanager.helper.groupcommit.GroupCommitExecutor;
+import iorihuang.bankaccountmanager.helper.groupcommit.GroupCommitProperties;
+import iorihuang.bankaccountmanager.helper.lock.AccountLock;
+import iorihuang.bankaccountmanager.helper.lock.AccountLockProvider;
+import iorihuang.bankaccountmanager.helper.retry.VersionRetryPolicy;
 import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdHelper;
 import iorihuang.bankaccountmanager.model.BankAccount;
 import iorihuang.bankaccountmanager.model.BankAccountBalanceLog;
@@ -20,24 +30,32 @@ import iorihuang.bankaccountmanager.model.bankaccount.AccountState;
 import iorihuang.bankaccountmanager.model.bankaccount.AccountType;
 import iorihuang.bankaccountmanager.model.bankaccountbalancelog.BalanceChangeType;
 import iorihuang.bankaccountmanager.model.bankaccountchangelog.AccountChangeType;
+import iorihuang.bankaccountmanager.repository.BalanceChange;
 import iorihuang.bankaccountmanager.repository.BankAccountRepository;
+import iorihuang.bankaccountmanager.repository.BankAccountSlotRepository;
 import iorihuang.bankaccountmanager.repository.BankAccountTrans;
+import iorihuang.bankaccountmanager.repository.TransferCommand;
+import iorihuang.bankaccountmanager.repository.TransferResult;
+import iorihuang.bankaccountmanager.service.ledger.LedgerEngine;
+import iorihuang.bankaccountmanager.service.ledger.LedgerTransferResult;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
@@ -48,10 +66,37 @@ import java.util.stream.Collectors;
 @Slf4j
 @Observed(name = "bank.account.service")
 public class BankAccountServiceImpl implements BankAccountService {
-    // lock before op
+    // lock before op, backend chosen by accountlock.backend
     @Autowired(required = false)
-    private StringRedisTemplate redisTemplate;
+    private AccountLockProvider accountLockProvider;
+    // group commit of transfers, transfer is committed one by one if absent
+    @Autowired(required = false)
+    private GroupCommitExecutor<TransferCommand> transferGroupCommitExecutor;
+    @Autowired(required = false)
+    private GroupCommitProperties groupCommitProperties;
+    // evict accounts changed by batch transfer
+    @Autowired(required = false)
+    private CacheManager cacheManager;
+    // write accounts changed by transfer into the two level cache, evicted if absent
+    @Autowired(required = false)
+    private TwoLevelCacheProperties twoLevelCacheProperties;
+    // concurrent misses of the entity cache share one db read, every miss reads db if absent
+    @Autowired(required = false)
+    private SingleFlight<String, Optional<BankAccount>> accountEntityLoads;
+    // in-memory ledger engine owns balances, transfers are applied by it if present
+    @Autowired(required = false)
+    private LedgerEngine ledgerEngine;
+    // retry version conflicts in service, conflicts are returned to the client at once if absent
+    @Autowired(required = false)
+    private VersionRetryPolicy versionRetryPolicy;
+    // account numbers surely absent are not read from db, every account number is read if absent
+    @Autowired(required = false)
+    private AccountExistenceFilter accountExistenceFilter;
+    // cached accounts of validated reads are checked by a version probe, validated reads always read db if absent
+    @Autowired(required = false)
+    private AccountCacheRefresher accountCacheRefresher;
     private final BankAccountRepository repository;
+    private final BankAccountSlotRepository slotRepository;
     private final BankAccountTrans trans;
     private final SnowFlakeIdHelper idHelper;
     private final SnowFlakeIdHelper verHelper;
@@ -78,7 +123,8 @@ public class BankAccountServiceImpl implements BankAccountService {
         }
 
         String accountNumber = request.getAccountNumber();
-        Optional<BankAccount> exists = getAccountByAccountNumber(accountNumber);
+        // accounts are never removed, so a cached one always exists
+        Optional<BankAccount> exists = readAccountForWrite(accountNumber);
         if (exists.isPresent()) {
             //or return success with exists account
             DuplicateAccountException err = AccountExceptions.duplicateAccount(accountNumber);
@@ -146,22 +192,34 @@ public class BankAccountServiceImpl implements BankAccountService {
                 .createdAt(now)
                 .build();
         // Redis distributed lock to prevent concurrent creation of the same account
-        try (RedisLock lock = new RedisLock(redisTemplate, getLockKey(accountNumber), AccountConst.ACCOUNT_CHANGE_LOCK_SEC)) {
+        try (AccountLock lock = lockAccounts(accountNumber)) {
             if (!lock.isLocked()) {
                 throw new AccountConcurrentException("Failed to acquire account creation lock: " + accountNumber);
             }
             account = trans.createAccount(account, changeLog, balanceLog);
+        } catch (DuplicateAccountException e) {
+            // created by another node before its creation message arrives
+            accountCreated(accountNumber);
+            log.error("createAccount fail with error:{}", accountNumber, e);
+            throw e;
         } catch (Exception e) {
             log.error("createAccount fail with error:{}", accountNumber, e);
             throw e;
         }
+        accountCreated(accountNumber);
         log.info("Account create success:{}", accountNumber);
         return toDTO(account);
     }
 
-    private static String getLockKey(String accountNumber) {
-        String lockKey = "account:op:lock:" + accountNumber;
-        return lockKey;
+    /**
+     * Lock accounts by the configured backend, all or none of them are locked
+     */
+    private AccountLock lockAccounts(String... accountNumbers) {
+        if (null == accountLockProvider) {
+            // no lock backend such as unit tests, behave as locked
+            return AccountLock.NONE;
+        }
+        return accountLockProvider.lock(accountNumbers);
     }
 
     /**
@@ -171,7 +229,7 @@ public class BankAccountServiceImpl implements BankAccountService {
      * @return account info after deleted
      */
     @Override
-    @CacheEvict(value = "account", key = "#accountNumber")
+    @CacheEvict(value = {"account", "accountEntity"}, key = "#accountNumber")
     @Observed(name = "bank.account.service.delete")
     public BankAccountDTO deleteAccount(String accountNumber) throws AccountException, AccountError {
         Optional<BankAccount> accountOpt = getAccountByAccountNumber(accountNumber);
@@ -191,7 +249,7 @@ public class BankAccountServiceImpl implements BankAccountService {
         // Instead, it should be frozen to prevent further transactions.
         // This ensures data integrity and prevents accidental loss of funds.
         AccountState newState = AccountState.CLOSED;
-        if (account.getBalance().compareTo(BigDecimal.ZERO) > 0) {
+        if (ledgerBalance(account).compareTo(BigDecimal.ZERO) > 0) {
             // log.warn("Account has balance, cannot delete: {}", accountNumber);
             // throw AccountExceptions.accountHasBalance(accountNumber);
             //账号状态不应该为frozen
@@ -202,6 +260,10 @@ public class BankAccountServiceImpl implements BankAccountService {
             log.warn("Account has balance, frozen instead of delete : {}", accountNumber);
             newState = AccountState.FROZEN;
         }
+        if (newState == AccountState.CLOSED && account.isHot()) {
+            log.warn("Account has balance slots, merge before delete: {}", accountNumber);
+            throw new DeleteAccountException("Account has balance slots, merge them before delete: " + accountNumber);
+        }
         int changeType = newState == AccountState.CLOSED ? AccountChangeType.CLOSE_ACCOUNT.getCode() : AccountChangeType.FROZEN_STATE_CHANGE.getCode();
         String changeDesc = newState == AccountState.CLOSED ? "销户" : "有余额无法销户，仅冻结";
         BankAccountChangeLog changeLog = BankAccountChangeLog.builder()
@@ -218,12 +280,16 @@ public class BankAccountServiceImpl implements BankAccountService {
                 .afterContactInfo(account.getContactInfo())
                 .createdAt(LocalDateTime.now())
                 .build();
+        BankAccount deleted;
         // Redis distributed lock to prevent concurrent creation of the same account
-        try (RedisLock lock = new RedisLock(redisTemplate, getLockKey(accountNumber), AccountConst.ACCOUNT_CHANGE_LOCK_SEC)) {
+        try (AccountLock lock = lockAccounts(accountNumber)) {
             if (!lock.isLocked()) {
                 throw new AccountConcurrentException("Failed to acquire account creation lock: " + accountNumber);
             }
-            trans.deleteAccount(account, newState, newVersion, changeLog);
+            deleted = trans.deleteAccount(fenced(account, lock), newState, newVersion, changeLog);
+            if (null != ledgerEngine) {
+                ledgerEngine.updateState(accountNumber, newState.getCode());
+            }
         } catch (Exception e) {
             log.error("Account delete fail with error:{}", accountNumber, e);
             throw e;
@@ -238,8 +304,7 @@ public class BankAccountServiceImpl implements BankAccountService {
                 break;
         }
 
-        accountOpt = getAccountByAccountNumber(accountNumber);
-        return accountOpt.map(this::toDTO).orElse(null);
+        return Optional.ofNullable(deleted).map(BankAccountServiceImpl::toDTO).orElse(null);
     }
 
     /**
@@ -250,15 +315,21 @@ public class BankAccountServiceImpl implements BankAccountService {
      * @return account after updated
      */
     @Override
-    @CacheEvict(value = "account", key = "#accountNumber")
+    @CacheEvict(value = {"account", "accountEntity"}, key = "#accountNumber")
     @Observed(name = "bank.account.service.update")
     public BankAccountDTO updateAccount(String accountNumber, UpdateAccountRequest request) throws AccountException, AccountError {
-        Optional<BankAccount> accountOpt = getAccountByAccountNumber(accountNumber);
+        Optional<BankAccount> accountOpt = readAccountForWrite(accountNumber);
         if (accountOpt.isEmpty()) {
             log.warn("Account not found: {}", accountNumber);
             throw new AccountNotFoundException("Account not found: " + accountNumber);
         }
         BankAccount account = accountOpt.get();
+        String ownerName = request.getOwnerName();
+        String contactInfo = request.getContactInfo();
+        if (Objects.equals(account.getState(), AccountState.CLOSED.getCode())
+                || (Objects.equals(ownerName, account.getOwnerName()) && Objects.equals(contactInfo, account.getContactInfo()))) {
+            account = recheck(account);
+        }
         // should not update account if it is closed
         if (Objects.equals(account.getState(), AccountState.CLOSED.getCode())) {
             String message = String.format("Account is closed: %s", accountNumber);
@@ -267,8 +338,6 @@ public class BankAccountServiceImpl implements BankAccountService {
         }
 
         // Validate request parameters
-        String ownerName = request.getOwnerName();
-        String contactInfo = request.getContactInfo();
         if (Objects.isNull(ownerName) || Objects.isNull(contactInfo) || ownerName.isEmpty() || contactInfo.isEmpty()) {
             String message = String.format("Account update fail:%s with invalid params: %s", accountNumber, request);
             log.warn(message);
@@ -282,7 +351,51 @@ public class BankAccountServiceImpl implements BankAccountService {
         }
 
         long newVersion = verHelper.genId();
-        BankAccountChangeLog changeLog = BankAccountChangeLog.builder()
+        BankAccountChangeLog changeLog = infoChangeLog(account, ownerName, contactInfo);
+        BankAccount updated;
+        // Redis distributed lock to prevent concurrent creation of the same account
+        try (AccountLock lock = lockAccounts(accountNumber)) {
+            if (!lock.isLocked()) {
+                throw new AccountConcurrentException("Failed to acquire account creation lock: " + accountNumber);
+            }
+            account = fenced(account, lock);
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    updated = trans.updateAccount(account, ownerName, contactInfo, newVersion, changeLog);
+                    break;
+                } catch (AccountVersionConflictException e) {
+                    // the cached account is stale, it is read from db by the next request
+                    evictAccounts(List.of(accountNumber));
+                    if (!retryVersionConflict("update", attempt)) {
+                        throw e;
+                    }
+                    // the conflict may come from another info update, so the whole row is read again and checked again
+                    account = fenced(getAccountByAccountNumber(accountNumber).orElseThrow(() -> AccountExceptions.accountNotFound(accountNumber)), lock);
+                    if (Objects.equals(account.getState(), AccountState.CLOSED.getCode())) {
+                        throw AccountExceptions.updateFailWithClosed(accountNumber);
+                    }
+                    if (Objects.equals(ownerName, account.getOwnerName()) && Objects.equals(contactInfo, account.getContactInfo())) {
+                        log.info("Account update with no change:{}", accountNumber);
+                        return toDTO(account);
+                    }
+                    newVersion = verHelper.genId();
+                    changeLog = infoChangeLog(account, ownerName, contactInfo);
+                }
+            }
+        } catch (AccountVersionConflictException | UpdateAccountException | AccountNotFoundException e) {
+            log.error("Account update fail with error:{}", accountNumber, e);
+            throw e;
+        } catch (Exception e) {
+            log.error("Account update fail with error:{}", accountNumber, e);
+            throw new AccountUpdateError(e, "Account update error: " + account.getAccountNumber());
+        }
+
+        log.info("Account update success:{}", accountNumber);
+        return Optional.ofNullable(updated).map(BankAccountServiceImpl::toDTO).orElse(null);
+    }
+
+    private static BankAccountChangeLog infoChangeLog(BankAccount account, String ownerName, String contactInfo) {
+        return BankAccountChangeLog.builder()
                 .accountId(account.getId())
                 .accountNumber(account.getAccountNumber())
                 .ownerId(account.getOwnerId())
@@ -296,20 +409,6 @@ public class BankAccountServiceImpl implements BankAccountService {
                 .afterContactInfo(contactInfo)
                 .createdAt(LocalDateTime.now())
                 .build();
-        // Redis distributed lock to prevent concurrent creation of the same account
-        try (RedisLock lock = new RedisLock(redisTemplate, getLockKey(accountNumber), AccountConst.ACCOUNT_CHANGE_LOCK_SEC)) {
-            if (!lock.isLocked()) {
-                throw new AccountConcurrentException("Failed to acquire account creation lock: " + accountNumber);
-            }
-            trans.updateAccount(account, ownerName, contactInfo, newVersion, changeLog);
-        } catch (Exception e) {
-            log.error("Account update fail with error:{}", accountNumber, e);
-            throw new AccountUpdateError(e, "Account update error: " + account.getAccountNumber());
-        }
-
-        log.info("Account update success:{}", accountNumber);
-        accountOpt = getAccountByAccountNumber(accountNumber);
-        return accountOpt.map(this::toDTO).orElse(null);
     }
 
     /**
@@ -319,40 +418,27 @@ public class BankAccountServiceImpl implements BankAccountService {
      */
     @Override
     @Observed(name = "bank.account.service.transfer")
-    @Caching(evict = {
-            @CacheEvict(value = "account", key = "#request.fromAccountNumber"),
-            @CacheEvict(value = "account", key = "#request.toAccountNumber")
-    })
     public BankTransferDTO transfer(TransferRequest request) throws AccountException, AccountError {
-        // Validate that source and destination accounts are different
         String fromAccountNumber = request.getFromAccountNumber();
         String toAccountNumber = request.getToAccountNumber();
-        if (fromAccountNumber.equals(toAccountNumber)) {
-            String message = String.format("Cannot transfer to the same account: %s", fromAccountNumber);
-            log.warn(message);
-            throw new AccountParamException(message);
-        }
-
-        // Validate transfer amount
-        BigDecimal amount = request.getAmountAsBigDecimal();
-        if (amount == null) {
-            String message = String.format("Transfer amount cannot be null from: %s to: %s", fromAccountNumber, toAccountNumber);
-            log.warn(message);
-            throw new AccountParamException(message);
-        }
-        if (amount.scale() > AccountConst.BALANCE_SHOW_DOTS) {
-            String message = String.format("Transfer amount scale %d exceeds maximum allowed scale %d from %s to %s", amount.scale(), AccountConst.BALANCE_SHOW_DOTS, fromAccountNumber, toAccountNumber);
-            log.warn(message);
-            throw new AccountParamException(message);
+        BigDecimal amount = validateTransfer(request);
+        if (null != ledgerEngine) {
+            BankTransferDTO transferred = transferByLedger(fromAccountNumber, toAccountNumber, amount);
+            // balances in db are projected later, versions are not comparable
+            evictAccounts(List.of(fromAccountNumber, toAccountNumber));
+            return transferred;
         }
 
         // Retrieve source account
-        Optional<BankAccount> fromOpt = getAccountByAccountNumber(fromAccountNumber);
+        Optional<BankAccount> fromOpt = readAccountForWrite(fromAccountNumber);
         if (fromOpt.isEmpty()) {
             log.warn("Transfer from account not found: {}", fromAccountNumber);
             throw new AccountNotFoundException("Source account not found: " + fromAccountNumber);
         }
         BankAccount from = fromOpt.get();
+        if (!Objects.equals(from.getState(), AccountState.ACTIVE.getCode()) || from.getTotalBalance().compareTo(amount) < 0) {
+            from = recheck(from);
+        }
         //validate state
         if (!Objects.equals(from.getState(), AccountState.ACTIVE.getCode())) {
             log.warn("Transfer from account is not active: {}", fromAccountNumber);
@@ -360,20 +446,23 @@ public class BankAccountServiceImpl implements BankAccountService {
         }
 
         // Check sufficient balance
-        if (from.getBalance().compareTo(amount) < 0) {
+        if (from.getTotalBalance().compareTo(amount) < 0) {
             String message = String.format("Insufficient balance for transfer between %s and %s. Available: %s, Required: %s",
-                    fromAccountNumber, toAccountNumber, from.getBalance(), amount);
+                    fromAccountNumber, toAccountNumber, from.getTotalBalance(), amount);
             log.warn(message);
             throw new InsufficientBalanceException(message);
         }
 
         // Retrieve destination account
-        Optional<BankAccount> toOpt = getAccountByAccountNumber(toAccountNumber);
+        Optional<BankAccount> toOpt = readAccountForWrite(toAccountNumber);
         if (toOpt.isEmpty()) {
             log.warn("Transfer to account not found: {}", toAccountNumber);
             throw new AccountNotFoundException("Destination account not found: " + toAccountNumber);
         }
         BankAccount to = toOpt.get();
+        if (!Objects.equals(to.getState(), AccountState.ACTIVE.getCode())) {
+            to = recheck(to);
+        }
         //validate state
         if (!Objects.equals(to.getState(), AccountState.ACTIVE.getCode())) {
             log.warn("Transfer to account is not active: {}", toAccountNumber);
@@ -381,25 +470,29 @@ public class BankAccountServiceImpl implements BankAccountService {
         }
 
         long newVersion = verHelper.genId();
+        // the balance logs are written after commit and rebuilt from the transfer log by this id
+        long transferId = idHelper.genId();
         // 构建余额变动日志
         BankAccountBalanceLog fromBalanceLog = BankAccountBalanceLog.builder()
                 .accountId(from.getId())
                 .accountNumber(from.getAccountNumber())
-                .beforeBalance(from.getBalance())
-                .afterBalance(from.getBalance().subtract(amount))
+                .beforeBalance(from.getTotalBalance())
+                .afterBalance(from.getTotalBalance().subtract(amount))
                 .changeAmount(amount.negate())
                 .changeType(BalanceChangeType.TRANSFER_OUT.getCode()) // 4:转出
                 .changeDesc("转账转出")
+                .transferId(transferId)
                 .createdAt(LocalDateTime.now())
                 .build();
         BankAccountBalanceLog toBalanceLog = BankAccountBalanceLog.builder()
                 .accountId(to.getId())
                 .accountNumber(to.getAccountNumber())
-                .beforeBalance(to.getBalance())
-                .afterBalance(to.getBalance().add(amount))
+                .beforeBalance(to.getTotalBalance())
+                .afterBalance(to.getTotalBalance().add(amount))
                 .changeAmount(amount)
                 .changeType(BalanceChangeType.TRANSFER_IN.getCode()) // 3:转入
                 .changeDesc("转账转入")
+                .transferId(transferId)
                 .createdAt(LocalDateTime.now())
                 .build();
         BankAccountTransferLog transferLog = BankAccountTransferLog.builder()
@@ -408,23 +501,54 @@ public class BankAccountServiceImpl implements BankAccountService {
                 .toAccountId(to.getId())
                 .toAccountNumber(to.getAccountNumber())
                 .amount(amount)
-                .beforeBalanceFrom(from.getBalance())
-                .afterBalanceFrom(from.getBalance().subtract(amount))
-                .beforeBalanceTo(to.getBalance())
-                .afterBalanceTo(to.getBalance().add(amount))
+                .beforeBalanceFrom(from.getTotalBalance())
+                .afterBalanceFrom(from.getTotalBalance().subtract(amount))
+                .beforeBalanceTo(to.getTotalBalance())
+                .afterBalanceTo(to.getTotalBalance().add(amount))
+                .transferId(transferId)
                 .createdAt(LocalDateTime.now())
                 .build();
+        TransferResult result;
         // Save updated accounts
         // Redis distributed lock to prevent concurrent creation of the same account
-        try (RedisLock lock1 = new RedisLock(redisTemplate, getLockKey(fromAccountNumber), AccountConst.ACCOUNT_CHANGE_LOCK_SEC);
-             RedisLock lock2 = new RedisLock(redisTemplate, getLockKey(toAccountNumber), AccountConst.ACCOUNT_CHANGE_LOCK_SEC)) {
-            if (!lock1.isLocked()) {
-                throw new AccountConcurrentException("Failed to acquire account creation lock: " + fromAccountNumber);
+        // credits to hot account are spread across slots without version guard, no need to lock it,
+        // they are guarded by state and slots of the account row instead, so a freeze or merge fails them
+        // both accounts are locked in key order by one redis call, and released by one redis call
+        try (AccountLock lock = to.isHot() ? lockAccounts(fromAccountNumber) : lockAccounts(fromAccountNumber, toAccountNumber)) {
+            if (!lock.isLocked()) {
+                throw new AccountConcurrentException("Failed to acquire account transfer lock from " + fromAccountNumber + " to " + toAccountNumber);
             }
-            if (!lock2.isLocked()) {
-                throw new AccountConcurrentException("Failed to acquire account creation lock: " + toAccountNumber);
+            from = fenced(from, lock);
+            // the token of a lock not held on the hot account would reject credits after any newer holder of it
+            to = to.isHot() ? to : fenced(to, lock);
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    // writes must join the transaction held by the lock on this thread
+                    if (null != transferGroupCommitExecutor && !lock.holdsTransaction()) {
+                        result = transferInGroup(from, to, amount, newVersion, fromBalanceLog, toBalanceLog, transferLog);
+                    } else {
+                        result = trans.transfer(from, to, amount, newVersion, fromBalanceLog, toBalanceLog, transferLog);
+                    }
+                    break;
+                } catch (AccountVersionConflictException e) {
+                    // the cached accounts are stale, they are read from db by the next request
+                    evictAccounts(List.of(fromAccountNumber, toAccountNumber));
+                    if (!retryVersionConflict("transfer", attempt)) {
+                        throw e;
+                    }
+                    // locks are still held, only balance and version are read again
+                    from = refreshBalanceVersion(from);
+                    to = refreshBalanceVersion(to);
+                    if (!Objects.equals(from.getState(), AccountState.ACTIVE.getCode()) || !Objects.equals(to.getState(), AccountState.ACTIVE.getCode())) {
+                        throw new AccountTransferException(ExpCode.TransferAccountLimit, "Account is not active after conflict from " + fromAccountNumber + " to " + toAccountNumber);
+                    }
+                    if (from.getTotalBalance().compareTo(amount) < 0) {
+                        throw AccountExceptions.insufficientBalance(fromAccountNumber, amount);
+                    }
+                    newVersion = verHelper.genId();
+                    refreshTransferLogs(from, to, amount, fromBalanceLog, toBalanceLog, transferLog);
+                }
             }
-            trans.transfer(from, to, amount, newVersion, fromBalanceLog, toBalanceLog, transferLog);
         } catch (Exception e) {
             log.error("Transfer failed from account {} to account {} with amount {}",
                     fromAccountNumber, toAccountNumber, amount, e);
@@ -433,24 +557,637 @@ public class BankAccountServiceImpl implements BankAccountService {
 
         log.info("Transfer success from account {} to account {} with amount {}",
                 fromAccountNumber, toAccountNumber, amount);
-//        BankAccountDTO fromDto = fromOpt.map(this::toSimpleDTO).orElse(null)
-//                .setBalance(from.getBalance().subtract(amount));
-//        BankAccountDTO toDto = toOpt.map(this::toSimpleDTO).orElse(null)
-//                .setBalance(to.getBalance().add(amount));
+        // state written by the transfer, no need to read both accounts again
+        BankTransferDTO transferred = new BankTransferDTO()
+                .setFrom(toDTO(result.getFrom()))
+                .setTo(toDTO(result.getTo()));
+        // committed as the locks are released
+        cacheTransferred(result.getFrom(), transferred.getFrom());
+        cacheTransferred(result.getTo(), transferred.getTo());
+        return transferred;
+    }
+
+    /**
+     * Write the account written by a transfer into the cache if write-through is enabled, evict it otherwise.
+     * balance of hot account is not exact since concurrent credits of slots are not seen, so it is always evicted
+     */
+    private void cacheTransferred(BankAccount account, BankAccountDTO dto) {
+        if (null == twoLevelCacheProperties || !twoLevelCacheProperties.isWriteThrough() || account.isHot()) {
+            evictAccounts(List.of(account.getAccountNumber()));
+            return;
+        }
+        Cache cache = null == cacheManager ? null : cacheManager.getCache("account");
+        if (null != cache) {
+            // guarded by version in cache, an older write never replaces a newer one
+            cache.put(account.getAccountNumber(), dto);
+        }
+        Cache entityCache = entityCache();
+        if (null != entityCache) {
+            // the fence token belongs to the lock of this transfer only
+            entityCache.put(account.getAccountNumber(), account.toBuilder().fenceToken(null).build());
+        }
+    }
+
+    /**
+     * Copy of the account carrying the fence token of the lock, so writes of a holder whose lock expired are rejected
+     */
+    private static BankAccount fenced(BankAccount account, AccountLock lock) {
+        long token = lock.fenceToken();
+        return token <= 0 ? account : account.toBuilder().fenceToken(token).build();
+    }
+
+    /**
+     * Record a version conflict and wait before the next attempt
+     *
+     * @return false if no more attempts
+     */
+    private boolean retryVersionConflict(String op, int attempt) {
+        return null != versionRetryPolicy && versionRetryPolicy.retry(op, attempt);
+    }
+
+    /**
+     * Copy of the account with balance, slots, state and version read again, other columns are kept,
+     * balance of slots is read again if the account is hot, since a split or merge may run between attempts
+     */
+    private BankAccount refreshBalanceVersion(BankAccount account) throws AccountException, AccountError {
+        BankAccount latest;
+        BigDecimal slotBalance = null;
+        try {
+            Optional<BankAccount> read = repository.findBalanceVersionById(account.getId());
+            if (read.isEmpty()) {
+                throw AccountExceptions.accountNotFound(account.getAccountNumber());
+            }
+            latest = read.get();
+            if (latest.isHot()) {
+                slotBalance = slotRepository.sumBalanceByAccountNumber(account.getAccountNumber());
+            }
+        } catch (AccountException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AccountReadError(e, "Error retrieving account balance and version: " + account.getAccountNumber());
+        }
+        return account.toBuilder()
+                .balance(latest.getBalance())
+                .slots(latest.getSlots())
+                .slotBalance(slotBalance)
+                .state(latest.getState())
+                .ver(latest.getVer())
+                .build();
+    }
+
+    /**
+     * Balances before and after of the transfer logs with the accounts read again
+     */
+    private static void refreshTransferLogs(BankAccount from, BankAccount to, BigDecimal amount, BankAccountBalanceLog fromBalanceLog, BankAccountBalanceLog toBalanceLog, BankAccountTransferLog transferLog) {
+        fromBalanceLog.setBeforeBalance(from.getTotalBalance());
+        fromBalanceLog.setAfterBalance(from.getTotalBalance().subtract(amount));
+        toBalanceLog.setBeforeBalance(to.getTotalBalance());
+        toBalanceLog.setAfterBalance(to.getTotalBalance().add(amount));
+        transferLog.setBeforeBalanceFrom(fromBalanceLog.getBeforeBalance());
+        transferLog.setAfterBalanceFrom(fromBalanceLog.getAfterBalance());
+        transferLog.setBeforeBalanceTo(toBalanceLog.getBeforeBalance());
+        transferLog.setAfterBalanceTo(toBalanceLog.getAfterBalance());
+    }
+
+    /**
+     * Transfer by the ledger engine, accounts and balance are checked by the engine without locks
+     */
+    private BankTransferDTO transferByLedger(String fromAccountNumber, String toAccountNumber, BigDecimal amount) throws AccountException, AccountError {
+        LedgerTransferResult result;
+        try {
+            result = awaitLedger(ledgerEngine.transfer(fromAccountNumber, toAccountNumber, amount), "transfer from " + fromAccountNumber + " to " + toAccountNumber, true);
+        } catch (AccountException | AccountError e) {
+            log.error("Transfer failed from account {} to account {} with amount {}",
+                    fromAccountNumber, toAccountNumber, amount, e);
+            throw e;
+        }
+        log.info("Transfer success from account {} to account {} with amount {}",
+                fromAccountNumber, toAccountNumber, amount);
         return new BankTransferDTO()
-                .setFrom(getAccountByAccountNumber(fromAccountNumber).map(this::toDTO).orElse(null))
-                .setTo(getAccountByAccountNumber(toAccountNumber).map(this::toDTO).orElse(null))
-                ;
+                .setFrom(toDTO(result.from()))
+                .setTo(toDTO(result.to()));
+    }
+
+    /**
+     * Balance owned by the ledger engine if present, otherwise balance read from database
+     */
+    private BigDecimal ledgerBalance(BankAccount account) throws AccountException, AccountError {
+        if (null == ledgerEngine) {
+            return account.getTotalBalance();
+        }
+        return awaitLedger(ledgerEngine.balanceOf(account.getAccountNumber()), "balance of " + account.getAccountNumber(), false);
+    }
+
+    /**
+     * @param write true if the command changes balances, so a timeout leaves its result unknown
+     */
+    private <T> T awaitLedger(CompletableFuture<T> future, String desc, boolean write) throws AccountException, AccountError {
+        try {
+            return future.get(ledgerEngine.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AccountException accountException) {
+                throw accountException;
+            }
+            if (e.getCause() instanceof AccountError accountError) {
+                throw accountError;
+            }
+            throw new AccountTransferError(e.getCause(), "Ledger error of " + desc);
+        } catch (TimeoutException e) {
+            // the command may still be applied, the result of a transfer is unknown
+            throw write ? new AccountTransferUnknownError(e, "Ledger timeout of " + desc) : new AccountTransferError(e, "Ledger timeout of " + desc);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw write ? new AccountTransferUnknownError(e, "Ledger interrupted of " + desc) : new AccountTransferError(e, "Ledger interrupted of " + desc);
+        }
+    }
+
+    /**
+     * Validate transfer accounts and amount
+     *
+     * @return transfer amount
+     */
+    private BigDecimal validateTransfer(TransferRequest request) throws AccountParamException {
+        // Validate that source and destination accounts are different
+        String fromAccountNumber = request.getFromAccountNumber();
+        String toAccountNumber = request.getToAccountNumber();
+        if (fromAccountNumber.equals(toAccountNumber)) {
+            String message = String.format("Cannot transfer to the same account: %s", fromAccountNumber);
+            log.warn(message);
+            throw new AccountParamException(message);
+        }
+
+        // Validate transfer amount
+        BigDecimal amount = request.getAmountAsBigDecimal();
+        if (amount == null) {
+            String message = String.format("Transfer amount cannot be null from: %s to: %s", fromAccountNumber, toAccountNumber);
+            log.warn(message);
+            throw new AccountParamException(message);
+        }
+        if (amount.scale() > AccountConst.BALANCE_SHOW_DOTS) {
+            String message = String.format("Transfer amount scale %d exceeds maximum allowed scale %d from %s to %s", amount.scale(), AccountConst.BALANCE_SHOW_DOTS, fromAccountNumber, toAccountNumber);
+            log.warn(message);
+            throw new AccountParamException(message);
+        }
+        return amount;
+    }
+
+    /**
+     * Transfer funds in batch, transfers are split in request order into groups of bounded accounts,
+     * groups are processed one after another, accounts of a group are locked by one call in key order and read by one IN query,
+     * transfers are applied in request order on the accounts read, and the net balance of each account is written
+     * with the logs of the group in one transaction by JDBC batching.
+     * A transfer failed in validation only fails itself, a failed lock or commit fails all transfers of the group.
+     *
+     * @param requests transfers
+     * @return one result for each transfer in request order
+     */
+    @Override
+    @Observed(name = "bank.account.service.transfer-batch")
+    public BankTransferBatchDTO transferBatch(List<TransferRequest> requests) throws AccountException, AccountError {
+        if (null == requests || requests.isEmpty() || requests.size() > AccountConst.TRANSFER_BATCH_MAX_SIZE) {
+            throw new AccountParamException("Invalid transfer batch size:" + (null == requests ? 0 : requests.size()));
+        }
+        List<BankTransferBatchDTO.Item> results = new ArrayList<>(requests.size());
+        BigDecimal[] amounts = new BigDecimal[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            TransferRequest request = requests.get(i);
+            BankTransferBatchDTO.Item item = new BankTransferBatchDTO.Item().setIndex(i);
+            results.add(item);
+            try {
+                amounts[i] = validateTransfer(request);
+            } catch (AccountException e) {
+                fail(item, e);
+            }
+        }
+        if (null != ledgerEngine) {
+            return transferBatchByLedger(requests, amounts, results);
+        }
+
+        // only one group is locked at a time, a batch never holds more than TRANSFER_BATCH_LOCK_MAX_SIZE accounts locked
+        int start = 0;
+        while (start < requests.size()) {
+            TreeSet<String> accountNumbers = new TreeSet<>();
+            int end = start;
+            for (; end < requests.size(); end++) {
+                if (null == amounts[end]) {
+                    continue;
+                }
+                TransferRequest request = requests.get(end);
+                int added = (accountNumbers.contains(request.getFromAccountNumber()) ? 0 : 1) + (accountNumbers.contains(request.getToAccountNumber()) ? 0 : 1);
+                if (accountNumbers.size() + added > AccountConst.TRANSFER_BATCH_LOCK_MAX_SIZE) {
+                    break;
+                }
+                accountNumbers.add(request.getFromAccountNumber());
+                accountNumbers.add(request.getToAccountNumber());
+            }
+            if (!accountNumbers.isEmpty()) {
+                transferBatchGroup(requests, amounts, results, start, end, accountNumbers);
+            }
+            start = end;
+        }
+        log.info("Transfer batch finished with {} transfers", requests.size());
+        return new BankTransferBatchDTO().setResults(results);
+    }
+
+    /**
+     * Transfer a group of the batch, the requests from start(inclusive) to end(exclusive) with all their accounts locked
+     */
+    private void transferBatchGroup(List<TransferRequest> requests, BigDecimal[] amounts, List<BankTransferBatchDTO.Item> results, int start, int end, TreeSet<String> accountNumbers) throws AccountError {
+        Set<String> changed = new HashSet<>();
+        // accounts of the group are locked in key order by one call, the same as transfer, all or none of them are locked
+        try (AccountLock lock = lockAccounts(accountNumbers.toArray(new String[0]))) {
+            if (!lock.isLocked()) {
+                log.warn("Transfer batch group lock fail with {} accounts", accountNumbers.size());
+                AccountConcurrentException e = new AccountConcurrentException("Failed to acquire account transfer lock of " + accountNumbers.size() + " accounts");
+                for (int i = start; i < end; i++) {
+                    if (null != amounts[i]) {
+                        fail(results.get(i), e);
+                    }
+                }
+                return;
+            }
+            Map<String, BankAccount> accounts = getAccountsByAccountNumbers(accountNumbers);
+            // working copy of each account, the balance is updated as transfers applied
+            Map<String, BankAccount> working = new HashMap<>();
+            List<BankAccountTransferLog> transferLogs = new ArrayList<>();
+            List<BankAccountBalanceLog> balanceLogs = new ArrayList<>();
+            List<Integer> applied = new ArrayList<>();
+            LocalDateTime now = LocalDateTime.now();
+            for (int i = start; i < end; i++) {
+                BankTransferBatchDTO.Item item = results.get(i);
+                if (null == amounts[i]) {
+                    continue;
+                }
+                TransferRequest request = requests.get(i);
+                try {
+                    BankAccount from = workingAccount(request.getFromAccountNumber(), accounts, working);
+                    BankAccount to = workingAccount(request.getToAccountNumber(), accounts, working);
+                    BigDecimal amount = amounts[i];
+                    if (!Objects.equals(from.getState(), AccountState.ACTIVE.getCode())) {
+                        throw new AccountTransferException(ExpCode.TransferAccountLimit, "Source account is not active: " + from.getAccountNumber());
+                    }
+                    if (!Objects.equals(to.getState(), AccountState.ACTIVE.getCode())) {
+                        throw new AccountTransferException(ExpCode.TransferAccountLimit, "Destination account is not active: " + to.getAccountNumber());
+                    }
+                    if (from.getBalance().compareTo(amount) < 0) {
+                        throw AccountExceptions.insufficientBalance(from.getAccountNumber(), amount);
+                    }
+                    BigDecimal fromBefore = from.getBalance();
+                    BigDecimal toBefore = to.getBalance();
+                    from.setBalance(fromBefore.subtract(amount));
+                    to.setBalance(toBefore.add(amount));
+                    balanceLogs.add(BankAccountBalanceLog.builder()
+                            .accountId(from.getId())
+                            .accountNumber(from.getAccountNumber())
+                            .beforeBalance(fromBefore)
+                            .afterBalance(from.getBalance())
+                            .changeAmount(amount.negate())
+                            .changeType(BalanceChangeType.TRANSFER_OUT.getCode()) // 4:转出
+                            .changeDesc("批量转账转出")
+                            .createdAt(now)
+                            .build());
+                    balanceLogs.add(BankAccountBalanceLog.builder()
+                            .accountId(to.getId())
+                            .accountNumber(to.getAccountNumber())
+                            .beforeBalance(toBefore)
+                            .afterBalance(to.getBalance())
+                            .changeAmount(amount)
+                            .changeType(BalanceChangeType.TRANSFER_IN.getCode()) // 3:转入
+                            .changeDesc("批量转账转入")
+                            .createdAt(now)
+                            .build());
+                    transferLogs.add(BankAccountTransferLog.builder()
+                            .fromAccountId(from.getId())
+                            .fromAccountNumber(from.getAccountNumber())
+                            .toAccountId(to.getId())
+                            .toAccountNumber(to.getAccountNumber())
+                            .amount(amount)
+                            .beforeBalanceFrom(fromBefore)
+                            .afterBalanceFrom(from.getBalance())
+                            .beforeBalanceTo(toBefore)
+                            .afterBalanceTo(to.getBalance())
+                            .createdAt(now)
+                            .build());
+                    item.setCode(1)
+                            .setFrom(toDTO(from).setUpdatedAt(now))
+                            .setTo(toDTO(to).setUpdatedAt(now));
+                    applied.add(i);
+                } catch (AccountException e) {
+                    fail(item, e);
+                }
+            }
+
+            if (!applied.isEmpty()) {
+                long newVersion = verHelper.genId();
+                List<BalanceChange> changes = new ArrayList<>(working.size());
+                for (BankAccount account : working.values()) {
+                    BankAccount read = accounts.get(account.getAccountNumber());
+                    if (account.getBalance().compareTo(read.getBalance()) != 0) {
+                        changes.add(new BalanceChange(fenced(read, lock), account.getBalance(), newVersion));
+                    }
+                }
+                try {
+                    trans.applyBalances(changes, transferLogs, balanceLogs, now);
+                } catch (AccountException | AccountError e) {
+                    log.error("Transfer batch failed with {} transfers applied", applied.size(), e);
+                    for (int i : applied) {
+                        fail(results.get(i), e);
+                    }
+                }
+                changed.addAll(working.keySet());
+            }
+        }
+        // evicted after the locks released, the db lock commits the changes on release
+        evictAccounts(changed);
+    }
+
+    /**
+     * Transfer batch by the ledger engine, all transfers are submitted before waiting,
+     * transfers of the same source account are applied in request order
+     */
+    private BankTransferBatchDTO transferBatchByLedger(List<TransferRequest> requests, BigDecimal[] amounts, List<BankTransferBatchDTO.Item> results) {
+        List<CompletableFuture<LedgerTransferResult>> futures = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        for (int i = 0; i < requests.size(); i++) {
+            if (null != amounts[i]) {
+                TransferRequest request = requests.get(i);
+                futures.set(i, ledgerEngine.transfer(request.getFromAccountNumber(), request.getToAccountNumber(), amounts[i]));
+            }
+        }
+        Set<String> changed = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (null == futures.get(i)) {
+                continue;
+            }
+            TransferRequest request = requests.get(i);
+            try {
+                LedgerTransferResult result = awaitLedger(futures.get(i), "transfer from " + request.getFromAccountNumber() + " to " + request.getToAccountNumber(), true);
+                results.get(i).setCode(1)
+                        .setFrom(toDTO(result.from()))
+                        .setTo(toDTO(result.to()));
+                changed.add(request.getFromAccountNumber());
+                changed.add(request.getToAccountNumber());
+            } catch (AccountException | AccountError e) {
+                fail(results.get(i), e);
+            }
+        }
+        evictAccounts(changed);
+        log.info("Transfer batch by ledger finished with {} transfers", requests.size());
+        return new BankTransferBatchDTO().setResults(results);
+    }
+
+    /**
+     * working copy of the account read in batch transfer,
+     * hot account is rejected since the net balance is written to the account row with a version guard, not to slots
+     */
+    private BankAccount workingAccount(String accountNumber, Map<String, BankAccount> accounts, Map<String, BankAccount> working) throws AccountException {
+        BankAccount account = working.get(accountNumber);
+        if (null != account) {
+            return account;
+        }
+        BankAccount read = accounts.get(accountNumber);
+        if (null == read) {
+            throw AccountExceptions.accountNotFound(accountNumber);
+        }
+        if (read.isHot()) {
+            throw new AccountTransferException(ExpCode.TransferAccountLimit, "Hot account with balance slots is not supported by batch transfer, transfer it alone: " + accountNumber);
+        }
+        account = read.toBuilder().build();
+        working.put(accountNumber, account);
+        return account;
+    }
+
+    private static void fail(BankTransferBatchDTO.Item item, CodeE e) {
+        item.setCode(0)
+                .setError(e.getCode())
+                .setMsg(e.getMessage())
+                .setFrom(null)
+                .setTo(null);
+    }
+
+    /**
+     * read accounts by one IN query of each chunk
+     */
+    private Map<String, BankAccount> getAccountsByAccountNumbers(Collection<String> accountNumbers) throws AccountError {
+        Map<String, BankAccount> accounts = new HashMap<>(accountNumbers.size() * 2);
+        List<String> numbers = new ArrayList<>(accountNumbers);
+        try {
+            for (int i = 0; i < numbers.size(); i += AccountConst.IN_QUERY_MAX_SIZE) {
+                for (BankAccount account : repository.findByAccountNumbers(numbers.subList(i, Math.min(numbers.size(), i + AccountConst.IN_QUERY_MAX_SIZE)))) {
+                    accounts.put(account.getAccountNumber(), account);
+                }
+            }
+        } catch (Exception e) {
+            throw new AccountReadError(e, "Error retrieving accounts by account numbers: " + accountNumbers.size());
+        }
+        return accounts;
+    }
+
+    /**
+     * evict account cache of the accounts changed
+     */
+    private void evictAccounts(Collection<String> accountNumbers) {
+        if (null == cacheManager) {
+            return;
+        }
+        for (String name : List.of("account", "accountEntity")) {
+            Cache cache = cacheManager.getCache(name);
+            if (null == cache) {
+                continue;
+            }
+            for (String accountNumber : accountNumbers) {
+                cache.evict(accountNumber);
+            }
+        }
+    }
+
+    /**
+     * Transfer by group commit, the caller keeps holding the account locks until its batch committed.
+     * Transfer is committed alone if the group commit executor rejects it.
+     *
+     * @return state of both accounts written
+     */
+    private TransferResult transferInGroup(BankAccount from, BankAccount to, BigDecimal amount, long newVersion, BankAccountBalanceLog fromBalanceLog, BankAccountBalanceLog toBalanceLog, BankAccountTransferLog transferLog) throws AccountException, AccountError {
+        TransferCommand command = TransferCommand.builder()
+                .from(from)
+                .to(to)
+                .amount(amount)
+                .version(newVersion)
+                .fromBalanceLog(fromBalanceLog)
+                .toBalanceLog(toBalanceLog)
+                .transferLog(transferLog)
+                .build();
+        try {
+            transferGroupCommitExecutor.submit(command).get(groupCommitProperties.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                log.warn("Transfer group commit rejected, commit alone from {} to {}", from.getAccountNumber(), to.getAccountNumber());
+                return trans.transfer(from, to, amount, newVersion, fromBalanceLog, toBalanceLog, transferLog);
+            }
+            if (e.getCause() instanceof AccountError accountError) {
+                throw accountError;
+            }
+            throw new AccountTransferError(e.getCause(), "Account group transfer error from " + from.getAccountNumber() + " to " + to.getAccountNumber());
+        } catch (TimeoutException e) {
+            // the batch may still be committed, the result is unknown
+            throw new AccountTransferUnknownError(e, "Account group transfer timeout from " + from.getAccountNumber() + " to " + to.getAccountNumber());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AccountTransferUnknownError(e, "Account group transfer interrupted from " + from.getAccountNumber() + " to " + to.getAccountNumber());
+        }
+        Exception error = command.getError();
+        if (error instanceof AccountException accountException) {
+            throw accountException;
+        }
+        if (error instanceof AccountError accountError) {
+            throw accountError;
+        }
+        if (null != error) {
+            throw new AccountTransferError(error, "Account group transfer error from " + from.getAccountNumber() + " to " + to.getAccountNumber());
+        }
+        return command.getResult();
+    }
+
+    /**
+     * Account for the pre-checks of writes, read from the entity cache first.
+     * the cached one may be stale: the versioned update is still the authoritative check and a conflict is retried
+     * with the account read again, callers also read it again by recheck before rejecting a request by it.
+     * hot accounts are not cached as their balance of slots changes without version,
+     * concurrent misses of an account share one db read, so the account read is shared and must not be changed
+     */
+    private Optional<BankAccount> readAccountForWrite(String accountNumber) throws AccountError {
+        Cache cache = entityCache();
+        if (null != cache) {
+            BankAccount cached = cache.get(accountNumber, BankAccount.class);
+            if (null != cached) {
+                return Optional.of(cached);
+            }
+        }
+        if (null == accountEntityLoads) {
+            return loadAccountForWrite(accountNumber, cache);
+        }
+        return accountEntityLoads.load(accountNumber, () -> loadAccountForWrite(accountNumber, cache));
+    }
+
+    private Optional<BankAccount> loadAccountForWrite(String accountNumber, Cache cache) throws AccountError {
+        Optional<BankAccount> account = getAccountByAccountNumber(accountNumber);
+        if (null != cache && account.isPresent() && !account.get().isHot()) {
+            cache.put(accountNumber, account.get());
+        }
+        return account;
+    }
+
+    /**
+     * The account in db when the one from readAccountForWrite fails a pre-check, so a stale entry never rejects a request
+     */
+    private BankAccount recheck(BankAccount account) throws AccountError {
+        return getAccountByAccountNumber(account.getAccountNumber()).orElse(account);
+    }
+
+    private void accountCreated(String accountNumber) {
+        if (null != accountExistenceFilter) {
+            accountExistenceFilter.created(accountNumber);
+        }
+    }
+
+    private Cache entityCache() {
+        return null == cacheManager ? null : cacheManager.getCache("accountEntity");
     }
 
     private Optional<BankAccount> getAccountByAccountNumber(String accountNumber) throws AccountError {
+        if (null != accountExistenceFilter && !accountExistenceFilter.mightExist(accountNumber)) {
+            return Optional.empty();
+        }
         try {
-            return repository.findByAccountNumber(accountNumber);
+            long mark = null == accountExistenceFilter ? 0 : accountExistenceFilter.mark();
+            if (null != accountExistenceFilter && accountExistenceFilter.likelyAbsent(accountNumber)) {
+                // never final, the creation message of another node may be lost
+                if (!repository.existsByAccountNumber(accountNumber)) {
+                    accountExistenceFilter.absent(accountNumber, mark);
+                    return Optional.empty();
+                }
+                accountExistenceFilter.found(accountNumber);
+            }
+            Optional<BankAccount> account = repository.findByAccountNumber(accountNumber);
+            if (account.isPresent() && account.get().isHot()) {
+                account.get().setSlotBalance(slotRepository.sumBalanceByAccountNumber(accountNumber));
+            }
+            if (account.isEmpty() && null != accountExistenceFilter) {
+                accountExistenceFilter.absent(accountNumber, mark);
+            }
+            return account;
         } catch (Exception e) {
             throw new AccountReadError(e, "Error retrieving account by account number: " + accountNumber);
         }
     }
 
+    /**
+     * Split balance of a hot account into slots, credits are spread across slots to avoid version conflicts
+     *
+     * @param accountNumber account number
+     * @param slots         slots to split into
+     * @return account info with aggregated balance
+     */
+    @Override
+    @CacheEvict(value = {"account", "accountEntity"}, key = "#accountNumber")
+    @Observed(name = "bank.account.service.split-slots")
+    public BankAccountDTO splitAccountSlots(String accountNumber, int slots) throws AccountException, AccountError {
+        if (slots < 2 || slots > AccountConst.ACCOUNT_SLOTS_MAX) {
+            throw new AccountParamException("Invalid slots of account " + accountNumber + ": " + slots);
+        }
+        if (null != ledgerEngine) {
+            // balances are owned by the ledger engine
+            throw new AccountParamException("Balance slots are not supported with ledger engine: " + accountNumber);
+        }
+        try (AccountLock lock = lockAccounts(accountNumber)) {
+            if (!lock.isLocked()) {
+                throw new AccountConcurrentException("Failed to acquire account split lock: " + accountNumber);
+            }
+            BankAccount account = getAccountByAccountNumber(accountNumber)
+                    .orElseThrow(() -> AccountExceptions.accountNotFound(accountNumber));
+            if (!Objects.equals(account.getState(), AccountState.ACTIVE.getCode())) {
+                throw AccountExceptions.updateAccount(accountNumber);
+            }
+            if (account.isHot()) {
+                throw new AccountParamException("Account balance is already split into " + account.getSlots() + " slots: " + accountNumber);
+            }
+            trans.splitSlots(fenced(account, lock), slots, verHelper.genId());
+        } catch (Exception e) {
+            log.error("Account split slots fail with error:{}", accountNumber, e);
+            throw e;
+        }
+        log.info("Account split into {} slots:{}", slots, accountNumber);
+        return getAccountByAccountNumber(accountNumber).map(BankAccountServiceImpl::toDTO).orElse(null);
+    }
+
+    /**
+     * Merge balance of slots back to the account
+     *
+     * @param accountNumber account number
+     * @return account info
+     */
+    @Override
+    @CacheEvict(value = {"account", "accountEntity"}, key = "#accountNumber")
+    @Observed(name = "bank.account.service.merge-slots")
+    public BankAccountDTO mergeAccountSlots(String accountNumber) throws AccountException, AccountError {
+        try (AccountLock lock = lockAccounts(accountNumber)) {
+            if (!lock.isLocked()) {
+                throw new AccountConcurrentException("Failed to acquire account merge lock: " + accountNumber);
+            }
+            BankAccount account = getAccountByAccountNumber(accountNumber)
+                    .orElseThrow(() -> AccountExceptions.accountNotFound(accountNumber));
+            if (!account.isHot()) {
+                log.info("Account has no balance slots to merge:{}", accountNumber);
+                return toDTO(account);
+            }
+            trans.mergeSlots(fenced(account, lock), verHelper.genId());
+        } catch (Exception e) {
+            log.error("Account merge slots fail with error:{}", accountNumber, e);
+            throw e;
+        }
+        log.info("Account slots merged:{}", accountNumber);
+        return getAccountByAccountNumber(accountNumber).map(BankAccountServiceImpl::toDTO).orElse(null);
+    }
+
     /**
      * List accounts with pagination
      *
@@ -489,7 +1226,7 @@ public class BankAccountServiceImpl implements BankAccountService {
                     ;
         }
         // Convert List to Page
-        List<BankAccountDTO> elements = accounts.stream().limit(size).map(this::toDTO).collect(Collectors.toList());
+        List<BankAccountDTO> elements = accounts.stream().limit(size).map(BankAccountServiceImpl::toDTO).collect(Collectors.toList());
 
         //pagination
         BankAccountListDTO dto = new BankAccountListDTO();
@@ -509,7 +1246,7 @@ public class BankAccountServiceImpl implements BankAccountService {
      */
     @Override
     @Transactional(readOnly = true)
-    @Cacheable(value = "account", key = "#accountNumber")
+    @Cacheable(value = "account", key = "#accountNumber", sync = true)
     @Observed(name = "bank.account.service.get")
     public BankAccountDTO getAccount(String accountNumber) throws AccountException, AccountError {
         Optional<BankAccount> bankAccount = getAccountByAccountNumber(accountNumber);
@@ -522,13 +1259,55 @@ public class BankAccountServiceImpl implements BankAccountService {
         return toDTO(account);
     }
 
+    /**
+     * account info validated against db, for callers who can not accept a stale balance:
+     * the cached account is kept if its version is still the one in db, only the version is read by a covering index,
+     * the whole account is read if the version has moved or the account is hot
+     *
+     * @param accountNumber
+     * @return account event if account is closed
+     */
+    @Override
+    @Transactional(readOnly = true)
+    @Observed(name = "bank.account.service.get-validated")
+    public BankAccountDTO getValidatedAccount(String accountNumber) throws AccountException, AccountError {
+        Cache cache = null == cacheManager ? null : cacheManager.getCache("account");
+        BankAccountDTO cached = null == cache ? null : cache.get(accountNumber, BankAccountDTO.class);
+        if (null == cached || null == accountCacheRefresher) {
+            // read from db by the internal call, then cached for both kinds of reads
+            BankAccountDTO dto = getAccount(accountNumber);
+            if (null != cache) {
+                cache.put(accountNumber, dto);
+            }
+            return dto;
+        }
+        BankAccountDTO validated;
+        try {
+            validated = (BankAccountDTO) accountCacheRefresher.reload(accountNumber, cached);
+        } catch (Exception e) {
+            throw new AccountReadError(e, "Error validating account by account number: " + accountNumber);
+        }
+        if (null == validated) {
+            cache.evict(accountNumber);
+            log.warn("Account not found: {}", accountNumber);
+            throw new AccountNotFoundException("Account not found: " + accountNumber);
+        }
+        if (validated != cached) {
+            cache.put(accountNumber, validated);
+        }
+        return validated;
+    }
+
     private BankAccountDTO toSimpleDTO(BankAccount account) {
         return new BankAccountDTO()
                 .setId(account.getId())
                 .setAccountNumber(account.getAccountNumber());
     }
 
-    private BankAccountDTO toDTO(BankAccount account) {
+    /**
+     * also the dto of account cache refreshes
+     */
+    static BankAccountDTO toDTO(BankAccount account) {
         return new BankAccountDTO()
                 .setId(account.getId())
                 .setAccountNumber(account.getAccountNumber())
@@ -536,8 +1315,10 @@ public class BankAccountServiceImpl implements BankAccountService {
                 .setOwnerId(account.getOwnerId())
                 .setOwnerName(account.getOwnerName())
                 .setContactInfo(account.getContactInfo())
-                .setBalance(account.getBalance())
+                .setBalance(account.getTotalBalance())
                 .setState(account.getState())
-                .setUpdatedAt(account.getUpdatedAt());
+                .setSlots(account.isHot() ? account.getSlots() : null)
+                .setUpdatedAt(account.getUpdatedAt())
+                .setVer(account.getVer());
     }
 }
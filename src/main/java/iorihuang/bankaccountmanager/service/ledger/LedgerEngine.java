@@ -0,0 +1,250 @@
+package iorihuang.bankaccountmanager.service.ledger;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import iorihuang.bankaccountmanager.exception.AccountError;
+import iorihuang.bankaccountmanager.exception.error.AccountReadError;
+import iorihuang.bankaccountmanager.exception.exception.AccountConcurrentException;
+import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdHelper;
+import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.repository.BankAccountTrans;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * In-memory single-writer ledger engine.
+ * ------------------
+ * accounts are partitioned to single-threaded shards, each shard is the only writer of its balances,
+ * so transfers are applied in memory without row locks or version retries.
+ * a transfer is acknowledged after its changes are forced to the journal,
+ * then projected to database asynchronously.
+ * ------------------
+ * on start, changes left in the journal are projected to database(debits without credit are refunded),
+ * then the journal is truncated. Balance and transfer logs of those changes are not rebuilt on recovery.
+ * ------------------
+ * after changes are projected, the listener evicts cached accounts read from database before the projection,
+ * the journal is checkpointed once it is large enough, and shards may evict the accounts projected.
+ */
+@Slf4j
+public class LedgerEngine implements AutoCloseable {
+    private final LedgerProperties properties;
+    private final BankAccountTrans trans;
+    private final SnowFlakeIdHelper idHelper;
+    private final SnowFlakeIdHelper verHelper;
+    private final LedgerJournal journal;
+    private final LedgerShard[] shards;
+    private final LedgerProjection projection;
+    private final Timer journalTimer;
+    private final Consumer<Collection<String>> onProjected;
+
+    /**
+     * @param onProjected called with the account numbers projected after commit, such as cache eviction, nullable
+     */
+    public LedgerEngine(LedgerProperties properties, BankAccountTrans trans, SnowFlakeIdHelper idHelper, SnowFlakeIdHelper verHelper, Consumer<Collection<String>> onProjected, MeterRegistry registry) throws IOException {
+        this.properties = properties;
+        this.trans = trans;
+        this.idHelper = idHelper;
+        this.verHelper = verHelper;
+        this.onProjected = onProjected;
+        this.journal = new LedgerJournal(properties.getJournalPath());
+        this.shards = new LedgerShard[Math.max(1, properties.getShards())];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new LedgerShard(i, this, Math.max(1, properties.getBatchSize()), properties.getQueueSize(), properties.getMaxAccounts());
+        }
+        this.projection = new LedgerProjection(trans, this, properties.getProjectionBatchSize());
+        if (null != registry) {
+            for (int i = 0; i < shards.length; i++) {
+                Gauge.builder("ledger.shard.queue.depth", shards[i], LedgerShard::size)
+                        .tag("shard", String.valueOf(i))
+                        .register(registry);
+            }
+            Gauge.builder("ledger.projection.lag", projection, LedgerProjection::size).register(registry);
+            this.journalTimer = Timer.builder("ledger.journal.latency")
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+        } else {
+            this.journalTimer = null;
+        }
+    }
+
+    /**
+     * Recover changes left in the journal, then start shards and projection
+     */
+    public void start() throws IOException, AccountError {
+        recover();
+        projection.start();
+        for (LedgerShard shard : shards) {
+            shard.start();
+        }
+    }
+
+    private void recover() throws IOException, AccountError {
+        List<LedgerJournal.Record> records = journal.readAll();
+        if (records.isEmpty()) {
+            return;
+        }
+        Map<String, BankAccount> accounts = new LinkedHashMap<>();
+        Map<Long, LedgerJournal.Record> debits = new HashMap<>();
+        for (LedgerJournal.Record record : records) {
+            if (record.type() == LedgerJournal.Type.PENDING_DEBIT) {
+                // balance is already projected and may be overwritten by later changes of the account
+                debits.put(record.transferId(), record);
+                continue;
+            }
+            accounts.put(record.accountNumber(), BankAccount.builder()
+                    .id(record.accountId())
+                    .accountNumber(record.accountNumber())
+                    .balance(record.balanceAfter())
+                    .ver(record.version())
+                    .updatedAt(LedgerProjection.toLocalDateTime(record.epochMillis()))
+                    .build());
+            if (record.type() == LedgerJournal.Type.DEBIT) {
+                debits.put(record.transferId(), record);
+            } else {
+                debits.remove(record.transferId());
+            }
+        }
+        // credit was never journaled, the transfer was never acknowledged, give the debit back
+        for (LedgerJournal.Record debit : debits.values()) {
+            BankAccount account = accounts.get(debit.accountNumber());
+            if (null == account) {
+                // only the pending debit is left, the balance projected already contains it
+                account = load(debit.accountNumber()).orElseThrow(() -> new AccountReadError(null, "Ledger recover account not found: " + debit.accountNumber()));
+                accounts.put(debit.accountNumber(), account);
+            }
+            account.setBalance(account.getBalance().add(debit.amount()));
+            account.setVer(nextVersion());
+            account.setUpdatedAt(LocalDateTime.now());
+            log.warn("ledger recover refund transfer {} of {} to {}", debit.transferId(), debit.amount(), debit.accountNumber());
+        }
+        List<BankAccount> changes = new ArrayList<>(accounts.values());
+        trans.projectBalances(changes, List.of(), List.of());
+        journal.truncate();
+        log.info("ledger recovered {} records of {} accounts, refunded {} transfers", records.size(), changes.size(), debits.size());
+    }
+
+    /**
+     * Transfer balance, the engine checks existence, state and balance of both accounts
+     *
+     * @return completed after the transfer is journaled,
+     * or completed exceptionally with AccountException/AccountError
+     */
+    public CompletableFuture<LedgerTransferResult> transfer(String fromAccountNumber, String toAccountNumber, BigDecimal amount) {
+        CompletableFuture<LedgerTransferResult> future = new CompletableFuture<>();
+        LedgerShard.Transfer transfer = new LedgerShard.Transfer(idHelper.genId(), fromAccountNumber, toAccountNumber, amount, future);
+        if (!shardOf(fromAccountNumber).submit(transfer)) {
+            future.completeExceptionally(new AccountConcurrentException("Ledger is busy: " + fromAccountNumber));
+        }
+        return future;
+    }
+
+    /**
+     * Balance owned by the engine, newer than the projected balance in database
+     */
+    public CompletableFuture<BigDecimal> balanceOf(String accountNumber) {
+        CompletableFuture<BigDecimal> future = new CompletableFuture<>();
+        if (!shardOf(accountNumber).submit(new LedgerShard.Balance(accountNumber, future))) {
+            future.completeExceptionally(new AccountConcurrentException("Ledger is busy: " + accountNumber));
+        }
+        return future;
+    }
+
+    /**
+     * Sync state changed out of the engine(frozen or closed), only applied to loaded accounts
+     */
+    public void updateState(String accountNumber, int state) {
+        shardOf(accountNumber).forward(new LedgerShard.SetState(accountNumber, state));
+    }
+
+    public long getTimeoutMillis() {
+        return properties.getTimeoutMillis();
+    }
+
+    LedgerShard shardOf(String accountNumber) {
+        return shards[Math.floorMod(accountNumber.hashCode(), shards.length)];
+    }
+
+    Optional<BankAccount> load(String accountNumber) throws AccountError {
+        return trans.getAccountByAccountNumberWithNewTx(accountNumber);
+    }
+
+    long nextVersion() {
+        return verHelper.genId();
+    }
+
+    List<LedgerJournal.Record> journal(List<LedgerJournal.Record> records) throws IOException {
+        long start = System.nanoTime();
+        List<LedgerJournal.Record> appended = journal.append(records);
+        if (null != journalTimer) {
+            journalTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return appended;
+    }
+
+    void project(List<LedgerJournal.Record> records) {
+        projection.publish(records);
+    }
+
+    /**
+     * Called by the projection after the accounts committed with their latest versions
+     */
+    void projected(List<BankAccount> accounts) {
+        for (BankAccount account : accounts) {
+            shardOf(account.getAccountNumber()).forward(new LedgerShard.Projected(account.getAccountNumber(), account.getVer()));
+        }
+        if (null != onProjected) {
+            try {
+                onProjected.accept(accounts.stream().map(BankAccount::getAccountNumber).toList());
+            } catch (Exception e) {
+                log.warn("ledger projected listener fail with {} accounts", accounts.size(), e);
+            }
+        }
+    }
+
+    /**
+     * Checkpoint the journal if it is large enough, called by the projection thread only
+     *
+     * @param projected records projected since the journal opened or checkpointed
+     * @param pending   debits projected without credit or refund
+     * @return true if checkpointed
+     */
+    boolean checkpoint(long projected, Collection<LedgerJournal.Record> pending) {
+        try {
+            if (journal.size() < properties.getCheckpointBytes()) {
+                return false;
+            }
+            if (!journal.checkpoint(projected, new ArrayList<>(pending))) {
+                return false;
+            }
+            log.info("ledger journal checkpointed with {} pending debits", pending.size());
+            return true;
+        } catch (IOException e) {
+            log.error("ledger journal checkpoint fail", e);
+            return false;
+        }
+    }
+
+    /**
+     * Stop shards, project pending changes, and truncate the journal if all of them are projected
+     */
+    @Override
+    public void close() throws IOException {
+        for (LedgerShard shard : shards) {
+            shard.close();
+        }
+        if (projection.close()) {
+            journal.truncate();
+        } else {
+            log.error("ledger closed with changes not projected, recover them from journal on next start");
+        }
+        journal.close();
+    }
+}
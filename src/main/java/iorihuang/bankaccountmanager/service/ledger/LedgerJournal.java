@@ -0,0 +1,241 @@
+package iorihuang.bankaccountmanager.service.ledger;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of ledger changes.
+ * ------------------
+ * record: length(int) + crc32(long) + payload
+ * payload: seq, type, transferId, accountId, accountNumber, amount, balanceAfter, version, counterparty, epochMillis
+ * ------------------
+ * records of one shard batch are written together and forced once(group fsync),
+ * a torn record at the tail is ignored while reading.
+ * ------------------
+ * checkpoint: once every record appended is projected to database, the journal is replaced by a file of the
+ * debits still waiting for their credit, so it does not grow until restart.
+ */
+@Slf4j
+public class LedgerJournal implements AutoCloseable {
+    public enum Type {
+        /**
+         * reduce balance of the source account
+         */
+        DEBIT,
+        /**
+         * increase balance of the destination account, the transfer is completed
+         */
+        CREDIT,
+        /**
+         * give back the debit of a transfer failed on the destination account
+         */
+        REFUND,
+        /**
+         * debit kept by a checkpoint while its credit is not journaled, its balance is already projected,
+         * so it is only refunded on recovery if neither credit nor refund follows
+         */
+        PENDING_DEBIT
+    }
+
+    public record Record(long seq, Type type, long transferId, long accountId, String accountNumber, BigDecimal amount,
+                         BigDecimal balanceAfter, long version, String counterparty, long epochMillis) {
+    }
+
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    private final Path path;
+    private FileChannel channel;
+    private long seq;
+    /**
+     * records appended since open, compared with the records projected by a checkpoint
+     */
+    private long appended;
+
+    public LedgerJournal(String path) throws IOException {
+        this.path = Path.of(path);
+        Path parent = this.path.toAbsolutePath().getParent();
+        if (null != parent) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.channel.position(this.channel.size());
+    }
+
+    /**
+     * Append records and force them to disk, the seq of each record is assigned here
+     *
+     * @return records with seq
+     */
+    public synchronized List<Record> append(List<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return records;
+        }
+        List<Record> sequenced = new ArrayList<>(records.size());
+        for (Record r : records) {
+            sequenced.add(new Record(++seq, r.type(), r.transferId(), r.accountId(), r.accountNumber(), r.amount(), r.balanceAfter(), r.version(), r.counterparty(), r.epochMillis()));
+        }
+        long position = channel.position();
+        try {
+            write(channel, sequenced);
+            channel.force(false);
+        } catch (IOException e) {
+            // drop the torn tail, or records appended later can never be read
+            seq -= records.size();
+            channel.truncate(position);
+            channel.position(position);
+            throw e;
+        }
+        appended += records.size();
+        return sequenced;
+    }
+
+    /**
+     * Replace the journal by the pending debits if every record appended is projected,
+     * the new file is forced before it is moved over the journal, so a crash keeps either file whole
+     *
+     * @param projected records projected since open
+     * @param pending   debits projected but not credited or refunded yet
+     * @return false if some records appended are not projected
+     */
+    public synchronized boolean checkpoint(long projected, List<Record> pending) throws IOException {
+        if (projected != appended) {
+            return false;
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".checkpoint");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(out, pending.stream()
+                    .map(r -> new Record(r.seq(), Type.PENDING_DEBIT, r.transferId(), r.accountId(), r.accountNumber(), r.amount(), r.balanceAfter(), r.version(), r.counterparty(), r.epochMillis()))
+                    .toList());
+            out.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // the old journal is kept if the move fails
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+        appended = 0;
+        return true;
+    }
+
+    /**
+     * @return bytes of the journal file
+     */
+    public synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    private static void write(FileChannel channel, List<Record> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Record record : records) {
+            byte[] payload = encode(record);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            out.writeInt(payload.length);
+            out.writeLong(crc.getValue());
+            out.write(payload);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Read all complete records from the beginning, stop at the first torn or corrupted record
+     */
+    public synchronized List<Record> readAll() throws IOException {
+        List<Record> records = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int length;
+                long checksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readLong();
+                    if (length <= 0 || length > MAX_RECORD_SIZE) {
+                        log.error("ledger journal {} corrupted after {} records with length {}", path, records.size(), length);
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (crc.getValue() != checksum) {
+                    log.error("ledger journal {} corrupted after {} records", path, records.size());
+                    break;
+                }
+                Record record = decode(payload);
+                seq = Math.max(seq, record.seq());
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Drop all records, only after they are all projected to database
+     */
+    public synchronized void truncate() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        appended = 0;
+    }
+
+    private static byte[] encode(Record record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(record.seq());
+        out.writeByte(record.type().ordinal());
+        out.writeLong(record.transferId());
+        out.writeLong(record.accountId());
+        out.writeUTF(record.accountNumber());
+        out.writeUTF(record.amount().toPlainString());
+        out.writeUTF(record.balanceAfter().toPlainString());
+        out.writeLong(record.version());
+        out.writeUTF(null == record.counterparty() ? "" : record.counterparty());
+        out.writeLong(record.epochMillis());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Record decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        return new Record(
+                in.readLong(),
+                Type.values()[in.readByte()],
+                in.readLong(),
+                in.readLong(),
+                in.readUTF(),
+                new BigDecimal(in.readUTF()),
+                new BigDecimal(in.readUTF()),
+                in.readLong(),
+                in.readUTF(),
+                in.readLong()
+        );
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,186 @@
+package iorihuang.bankaccountmanager.service.ledger;
+
+import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.model.BankAccountBalanceLog;
+import iorihuang.bankaccountmanager.model.BankAccountTransferLog;
+import iorihuang.bankaccountmanager.model.bankaccountbalancelog.BalanceChangeType;
+import iorihuang.bankaccountmanager.repository.BankAccountTrans;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Project journaled ledger changes to database asynchronously.
+ * ------------------
+ * changes of one batch are coalesced to the latest balance of each account, and written in one transaction with logs.
+ * a failed batch is retried until it succeeds, the journal keeps the changes for recovery in the meantime.
+ * after a batch committed, the engine is told the versions projected(cache eviction, shard eviction, checkpoint).
+ */
+@Slf4j
+final class LedgerProjection implements Runnable {
+    private final BankAccountTrans trans;
+    private final LedgerEngine engine;
+    private final int batchSize;
+    private final LinkedBlockingQueue<LedgerJournal.Record> queue = new LinkedBlockingQueue<>();
+    /**
+     * debit of transfers waiting for credit or refund, to build the transfer log
+     */
+    private final Map<Long, LedgerJournal.Record> debits = new HashMap<>();
+    /**
+     * records projected since the journal opened or checkpointed
+     */
+    private long projected;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean dropped = false;
+
+    LedgerProjection(BankAccountTrans trans, LedgerEngine engine, int batchSize) {
+        this.trans = trans;
+        this.engine = engine;
+        this.batchSize = Math.max(1, batchSize);
+        this.thread = new Thread(this, "ledger-projection");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void publish(List<LedgerJournal.Record> records) {
+        queue.addAll(records);
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    @Override
+    public void run() {
+        List<LedgerJournal.Record> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                LedgerJournal.Record first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (null == first) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                project(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        log.info("ledger projection stopped");
+    }
+
+    private void project(List<LedgerJournal.Record> batch) {
+        Map<String, BankAccount> accounts = new LinkedHashMap<>();
+        List<BankAccountTransferLog> transferLogs = new ArrayList<>();
+        List<BankAccountBalanceLog> balanceLogs = new ArrayList<>(batch.size());
+        for (LedgerJournal.Record record : batch) {
+            LocalDateTime at = toLocalDateTime(record.epochMillis());
+            accounts.put(record.accountNumber(), BankAccount.builder()
+                    .id(record.accountId())
+                    .accountNumber(record.accountNumber())
+                    .balance(record.balanceAfter())
+                    .ver(record.version())
+                    .updatedAt(at)
+                    .build());
+            balanceLogs.add(balanceLog(record, at));
+            switch (record.type()) {
+                case DEBIT -> debits.put(record.transferId(), record);
+                case CREDIT -> {
+                    LedgerJournal.Record debit = debits.remove(record.transferId());
+                    if (null != debit) {
+                        transferLogs.add(BankAccountTransferLog.builder()
+                                .fromAccountId(debit.accountId())
+                                .fromAccountNumber(debit.accountNumber())
+                                .toAccountId(record.accountId())
+                                .toAccountNumber(record.accountNumber())
+                                .amount(record.amount())
+                                .beforeBalanceFrom(debit.balanceAfter().add(debit.amount()))
+                                .afterBalanceFrom(debit.balanceAfter())
+                                .beforeBalanceTo(record.balanceAfter().subtract(record.amount()))
+                                .afterBalanceTo(record.balanceAfter())
+                                .createdAt(at)
+                                .build());
+                    }
+                }
+                case REFUND -> debits.remove(record.transferId());
+            }
+        }
+        List<BankAccount> changes = new ArrayList<>(accounts.values());
+        for (int times = 0; ; times++) {
+            try {
+                trans.projectBalances(changes, transferLogs, balanceLogs);
+                projected += batch.size();
+                engine.projected(changes);
+                if (engine.checkpoint(projected, debits.values())) {
+                    projected = 0;
+                }
+                return;
+            } catch (Exception e) {
+                if (!running && times >= 3) {
+                    // balances are still in the journal, recovered on next start
+                    dropped = true;
+                    log.error("ledger projection drop {} accounts on close: {}", changes.size(), changes, e);
+                    return;
+                }
+                log.warn("ledger projection {} accounts fail, retry {}", changes.size(), times + 1, e);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.min(1000, 10L << Math.min(times, 10))));
+            }
+        }
+    }
+
+    private static BankAccountBalanceLog balanceLog(LedgerJournal.Record record, LocalDateTime at) {
+        BankAccountBalanceLog.BankAccountBalanceLogBuilder builder = BankAccountBalanceLog.builder()
+                .accountId(record.accountId())
+                .accountNumber(record.accountNumber())
+                .afterBalance(record.balanceAfter())
+                .createdAt(at);
+        return switch (record.type()) {
+            // pending debits are only kept by checkpoints, never projected
+            case DEBIT, PENDING_DEBIT -> builder.beforeBalance(record.balanceAfter().add(record.amount()))
+                    .changeAmount(record.amount().negate())
+                    .changeType(BalanceChangeType.TRANSFER_OUT.getCode()) // 4:转出
+                    .changeDesc("转账转出")
+                    .build();
+            case CREDIT -> builder.beforeBalance(record.balanceAfter().subtract(record.amount()))
+                    .changeAmount(record.amount())
+                    .changeType(BalanceChangeType.TRANSFER_IN.getCode()) // 3:转入
+                    .changeDesc("转账转入")
+                    .build();
+            case REFUND -> builder.beforeBalance(record.balanceAfter().subtract(record.amount()))
+                    .changeAmount(record.amount())
+                    .changeType(BalanceChangeType.OTHER.getCode()) // 5:其他
+                    .changeDesc("转账退回")
+                    .build();
+        };
+    }
+
+    static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    /**
+     * @return true if all changes are projected
+     */
+    boolean close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return queue.isEmpty() && !thread.isAlive() && !dropped;
+    }
+}
@@ -0,0 +1,52 @@
+package iorihuang.bankaccountmanager.service.ledger;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * In-memory single-writer ledger engine.
+ * The engine owns the balances of the accounts it loaded, so it must be the only writer of balances:
+ * only enable it on a single node, or route each account to a fixed node.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "ledger")
+public class LedgerProperties {
+    /**
+     * route transfers to the ledger engine, default to false
+     */
+    private boolean enabled = false;
+    /**
+     * single-threaded shard processors, accounts are partitioned by hash of account number
+     */
+    private int shards = 4;
+    /**
+     * pending commands of each shard
+     */
+    private int queueSize = 65536;
+    /**
+     * max commands handled and journaled(one fsync) in one shard batch
+     */
+    private int batchSize = 512;
+    /**
+     * append-only journal file, commands are written and forced before acknowledged
+     */
+    private String journalPath = "./ledger.journal";
+    /**
+     * max changes projected to database in one transaction
+     */
+    private int projectionBatchSize = 512;
+    /**
+     * max time for a caller to wait for the transfer acknowledged
+     */
+    private long timeoutMillis = 2000;
+    /**
+     * journal bytes to checkpoint at, the journal is replaced by the pending debits once all records are projected
+     */
+    private long checkpointBytes = 64L * 1024 * 1024;
+    /**
+     * max accounts kept in memory by each shard, only accounts with all changes projected are evicted
+     */
+    private int maxAccounts = 100000;
+}
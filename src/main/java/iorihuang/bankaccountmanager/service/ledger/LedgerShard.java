@@ -0,0 +1,339 @@
+package iorihuang.bankaccountmanager.service.ledger;
+
+import iorihuang.bankaccountmanager.exception.AccountException;
+import iorihuang.bankaccountmanager.exception.AccountExceptions;
+import iorihuang.bankaccountmanager.exception.ExpCode;
+import iorihuang.bankaccountmanager.exception.error.AccountReadError;
+import iorihuang.bankaccountmanager.exception.error.AccountTransferError;
+import iorihuang.bankaccountmanager.exception.exception.AccountTransferException;
+import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.model.bankaccount.AccountState;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Single-threaded shard processor, the only writer of the balances of its accounts.
+ * ------------------
+ * commands of one batch are applied in memory, journaled with one fsync, then acknowledged and projected.
+ * a transfer across shards is debited by the source shard, then credited by the destination shard,
+ * and refunded by the source shard if the credit fails. It is acknowledged after the credit journaled.
+ * ------------------
+ * accounts are kept in access order, beyond maxAccounts the least recently used ones are evicted
+ * if their latest version is projected, so an account loaded again from database is never older than the engine.
+ */
+@Slf4j
+final class LedgerShard implements Runnable {
+    interface Command {
+    }
+
+    record Transfer(long transferId, String from, String to, BigDecimal amount, CompletableFuture<LedgerTransferResult> future) implements Command {
+    }
+
+    record Credit(Transfer transfer, BankAccount fromAfter) implements Command {
+    }
+
+    record Refund(Transfer transfer, Exception reason) implements Command {
+    }
+
+    record SetState(String accountNumber, int state) implements Command {
+    }
+
+    record Balance(String accountNumber, CompletableFuture<BigDecimal> future) implements Command {
+    }
+
+    record Projected(String accountNumber, long version) implements Command {
+    }
+
+    private final int index;
+    private final LedgerEngine engine;
+    private final int batchSize;
+    private final int queueSize;
+    private final int maxAccounts;
+    /**
+     * external commands are bounded by queueSize, commands between shards are never rejected
+     */
+    private final LinkedBlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger external = new AtomicInteger();
+    private final Map<String, BankAccount> accounts = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * latest version of the accounts changed but not projected yet, never evicted,
+     * a version undone by a failed journal is never projected, so the account stays until its next change projected
+     */
+    private final Map<String, Long> dirty = new HashMap<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // state of the batch in handling
+    private final List<LedgerJournal.Record> records = new ArrayList<>();
+    private final List<Runnable> onJournaled = new ArrayList<>();
+    private final List<Consumer<Exception>> onFailed = new ArrayList<>();
+    private final Deque<Runnable> undo = new ArrayDeque<>();
+
+    LedgerShard(int index, LedgerEngine engine, int batchSize, int queueSize, int maxAccounts) {
+        this.index = index;
+        this.engine = engine;
+        this.batchSize = batchSize;
+        this.queueSize = queueSize;
+        this.maxAccounts = Math.max(1, maxAccounts);
+        this.thread = new Thread(this, "ledger-shard-" + index);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    /**
+     * submit a command from outside of the engine, rejected while the shard is full
+     */
+    boolean submit(Command command) {
+        if (!running || external.incrementAndGet() > queueSize) {
+            external.decrementAndGet();
+            return false;
+        }
+        queue.add(command);
+        return true;
+    }
+
+    /**
+     * submit a command from another shard
+     */
+    void forward(Command command) {
+        queue.add(command);
+    }
+
+    @Override
+    public void run() {
+        List<Command> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Command first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (null == first) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                handleBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Throwable e) {
+                log.error("ledger shard {} batch error", index, e);
+            } finally {
+                batch.clear();
+            }
+        }
+        log.info("ledger shard {} stopped", index);
+    }
+
+    private void handleBatch(List<Command> batch) {
+        for (Command command : batch) {
+            if (command instanceof Transfer || command instanceof Balance) {
+                external.decrementAndGet();
+            }
+            try {
+                handle(command);
+            } catch (Exception e) {
+                log.error("ledger shard {} handle command error: {}", index, command, e);
+            }
+        }
+        List<LedgerJournal.Record> journaled;
+        try {
+            journaled = engine.journal(records);
+        } catch (Exception e) {
+            log.error("ledger shard {} journal {} records fail", index, records.size(), e);
+            while (!undo.isEmpty()) {
+                undo.pop().run();
+            }
+            AccountTransferError error = new AccountTransferError(e, "Ledger journal error");
+            onFailed.forEach(f -> f.accept(error));
+            clearBatch();
+            return;
+        }
+        engine.project(journaled);
+        onJournaled.forEach(Runnable::run);
+        clearBatch();
+        evict();
+    }
+
+    /**
+     * evict the least recently used accounts with all changes projected
+     */
+    private void evict() {
+        Iterator<String> it = accounts.keySet().iterator();
+        while (accounts.size() > maxAccounts && it.hasNext()) {
+            if (!dirty.containsKey(it.next())) {
+                it.remove();
+            }
+        }
+    }
+
+    private void clearBatch() {
+        records.clear();
+        onJournaled.clear();
+        onFailed.clear();
+        undo.clear();
+    }
+
+    private void handle(Command command) {
+        if (command instanceof Transfer transfer) {
+            handleTransfer(transfer);
+        } else if (command instanceof Credit credit) {
+            handleCredit(credit);
+        } else if (command instanceof Refund refund) {
+            handleRefund(refund);
+        } else if (command instanceof SetState setState) {
+            BankAccount account = accounts.get(setState.accountNumber());
+            if (null != account) {
+                account.setState(setState.state());
+            }
+        } else if (command instanceof Projected projected) {
+            // a newer version applied after the one projected keeps the account dirty
+            dirty.remove(projected.accountNumber(), projected.version());
+        } else if (command instanceof Balance balance) {
+            try {
+                balance.future().complete(load(balance.accountNumber()).getBalance());
+            } catch (Exception e) {
+                balance.future().completeExceptionally(e);
+            }
+        }
+    }
+
+    private void handleTransfer(Transfer transfer) {
+        BankAccount from;
+        try {
+            from = load(transfer.from());
+            requireActive(from, "Source account is not active: ");
+            if (from.getBalance().compareTo(transfer.amount()) < 0) {
+                throw AccountExceptions.insufficientBalance(from.getAccountNumber(), transfer.amount());
+            }
+        } catch (Exception e) {
+            transfer.future().completeExceptionally(e);
+            return;
+        }
+        LedgerShard toShard = engine.shardOf(transfer.to());
+        if (toShard != this) {
+            // debit here, credit on the destination shard after journaled
+            BankAccount fromAfter = apply(from, transfer.amount().negate(), LedgerJournal.Type.DEBIT, transfer.transferId(), transfer.amount(), transfer.to());
+            onJournaled.add(() -> toShard.forward(new Credit(transfer, fromAfter)));
+            onFailed.add(e -> transfer.future().completeExceptionally(e));
+            return;
+        }
+        BankAccount to;
+        try {
+            to = load(transfer.to());
+            requireActive(to, "Destination account is not active: ");
+        } catch (Exception e) {
+            transfer.future().completeExceptionally(e);
+            return;
+        }
+        BankAccount fromAfter = apply(from, transfer.amount().negate(), LedgerJournal.Type.DEBIT, transfer.transferId(), transfer.amount(), transfer.to());
+        BankAccount toAfter = apply(to, transfer.amount(), LedgerJournal.Type.CREDIT, transfer.transferId(), transfer.amount(), transfer.from());
+        onJournaled.add(() -> transfer.future().complete(new LedgerTransferResult(fromAfter, toAfter)));
+        onFailed.add(e -> transfer.future().completeExceptionally(e));
+    }
+
+    private void handleCredit(Credit credit) {
+        Transfer transfer = credit.transfer();
+        BankAccount to;
+        try {
+            to = load(transfer.to());
+            requireActive(to, "Destination account is not active: ");
+        } catch (Exception e) {
+            engine.shardOf(transfer.from()).forward(new Refund(transfer, e));
+            return;
+        }
+        BankAccount toAfter = apply(to, transfer.amount(), LedgerJournal.Type.CREDIT, transfer.transferId(), transfer.amount(), transfer.from());
+        onJournaled.add(() -> transfer.future().complete(new LedgerTransferResult(credit.fromAfter(), toAfter)));
+        // the debit is journaled, give it back
+        onFailed.add(e -> engine.shardOf(transfer.from()).forward(new Refund(transfer, e)));
+    }
+
+    private void handleRefund(Refund refund) {
+        Transfer transfer = refund.transfer();
+        BankAccount from;
+        try {
+            // the source account may be evicted once its debit projected, the one loaded again contains the debit
+            from = load(transfer.from());
+        } catch (Exception e) {
+            log.error("ledger shard {} load account of refund {} fail, retry it", index, transfer.transferId(), e);
+            onJournaled.add(() -> forward(refund));
+            onFailed.add(f -> forward(refund));
+            return;
+        }
+        apply(from, transfer.amount(), LedgerJournal.Type.REFUND, transfer.transferId(), transfer.amount(), transfer.to());
+        onJournaled.add(() -> transfer.future().completeExceptionally(refund.reason()));
+        // retry the refund in the next batch
+        onFailed.add(e -> forward(refund));
+    }
+
+    /**
+     * apply the change in memory, record the journal and undo of it
+     *
+     * @return snapshot after applied
+     */
+    private BankAccount apply(BankAccount account, BigDecimal change, LedgerJournal.Type type, long transferId, BigDecimal amount, String counterparty) {
+        BigDecimal balance = account.getBalance();
+        Long ver = account.getVer();
+        LocalDateTime updatedAt = account.getUpdatedAt();
+        LocalDateTime now = LocalDateTime.now();
+        account.setBalance(balance.add(change));
+        account.setVer(engine.nextVersion());
+        account.setUpdatedAt(now);
+        dirty.put(account.getAccountNumber(), account.getVer());
+        undo.push(() -> {
+            account.setBalance(balance);
+            account.setVer(ver);
+            account.setUpdatedAt(updatedAt);
+        });
+        records.add(new LedgerJournal.Record(0, type, transferId, account.getId(), account.getAccountNumber(), amount, account.getBalance(), account.getVer(), counterparty, now.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+        return account.toBuilder().build();
+    }
+
+    private BankAccount load(String accountNumber) throws AccountException, AccountReadError {
+        BankAccount account = accounts.get(accountNumber);
+        if (null != account) {
+            return account;
+        }
+        Optional<BankAccount> read;
+        try {
+            read = engine.load(accountNumber);
+        } catch (Exception e) {
+            throw new AccountReadError(e, "Ledger load account error: " + accountNumber);
+        }
+        if (read.isEmpty()) {
+            throw AccountExceptions.accountNotFound(accountNumber);
+        }
+        accounts.put(accountNumber, read.get());
+        return read.get();
+    }
+
+    private static void requireActive(BankAccount account, String message) throws AccountTransferException {
+        if (!Objects.equals(account.getState(), AccountState.ACTIVE.getCode())) {
+            throw new AccountTransferException(ExpCode.TransferAccountLimit, message + account.getAccountNumber());
+        }
+    }
+
+    void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package iorihuang.bankaccountmanager.service.ledger;
+
+import iorihuang.bankaccountmanager.model.BankAccount;
+
+/**
+ * Snapshot of both accounts after a transfer applied by the ledger engine
+ */
+public record LedgerTransferResult(BankAccount from, BankAccount to) {
+}
@@ -10,14 +10,30 @@ CREATE TABLE IF NOT EXISTS bank_account (
     balance_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     state INT NOT NULL DEFAULT 0, -- account state
     ver BIGINT NOT NULL DEFAULT 0, -- version for optimistic locking
+    slots INT NOT NULL DEFAULT 0, -- balance slots of hot account, 0 for normal account
+    fence_token BIGINT NOT NULL DEFAULT 0, -- fence token of the last lock holder written, 0 for not fenced
     created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     deleted_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
 );
 CREATE UNIQUE INDEX uniq_account ON bank_account(account_number);
+CREATE INDEX idx_account_ver ON bank_account(account_number,ver); -- covering index of version probes
 CREATE INDEX idx_owner_id ON bank_account(owner_id);
 CREATE INDEX idx_state ON bank_account(state);
 
+-- balance slots of hot account, balance of account = balance of bank_account + sum balance of slots
+CREATE TABLE IF NOT EXISTS bank_account_slot (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    account_id BIGINT NOT NULL DEFAULT 0,
+    account_number VARCHAR(32) NOT NULL DEFAULT '',
+    slot_no INT NOT NULL DEFAULT 0,
+    balance DECIMAL(25,10) NOT NULL DEFAULT 0,
+    ver BIGINT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+CREATE UNIQUE INDEX uniq_account_slot ON bank_account_slot(account_number,slot_no);
+
 -- account info change log
 CREATE TABLE IF NOT EXISTS bank_account_change_log (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
@@ -48,10 +64,12 @@ CREATE TABLE IF NOT EXISTS bank_account_transfer_log (
     after_balance_from DECIMAL(25,10) NOT NULL DEFAULT 0,
     before_balance_to DECIMAL(25,10) NOT NULL DEFAULT 0,
     after_balance_to DECIMAL(25,10) NOT NULL DEFAULT 0,
+    transfer_id BIGINT DEFAULT NULL, -- id of the transfer, balance logs written asynchronously are rebuilt from this row, null for not rebuilt
     created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
 );
 CREATE INDEX idx_transfer_from_account_number ON bank_account_transfer_log(from_account_number,created_at);
 CREATE INDEX idx_transfer_to_account_number ON bank_account_transfer_log(to_account_number,created_at);
+CREATE INDEX idx_transfer_created_at ON bank_account_transfer_log(created_at); -- replay of balance logs
 
 -- account balance change log
 CREATE TABLE IF NOT EXISTS bank_account_balance_log (
@@ -63,6 +81,8 @@ CREATE TABLE IF NOT EXISTS bank_account_balance_log (
     change_amount DECIMAL(25,10) NOT NULL DEFAULT 0,
     change_type INT NOT NULL, -- 1:Deposit, 2:Withdrawal, 3:Transfer In, 4:Transfer Out, 5:Other
     change_desc VARCHAR(128) NOT NULL DEFAULT '',
+    transfer_id BIGINT DEFAULT NULL, -- transfer of the log written asynchronously, null for others
     created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
 );
 CREATE INDEX idx_balance_account_number ON bank_account_balance_log(account_number,created_at);
+CREATE UNIQUE INDEX uniq_balance_transfer ON bank_account_balance_log(transfer_id,account_id); -- a replayed log is never inserted twice
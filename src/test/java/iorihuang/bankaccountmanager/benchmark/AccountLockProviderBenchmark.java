@@ -0,0 +1,139 @@
+package iorihuang.bankaccountmanager.benchmark;
+
+import iorihuang.bankaccountmanager.BankAccountManagerApplication;
+import iorihuang.bankaccountmanager.dto.CreateAccountRequest;
+import iorihuang.bankaccountmanager.dto.TransferRequest;
+import iorihuang.bankaccountmanager.exception.AccountError;
+import iorihuang.bankaccountmanager.exception.AccountException;
+import iorihuang.bankaccountmanager.exception.ExpCode;
+import iorihuang.bankaccountmanager.model.bankaccount.AccountType;
+import iorihuang.bankaccountmanager.service.BankAccountService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.beans.BeansException;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH 基准测试：对比账户锁后端(local/redis/db)在均匀负载与热点负载下的转账吞吐
+ * ------------------
+ * uniform：随机两个账户之间转账；hot：所有账户转入同一个账户；
+ * 吞吐包含失败的调用，辅助计数器success/conflict/busy/error分别统计成功、版本冲突、加锁失败与系统错误的次数
+ */
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AccountLockProviderBenchmark implements BankAccountServiceBenchmarkIface {
+    static ConfigurableApplicationContext ctx;
+    static BankAccountService service;
+    static RedisServer redisServer;
+
+    static String accountPrefix = "L";
+    static String testBalance = "10000000.011504";
+    static int accounts = 64;
+
+    /**
+     * accountlock.backend
+     */
+    @Param({"local", "redis", "db"})
+    public String backend;
+
+    /**
+     * uniform or hot
+     */
+    @Param({"uniform", "hot"})
+    public String load;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long success;
+        public long conflict;
+        public long busy;
+        public long error;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            success = 0;
+            conflict = 0;
+            busy = 0;
+            error = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (null != ctx) {
+            return;
+        }
+        ctx = SpringApplication.run(BankAccountManagerApplication.class, "--accountlock.backend=" + backend);
+        try {
+            service = ctx.getBean(BankAccountService.class);
+        } catch (BeansException e) {
+            //
+        }
+        try {
+            redisServer = ctx.getBean(RedisServer.class);
+        } catch (BeansException e) {
+            //
+        }
+        CreateAccountRequest createRequest = new CreateAccountRequest()
+                .setAccountType(AccountType.SAVINGS.getCode())
+                .setOwnerId("123456789")
+                .setOwnerName("张三")
+                .setInitialBalance(testBalance)
+                .setContactInfo("123456789");
+        try {
+            for (int i = 0; i < accounts; i++) {
+                service.createAccount(createRequest.setAccountNumber(accountPrefix + i));
+            }
+        } catch (AccountError | AccountException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Benchmark
+    public void testTransfer(Outcome outcome, Blackhole blackhole) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(1, accounts);
+        int to = "hot".equals(load) ? 0 : (from + random.nextInt(1, accounts)) % accounts;
+        TransferRequest request = new TransferRequest();
+        request.setFromAccountNumber(accountPrefix + from);
+        request.setToAccountNumber(accountPrefix + to);
+        request.setAmount("1.01");
+        try {
+            blackhole.consume(service.transfer(request));
+            outcome.success++;
+        } catch (AccountException e) {
+            if (e.getCode() == ExpCode.AccountVersionConflict.getCode()) {
+                outcome.conflict++;
+            } else {
+                outcome.busy++;
+            }
+        } catch (AccountError e) {
+            outcome.error++;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (null != redisServer) {
+            redisServer.stop();
+        }
+        if (ctx != null) {
+            ctx.close();
+            ctx = null;
+        }
+        try {
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            //
+        }
+    }
+}
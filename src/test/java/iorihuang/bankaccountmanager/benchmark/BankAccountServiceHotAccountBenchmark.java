@@ -0,0 +1,119 @@
+package iorihuang.bankaccountmanager.benchmark;
+
+import iorihuang.bankaccountmanager.BankAccountManagerApplication;
+import iorihuang.bankaccountmanager.dto.CreateAccountRequest;
+import iorihuang.bankaccountmanager.dto.TransferRequest;
+import iorihuang.bankaccountmanager.exception.AccountError;
+import iorihuang.bankaccountmanager.exception.AccountException;
+import iorihuang.bankaccountmanager.model.bankaccount.AccountType;
+import iorihuang.bankaccountmanager.service.BankAccountService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.beans.BeansException;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JMH 基准测试：多个账户并发转入同一个热点账户，对比普通账户(slots=0)与余额分槽(slots>0)
+ */
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BankAccountServiceHotAccountBenchmark implements BankAccountServiceBenchmarkIface {
+    static ConfigurableApplicationContext ctx;
+    static BankAccountService service;
+    static RedisServer redisServer;
+
+    static String hotAccountNumber = "HOT001";
+    static String senderPrefix = "S";
+    static String testBalance = "10000000.011504";
+    static int senders = 8;
+
+    /**
+     * balance slots of the hot account, 0 for normal account
+     */
+    @Param({"0", "8"})
+    public int slots;
+
+    @State(Scope.Thread)
+    public static class Sender {
+        static final AtomicInteger index = new AtomicInteger();
+        TransferRequest request;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            request = new TransferRequest();
+            request.setFromAccountNumber(senderPrefix + (index.getAndIncrement() % senders));
+            request.setToAccountNumber(hotAccountNumber);
+            request.setAmount("1.01");
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (null != ctx) {
+            return;
+        }
+        ctx = SpringApplication.run(BankAccountManagerApplication.class);
+        try {
+            service = ctx.getBean(BankAccountService.class);
+        } catch (BeansException e) {
+            //
+        }
+        try {
+            redisServer = ctx.getBean(RedisServer.class);
+        } catch (BeansException e) {
+            //
+        }
+        CreateAccountRequest createRequest = new CreateAccountRequest()
+                .setAccountType(AccountType.SAVINGS.getCode())
+                .setOwnerId("123456789")
+                .setOwnerName("张三")
+                .setInitialBalance(testBalance)
+                .setContactInfo("123456789");
+        try {
+            service.createAccount(createRequest.setAccountNumber(hotAccountNumber));
+            for (int i = 0; i < senders; i++) {
+                service.createAccount(createRequest.setAccountNumber(senderPrefix + i));
+            }
+            if (slots > 0) {
+                service.splitAccountSlots(hotAccountNumber, slots);
+            }
+        } catch (AccountError | AccountException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Benchmark
+    public void testTransferToHotAccount(Sender sender, Blackhole blackhole) {
+        try {
+            blackhole.consume(service.transfer(sender.request));
+        } catch (AccountException e) {
+            // lock or version conflict, counted as failure by the missing result
+        } catch (AccountError e) {
+            //
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (null != redisServer) {
+            redisServer.stop();
+        }
+        if (ctx != null) {
+            ctx.close();
+            ctx = null;
+        }
+        try {
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            //
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package iorihuang.bankaccountmanager.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import iorihuang.bankaccountmanager.helper.idempotency.IdempotencyFilter;
+import iorihuang.bankaccountmanager.helper.idempotency.IdempotencyProperties;
+import iorihuang.bankaccountmanager.helper.idempotency.IdempotencyStore;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JMH 基准测试：Idempotency-Key 非重复请求路径的额外开销（仅本地缓存）
+ */
+@Fork(1)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IdempotencyFilterBenchmark {
+    static final byte[] BODY = "{\"ts\":\"1700000000000\",\"code\":1,\"msg\":\"\",\"error\":0,\"data\":{\"accountNumber\":\"A001\",\"balance\":\"100.000000\"}}".getBytes(StandardCharsets.UTF_8);
+
+    IdempotencyProperties properties;
+    IdempotencyFilter filter;
+    FilterChain chain;
+    AtomicLong keys = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        properties = new IdempotencyProperties();
+        filter = new IdempotencyFilter(new IdempotencyStore(null, 60, 100_000, 30), properties, new ObjectMapper(), null);
+        chain = (request, response) -> response.getOutputStream().write(BODY);
+    }
+
+    private MockHttpServletRequest request(String key) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/op/api/accounts/balance/v1/transfer");
+        if (null != key) {
+            request.addHeader(properties.getHeader(), key);
+        }
+        return request;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse testWithoutKey() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(null), response, chain);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse testUniqueKey() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("key-" + keys.incrementAndGet()), response, chain);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse testDuplicateKey() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("key-duplicate"), response, chain);
+        return response;
+    }
+}
@@ -0,0 +1,136 @@
+package iorihuang.bankaccountmanager.benchmark;
+
+import iorihuang.bankaccountmanager.BankAccountManagerApplication;
+import iorihuang.bankaccountmanager.dto.CreateAccountRequest;
+import iorihuang.bankaccountmanager.dto.TransferRequest;
+import iorihuang.bankaccountmanager.exception.AccountError;
+import iorihuang.bankaccountmanager.exception.AccountException;
+import iorihuang.bankaccountmanager.exception.ExpCode;
+import iorihuang.bankaccountmanager.model.bankaccount.AccountType;
+import iorihuang.bankaccountmanager.service.BankAccountService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.beans.BeansException;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH 基准测试：无锁乐观转账(optimistic)与加锁转账(local/redis)在不同竞争程度下的对比
+ * ------------------
+ * 账户数越少竞争越激烈：账户多时乐观模式省去加锁开销，账户少时冲突回滚与重试使其落后；
+ * 辅助计数器success/conflict/busy分别统计成功、版本冲突(重试耗尽)与锁等待超时的次数
+ */
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OptimisticTransferContentionBenchmark implements BankAccountServiceBenchmarkIface {
+    static ConfigurableApplicationContext ctx;
+    static BankAccountService service;
+    static RedisServer redisServer;
+
+    static String accountPrefix = "O";
+    static String testBalance = "10000000.011504";
+
+    /**
+     * accountlock.backend
+     */
+    @Param({"optimistic", "local", "redis"})
+    public String backend;
+
+    /**
+     * accounts transferred between, fewer accounts means more contention
+     */
+    @Param({"2", "16", "1024"})
+    public int accounts;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long success;
+        public long conflict;
+        public long busy;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            success = 0;
+            conflict = 0;
+            busy = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (null != ctx) {
+            return;
+        }
+        ctx = SpringApplication.run(BankAccountManagerApplication.class, "--accountlock.backend=" + backend);
+        try {
+            service = ctx.getBean(BankAccountService.class);
+        } catch (BeansException e) {
+            //
+        }
+        try {
+            redisServer = ctx.getBean(RedisServer.class);
+        } catch (BeansException e) {
+            //
+        }
+        CreateAccountRequest createRequest = new CreateAccountRequest()
+                .setAccountType(AccountType.SAVINGS.getCode())
+                .setOwnerId("123456789")
+                .setOwnerName("张三")
+                .setInitialBalance(testBalance)
+                .setContactInfo("123456789");
+        try {
+            for (int i = 0; i < accounts; i++) {
+                service.createAccount(createRequest.setAccountNumber(accountPrefix + i));
+            }
+        } catch (AccountError | AccountException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Benchmark
+    public void testTransfer(Outcome outcome, Blackhole blackhole) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(accounts);
+        int to = (from + random.nextInt(1, accounts)) % accounts;
+        TransferRequest request = new TransferRequest();
+        request.setFromAccountNumber(accountPrefix + from);
+        request.setToAccountNumber(accountPrefix + to);
+        request.setAmount("1.01");
+        try {
+            blackhole.consume(service.transfer(request));
+            outcome.success++;
+        } catch (AccountException e) {
+            if (e.getCode() == ExpCode.AccountVersionConflict.getCode()) {
+                outcome.conflict++;
+            } else {
+                outcome.busy++;
+            }
+        } catch (AccountError e) {
+            //
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (null != redisServer) {
+            redisServer.stop();
+        }
+        if (ctx != null) {
+            ctx.close();
+            ctx = null;
+        }
+        try {
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            //
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package iorihuang.bankaccountmanager.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import iorihuang.bankaccountmanager.dto.BankAccountDTO;
+import iorihuang.bankaccountmanager.dto.DTOResponse;
+import iorihuang.bankaccountmanager.helper.response.ResponseBodyCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH 基准测试：账户查询响应体的序列化开销，每次用Jackson序列化DTOResponse对比写入缓存的序列化字节（补ts）
+ * ------------------
+ * 加 -prof gc 可对比每次请求的内存分配
+ */
+@Fork(1)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResponseBodyCacheBenchmark {
+    ObjectMapper objectMapper;
+    ResponseBodyCache cache;
+    BankAccountDTO dto;
+    ByteArrayOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+        cache = new ResponseBodyCache(objectMapper, 10000, true, null);
+        dto = new BankAccountDTO()
+                .setId(1234567890123456789L)
+                .setAccountNumber("A001")
+                .setAccountType(1)
+                .setOwnerId("4500003333000x")
+                .setOwnerName("张三")
+                .setContactInfo("13800000000")
+                .setBalance(new BigDecimal("100.560807"))
+                .setState(1)
+                .setUpdatedAt(LocalDateTime.now())
+                .setVer(1L);
+        out = new ByteArrayOutputStream(1024);
+    }
+
+    @Benchmark
+    public int testJackson() throws IOException {
+        out.reset();
+        objectMapper.writeValue(out, new DTOResponse<BankAccountDTO>().setCode(1).setData(dto));
+        return out.size();
+    }
+
+    @Benchmark
+    public int testCachedBytes() throws IOException {
+        out.reset();
+        byte[] body = cache.get(dto.getAccountNumber(), dto.getVer(), () -> new DTOResponse<BankAccountDTO>().setTs(null).setCode(1).setData(dto));
+        cache.write(body, out);
+        return out.size();
+    }
+}
@@ -0,0 +1,122 @@
+package iorihuang.bankaccountmanager.benchmark;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import iorihuang.bankaccountmanager.BankAccountManagerApplication;
+import iorihuang.bankaccountmanager.dto.CreateAccountRequest;
+import iorihuang.bankaccountmanager.exception.AccountError;
+import iorihuang.bankaccountmanager.exception.AccountException;
+import iorihuang.bankaccountmanager.model.bankaccount.AccountType;
+import iorihuang.bankaccountmanager.service.BankAccountService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.beans.BeansException;
+import org.springframework.boot.SpringApplication;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * JMH 基准测试：同一个账户缓存失效后，大量线程并发读取时single flight合并加载的效果
+ * ------------------
+ * herd组：31个线程读取同一个账户，1个线程每毫秒删除一次该账户的缓存；
+ * 结束时打印查库次数和被合并的加载次数
+ */
+@Fork(1)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SingleFlightBenchmark implements BankAccountServiceBenchmarkIface {
+    static ConfigurableApplicationContext ctx;
+    static BankAccountService service;
+    static RedisServer redisServer;
+    static Cache cache;
+
+    static String accountNumber = "SF0";
+    static String testBalance = "10000000.011504";
+
+    /**
+     * twolevelcache.single-flight
+     */
+    @Param({"true", "false"})
+    public String singleFlight;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (null != ctx) {
+            return;
+        }
+        ctx = SpringApplication.run(BankAccountManagerApplication.class, "--twolevelcache.single-flight=" + singleFlight);
+        try {
+            service = ctx.getBean(BankAccountService.class);
+        } catch (BeansException e) {
+            //
+        }
+        try {
+            redisServer = ctx.getBean(RedisServer.class);
+        } catch (BeansException e) {
+            //
+        }
+        cache = ctx.getBean(CacheManager.class).getCache("account");
+        CreateAccountRequest createRequest = new CreateAccountRequest()
+                .setAccountType(AccountType.SAVINGS.getCode())
+                .setOwnerId("123456789")
+                .setOwnerName("张三")
+                .setInitialBalance(testBalance)
+                .setContactInfo("123456789")
+                .setAccountNumber(accountNumber);
+        try {
+            service.createAccount(createRequest);
+        } catch (AccountError | AccountException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Benchmark
+    @Group("herd")
+    @GroupThreads(31)
+    public void read(Blackhole blackhole) {
+        try {
+            blackhole.consume(service.getAccount(accountNumber));
+        } catch (AccountException | AccountError e) {
+            //
+        }
+    }
+
+    @Benchmark
+    @Group("herd")
+    @GroupThreads(1)
+    public void invalidate() {
+        cache.evict(accountNumber);
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MeterRegistry registry = ctx.getBean(MeterRegistry.class);
+        Timer reads = registry.find("bank.account.repository.find-by-account-number").timer();
+        Counter loaded = registry.find("singleflight.loads").tag("name", "account").tag("result", "loaded").counter();
+        Counter shared = registry.find("singleflight.loads").tag("name", "account").tag("result", "shared").counter();
+        System.out.printf("single-flight=%s db reads=%d loaded=%.0f shared=%.0f%n", singleFlight,
+                null == reads ? -1 : reads.count(),
+                null == loaded ? 0 : loaded.count(),
+                null == shared ? 0 : shared.count());
+        if (null != redisServer) {
+            redisServer.stop();
+        }
+        if (ctx != null) {
+            ctx.close();
+            ctx = null;
+        }
+        try {
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            //
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package iorihuang.bankaccountmanager.config;
+
+import iorihuang.bankaccountmanager.helper.lock.AccountLockProvider;
+import iorihuang.bankaccountmanager.helper.lock.LocalAccountLockProvider;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.annotation.UserConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+/**
+ * the redis backend should not silently fall back to local locks, which do not exclude other nodes
+ */
+class AccountLockAutoConfigTest {
+    private ApplicationContextRunner runner() {
+        return new ApplicationContextRunner()
+                .withConfiguration(UserConfigurations.of(AccountLockAutoConfig.class));
+    }
+
+    @Test
+    void testRedisBackendWithoutRedisFails() {
+        runner().run(context -> {
+            Assertions.assertNotNull(context.getStartupFailure());
+            Throwable cause = context.getStartupFailure();
+            while (null != cause.getCause()) {
+                cause = cause.getCause();
+            }
+            Assertions.assertInstanceOf(IllegalStateException.class, cause);
+        });
+    }
+
+    @Test
+    void testLocalBackendWithoutRedis() {
+        runner().withPropertyValues("accountlock.backend=local")
+                .run(context -> {
+                    Assertions.assertNull(context.getStartupFailure());
+                    Assertions.assertInstanceOf(LocalAccountLockProvider.class, context.getBean(AccountLockProvider.class));
+                });
+    }
+}
@@ -0,0 +1,65 @@
+package iorihuang.bankaccountmanager.config;
+
+import com.github.fppt.jedismock.RedisServer;
+import iorihuang.bankaccountmanager.repository.BankAccountRepository;
+import iorihuang.bankaccountmanager.repository.BankAccountSlotRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.context.annotation.UserConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.io.IOException;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * listener containers of redis pub/sub are created in a spring context, where the configurations of this
+ * application are processed before the redis auto-configuration registers its connection factory
+ */
+class RedisListenerContainerTest {
+    static RedisServer redisServer;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        redisServer = RedisServer.newRedisServer().start();
+    }
+
+    @AfterAll
+    static void tearDown() throws IOException {
+        redisServer.stop();
+    }
+
+    private ApplicationContextRunner runner() {
+        return new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(RedisAutoConfiguration.class, JacksonAutoConfiguration.class))
+                .withBean(BankAccountRepository.class, () -> mock(BankAccountRepository.class))
+                .withBean(BankAccountSlotRepository.class, () -> mock(BankAccountSlotRepository.class))
+                .withPropertyValues("spring.data.redis.host=" + redisServer.getHost(), "spring.data.redis.port=" + redisServer.getBindPort());
+    }
+
+    @Test
+    void testCacheInvalidationListenerContainer() {
+        runner().withConfiguration(UserConfigurations.of(TwoLevelCacheAutoConfig.class))
+                .run(context -> {
+                    Assertions.assertNull(context.getStartupFailure());
+                    Assertions.assertInstanceOf(RedisMessageListenerContainer.class, context.getBean("cacheInvalidationListenerContainer"));
+                    Assertions.assertTrue(context.getBean("cacheInvalidationListenerContainer", RedisMessageListenerContainer.class).isRunning());
+                });
+    }
+
+    @Test
+    void testAccountCreatedListenerContainer() {
+        runner().withConfiguration(UserConfigurations.of(AccountExistenceAutoConfig.class))
+                .run(context -> {
+                    Assertions.assertNull(context.getStartupFailure());
+                    Assertions.assertInstanceOf(RedisMessageListenerContainer.class, context.getBean("accountCreatedListenerContainer"));
+                    Assertions.assertTrue(context.getBean("accountCreatedListenerContainer", RedisMessageListenerContainer.class).isRunning());
+                });
+    }
+}
@@ -0,0 +1,89 @@
+package iorihuang.bankaccountmanager.helper;
+
+import com.github.fppt.jedismock.RedisServer;
+import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdHelper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class RedisMultiLockTest {
+    static RedisServer redisServer;
+    static LettuceConnectionFactory factory;
+    static StringRedisTemplate redisTemplate;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        redisServer = RedisServer.newRedisServer().start();
+        factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(redisServer.getHost(), redisServer.getBindPort()));
+        factory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(factory);
+    }
+
+    @AfterAll
+    static void tearDown() throws IOException {
+        factory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    void testAllOrNone() {
+        try (RedisLock single = new RedisLock(redisTemplate, "test:lock:B", 3)) {
+            Assertions.assertTrue(single.isLocked());
+            try (RedisMultiLock lock = new RedisMultiLock(redisTemplate, List.of("test:lock:C", "test:lock:A", "test:lock:B"), 3)) {
+                Assertions.assertFalse(lock.isLocked());
+            }
+            // none of the keys is taken by the failed lock
+            Assertions.assertNull(redisTemplate.opsForValue().get("test:lock:A"));
+            Assertions.assertNull(redisTemplate.opsForValue().get("test:lock:C"));
+        }
+        Assertions.assertNull(redisTemplate.opsForValue().get("test:lock:B"));
+    }
+
+    @Test
+    void testLockAndRelease() {
+        try (RedisMultiLock lock = new RedisMultiLock(redisTemplate, List.of("test:lock:Y", "test:lock:X", "test:lock:Y"), 3)) {
+            Assertions.assertTrue(lock.isLocked());
+            Assertions.assertEquals(List.of("test:lock:X", "test:lock:Y"), lock.getLockKeys());
+            try (RedisMultiLock other = new RedisMultiLock(redisTemplate, List.of("test:lock:X", "test:lock:Y"), 3)) {
+                Assertions.assertFalse(other.isLocked());
+            }
+            // the failed lock never releases keys held by another lock
+            Assertions.assertNotNull(redisTemplate.opsForValue().get("test:lock:X"));
+        }
+        Assertions.assertNull(redisTemplate.opsForValue().get("test:lock:X"));
+        Assertions.assertNull(redisTemplate.opsForValue().get("test:lock:Y"));
+    }
+
+    @Test
+    void testWithoutRedis() {
+        try (RedisMultiLock lock = new RedisMultiLock(null, List.of("test:lock:X"), 3)) {
+            Assertions.assertTrue(lock.isLocked());
+        }
+    }
+
+    @Test
+    void testFenceToken() {
+        SnowFlakeIdHelper tokenHelper = new SnowFlakeIdHelper(LocalDateTime.of(2024, 1, 1, 0, 0), TimeUnit.MILLISECONDS, 1, 1, 40, 3, 8, 12, 10);
+        long first;
+        try (RedisLock lock = new RedisMultiLock(redisTemplate, List.of("test:fence:A"), 3).fence(tokenHelper)) {
+            first = lock.fenceToken();
+            Assertions.assertTrue(first > 0);
+            try (RedisLock other = new RedisMultiLock(redisTemplate, List.of("test:fence:A"), 3).fence(tokenHelper)) {
+                // no token for a failed grant
+                Assertions.assertEquals(0, other.fenceToken());
+            }
+        }
+        try (RedisLock lock = new RedisMultiLock(redisTemplate, List.of("test:fence:A"), 3).fence(tokenHelper)) {
+            Assertions.assertTrue(lock.fenceToken() > first);
+        }
+    }
+}
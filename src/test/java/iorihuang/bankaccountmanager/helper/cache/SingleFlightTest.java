@@ -0,0 +1,75 @@
+package iorihuang.bankaccountmanager.helper.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentLoadsShared() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", null);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> singleFlight.load("A001", () -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return "loaded";
+                })));
+            }
+            // wait for the others to join the load in flight
+            while (loads.get() == 0) {
+                Thread.onSpinWait();
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> future : futures) {
+                Assertions.assertEquals("loaded", future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    void testExceptionShared() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>("test", null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.load("A001", () -> {
+                started.countDown();
+                release.await();
+                throw new IllegalStateException("db down");
+            }));
+            started.await();
+            Future<String> follower = executor.submit(() -> singleFlight.load("A001", () -> "never"));
+            Thread.sleep(100);
+            release.countDown();
+            Exception leaderError = Assertions.assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+            Exception followerError = Assertions.assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(IllegalStateException.class, leaderError.getCause());
+            Assertions.assertInstanceOf(IllegalStateException.class, followerError.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        // the failed load is not kept
+        Assertions.assertEquals("again", singleFlight.load("A001", () -> "again"));
+    }
+}
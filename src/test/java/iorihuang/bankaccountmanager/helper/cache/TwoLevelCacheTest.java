@@ -0,0 +1,202 @@
+package iorihuang.bankaccountmanager.helper.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fppt.jedismock.RedisServer;
+import iorihuang.bankaccountmanager.dto.BankAccountDTO;
+import iorihuang.bankaccountmanager.helper.offheap.AccountRecordCodec;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+class TwoLevelCacheTest {
+    static RedisServer redisServer;
+    static LettuceConnectionFactory factory;
+    static StringRedisTemplate redisTemplate;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        redisServer = RedisServer.newRedisServer().start();
+        factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(redisServer.getHost(), redisServer.getBindPort()));
+        factory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(factory);
+    }
+
+    @AfterAll
+    static void tearDown() throws IOException {
+        factory.destroy();
+        redisServer.stop();
+    }
+
+    private static TwoLevelCacheManager manager() {
+        return manager(redisTemplate);
+    }
+
+    private static TwoLevelCacheManager manager(StringRedisTemplate template) {
+        TwoLevelCacheManager manager = new TwoLevelCacheManager(List.of("account"), Map.of("account", BankAccountDTO.class), Map.of(), Map.of(),
+                template, new ObjectMapper().findAndRegisterModules(), new TwoLevelCacheProperties(), null);
+        manager.afterPropertiesSet();
+        return manager;
+    }
+
+    @Test
+    void testSharedL2() {
+        Cache nodeA = manager().getCache("account");
+        Cache nodeB = manager().getCache("account");
+        nodeA.put("A001", new BankAccountDTO().setAccountNumber("A001").setOwnerName("张三"));
+        BankAccountDTO read = nodeB.get("A001", BankAccountDTO.class);
+        Assertions.assertNotNull(read);
+        Assertions.assertEquals("张三", read.getOwnerName());
+    }
+
+    @Test
+    void testEvictInvalidatesOtherNodes() {
+        TwoLevelCacheManager managerA = manager();
+        TwoLevelCacheManager managerB = manager();
+        Cache nodeA = managerA.getCache("account");
+        Cache nodeB = managerB.getCache("account");
+        nodeA.put("A002", new BankAccountDTO().setAccountNumber("A002"));
+        Assertions.assertNotNull(nodeB.get("A002"));
+
+        nodeA.evict("A002");
+        Assertions.assertNull(redisTemplate.opsForValue().get("cache:account:A002"));
+        // L1 of node B is kept until the invalidation arrives
+        Assertions.assertNotNull(nodeB.get("A002"));
+        managerB.onInvalidation("other\naccount\nA002");
+        Assertions.assertNull(nodeB.get("A002"));
+    }
+
+    @Test
+    void testEvictNotRefilledByConcurrentRead() {
+        StringRedisTemplate template = spy(new StringRedisTemplate(factory));
+        Cache cache = manager(template).getCache("account");
+        cache.put("A009", new BankAccountDTO().setAccountNumber("A009"));
+        // a read of this node while the redis delete is in flight
+        doAnswer(invocation -> {
+            cache.get("A009");
+            return invocation.callRealMethod();
+        }).when(template).delete(anyString());
+
+        cache.evict("A009");
+        Assertions.assertNull(redisTemplate.opsForValue().get("cache:account:A009"));
+        Assertions.assertNull(cache.get("A009"));
+    }
+
+    @Test
+    void testPutInvalidatesOlderOnOtherNodes() {
+        TwoLevelCacheManager managerA = manager();
+        TwoLevelCacheManager managerB = manager();
+        Cache nodeA = managerA.getCache("account");
+        Cache nodeB = managerB.getCache("account");
+        nodeA.put("A008", new BankAccountDTO().setAccountNumber("A008").setBalance(new BigDecimal("1")).setVer(1L));
+        Assertions.assertEquals(1L, nodeB.get("A008", BankAccountDTO.class).getVer());
+
+        // write through of a transfer on node A
+        nodeA.put("A008", new BankAccountDTO().setAccountNumber("A008").setBalance(new BigDecimal("2")).setVer(2L));
+        managerB.onInvalidation("other\naccount\nA008\n2");
+        Assertions.assertEquals("2.000000", nodeB.get("A008", BankAccountDTO.class).getBalance());
+        // a late put message of an older version keeps the newer entry
+        managerB.onInvalidation("other\naccount\nA008\n1");
+        Assertions.assertEquals(2L, ((com.github.benmanes.caffeine.cache.Cache<String, BankAccountDTO>) nodeB.getNativeCache()).getIfPresent("A008").getVer());
+    }
+
+    @Test
+    void testClearFromOtherNode() {
+        TwoLevelCacheManager manager = manager();
+        Cache cache = manager.getCache("account");
+        cache.put("A003", new BankAccountDTO().setAccountNumber("A003"));
+        redisTemplate.delete("cache:account:A003");
+        manager.onInvalidation("unknown\naccount\n");
+        Assertions.assertNull(cache.get("A003"));
+    }
+
+    @Test
+    void testLoaderFillsBothLevels() {
+        Cache cache = manager().getCache("account");
+        BankAccountDTO loaded = cache.get("A004", () -> new BankAccountDTO().setAccountNumber("A004"));
+        Assertions.assertEquals("A004", loaded.getAccountNumber());
+        Assertions.assertNotNull(redisTemplate.opsForValue().get("cache:account:A004"));
+    }
+
+    @Test
+    void testOlderVersionNeverReplacesNewer() {
+        Cache nodeA = manager().getCache("account");
+        Cache nodeB = manager().getCache("account");
+        nodeA.put("A005", new BankAccountDTO().setAccountNumber("A005").setBalance(new BigDecimal("2")).setVer(2L));
+        // stale write of an older version, in both levels
+        nodeA.put("A005", new BankAccountDTO().setAccountNumber("A005").setBalance(new BigDecimal("1")).setVer(1L));
+        nodeB.put("A005", new BankAccountDTO().setAccountNumber("A005").setBalance(new BigDecimal("1")).setVer(1L));
+        Assertions.assertEquals(2L, nodeA.get("A005", BankAccountDTO.class).getVer());
+        Assertions.assertEquals(2L, nodeB.get("A005", BankAccountDTO.class).getVer());
+        Cache nodeC = manager().getCache("account");
+        BankAccountDTO fromL2 = nodeC.get("A005", BankAccountDTO.class);
+        Assertions.assertEquals(2L, fromL2.getVer());
+        Assertions.assertEquals("2.000000", fromL2.getBalance());
+
+        nodeA.put("A005", new BankAccountDTO().setAccountNumber("A005").setBalance(new BigDecimal("3")).setVer(3L));
+        Assertions.assertEquals(3L, manager().getCache("account").get("A005", BankAccountDTO.class).getVer());
+    }
+
+    @Test
+    void testRefreshAhead() throws InterruptedException {
+        TwoLevelCacheProperties properties = new TwoLevelCacheProperties();
+        properties.setL1RefreshAfterSeconds(1);
+        AtomicInteger reloads = new AtomicInteger();
+        CacheRefresher refresher = (key, current) -> {
+            reloads.incrementAndGet();
+            return new BankAccountDTO().setAccountNumber(key).setVer(((BankAccountDTO) current).getVer() + 1);
+        };
+        TwoLevelCacheManager manager = new TwoLevelCacheManager(List.of("account"), Map.of("account", BankAccountDTO.class), Map.of("account", refresher), Map.of(),
+                null, new ObjectMapper().findAndRegisterModules(), properties, null);
+        manager.afterPropertiesSet();
+        Cache cache = manager.getCache("account");
+        cache.put("A006", new BankAccountDTO().setAccountNumber("A006").setVer(1L));
+        Thread.sleep(1100);
+        // the old value is served while reloading
+        Assertions.assertEquals(1L, cache.get("A006", BankAccountDTO.class).getVer());
+        for (int i = 0; i < 100 && reloads.get() == 0; i++) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        Assertions.assertEquals(2L, cache.get("A006", BankAccountDTO.class).getVer());
+        Assertions.assertEquals(1, reloads.get());
+        manager.destroy();
+    }
+
+    @Test
+    void testOffHeap() {
+        TwoLevelCacheProperties properties = new TwoLevelCacheProperties();
+        properties.setOffHeapMaxMemoryMb(1);
+        TwoLevelCacheManager manager = new TwoLevelCacheManager(List.of("account"), Map.of("account", BankAccountDTO.class), Map.of(), Map.of("account", new AccountRecordCodec()),
+                null, new ObjectMapper().findAndRegisterModules(), properties, null);
+        manager.afterPropertiesSet();
+        Cache cache = manager.getCache("account");
+        cache.put("A007", new BankAccountDTO().setAccountNumber("A007").setBalance(new BigDecimal("7")).setVer(2L));
+        // dropped by L1, kept off heap
+        ((com.github.benmanes.caffeine.cache.Cache<?, ?>) cache.getNativeCache()).invalidateAll();
+        BankAccountDTO read = cache.get("A007", BankAccountDTO.class);
+        Assertions.assertEquals("7.000000", read.getBalance());
+        Assertions.assertEquals(2L, read.getVer());
+
+        ((com.github.benmanes.caffeine.cache.Cache<?, ?>) cache.getNativeCache()).invalidateAll();
+        cache.put("A007", new BankAccountDTO().setAccountNumber("A007").setBalance(new BigDecimal("6")).setVer(1L));
+        Assertions.assertEquals(2L, cache.get("A007", BankAccountDTO.class).getVer());
+
+        manager.onInvalidation("other-node\naccount\nA007");
+        Assertions.assertNull(cache.get("A007"));
+    }
+}
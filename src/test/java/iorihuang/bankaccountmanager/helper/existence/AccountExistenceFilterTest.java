@@ -0,0 +1,82 @@
+package iorihuang.bankaccountmanager.helper.existence;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class AccountExistenceFilterTest {
+
+    @Test
+    void testBloomFilterNoFalseNegative() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("A" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertTrue(filter.mightContain("A" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("B" + i)) {
+                falsePositives++;
+            }
+        }
+        // 1% expected, allow some variance
+        Assertions.assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void testLikelyAbsentBeforeReady() {
+        AccountExistenceFilter filter = new AccountExistenceFilter(new AccountExistenceProperties(), null, null);
+        Assertions.assertFalse(filter.likelyAbsent("A001"));
+        filter.ready();
+        Assertions.assertTrue(filter.likelyAbsent("A001"));
+        // the bloom filter alone never makes an account number absent
+        Assertions.assertTrue(filter.mightExist("A001"));
+    }
+
+    @Test
+    void testLoadAndCreated() {
+        AccountExistenceFilter filter = new AccountExistenceFilter(new AccountExistenceProperties(), null, null);
+        List<String> accountNumbers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            accountNumbers.add("A" + i);
+        }
+        filter.load(accountNumbers);
+        filter.ready();
+        Assertions.assertFalse(filter.likelyAbsent("A10"));
+        Assertions.assertTrue(filter.likelyAbsent("A100"));
+        filter.created("A100");
+        Assertions.assertFalse(filter.likelyAbsent("A100"));
+    }
+
+    @Test
+    void testFoundAfterLostMessage() {
+        AccountExistenceFilter filter = new AccountExistenceFilter(new AccountExistenceProperties(), null, null);
+        filter.ready();
+        Assertions.assertTrue(filter.likelyAbsent("A001"));
+        filter.found("A001");
+        Assertions.assertFalse(filter.likelyAbsent("A001"));
+    }
+
+    @Test
+    void testNegativeCacheInvalidatedByOtherNode() {
+        AccountExistenceFilter filter = new AccountExistenceFilter(new AccountExistenceProperties(), null, null);
+        filter.absent("A001", filter.mark());
+        Assertions.assertFalse(filter.mightExist("A001"));
+        filter.onCreated("other-node\nA001");
+        Assertions.assertTrue(filter.mightExist("A001"));
+    }
+
+    @Test
+    void testCreatedDuringRead() {
+        AccountExistenceFilter filter = new AccountExistenceFilter(new AccountExistenceProperties(), null, null);
+        long mark = filter.mark();
+        // the creation message arrives while db is read
+        filter.onCreated("other-node\nA001");
+        filter.absent("A001", mark);
+        Assertions.assertTrue(filter.mightExist("A001"));
+    }
+}
@@ -0,0 +1,54 @@
+package iorihuang.bankaccountmanager.helper.groupcommit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class GroupCommitExecutorTest {
+    @Test
+    void testItemsCommittedInGroups() throws Exception {
+        AtomicInteger batches = new AtomicInteger();
+        GroupCommitExecutor<int[]> executor = new GroupCommitExecutor<>("test", 20_000, 10, 1000, batch -> {
+            batches.incrementAndGet();
+            for (int[] item : batch) {
+                item[1] = item[0] * 2;
+            }
+        }, null);
+        List<CompletableFuture<int[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(executor.submit(new int[]{i, 0}));
+        }
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(i * 2, futures.get(i).get(5, TimeUnit.SECONDS)[1]);
+        }
+        executor.close();
+        Assertions.assertTrue(batches.get() <= 100 / 10 + 1, "batches: " + batches.get());
+    }
+
+    @Test
+    void testBatchFailure() {
+        GroupCommitExecutor<String> executor = new GroupCommitExecutor<>("test-fail", 1000, 10, 10, batch -> {
+            throw new IllegalStateException("mock commit error");
+        }, null);
+        CompletableFuture<String> future = executor.submit("a");
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(IllegalStateException.class, e.getCause());
+        executor.close();
+    }
+
+    @Test
+    void testRejectAfterClose() {
+        GroupCommitExecutor<String> executor = new GroupCommitExecutor<>("test-close", 1000, 10, 10, batch -> {
+        }, null);
+        executor.close();
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> executor.submit("a").get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(RejectedExecutionException.class, e.getCause());
+    }
+}
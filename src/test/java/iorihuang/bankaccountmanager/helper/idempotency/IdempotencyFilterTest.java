@@ -0,0 +1,190 @@
+package iorihuang.bankaccountmanager.helper.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class IdempotencyFilterTest {
+    private IdempotencyProperties properties;
+    private IdempotencyFilter filter;
+    private AtomicInteger calls;
+    private FilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        properties = new IdempotencyProperties();
+        filter = new IdempotencyFilter(new IdempotencyStore(null, 60, 100, 30), properties, new ObjectMapper(), null);
+        calls = new AtomicInteger();
+        chain = (request, response) -> response.getOutputStream().write(("{\"code\":1,\"data\":" + calls.incrementAndGet() + "}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private MockHttpServletRequest request(String method, String key) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/op/api/accounts/balance/v1/transfer");
+        if (null != key) {
+            request.addHeader(properties.getHeader(), key);
+        }
+        return request;
+    }
+
+    @Test
+    void testDuplicateReplayed() throws Exception {
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        filter.doFilter(request("POST", "k1"), first, chain);
+        MockHttpServletResponse second = new MockHttpServletResponse();
+        filter.doFilter(request("POST", "k1"), second, chain);
+
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(first.getContentAsString(), second.getContentAsString());
+        Assertions.assertNull(first.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+        Assertions.assertEquals("true", second.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+    }
+
+    @Test
+    void testDifferentKeysAndMethods() throws Exception {
+        filter.doFilter(request("POST", "k1"), new MockHttpServletResponse(), chain);
+        filter.doFilter(request("POST", "k2"), new MockHttpServletResponse(), chain);
+        filter.doFilter(request("PUT", "k1"), new MockHttpServletResponse(), chain);
+        filter.doFilter(request("POST", null), new MockHttpServletResponse(), chain);
+        filter.doFilter(request("POST", null), new MockHttpServletResponse(), chain);
+        filter.doFilter(request("GET", "k1"), new MockHttpServletResponse(), chain);
+        Assertions.assertEquals(6, calls.get());
+    }
+
+    @Test
+    void testServerErrorNotStored() throws Exception {
+        FilterChain failed = (request, response) -> {
+            calls.incrementAndGet();
+            ((MockHttpServletResponse) response).setStatus(500);
+        };
+        filter.doFilter(request("POST", "k1"), new MockHttpServletResponse(), failed);
+        filter.doFilter(request("POST", "k1"), new MockHttpServletResponse(), chain);
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testTransientErrorNotStored() throws Exception {
+        // business errors are returned with status 200
+        FilterChain busy = (request, response) -> {
+            calls.incrementAndGet();
+            response.getOutputStream().write("{\"code\":0,\"error\":10008,\"msg\":\"busy\"}".getBytes(StandardCharsets.UTF_8));
+        };
+        FilterChain conflict = (request, response) -> {
+            calls.incrementAndGet();
+            response.getOutputStream().write("{\"code\":0,\"error\":10009,\"msg\":\"conflict\"}".getBytes(StandardCharsets.UTF_8));
+        };
+        filter.doFilter(request("POST", "k1"), new MockHttpServletResponse(), busy);
+        filter.doFilter(request("POST", "k1"), new MockHttpServletResponse(), conflict);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("POST", "k1"), response, chain);
+        Assertions.assertEquals(3, calls.get());
+        Assertions.assertNull(response.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+    }
+
+    @Test
+    void testFinalErrorStored() throws Exception {
+        FilterChain insufficient = (request, response) -> {
+            calls.incrementAndGet();
+            response.getOutputStream().write("{\"code\":0,\"error\":10006,\"msg\":\"insufficient\"}".getBytes(StandardCharsets.UTF_8));
+        };
+        filter.doFilter(request("POST", "k1"), new MockHttpServletResponse(), insufficient);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("POST", "k1"), response, chain);
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals("true", response.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+        Assertions.assertTrue(response.getContentAsString().contains("\"error\":10006"), response.getContentAsString());
+    }
+
+    @Test
+    void testUnknownResultStored() throws Exception {
+        // a transfer timed out may still be committed, it should never run again by the key
+        FilterChain timeout = (request, response) -> {
+            calls.incrementAndGet();
+            ((MockHttpServletResponse) response).setStatus(500);
+            response.getOutputStream().write("{\"code\":0,\"error\":20006,\"msg\":\"timeout\"}".getBytes(StandardCharsets.UTF_8));
+        };
+        filter.doFilter(request("POST", "k1"), new MockHttpServletResponse(), timeout);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("POST", "k1"), response, chain);
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(500, response.getStatus());
+        Assertions.assertEquals("true", response.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+        Assertions.assertTrue(response.getContentAsString().contains("\"error\":20006"), response.getContentAsString());
+    }
+
+    @Test
+    void testBodyMismatchRejected() throws Exception {
+        MockHttpServletRequest first = request("POST", "k1");
+        first.setContent("{\"amount\":\"1\"}".getBytes(StandardCharsets.UTF_8));
+        filter.doFilter(first, new MockHttpServletResponse(), chain);
+        MockHttpServletRequest other = request("POST", "k1");
+        other.setContent("{\"amount\":\"2\"}".getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(other, rejected, chain);
+        MockHttpServletRequest same = request("POST", "k1");
+        same.setContent("{\"amount\":\"1\"}".getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse replayed = new MockHttpServletResponse();
+        filter.doFilter(same, replayed, chain);
+
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertTrue(rejected.getContentAsString().contains("\"error\":10003"), rejected.getContentAsString());
+        Assertions.assertEquals("true", replayed.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+    }
+
+    @Test
+    void testBodyReadByChain() throws Exception {
+        FilterChain echo = (request, response) -> {
+            calls.incrementAndGet();
+            response.getOutputStream().write(request.getInputStream().readAllBytes());
+        };
+        MockHttpServletRequest request = request("POST", "k1");
+        request.setContent("{\"code\":1}".getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, echo);
+        Assertions.assertEquals("{\"code\":1}", response.getContentAsString());
+    }
+
+    @Test
+    void testFinishedBeforeReserveReplayed() throws Exception {
+        // the other request of the key saves and releases between the read and the reserve
+        IdempotencyStore store = new IdempotencyStore(null, 60, 100, 30) {
+            @Override
+            public boolean reserve(String key) {
+                save(key, new StoredResponse(200, "{\"code\":1,\"data\":0}".getBytes(StandardCharsets.UTF_8), null));
+                return super.reserve(key);
+            }
+        };
+        filter = new IdempotencyFilter(store, properties, new ObjectMapper(), null);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("POST", "k1"), response, chain);
+        Assertions.assertEquals(0, calls.get());
+        Assertions.assertEquals("true", response.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+        // released after the replay
+        Assertions.assertTrue(store.reserve("POST:/op/api/accounts/balance/v1/transfer:k1"));
+    }
+
+    @Test
+    void testInvalidKey() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("POST", "k".repeat(properties.getMaxKeyLength() + 1)), response, chain);
+        Assertions.assertEquals(0, calls.get());
+        Assertions.assertTrue(response.getContentAsString().contains("\"error\":10003"), response.getContentAsString());
+    }
+
+    @Test
+    void testInProgress() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(null, 60, 100, 30);
+        filter = new IdempotencyFilter(store, properties, new ObjectMapper(), null);
+        Assertions.assertTrue(store.reserve("POST:/op/api/accounts/balance/v1/transfer:k1"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("POST", "k1"), response, chain);
+        Assertions.assertEquals(0, calls.get());
+        Assertions.assertTrue(response.getContentAsString().contains("\"error\":10008"), response.getContentAsString());
+    }
+}
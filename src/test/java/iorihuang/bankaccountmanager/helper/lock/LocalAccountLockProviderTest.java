@@ -0,0 +1,30 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class LocalAccountLockProviderTest {
+    @Test
+    void testBusyUntilClosed() throws Exception {
+        LocalAccountLockProvider provider = new LocalAccountLockProvider(new LocalStripedLock(16, 5000, null), 20);
+        AccountLock lock = provider.lock("A001", "A002");
+        Assertions.assertTrue(lock.isLocked());
+        Assertions.assertFalse(lock.holdsTransaction());
+        // locks are reentrant, try from another thread
+        Assertions.assertFalse(CompletableFuture.supplyAsync(() -> {
+            try (AccountLock other = provider.lock("A002")) {
+                return other.isLocked();
+            }
+        }).get(5, TimeUnit.SECONDS));
+        lock.close();
+        lock.close();
+        Assertions.assertTrue(CompletableFuture.supplyAsync(() -> {
+            try (AccountLock other = provider.lock("A002")) {
+                return other.isLocked();
+            }
+        }).get(5, TimeUnit.SECONDS));
+    }
+}
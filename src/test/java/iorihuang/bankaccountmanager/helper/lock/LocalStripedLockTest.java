@@ -0,0 +1,55 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class LocalStripedLockTest {
+    @Test
+    void testMutualExclusion() throws Exception {
+        LocalStripedLock lock = new LocalStripedLock(16, 5000, null);
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger maxInside = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CompletableFuture<?>[] futures = new CompletableFuture[200];
+        for (int i = 0; i < futures.length; i++) {
+            List<String> keys = i % 2 == 0 ? List.of("A001", "A002") : List.of("A002", "A001");
+            futures[i] = CompletableFuture.runAsync(() -> {
+                int[] stripes = lock.lock(keys);
+                Assertions.assertNotNull(stripes);
+                try {
+                    maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                    Thread.yield();
+                    inside.decrementAndGet();
+                } finally {
+                    lock.unlock(stripes);
+                }
+            }, executor);
+        }
+        CompletableFuture.allOf(futures).get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        Assertions.assertEquals(1, maxInside.get());
+    }
+
+    @Test
+    void testTimeout() throws Exception {
+        LocalStripedLock lock = new LocalStripedLock(16, 10, null);
+        int[] held = lock.lock(List.of("A001"));
+        Assertions.assertNotNull(held);
+        // another thread times out and holds nothing
+        Assertions.assertNull(CompletableFuture.supplyAsync(() -> lock.lock(List.of("A002", "A001"))).get(5, TimeUnit.SECONDS));
+        lock.unlock(held);
+        int[] again = CompletableFuture.supplyAsync(() -> {
+            int[] stripes = lock.lock(List.of("A002", "A001"));
+            lock.unlock(stripes);
+            return stripes;
+        }).get(5, TimeUnit.SECONDS);
+        Assertions.assertNotNull(again);
+    }
+}
@@ -0,0 +1,47 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+import iorihuang.bankaccountmanager.helper.RedisMultiLock;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class LockBackoffTest {
+    @Test
+    void testBudget() {
+        LockBackoff backoff = new LockBackoff(2, 100, 1000, null);
+        Assertions.assertTrue(backoff.idle(1, TimeUnit.MILLISECONDS.toNanos(10)));
+        Assertions.assertFalse(backoff.idle(1, 0));
+        long start = System.nanoTime();
+        Assertions.assertTrue(backoff.idle(10, TimeUnit.MICROSECONDS.toNanos(50)));
+        // park is bounded by the budget left
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void testWaitForLocalLock() throws Exception {
+        LocalStripedLock localLock = new LocalStripedLock(16, 0, null);
+        LockBackoff backoff = new LockBackoff(2, 100, 1000, null);
+        RedisMultiLock held = new RedisMultiLock(null, List.of("A001"), 3, localLock, backoff, 0);
+        Assertions.assertTrue(held.isLocked());
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try (RedisMultiLock lock = new RedisMultiLock(null, List.of("A001"), 3, localLock, backoff, TimeUnit.SECONDS.toNanos(5))) {
+                return lock.isLocked();
+            }
+        });
+        Thread.sleep(20);
+        held.close();
+        Assertions.assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        // fail fast without wait budget
+        try (RedisMultiLock again = new RedisMultiLock(null, List.of("A001"), 3, localLock, backoff, 0)) {
+            Assertions.assertTrue(again.isLocked());
+            Assertions.assertFalse(CompletableFuture.supplyAsync(() -> {
+                try (RedisMultiLock lock = new RedisMultiLock(null, List.of("A001"), 3, localLock, backoff, 0)) {
+                    return lock.isLocked();
+                }
+            }).get(5, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package iorihuang.bankaccountmanager.helper.lock;
+
+import com.github.fppt.jedismock.RedisServer;
+import iorihuang.bankaccountmanager.helper.RedisMultiLock;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.util.List;
+
+class LockWatchdogTest {
+    static RedisServer redisServer;
+    static LettuceConnectionFactory factory;
+    static StringRedisTemplate redisTemplate;
+    static LockWatchdog watchdog;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        redisServer = RedisServer.newRedisServer().start();
+        factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(redisServer.getHost(), redisServer.getBindPort()));
+        factory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(factory);
+        watchdog = new LockWatchdog(redisTemplate, 20, 64, 30000, null);
+    }
+
+    @AfterAll
+    static void tearDown() throws IOException {
+        watchdog.close();
+        factory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    void testRenewWhileHeld() throws InterruptedException {
+        RedisMultiLock lock = new RedisMultiLock(redisTemplate, List.of("test:watch:A", "test:watch:B"), 1);
+        Assertions.assertTrue(lock.isLocked());
+        lock.watch(watchdog);
+        // held longer than the ttl
+        Thread.sleep(2500);
+        Assertions.assertNotNull(redisTemplate.opsForValue().get("test:watch:A"));
+        Assertions.assertNotNull(redisTemplate.opsForValue().get("test:watch:B"));
+        lock.close();
+        Assertions.assertNull(redisTemplate.opsForValue().get("test:watch:A"));
+    }
+
+    @Test
+    void testExpireWithoutWatchdog() throws InterruptedException {
+        RedisMultiLock lock = new RedisMultiLock(redisTemplate, List.of("test:watch:C"), 1);
+        Assertions.assertTrue(lock.isLocked());
+        Thread.sleep(1500);
+        Assertions.assertNull(redisTemplate.opsForValue().get("test:watch:C"));
+        lock.close();
+    }
+}
@@ -0,0 +1,133 @@
+package iorihuang.bankaccountmanager.helper.offheap;
+
+import iorihuang.bankaccountmanager.dto.BankAccountDTO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+class OffHeapStoreTest {
+    static final OffHeapCodec<String> STRING = new OffHeapCodec<>() {
+        @Override
+        public Class<String> type() {
+            return String.class;
+        }
+
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(ByteBuffer value, long version) {
+            byte[] bytes = new byte[value.remaining()];
+            value.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8) + "@" + version;
+        }
+    };
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testPutGetRemove() {
+        OffHeapStore store = new OffHeapStore(64 * 1024, 64, 4);
+        Assertions.assertNull(store.get("A001", STRING));
+        Assertions.assertTrue(store.put("A001", 1, bytes("one"), 60000));
+        Assertions.assertEquals("one@1", store.get("A001", STRING));
+        // the newer version is kept
+        Assertions.assertTrue(store.put("A001", 3, bytes("three"), 60000));
+        Assertions.assertFalse(store.put("A001", 2, bytes("two"), 60000));
+        Assertions.assertEquals("three@3", store.get("A001", STRING));
+        Assertions.assertEquals(1, store.size());
+        store.remove("A001");
+        Assertions.assertNull(store.get("A001", STRING));
+        Assertions.assertEquals(0, store.size());
+    }
+
+    @Test
+    void testOversizeRemovesOld() {
+        OffHeapStore store = new OffHeapStore(64 * 1024, 64, 1);
+        store.put("A001", 1, bytes("one"), 60000);
+        Assertions.assertTrue(store.put("A001", 2, new byte[64], 60000));
+        Assertions.assertNull(store.get("A001", STRING));
+    }
+
+    @Test
+    void testExpired() throws InterruptedException {
+        OffHeapStore store = new OffHeapStore(64 * 1024, 64, 1);
+        store.put("A001", 2, bytes("two"), 10);
+        Thread.sleep(20);
+        Assertions.assertNull(store.get("A001", STRING));
+        // an expired version never blocks an older one
+        Assertions.assertTrue(store.put("A001", 1, bytes("one"), 60000));
+        Assertions.assertEquals("one@1", store.get("A001", STRING));
+    }
+
+    @Test
+    void testClockEviction() {
+        // one segment of 64 slots
+        OffHeapStore store = new OffHeapStore(64 * 64, 64, 1);
+        Assertions.assertEquals(64, store.capacity());
+        for (int i = 0; i < 64; i++) {
+            store.put("A" + i, 1, bytes("v" + i), 60000);
+        }
+        // the hand clears every reference bit in its first round, then evicts from the first slot
+        store.put("B0", 1, bytes("b0"), 60000);
+        Assertions.assertNull(store.get("A0", STRING));
+        store.get("A1", STRING);
+        store.put("B1", 1, bytes("b1"), 60000);
+        // A1 is read after its bit is cleared, so A2 is evicted instead
+        Assertions.assertEquals("v1@1", store.get("A1", STRING));
+        Assertions.assertNull(store.get("A2", STRING));
+        Assertions.assertEquals(64, store.size());
+        Assertions.assertEquals(2, store.evictions());
+        for (int i = 3; i < 64; i++) {
+            Assertions.assertEquals("v" + i + "@1", store.get("A" + i, STRING));
+        }
+    }
+
+    @Test
+    void testManyKeys() {
+        OffHeapStore store = new OffHeapStore(10000 * 64, 64, 8);
+        for (int i = 0; i < 8000; i++) {
+            store.put("A" + i, i, bytes("v" + i), 60000);
+        }
+        // removals shift later entries of the probe back, none of them is lost
+        for (int i = 0; i < 8000; i += 3) {
+            store.remove("A" + i);
+        }
+        for (int i = 0; i < 8000; i++) {
+            Assertions.assertEquals(i % 3 == 0 ? null : "v" + i + "@" + i, store.get("A" + i, STRING));
+        }
+        store.clear();
+        Assertions.assertEquals(0, store.size());
+        Assertions.assertNull(store.get("A1", STRING));
+    }
+
+    @Test
+    void testAccountRecord() {
+        AccountRecordCodec codec = new AccountRecordCodec();
+        BankAccountDTO dto = new BankAccountDTO()
+                .setId(1234567890123456789L)
+                .setAccountNumber("A001")
+                .setAccountType(1)
+                .setOwnerId("4500003333000x")
+                .setOwnerName("张三")
+                .setBalance(new BigDecimal("100.560807"))
+                .setState(1)
+                .setUpdatedAt(LocalDateTime.of(2024, 6, 1, 12, 30, 45))
+                .setVer(7L);
+        OffHeapCache<BankAccountDTO> cache = new OffHeapCache<>("account", new OffHeapStore(64 * 1024, 256, 1), codec, 60000, null);
+        Assertions.assertTrue(cache.put("A001", dto));
+        BankAccountDTO read = cache.get("A001");
+        // contact info and slots stay null
+        Assertions.assertEquals(dto, read);
+        Assertions.assertNotSame(dto, read);
+        Assertions.assertFalse(cache.put("A001", new BankAccountDTO().setAccountNumber("A001").setVer(6L)));
+    }
+}
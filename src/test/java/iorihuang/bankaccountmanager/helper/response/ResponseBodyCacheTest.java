@@ -0,0 +1,77 @@
+package iorihuang.bankaccountmanager.helper.response;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import iorihuang.bankaccountmanager.dto.BankAccountDTO;
+import iorihuang.bankaccountmanager.dto.DTOResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ResponseBodyCacheTest {
+    static final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private static DTOResponse<BankAccountDTO> response(BankAccountDTO dto) {
+        return new DTOResponse<BankAccountDTO>().setTs(null).setCode(1).setData(dto);
+    }
+
+    @Test
+    void testSerializedOncePerVersion() throws IOException {
+        ResponseBodyCache cache = new ResponseBodyCache(objectMapper, 100, true, null);
+        AtomicInteger serialized = new AtomicInteger();
+        BankAccountDTO v1 = new BankAccountDTO().setAccountNumber("A001").setBalance(new BigDecimal("1")).setVer(1L);
+        byte[] first = cache.get("A001", 1L, () -> {
+            serialized.incrementAndGet();
+            return response(v1);
+        });
+        byte[] second = cache.get("A001", 1L, () -> {
+            serialized.incrementAndGet();
+            return response(v1);
+        });
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, serialized.get());
+
+        BankAccountDTO v2 = new BankAccountDTO().setAccountNumber("A001").setBalance(new BigDecimal("2")).setVer(2L);
+        byte[] third = cache.get("A001", 2L, () -> {
+            serialized.incrementAndGet();
+            return response(v2);
+        });
+        Assertions.assertEquals(2, serialized.get());
+        Assertions.assertEquals("2.000000", objectMapper.readTree(third).get("data").get("balance").asText());
+    }
+
+    @Test
+    void testTsPatched() throws IOException {
+        ResponseBodyCache cache = new ResponseBodyCache(objectMapper, 100, true, null);
+        BankAccountDTO dto = new BankAccountDTO().setAccountNumber("A001").setBalance(new BigDecimal("1")).setVer(1L);
+        byte[] body = cache.get("A001", 1L, () -> response(dto));
+        Assertions.assertFalse(objectMapper.readTree(body).has("ts"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long before = System.currentTimeMillis();
+        cache.write(body, out);
+        JsonNode written = objectMapper.readTree(out.toByteArray());
+        Assertions.assertTrue(Long.parseLong(written.get("ts").asText()) >= before);
+        Assertions.assertEquals(1, written.get("code").asInt());
+        Assertions.assertEquals("A001", written.get("data").get("account_number").asText());
+        // same fields as serialized by jackson for each request
+        JsonNode expected = objectMapper.readTree(objectMapper.writeValueAsBytes(new DTOResponse<BankAccountDTO>().setCode(1).setData(dto)));
+        ((ObjectNode) expected).remove("ts");
+        ((ObjectNode) written).remove("ts");
+        Assertions.assertEquals(expected, written);
+    }
+
+    @Test
+    void testTsLeftOut() throws IOException {
+        ResponseBodyCache cache = new ResponseBodyCache(objectMapper, 100, false, null);
+        byte[] body = cache.get("A001", 1L, () -> response(new BankAccountDTO().setAccountNumber("A001").setVer(1L)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.write(body, out);
+        Assertions.assertArrayEquals(body, out.toByteArray());
+    }
+}
@@ -0,0 +1,76 @@
+package iorihuang.bankaccountmanager.helper.ringbuffer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class RingBufferBatchWriterTest {
+    @Test
+    void testPublishAndFlushAll() throws InterruptedException {
+        Set<Integer> flushed = ConcurrentHashMap.newKeySet();
+        AtomicInteger maxBatch = new AtomicInteger();
+        RingBufferBatchWriter<Integer> writer = new RingBufferBatchWriter<>("test", 1024, 64, 1000, 0, batch -> {
+            flushed.addAll(batch);
+            maxBatch.accumulateAndGet(batch.size(), Math::max);
+        }, null);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        CountDownLatch latch = new CountDownLatch(10000);
+        for (int i = 0; i < 10000; i++) {
+            int value = i;
+            executorService.submit(() -> {
+                Assertions.assertTrue(writer.publish(value));
+                latch.countDown();
+            });
+        }
+        Assertions.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        writer.close();
+        executorService.shutdown();
+        Assertions.assertEquals(10000, flushed.size());
+        Assertions.assertTrue(maxBatch.get() <= 64);
+        Assertions.assertEquals(0, writer.size());
+    }
+
+    @Test
+    void testBackpressureWhileFull() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        RingBufferBatchWriter<Integer> writer = new RingBufferBatchWriter<>("test-full", 4, 1, 10, 0, batch -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, null);
+        // the first batch is blocked in flushing, the buffer is full after 4 records
+        int accepted = 0;
+        for (int i = 0; i < 6; i++) {
+            if (writer.publish(i)) {
+                accepted++;
+            }
+        }
+        Assertions.assertEquals(4, accepted);
+        Assertions.assertFalse(writer.publish(100));
+        blocked.countDown();
+        writer.close();
+        Assertions.assertFalse(writer.publish(101));
+    }
+
+    @Test
+    void testRetryFailedFlush() {
+        AtomicInteger times = new AtomicInteger();
+        RingBufferBatchWriter<Integer> writer = new RingBufferBatchWriter<>("test-retry", 8, 8, 10, 2, batch -> {
+            if (times.incrementAndGet() < 3) {
+                throw new IllegalStateException("mock db error");
+            }
+        }, null);
+        Assertions.assertTrue(writer.publish(1));
+        writer.close();
+        Assertions.assertEquals(3, times.get());
+    }
+}
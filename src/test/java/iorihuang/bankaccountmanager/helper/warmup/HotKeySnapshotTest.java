@@ -0,0 +1,44 @@
+package iorihuang.bankaccountmanager.helper.warmup;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+class HotKeySnapshotTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        HotKeySnapshot snapshot = new HotKeySnapshot(dir.resolve("sub").resolve("hot.snapshot"));
+        Assertions.assertTrue(snapshot.read().isEmpty());
+        snapshot.write(List.of("A001", "A002"));
+        Assertions.assertEquals(List.of("A001", "A002"), snapshot.read());
+        snapshot.write(List.of("A003"));
+        Assertions.assertEquals(List.of("A003"), snapshot.read());
+    }
+
+    @Test
+    void testHottest() {
+        Cache<String, Object> cache = Caffeine.newBuilder().maximumSize(100).executor(Runnable::run).build();
+        for (int i = 0; i < 10; i++) {
+            cache.put("A" + i, i);
+        }
+        for (int n = 0; n < 20; n++) {
+            cache.getIfPresent("A7");
+            cache.getIfPresent("A3");
+        }
+        cache.cleanUp();
+        List<String> hottest = HotKeySnapshot.hottest(cache, 2);
+        Assertions.assertEquals(2, hottest.size());
+        Assertions.assertTrue(hottest.containsAll(List.of("A7", "A3")));
+        // not size bounded, no frequency sketch
+        Assertions.assertTrue(HotKeySnapshot.hottest(Caffeine.newBuilder().build(), 2).isEmpty());
+    }
+}
@@ -0,0 +1,94 @@
+package iorihuang.bankaccountmanager.repository;
+
+import iorihuang.bankaccountmanager.model.BankAccountBalanceLog;
+import iorihuang.bankaccountmanager.model.BankAccountTransferLog;
+import iorihuang.bankaccountmanager.model.bankaccountbalancelog.BalanceChangeType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BalanceLogReplayerTest {
+    private BankAccountTransferLogRepository transferLogRepository;
+    private BankAccountBalanceLogRepository balanceLogRepository;
+    private BalanceLogReplayer replayer;
+
+    @BeforeEach
+    void setUp() {
+        transferLogRepository = mock(BankAccountTransferLogRepository.class);
+        balanceLogRepository = mock(BankAccountBalanceLogRepository.class);
+        replayer = new BalanceLogReplayer(transferLogRepository, balanceLogRepository, 2, 0, 0, 60, null);
+    }
+
+    private static BankAccountTransferLog transferLog(long transferId) {
+        return BankAccountTransferLog.builder()
+                .fromAccountId(1L)
+                .fromAccountNumber("10001")
+                .toAccountId(2L)
+                .toAccountNumber("10002")
+                .amount(new BigDecimal("10"))
+                .beforeBalanceFrom(new BigDecimal("100"))
+                .afterBalanceFrom(new BigDecimal("90"))
+                .beforeBalanceTo(new BigDecimal("0"))
+                .afterBalanceTo(new BigDecimal("10"))
+                .transferId(transferId)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReplay() {
+        when(transferLogRepository.findWithoutBalanceLogs(any(), any(), eq(2)))
+                .thenReturn(List.of(transferLog(1), transferLog(2)))
+                .thenReturn(List.of(transferLog(3)));
+
+        Assertions.assertEquals(3, replayer.replay());
+
+        ArgumentCaptor<List<BankAccountBalanceLog>> captor = ArgumentCaptor.forClass(List.class);
+        verify(balanceLogRepository, times(2)).batchInsert(captor.capture());
+        List<BankAccountBalanceLog> first = captor.getAllValues().get(0);
+        Assertions.assertEquals(4, first.size());
+        BankAccountBalanceLog out = first.get(0);
+        Assertions.assertEquals(1L, out.getTransferId());
+        Assertions.assertEquals(1L, out.getAccountId());
+        Assertions.assertEquals(BalanceChangeType.TRANSFER_OUT.getCode(), out.getChangeType());
+        Assertions.assertEquals(0, new BigDecimal("-10").compareTo(out.getChangeAmount()));
+        Assertions.assertEquals(0, new BigDecimal("90").compareTo(out.getAfterBalance()));
+        BankAccountBalanceLog in = first.get(1);
+        Assertions.assertEquals(1L, in.getTransferId());
+        Assertions.assertEquals(2L, in.getAccountId());
+        Assertions.assertEquals(BalanceChangeType.TRANSFER_IN.getCode(), in.getChangeType());
+        Assertions.assertEquals(0, new BigDecimal("10").compareTo(in.getAfterBalance()));
+        Assertions.assertEquals(2, captor.getAllValues().get(1).size());
+    }
+
+    @Test
+    void testReplayNothing() {
+        when(transferLogRepository.findWithoutBalanceLogs(any(), any(), anyInt())).thenReturn(List.of());
+
+        Assertions.assertEquals(0, replayer.replay());
+        verify(balanceLogRepository, never()).batchInsert(anyList());
+    }
+
+    @Test
+    void testInsertSkipsDuplicates() {
+        List<BankAccountBalanceLog> logs = BalanceLogReplayer.balanceLogs(transferLog(1));
+        when(balanceLogRepository.batchInsert(anyList())).thenThrow(new DuplicateKeyException("uniq_balance_transfer"));
+        when(balanceLogRepository.insert(logs.get(0))).thenThrow(new DuplicateKeyException("uniq_balance_transfer"));
+
+        replayer.insert(logs);
+
+        // the one inserted already is skipped, the other is still inserted
+        verify(balanceLogRepository).insert(logs.get(0));
+        verify(balanceLogRepository).insert(logs.get(1));
+    }
+}
@@ -0,0 +1,122 @@
+package iorihuang.bankaccountmanager.repository;
+
+import iorihuang.bankaccountmanager.helper.lock.AccountLock;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * lock transaction over an in-memory H2, writes join it by NESTED the same as BankAccountTrans
+ */
+class DbAccountLockProviderTest {
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+    private BankAccountRepository repository;
+    private DbAccountLockProvider provider;
+    private TransactionTemplate nested;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE bank_account (account_number VARCHAR(32) PRIMARY KEY, balance INT NOT NULL)");
+        jdbcTemplate.update("INSERT INTO bank_account VALUES ('A001', 100), ('A002', 0)");
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        repository = mock(BankAccountRepository.class);
+        // rows locked on the connection of the current transaction
+        when(repository.lockByAccountNumbers(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> accountNumbers = invocation.getArgument(0);
+            String in = String.join(",", accountNumbers.stream().map(n -> "'" + n + "'").toList());
+            return jdbcTemplate.queryForList("SELECT balance FROM bank_account WHERE account_number IN (" + in + ") FOR UPDATE", Long.class);
+        });
+        provider = new DbAccountLockProvider(repository, transactionManager, 5);
+        nested = new TransactionTemplate(transactionManager);
+        nested.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+    }
+
+    private int balance(String accountNumber) {
+        // a new transaction on another connection, only committed writes are seen
+        TransactionTemplate other = new TransactionTemplate(transactionManager);
+        other.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Integer balance = other.execute(s -> jdbcTemplate.queryForObject("SELECT balance FROM bank_account WHERE account_number = ?", Integer.class, accountNumber));
+        Assertions.assertNotNull(balance);
+        return balance;
+    }
+
+    private void transfer(int amount) {
+        jdbcTemplate.update("UPDATE bank_account SET balance = balance - ? WHERE account_number = 'A001'", amount);
+        jdbcTemplate.update("UPDATE bank_account SET balance = balance + ? WHERE account_number = 'A002'", amount);
+    }
+
+    @Test
+    void testCommitOnClose() {
+        AccountLock lock = provider.lock("A002", "A001");
+        Assertions.assertTrue(lock.isLocked());
+        Assertions.assertTrue(lock.holdsTransaction());
+        Assertions.assertTrue(TransactionSynchronizationManager.isActualTransactionActive());
+        nested.executeWithoutResult(s -> transfer(10));
+        // the write joined the lock transaction, not committed until the lock closed
+        Assertions.assertEquals(100, balance("A001"));
+
+        lock.close();
+        Assertions.assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+        Assertions.assertEquals(90, balance("A001"));
+        Assertions.assertEquals(10, balance("A002"));
+        // closed once only
+        lock.close();
+    }
+
+    @Test
+    void testFailedWriteRollsBackToSavepoint() {
+        try (AccountLock lock = provider.lock("A001", "A002")) {
+            Assertions.assertTrue(lock.isLocked());
+            nested.executeWithoutResult(s -> transfer(10));
+            Assertions.assertThrows(IllegalStateException.class, () -> nested.executeWithoutResult(s -> {
+                transfer(20);
+                throw new IllegalStateException("write fail");
+            }));
+        }
+        // only the failed write is rolled back, the other one is committed on close
+        Assertions.assertEquals(90, balance("A001"));
+        Assertions.assertEquals(10, balance("A002"));
+    }
+
+    @Test
+    void testRollbackOnlyRolledBackOnClose() {
+        try (AccountLock lock = provider.lock("A001", "A002")) {
+            Assertions.assertTrue(lock.isLocked());
+            TransactionTemplate required = new TransactionTemplate(transactionManager);
+            required.executeWithoutResult(s -> {
+                transfer(10);
+                s.setRollbackOnly();
+            });
+        }
+        Assertions.assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+        Assertions.assertEquals(100, balance("A001"));
+        Assertions.assertEquals(0, balance("A002"));
+    }
+
+    @Test
+    void testLockFailRollsBack() {
+        doThrow(new IllegalStateException("lock timeout")).when(repository).lockByAccountNumbers(anyCollection());
+        try (AccountLock lock = provider.lock("A001", "A002")) {
+            Assertions.assertFalse(lock.isLocked());
+            Assertions.assertFalse(lock.holdsTransaction());
+            Assertions.assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+        }
+        verify(repository).lockByAccountNumbers(anyCollection());
+    }
+}
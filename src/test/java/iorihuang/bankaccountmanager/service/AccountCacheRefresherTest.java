@@ -0,0 +1,67 @@
+package iorihuang.bankaccountmanager.service;
+
+import iorihuang.bankaccountmanager.dto.BankAccountDTO;
+import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.model.bankaccount.AccountState;
+import iorihuang.bankaccountmanager.repository.BankAccountRepository;
+import iorihuang.bankaccountmanager.repository.BankAccountSlotRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AccountCacheRefresherTest {
+    @Mock
+    private BankAccountRepository repository;
+    @Mock
+    private BankAccountSlotRepository slotRepository;
+    private AccountCacheRefresher refresher;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        refresher = new AccountCacheRefresher(repository, slotRepository);
+    }
+
+    @Test
+    void reload_versionUnchanged() {
+        BankAccountDTO cached = new BankAccountDTO().setAccountNumber("A001").setVer(1L);
+        when(repository.findVersionByAccountNumber("A001")).thenReturn(Optional.of(1L));
+        assertSame(cached, refresher.reload("A001", cached));
+        verify(repository, never()).findByAccountNumber(any());
+    }
+
+    @Test
+    void reload_versionMoved() {
+        BankAccountDTO cached = new BankAccountDTO().setAccountNumber("A001").setVer(1L);
+        when(repository.findVersionByAccountNumber("A001")).thenReturn(Optional.of(2L));
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(BankAccount.builder().id(1L).accountNumber("A001")
+                .state(AccountState.ACTIVE.getCode()).balance(new BigDecimal("10.00")).ver(2L).build()));
+        BankAccountDTO reloaded = (BankAccountDTO) refresher.reload("A001", cached);
+        assertEquals(2L, reloaded.getVer());
+        assertEquals("10.000000", reloaded.getBalance());
+    }
+
+    @Test
+    void reload_hotAccountReadAgain() {
+        BankAccountDTO cached = new BankAccountDTO().setAccountNumber("A001").setSlots(4).setVer(1L);
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(BankAccount.builder().id(1L).accountNumber("A001")
+                .state(AccountState.ACTIVE.getCode()).balance(new BigDecimal("10.00")).slots(4).ver(1L).build()));
+        when(slotRepository.sumBalanceByAccountNumber("A001")).thenReturn(new BigDecimal("5.00"));
+        BankAccountDTO reloaded = (BankAccountDTO) refresher.reload("A001", cached);
+        assertEquals("15.000000", reloaded.getBalance());
+        verify(repository, never()).findVersionByAccountNumber(any());
+    }
+
+    @Test
+    void reload_gone() {
+        when(repository.findVersionByAccountNumber("A001")).thenReturn(Optional.empty());
+        assertNull(refresher.reload("A001", new BankAccountDTO().setAccountNumber("A001").setVer(1L)));
+    }
+}
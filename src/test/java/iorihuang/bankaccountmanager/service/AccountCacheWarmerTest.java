@@ -0,0 +1,72 @@
+package iorihuang.bankaccountmanager.service;
+
+import iorihuang.bankaccountmanager.dto.BankAccountDTO;
+import iorihuang.bankaccountmanager.helper.warmup.CacheWarmupProperties;
+import iorihuang.bankaccountmanager.helper.warmup.HotKeySnapshot;
+import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.repository.BankAccountRepository;
+import iorihuang.bankaccountmanager.repository.BankAccountSlotRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class AccountCacheWarmerTest {
+    @Mock
+    private BankAccountRepository repository;
+    @Mock
+    private BankAccountSlotRepository slotRepository;
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void warmUp_batches() throws IOException {
+        CacheWarmupProperties properties = new CacheWarmupProperties();
+        properties.setSnapshotFile(dir.resolve("hot.snapshot").toString());
+        properties.setBatchSize(2);
+        new HotKeySnapshot(Path.of(properties.getSnapshotFile())).write(List.of("A001", "A002", "A003"));
+        when(repository.findByAccountNumbers(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> accountNumbers = invocation.getArgument(0);
+            return accountNumbers.stream()
+                    .map(accountNumber -> BankAccount.builder().id(1L).accountNumber(accountNumber).balance(new BigDecimal("1.00")).ver(1L).build())
+                    .toList();
+        });
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager("account");
+        AccountCacheWarmer warmer = new AccountCacheWarmer(cacheManager, repository, slotRepository, properties);
+        warmer.warmUp();
+        // one multi-row query per batch
+        verify(repository, times(2)).findByAccountNumbers(anyCollection());
+        verify(repository, never()).findByAccountNumber(any());
+        assertEquals("1.000000", cacheManager.getCache("account").get("A003", BankAccountDTO.class).getBalance());
+        assertEquals("done", warmer.status().get("state"));
+        assertEquals(3, warmer.status().get("loaded"));
+    }
+
+    @Test
+    void warmUp_withoutSnapshot() {
+        CacheWarmupProperties properties = new CacheWarmupProperties();
+        properties.setSnapshotFile(dir.resolve("absent.snapshot").toString());
+        AccountCacheWarmer warmer = new AccountCacheWarmer(new ConcurrentMapCacheManager("account"), repository, slotRepository, properties);
+        warmer.warmUp();
+        verify(repository, never()).findByAccountNumbers(anyCollection());
+        assertEquals("done", warmer.status().get("state"));
+        assertEquals(0, warmer.status().get("total"));
+    }
+}
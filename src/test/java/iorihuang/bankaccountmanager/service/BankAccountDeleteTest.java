@@ -80,7 +80,7 @@ class BankAccountDeleteTest {
         BankAccount acc = BankAccount.builder().accountNumber("A001").balance(BigDecimal.ZERO).state(1).updatedAt(LocalDateTime.now()).build();
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(acc));
         when(verHelper.genId()).thenReturn(100L, 100L, 100L, 100L, 100L, 100L);
-        when(trans.deleteAccount(any(), eq(AccountState.fromCodeSafe(acc.getState())), anyLong(), any())).thenReturn(LocalDateTime.now());
+        when(trans.deleteAccount(any(), eq(AccountState.fromCodeSafe(acc.getState())), anyLong(), any())).thenReturn(acc);
         assertDoesNotThrow(() -> service.deleteAccount("A001"));
     }
 
@@ -89,7 +89,7 @@ class BankAccountDeleteTest {
         BankAccount acc = BankAccount.builder().id(1L).accountNumber("A001").balance(BigDecimal.ONE).state(1).updatedAt(LocalDateTime.now()).build();
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(acc));
         when(verHelper.genId()).thenReturn(100L, 100L, 100L, 100L, 100L, 100L);
-        when(trans.deleteAccount(any(), eq(AccountState.fromCodeSafe(acc.getState())), anyLong(), any())).thenReturn(LocalDateTime.now());
+        when(trans.deleteAccount(any(), eq(AccountState.fromCodeSafe(acc.getState())), anyLong(), any())).thenReturn(acc);
         assertDoesNotThrow(() -> service.deleteAccount("A001"));
     }
 
@@ -98,7 +98,7 @@ class BankAccountDeleteTest {
         BankAccount acc = BankAccount.builder().id(1L).accountNumber("A001").balance(BigDecimal.ZERO).state(AccountState.CLOSED.getCode()).build();
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(acc));
         when(verHelper.genId()).thenReturn(100L, 100L, 100L, 100L, 100L, 100L);
-        when(trans.deleteAccount(any(), eq(AccountState.fromCodeSafe(acc.getState())), anyLong(), any())).thenReturn(LocalDateTime.now());
+        when(trans.deleteAccount(any(), eq(AccountState.fromCodeSafe(acc.getState())), anyLong(), any())).thenReturn(acc);
         assertThrows(DeleteAccountException.class, () -> service.deleteAccount("A001"));
     }
 
@@ -107,7 +107,7 @@ class BankAccountDeleteTest {
         BankAccount acc = BankAccount.builder().id(1L).accountNumber("A001").balance(BigDecimal.ONE).state(AccountState.FROZEN.getCode()).build();
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(acc));
         when(verHelper.genId()).thenReturn(100L, 100L, 100L, 100L, 100L, 100L);
-        when(trans.deleteAccount(any(), eq(AccountState.fromCodeSafe(acc.getState())), anyLong(), any())).thenReturn(LocalDateTime.now());
+        when(trans.deleteAccount(any(), eq(AccountState.fromCodeSafe(acc.getState())), anyLong(), any())).thenReturn(acc);
         assertThrows(DeleteAccountException.class, () -> service.deleteAccount("A001"));
     }
 }
@@ -4,21 +4,27 @@ import iorihuang.bankaccountmanager.dto.BankAccountDTO;
 import iorihuang.bankaccountmanager.exception.AccountError;
 import iorihuang.bankaccountmanager.exception.AccountException;
 import iorihuang.bankaccountmanager.exception.exception.AccountNotFoundException;
+import iorihuang.bankaccountmanager.helper.existence.AccountExistenceFilter;
+import iorihuang.bankaccountmanager.helper.existence.AccountExistenceProperties;
 import iorihuang.bankaccountmanager.model.BankAccount;
 import iorihuang.bankaccountmanager.repository.BankAccountRepository;
+import iorihuang.bankaccountmanager.repository.BankAccountSlotRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.mockito.Mockito.when;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
 
 class BankAccountGetTest {
     @Mock
@@ -46,5 +52,94 @@ class BankAccountGetTest {
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.empty());
         assertThrows(AccountNotFoundException.class, () -> service.getAccount("A001"));
     }
-}
 
+    @Test
+    void getAccount_notFound_filtered() {
+        AccountExistenceFilter filter = new AccountExistenceFilter(new AccountExistenceProperties(), null, null);
+        filter.ready();
+        ReflectionTestUtils.setField(service, "accountExistenceFilter", filter);
+        assertThrows(AccountNotFoundException.class, () -> service.getAccount("A001"));
+        // confirmed by the index probe, the whole row is not read
+        verify(repository).existsByAccountNumber("A001");
+        verify(repository, never()).findByAccountNumber("A001");
+        // then kept by the negative cache
+        assertThrows(AccountNotFoundException.class, () -> service.getAccount("A001"));
+        verify(repository, times(1)).existsByAccountNumber("A001");
+    }
+
+    @Test
+    void getAccount_creationMessageLost() throws AccountError, AccountException {
+        AccountExistenceFilter filter = new AccountExistenceFilter(new AccountExistenceProperties(), null, null);
+        filter.ready();
+        ReflectionTestUtils.setField(service, "accountExistenceFilter", filter);
+        BankAccount acc = BankAccount.builder().id(1L).accountNumber("A001").balance(new BigDecimal("100.00")).updatedAt(LocalDateTime.now()).build();
+        when(repository.existsByAccountNumber("A001")).thenReturn(true);
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(acc));
+        assertEquals("A001", service.getAccount("A001").getAccountNumber());
+        // put back into the bloom filter, not probed again
+        assertEquals("A001", service.getAccount("A001").getAccountNumber());
+        verify(repository, times(1)).existsByAccountNumber("A001");
+    }
+
+    @Test
+    void getAccount_notFound_negativeCached() {
+        AccountExistenceFilter filter = new AccountExistenceFilter(new AccountExistenceProperties(), null, null);
+        // false positive of the bloom filter, read from db only once
+        filter.load(List.of("A001"));
+        filter.ready();
+        ReflectionTestUtils.setField(service, "accountExistenceFilter", filter);
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.empty());
+        assertThrows(AccountNotFoundException.class, () -> service.getAccount("A001"));
+        assertThrows(AccountNotFoundException.class, () -> service.getAccount("A001"));
+        verify(repository, times(1)).findByAccountNumber("A001");
+    }
+
+    private Cache validatedReads() {
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager("account");
+        ReflectionTestUtils.setField(service, "cacheManager", cacheManager);
+        ReflectionTestUtils.setField(service, "accountCacheRefresher", new AccountCacheRefresher(repository, mock(BankAccountSlotRepository.class)));
+        return cacheManager.getCache("account");
+    }
+
+    @Test
+    void getValidatedAccount_versionUnchanged() throws AccountError, AccountException {
+        Cache cache = validatedReads();
+        BankAccountDTO cached = new BankAccountDTO().setAccountNumber("A001").setBalance(new BigDecimal("100")).setVer(1L);
+        cache.put("A001", cached);
+        when(repository.findVersionByAccountNumber("A001")).thenReturn(Optional.of(1L));
+        assertSame(cached, service.getValidatedAccount("A001"));
+        verify(repository, never()).findByAccountNumber(any());
+    }
+
+    @Test
+    void getValidatedAccount_versionMoved() throws AccountError, AccountException {
+        Cache cache = validatedReads();
+        cache.put("A001", new BankAccountDTO().setAccountNumber("A001").setBalance(new BigDecimal("100")).setVer(1L));
+        when(repository.findVersionByAccountNumber("A001")).thenReturn(Optional.of(2L));
+        BankAccount acc = BankAccount.builder().id(1L).accountNumber("A001").balance(new BigDecimal("80.00")).ver(2L).updatedAt(LocalDateTime.now()).build();
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(acc));
+        BankAccountDTO dto = service.getValidatedAccount("A001");
+        assertEquals("80.000000", dto.getBalance());
+        // the reloaded account replaces the stale one for fast reads too
+        assertEquals(2L, cache.get("A001", BankAccountDTO.class).getVer());
+    }
+
+    @Test
+    void getValidatedAccount_gone() {
+        Cache cache = validatedReads();
+        cache.put("A001", new BankAccountDTO().setAccountNumber("A001").setVer(1L));
+        when(repository.findVersionByAccountNumber("A001")).thenReturn(Optional.empty());
+        assertThrows(AccountNotFoundException.class, () -> service.getValidatedAccount("A001"));
+        assertNull(cache.get("A001"));
+    }
+
+    @Test
+    void getValidatedAccount_notCached() throws AccountError, AccountException {
+        Cache cache = validatedReads();
+        BankAccount acc = BankAccount.builder().id(1L).accountNumber("A001").balance(new BigDecimal("100.00")).ver(1L).updatedAt(LocalDateTime.now()).build();
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(acc));
+        assertEquals("100.000000", service.getValidatedAccount("A001").getBalance());
+        assertNotNull(cache.get("A001"));
+        verify(repository, never()).findVersionByAccountNumber(any());
+    }
+}
@@ -0,0 +1,226 @@
+package iorihuang.bankaccountmanager.service;
+
+import iorihuang.bankaccountmanager.config.SnowFlakeIdAutoConfig;
+import iorihuang.bankaccountmanager.dto.BankAccountDTO;
+import iorihuang.bankaccountmanager.dto.TransferRequest;
+import iorihuang.bankaccountmanager.exception.AccountError;
+import iorihuang.bankaccountmanager.exception.AccountException;
+import iorihuang.bankaccountmanager.exception.AccountExceptions;
+import iorihuang.bankaccountmanager.exception.exception.AccountParamException;
+import iorihuang.bankaccountmanager.exception.exception.AccountTransferException;
+import iorihuang.bankaccountmanager.exception.exception.AccountVersionConflictException;
+import iorihuang.bankaccountmanager.exception.exception.DeleteAccountException;
+import iorihuang.bankaccountmanager.exception.exception.InsufficientBalanceException;
+import iorihuang.bankaccountmanager.helper.retry.VersionRetryPolicy;
+import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdHelper;
+import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdProperties;
+import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.model.BankAccountSlot;
+import iorihuang.bankaccountmanager.model.bankaccount.AccountState;
+import iorihuang.bankaccountmanager.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BankAccountSlotTest {
+    @Mock
+    private BankAccountRepository repository;
+    @Mock
+    private BankAccountSlotRepository slotRepository;
+    @Mock
+    private BankAccountTrans trans;
+    @Spy
+    private SnowFlakeIdHelper idHelper = new SnowFlakeIdAutoConfig().idHelper(new SnowFlakeIdProperties());
+    @Spy
+    private SnowFlakeIdHelper verHelper = new SnowFlakeIdAutoConfig().verHelper(new SnowFlakeIdProperties());
+    @InjectMocks
+    private BankAccountServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    private BankAccount account(String accountNumber, String balance, int slots) {
+        return BankAccount.builder()
+                .id(idHelper.genId())
+                .accountNumber(accountNumber)
+                .state(AccountState.ACTIVE.getCode())
+                .balance(new BigDecimal(balance))
+                .slots(slots)
+                .ver(verHelper.genId())
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+
+    @Test
+    void getAccount_aggregatedBalance() throws AccountError, AccountException {
+        when(repository.findByAccountNumber("H001")).thenReturn(Optional.of(account("H001", "1.5", 4)));
+        when(slotRepository.sumBalanceByAccountNumber("H001")).thenReturn(new BigDecimal("100.25"));
+        BankAccountDTO dto = service.getAccount("H001");
+        assertEquals("101.750000", dto.getBalance());
+        assertEquals(4, dto.getSlots());
+    }
+
+    @Test
+    void getAccount_normalAccountNoSlotRead() throws AccountError, AccountException {
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(account("A001", "10", 0)));
+        BankAccountDTO dto = service.getAccount("A001");
+        assertEquals("10.000000", dto.getBalance());
+        assertNull(dto.getSlots());
+        verifyNoInteractions(slotRepository);
+    }
+
+    @Test
+    void split_success() throws AccountError, AccountException {
+        when(repository.findByAccountNumber("H001")).thenReturn(Optional.of(account("H001", "100", 0)));
+        when(trans.splitSlots(any(), eq(8), anyLong())).thenReturn(LocalDateTime.now());
+        assertDoesNotThrow(() -> service.splitAccountSlots("H001", 8));
+        verify(trans).splitSlots(any(), eq(8), anyLong());
+    }
+
+    @Test
+    void split_alreadyHot() {
+        when(repository.findByAccountNumber("H001")).thenReturn(Optional.of(account("H001", "0", 4)));
+        when(slotRepository.sumBalanceByAccountNumber("H001")).thenReturn(BigDecimal.TEN);
+        assertThrows(AccountParamException.class, () -> service.splitAccountSlots("H001", 8));
+    }
+
+    @Test
+    void split_invalidSlots() {
+        assertThrows(AccountParamException.class, () -> service.splitAccountSlots("H001", 1));
+        assertThrows(AccountParamException.class, () -> service.splitAccountSlots("H001", 1000));
+    }
+
+    @Test
+    void merge_notHot() throws AccountError, AccountException {
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(account("A001", "10", 0)));
+        service.mergeAccountSlots("A001");
+        verify(trans, never()).mergeSlots(any(), anyLong());
+    }
+
+    @Test
+    void transfer_fromHotUsesAggregatedBalance() throws AccountError, AccountException {
+        when(repository.findByAccountNumber("H001")).thenReturn(Optional.of(account("H001", "0", 4)));
+        when(slotRepository.sumBalanceByAccountNumber("H001")).thenReturn(new BigDecimal("20"));
+        when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(account("A002", "0", 0)));
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenAnswer(BankAccountTransferTest::transferred);
+        TransferRequest req = new TransferRequest();
+        req.setFromAccountNumber("H001");
+        req.setToAccountNumber("A002");
+        req.setAmount("15");
+        assertDoesNotThrow(() -> service.transfer(req));
+        req.setAmount("25");
+        assertThrows(InsufficientBalanceException.class, () -> service.transfer(req));
+    }
+
+    @Test
+    void delete_hotAccountMustMerge() {
+        when(repository.findByAccountNumber("H001")).thenReturn(Optional.of(account("H001", "0", 4)));
+        when(slotRepository.sumBalanceByAccountNumber("H001")).thenReturn(BigDecimal.ZERO);
+        assertThrows(DeleteAccountException.class, () -> service.deleteAccount("H001"));
+    }
+
+    @Test
+    void transfer_toHotFrozenMeanwhile() throws AccountError, AccountException {
+        ReflectionTestUtils.setField(service, "versionRetryPolicy", new VersionRetryPolicy(3, 0, 0, null));
+        BankAccount from = account("A001", "20", 0);
+        BankAccount to = account("H001", "0", 4);
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
+        when(repository.findByAccountNumber("H001")).thenReturn(Optional.of(to));
+        when(slotRepository.sumBalanceByAccountNumber("H001")).thenReturn(BigDecimal.TEN);
+        // the slot credit is rejected by the account row frozen after read
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenThrow(AccountExceptions.versionConflict("H001"));
+        when(repository.findBalanceVersionById(from.getId())).thenReturn(Optional.of(from));
+        when(repository.findBalanceVersionById(to.getId())).thenReturn(Optional.of(to.toBuilder().state(AccountState.FROZEN.getCode()).build()));
+        TransferRequest req = new TransferRequest();
+        req.setFromAccountNumber("A001");
+        req.setToAccountNumber("H001");
+        req.setAmount("5");
+        assertThrows(AccountTransferException.class, () -> service.transfer(req));
+        verify(trans, times(1)).transfer(any(), any(), any(), anyLong(), any(), any(), any());
+    }
+
+    @Test
+    void slotCredit_guardedByAccountRow() {
+        BankAccountTrans real = new BankAccountTrans(repository, mock(BankAccountChangeLogRepository.class), mock(BankAccountBalanceLogRepository.class), mock(BankAccountTransferLogRepository.class), slotRepository);
+        BankAccount from = account("A001", "20", 0);
+        BankAccount to = account("H001", "0", 4);
+        when(repository.reduceBalanceByIdAndVersion(anyLong(), any(), anyInt(), anyLong(), any(), any(), any(), anyLong(), anyLong())).thenReturn(1);
+        // frozen after read, no row matches the guard
+        when(slotRepository.increaseBalance(any(), anyInt(), any(), any(), anyLong(), anyInt(), anyInt(), anyLong())).thenReturn(0);
+        assertThrows(AccountVersionConflictException.class, () -> real.transfer(from, to, BigDecimal.ONE, verHelper.genId(), null, null, null));
+        verify(slotRepository).increaseBalance(eq("H001"), anyInt(), eq(BigDecimal.ONE), any(), anyLong(), eq(AccountState.ACTIVE.getCode()), eq(4), eq(0L));
+    }
+
+    @Test
+    void slotDebit_frozenIsConflictNotInsufficient() {
+        BankAccountTrans real = new BankAccountTrans(repository, mock(BankAccountChangeLogRepository.class), mock(BankAccountBalanceLogRepository.class), mock(BankAccountTransferLogRepository.class), slotRepository);
+        BankAccount from = account("H001", "0", 2).toBuilder().fenceToken(7L).build();
+        BankAccount to = account("A002", "0", 0);
+        when(slotRepository.findByAccountNumber("H001")).thenReturn(new ArrayList<>(List.of(
+                BankAccountSlot.builder().accountNumber("H001").slotNo(0).balance(new BigDecimal("3")).build(),
+                BankAccountSlot.builder().accountNumber("H001").slotNo(1).balance(new BigDecimal("3")).build())));
+        when(slotRepository.reduceBalance(any(), anyInt(), any(), any(), anyLong(), anyInt(), anyInt(), anyLong())).thenReturn(0);
+        assertThrows(AccountVersionConflictException.class, () -> real.transfer(from, to, new BigDecimal("5"), verHelper.genId(), null, null, null));
+        verify(slotRepository).reduceBalance(eq("H001"), anyInt(), eq(new BigDecimal("3")), any(), anyLong(), eq(AccountState.ACTIVE.getCode()), eq(2), eq(7L));
+        verify(repository, never()).increaseBalanceByIdAndVersion(anyLong(), any(), anyInt(), anyLong(), any(), any(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void transfer_conflictRefreshesSlots() throws AccountError, AccountException {
+        ReflectionTestUtils.setField(service, "versionRetryPolicy", new VersionRetryPolicy(3, 0, 0, null));
+        BankAccount from = account("H001", "0", 4);
+        BankAccount to = account("A002", "0", 0);
+        when(repository.findByAccountNumber("H001")).thenReturn(Optional.of(from));
+        when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to));
+        when(slotRepository.sumBalanceByAccountNumber("H001")).thenReturn(new BigDecimal("20"));
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenThrow(AccountExceptions.versionConflict("H001"));
+        // merged between the attempts, the slot balance read before is gone
+        when(repository.findBalanceVersionById(from.getId())).thenReturn(Optional.of(from.toBuilder().balance(new BigDecimal("3")).slots(0).build()));
+        when(repository.findBalanceVersionById(to.getId())).thenReturn(Optional.of(to));
+        TransferRequest req = new TransferRequest();
+        req.setFromAccountNumber("H001");
+        req.setToAccountNumber("A002");
+        req.setAmount("15");
+        assertThrows(InsufficientBalanceException.class, () -> service.transfer(req));
+        verify(trans, times(1)).transfer(any(), any(), any(), anyLong(), any(), any(), any());
+    }
+
+    @Test
+    void transfer_conflictReloadsSlotBalance() throws AccountError, AccountException {
+        ReflectionTestUtils.setField(service, "versionRetryPolicy", new VersionRetryPolicy(3, 0, 0, null));
+        BankAccount from = account("A001", "20", 0);
+        BankAccount to = account("A002", "0", 0);
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
+        when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to));
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any()))
+                .thenThrow(AccountExceptions.versionConflict("A001"))
+                .thenAnswer(BankAccountTransferTest::transferred);
+        // split between the attempts, the balance is moved to slots
+        when(repository.findBalanceVersionById(from.getId())).thenReturn(Optional.of(from.toBuilder().balance(BigDecimal.ZERO).slots(4).build()));
+        when(repository.findBalanceVersionById(to.getId())).thenReturn(Optional.of(to));
+        when(slotRepository.sumBalanceByAccountNumber("A001")).thenReturn(new BigDecimal("20"));
+        TransferRequest req = new TransferRequest();
+        req.setFromAccountNumber("A001");
+        req.setToAccountNumber("A002");
+        req.setAmount("15");
+        assertDoesNotThrow(() -> service.transfer(req));
+        verify(trans, times(2)).transfer(any(), any(), any(), anyLong(), any(), any(), any());
+        verify(trans).transfer(argThat(BankAccount::isHot), any(), any(), anyLong(), any(), any(), any());
+    }
+}
@@ -0,0 +1,203 @@
+package iorihuang.bankaccountmanager.service;
+
+import iorihuang.bankaccountmanager.config.SnowFlakeIdAutoConfig;
+import iorihuang.bankaccountmanager.dto.BankTransferBatchDTO;
+import iorihuang.bankaccountmanager.dto.TransferRequest;
+import iorihuang.bankaccountmanager.exception.AccountError;
+import iorihuang.bankaccountmanager.exception.AccountException;
+import iorihuang.bankaccountmanager.exception.ExpCode;
+import iorihuang.bankaccountmanager.exception.exception.AccountParamException;
+import iorihuang.bankaccountmanager.exception.exception.AccountVersionConflictException;
+import iorihuang.bankaccountmanager.helper.lock.AccountLock;
+import iorihuang.bankaccountmanager.helper.lock.AccountLockProvider;
+import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdHelper;
+import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdProperties;
+import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.model.bankaccount.AccountState;
+import iorihuang.bankaccountmanager.repository.BalanceChange;
+import iorihuang.bankaccountmanager.repository.BankAccountRepository;
+import iorihuang.bankaccountmanager.repository.BankAccountTrans;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class BankAccountTransferBatchTest {
+    @Mock
+    private BankAccountRepository repository;
+    @Mock
+    private BankAccountTrans trans;
+    @Spy
+    private SnowFlakeIdHelper idHelper = new SnowFlakeIdAutoConfig().idHelper(new SnowFlakeIdProperties());
+    @Spy
+    private SnowFlakeIdHelper verHelper = new SnowFlakeIdAutoConfig().verHelper(new SnowFlakeIdProperties());
+    @InjectMocks
+    private BankAccountServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    private static BankAccount account(long id, String accountNumber, String balance) {
+        return BankAccount.builder()
+                .id(id)
+                .accountNumber(accountNumber)
+                .balance(new BigDecimal(balance))
+                .state(AccountState.ACTIVE.getCode())
+                .ver(100L)
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+
+    private static TransferRequest transfer(String from, String to, String amount) {
+        return new TransferRequest().setFromAccountNumber(from).setToAccountNumber(to).setAmount(amount);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void transferBatch_success_with_net_balance() throws AccountError, AccountException {
+        when(repository.findByAccountNumbers(any())).thenReturn(List.of(account(1L, "A001", "100"), account(2L, "A002", "50"), account(3L, "A003", "0")));
+        BankTransferBatchDTO dto = service.transferBatch(List.of(
+                transfer("A001", "A002", "30"),
+                transfer("A002", "A003", "70"),
+                transfer("A001", "A003", "10.5")
+        ));
+        List<BankTransferBatchDTO.Item> results = dto.getResults();
+        assertEquals(3, results.size());
+        results.forEach(item -> assertEquals(1, item.getCode()));
+        assertEquals("80.000000", results.get(0).getTo().getBalance());
+        assertEquals("10.000000", results.get(1).getFrom().getBalance());
+        assertEquals("59.500000", results.get(2).getFrom().getBalance());
+        assertEquals("80.500000", results.get(2).getTo().getBalance());
+
+        ArgumentCaptor<List<BalanceChange>> changes = ArgumentCaptor.forClass(List.class);
+        verify(trans, times(1)).applyBalances(changes.capture(), anyList(), anyList(), any());
+        Map<String, BigDecimal> balances = changes.getValue().stream().collect(Collectors.toMap(c -> c.getAccount().getAccountNumber(), BalanceChange::getNewBalance));
+        assertEquals(0, new BigDecimal("59.5").compareTo(balances.get("A001")));
+        assertEquals(0, new BigDecimal("10").compareTo(balances.get("A002")));
+        assertEquals(0, new BigDecimal("80.5").compareTo(balances.get("A003")));
+        // guarded by the balance read
+        changes.getValue().forEach(c -> assertEquals(100L, c.getAccount().getVer()));
+    }
+
+    @Test
+    void transferBatch_item_failures() throws AccountError, AccountException {
+        BankAccount closed = account(4L, "A004", "10");
+        closed.setState(AccountState.CLOSED.getCode());
+        when(repository.findByAccountNumbers(any())).thenReturn(List.of(account(1L, "A001", "100"), account(2L, "A002", "50"), closed));
+        BankTransferBatchDTO dto = service.transferBatch(List.of(
+                transfer("A001", "A001", "1"),
+                transfer("A001", "A002", "1000"),
+                transfer("A001", "A009", "1"),
+                transfer("A004", "A002", "1"),
+                transfer("A001", "A002", "100")
+        ));
+        List<BankTransferBatchDTO.Item> results = dto.getResults();
+        assertEquals(ExpCode.AccountInvalidParam.getCode(), results.get(0).getError());
+        assertEquals(ExpCode.InsufficientBalance.getCode(), results.get(1).getError());
+        assertEquals(ExpCode.AccountNotFound.getCode(), results.get(2).getError());
+        assertEquals(ExpCode.TransferAccountLimit.getCode(), results.get(3).getError());
+        assertEquals(1, results.get(4).getCode());
+        assertEquals("0.000000", results.get(4).getFrom().getBalance());
+    }
+
+    @Test
+    void transferBatch_commit_fail() throws AccountError, AccountException {
+        when(repository.findByAccountNumbers(any())).thenReturn(List.of(account(1L, "A001", "100"), account(2L, "A002", "50")));
+        doThrow(new AccountVersionConflictException("conflict")).when(trans).applyBalances(anyList(), anyList(), anyList(), any());
+        BankTransferBatchDTO dto = service.transferBatch(List.of(
+                transfer("A001", "A002", "1"),
+                transfer("A002", "A001", "2")
+        ));
+        dto.getResults().forEach(item -> {
+            assertEquals(0, item.getCode());
+            assertEquals(ExpCode.AccountVersionConflict.getCode(), item.getError());
+            assertNull(item.getFrom());
+        });
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void transferBatch_hot_account_rejected() throws AccountError, AccountException {
+        BankAccount hot = account(3L, "H001", "0");
+        hot.setSlots(4);
+        when(repository.findByAccountNumbers(any())).thenReturn(List.of(account(1L, "A001", "100"), account(2L, "A002", "50"), hot));
+        BankTransferBatchDTO dto = service.transferBatch(List.of(
+                transfer("A001", "H001", "10"),
+                transfer("H001", "A002", "1"),
+                transfer("A001", "A002", "10")
+        ));
+        List<BankTransferBatchDTO.Item> results = dto.getResults();
+        assertEquals(ExpCode.TransferAccountLimit.getCode(), results.get(0).getError());
+        assertEquals(ExpCode.TransferAccountLimit.getCode(), results.get(1).getError());
+        assertEquals(1, results.get(2).getCode());
+        assertEquals("90.000000", results.get(2).getFrom().getBalance());
+        // the rejected transfer is not applied to the source account
+        ArgumentCaptor<List<BalanceChange>> changes = ArgumentCaptor.forClass(List.class);
+        verify(trans, times(1)).applyBalances(changes.capture(), anyList(), anyList(), any());
+        assertTrue(changes.getValue().stream().noneMatch(c -> "H001".equals(c.getAccount().getAccountNumber())));
+    }
+
+    @Test
+    void transferBatch_lock_fail() throws AccountError, AccountException {
+        AccountLockProvider lockProvider = mock(AccountLockProvider.class);
+        AccountLock unlocked = mock(AccountLock.class);
+        when(unlocked.isLocked()).thenReturn(false);
+        when(lockProvider.lock(any(String[].class))).thenReturn(unlocked);
+        ReflectionTestUtils.setField(service, "accountLockProvider", lockProvider);
+        BankTransferBatchDTO dto = service.transferBatch(List.of(
+                transfer("A001", "A002", "1"),
+                transfer("A002", "A001", "2")
+        ));
+        dto.getResults().forEach(item -> assertEquals(ExpCode.AccountConcurrentLimit.getCode(), item.getError()));
+        // nothing is read without the locks
+        verify(repository, never()).findByAccountNumbers(any());
+        verify(unlocked).close();
+    }
+
+    @Test
+    void transferBatch_locked_by_groups() throws AccountError, AccountException {
+        AccountLockProvider lockProvider = mock(AccountLockProvider.class);
+        List<Integer> locked = new ArrayList<>();
+        when(lockProvider.lock(any(String[].class))).thenAnswer(invocation -> {
+            locked.add(invocation.getArguments().length);
+            return AccountLock.NONE;
+        });
+        ReflectionTestUtils.setField(service, "accountLockProvider", lockProvider);
+        List<BankAccount> accounts = new ArrayList<>();
+        List<TransferRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            accounts.add(account(2L * i, String.format("F%04d", i), "10"));
+            accounts.add(account(2L * i + 1, String.format("T%04d", i), "0"));
+            requests.add(transfer(String.format("F%04d", i), String.format("T%04d", i), "1"));
+        }
+        when(repository.findByAccountNumbers(any())).thenReturn(accounts);
+        BankTransferBatchDTO dto = service.transferBatch(requests);
+        dto.getResults().forEach(item -> assertEquals(1, item.getCode()));
+        // 300 accounts in sequential groups of at most 200 accounts
+        assertEquals(List.of(200, 100), locked);
+        verify(trans, times(2)).applyBalances(anyList(), anyList(), anyList(), any());
+    }
+
+    @Test
+    void transferBatch_invalid_size() {
+        assertThrows(AccountParamException.class, () -> service.transferBatch(List.of()));
+    }
+}
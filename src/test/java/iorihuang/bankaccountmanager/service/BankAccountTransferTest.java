@@ -8,7 +8,9 @@ import iorihuang.bankaccountmanager.exception.AccountException;
 import iorihuang.bankaccountmanager.exception.exception.AccountNotFoundException;
 import iorihuang.bankaccountmanager.exception.exception.AccountParamException;
 import iorihuang.bankaccountmanager.exception.exception.AccountTransferException;
+import iorihuang.bankaccountmanager.exception.exception.AccountVersionConflictException;
 import iorihuang.bankaccountmanager.exception.exception.InsufficientBalanceException;
+import iorihuang.bankaccountmanager.helper.retry.VersionRetryPolicy;
 import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdHelper;
 import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdProperties;
 import iorihuang.bankaccountmanager.model.BankAccount;
@@ -16,12 +18,16 @@ import iorihuang.bankaccountmanager.model.bankaccount.AccountState;
 import iorihuang.bankaccountmanager.model.bankaccount.AccountType;
 import iorihuang.bankaccountmanager.repository.BankAccountRepository;
 import iorihuang.bankaccountmanager.repository.BankAccountTrans;
+import iorihuang.bankaccountmanager.repository.TransferResult;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -30,7 +36,7 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 class BankAccountTransferTest {
     @Mock
@@ -53,13 +59,20 @@ class BankAccountTransferTest {
         MockitoAnnotations.openMocks(this);
     }
 
+    /**
+     * mock BankAccountTrans.transfer with the state computed from the values applied
+     */
+    static TransferResult transferred(InvocationOnMock invocation) {
+        return TransferResult.of(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2), invocation.getArgument(3), LocalDateTime.now());
+    }
+
     @Test
     void transfer_success() throws AccountError, AccountException {
         BankAccount from = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(1L).accountNumber("A001").balance(new BigDecimal("100.00")).updatedAt(LocalDateTime.now()).build();
         BankAccount to = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(2L).accountNumber("A002").balance(new BigDecimal("50.00")).updatedAt(LocalDateTime.now()).build();
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
         when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to));
-        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenReturn(LocalDateTime.now());
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenAnswer(BankAccountTransferTest::transferred);
         TransferRequest req = new TransferRequest();
         req.setFromAccountNumber("A001");
         req.setToAccountNumber("A002");
@@ -99,11 +112,15 @@ class BankAccountTransferTest {
                 .updatedAt(LocalDateTime.now())
                 .deletedAt(LocalDateTime.now())
                 .build();
-        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from), Optional.of(to));
-        when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to), Optional.of(from));
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
+        when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to));
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenAnswer(BankAccountTransferTest::transferred);
         BankTransferDTO dto = service.transfer(new TransferRequest().setFromAccountNumber("A001").setToAccountNumber("A002").setAmount("0.560807"));
-        assertEquals("0.439193", dto.getFrom().getBalance());
-        assertEquals("100.560807", dto.getTo().getBalance());
+        assertEquals("100.000000", dto.getFrom().getBalance());
+        assertEquals("1.000000", dto.getTo().getBalance());
+        // built from the state written, both accounts are read only once
+        verify(repository, times(1)).findByAccountNumber("A001");
+        verify(repository, times(1)).findByAccountNumber("A002");
     }
 
     @Test
@@ -112,7 +129,7 @@ class BankAccountTransferTest {
         BankAccount to = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(2L).accountNumber("A002").balance(new BigDecimal("50.00")).build();
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
         when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to));
-        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenReturn(LocalDateTime.now());
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenAnswer(BankAccountTransferTest::transferred);
         TransferRequest req = new TransferRequest();
         req.setFromAccountNumber("A001");
         req.setToAccountNumber("A001");
@@ -126,7 +143,7 @@ class BankAccountTransferTest {
         BankAccount to = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(2L).accountNumber("A002").balance(new BigDecimal("50.00")).build();
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
         when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to));
-        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenReturn(LocalDateTime.now());
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenAnswer(BankAccountTransferTest::transferred);
         TransferRequest req = new TransferRequest();
         req.setFromAccountNumber("A001");
         req.setToAccountNumber("A002");
@@ -140,7 +157,7 @@ class BankAccountTransferTest {
         BankAccount to = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(2L).accountNumber("A002").balance(new BigDecimal("50.00")).build();
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
         when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to));
-        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenReturn(LocalDateTime.now());
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenAnswer(BankAccountTransferTest::transferred);
         TransferRequest req = new TransferRequest();
         req.setFromAccountNumber("A001");
         req.setToAccountNumber("A002");
@@ -154,7 +171,7 @@ class BankAccountTransferTest {
         BankAccount to = BankAccount.builder().state(AccountState.CLOSED.getCode()).id(2L).accountNumber("A002").balance(new BigDecimal("50.00")).build();
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
         when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to));
-        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenReturn(LocalDateTime.now());
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenAnswer(BankAccountTransferTest::transferred);
         TransferRequest req = new TransferRequest();
         req.setFromAccountNumber("A001");
         req.setToAccountNumber("A002");
@@ -202,7 +219,7 @@ class BankAccountTransferTest {
     @Test
     void transfer_fromAccountNotFound() throws AccountError, AccountException {
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.empty());
-        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenReturn(LocalDateTime.now());
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenAnswer(BankAccountTransferTest::transferred);
         TransferRequest req = new TransferRequest();
         req.setFromAccountNumber("A001");
         req.setToAccountNumber("A002");
@@ -215,7 +232,7 @@ class BankAccountTransferTest {
         BankAccount from = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(1L).accountNumber("A001").balance(new BigDecimal("100.00")).build();
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
         when(repository.findByAccountNumber("A002")).thenReturn(Optional.empty());
-        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenReturn(LocalDateTime.now());
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenAnswer(BankAccountTransferTest::transferred);
         TransferRequest req = new TransferRequest();
         req.setFromAccountNumber("A001");
         req.setToAccountNumber("A002");
@@ -229,7 +246,7 @@ class BankAccountTransferTest {
         BankAccount to = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(2L).accountNumber("A002").balance(new BigDecimal("50.00")).build();
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
         when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to));
-        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenReturn(LocalDateTime.now());
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenAnswer(BankAccountTransferTest::transferred);
         TransferRequest req = new TransferRequest();
         req.setFromAccountNumber("A001");
         req.setToAccountNumber("A002");
@@ -243,12 +260,89 @@ class BankAccountTransferTest {
         BankAccount to = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(2L).accountNumber("A002").balance(new BigDecimal("50.00")).build();
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
         when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to));
-        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenReturn(LocalDateTime.now());
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenAnswer(BankAccountTransferTest::transferred);
         TransferRequest req = new TransferRequest();
         req.setFromAccountNumber("A001");
         req.setToAccountNumber("A002");
         req.setAmount(new BigDecimal("30.00000010").toString());
         assertThrows(AccountParamException.class, () -> service.transfer(req));
     }
-}
 
+    @Test
+    void transfer_version_conflict_retried() throws AccountError, AccountException {
+        ReflectionTestUtils.setField(service, "versionRetryPolicy", new VersionRetryPolicy(3, 0, 0, null));
+        BankAccount from = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(1L).accountNumber("A001").balance(new BigDecimal("100.00")).ver(1L).updatedAt(LocalDateTime.now()).build();
+        BankAccount to = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(2L).accountNumber("A002").balance(new BigDecimal("50.00")).ver(1L).updatedAt(LocalDateTime.now()).build();
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
+        when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to));
+        when(repository.findBalanceVersionById(1L)).thenReturn(Optional.of(BankAccount.builder().id(1L).state(AccountState.ACTIVE.getCode()).balance(new BigDecimal("80.00")).ver(2L).build()));
+        when(repository.findBalanceVersionById(2L)).thenReturn(Optional.of(BankAccount.builder().id(2L).state(AccountState.ACTIVE.getCode()).balance(new BigDecimal("70.00")).ver(2L).build()));
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any()))
+                .thenThrow(new AccountVersionConflictException("conflict"))
+                .thenAnswer(BankAccountTransferTest::transferred);
+        BankTransferDTO dto = service.transfer(new TransferRequest().setFromAccountNumber("A001").setToAccountNumber("A002").setAmount("30"));
+        assertEquals("50.000000", dto.getFrom().getBalance());
+        assertEquals("100.000000", dto.getTo().getBalance());
+        verify(trans, times(2)).transfer(any(), any(), any(), anyLong(), any(), any(), any());
+        // only balance and version are read again, not the whole account
+        verify(repository, times(1)).findByAccountNumber("A001");
+    }
+
+    @Test
+    void transfer_version_conflict_insufficient() throws AccountError, AccountException {
+        ReflectionTestUtils.setField(service, "versionRetryPolicy", new VersionRetryPolicy(3, 0, 0, null));
+        BankAccount from = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(1L).accountNumber("A001").balance(new BigDecimal("100.00")).ver(1L).build();
+        BankAccount to = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(2L).accountNumber("A002").balance(new BigDecimal("50.00")).ver(1L).build();
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
+        when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to));
+        when(repository.findBalanceVersionById(1L)).thenReturn(Optional.of(BankAccount.builder().id(1L).state(AccountState.ACTIVE.getCode()).balance(new BigDecimal("10.00")).ver(2L).build()));
+        when(repository.findBalanceVersionById(2L)).thenReturn(Optional.of(to));
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenThrow(new AccountVersionConflictException("conflict"));
+        assertThrows(InsufficientBalanceException.class, () -> service.transfer(new TransferRequest().setFromAccountNumber("A001").setToAccountNumber("A002").setAmount("30")));
+        verify(trans, times(1)).transfer(any(), any(), any(), anyLong(), any(), any(), any());
+    }
+
+    @Test
+    void transfer_version_conflict_exhausted() throws AccountError, AccountException {
+        ReflectionTestUtils.setField(service, "versionRetryPolicy", new VersionRetryPolicy(3, 0, 0, null));
+        BankAccount from = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(1L).accountNumber("A001").balance(new BigDecimal("100.00")).ver(1L).build();
+        BankAccount to = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(2L).accountNumber("A002").balance(new BigDecimal("50.00")).ver(1L).build();
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
+        when(repository.findByAccountNumber("A002")).thenReturn(Optional.of(to));
+        when(repository.findBalanceVersionById(1L)).thenReturn(Optional.of(from));
+        when(repository.findBalanceVersionById(2L)).thenReturn(Optional.of(to));
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenThrow(new AccountVersionConflictException("conflict"));
+        assertThrows(AccountVersionConflictException.class, () -> service.transfer(new TransferRequest().setFromAccountNumber("A001").setToAccountNumber("A002").setAmount("30")));
+        verify(trans, times(3)).transfer(any(), any(), any(), anyLong(), any(), any(), any());
+    }
+
+    @Test
+    void transfer_entity_cache_hit() throws AccountError, AccountException {
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager("account", "accountEntity");
+        ReflectionTestUtils.setField(service, "cacheManager", cacheManager);
+        BankAccount from = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(1L).accountNumber("A001").balance(new BigDecimal("100.00")).ver(1L).build();
+        BankAccount to = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(2L).accountNumber("A002").balance(new BigDecimal("50.00")).ver(1L).build();
+        cacheManager.getCache("accountEntity").put("A001", from);
+        cacheManager.getCache("accountEntity").put("A002", to);
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenAnswer(BankAccountTransferTest::transferred);
+        service.transfer(new TransferRequest().setFromAccountNumber("A001").setToAccountNumber("A002").setAmount("30"));
+        verify(repository, never()).findByAccountNumber(any());
+    }
+
+    @Test
+    void transfer_entity_cache_stale_rechecked() throws AccountError, AccountException {
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager("account", "accountEntity");
+        ReflectionTestUtils.setField(service, "cacheManager", cacheManager);
+        BankAccount from = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(1L).accountNumber("A001").balance(new BigDecimal("100.00")).ver(2L).build();
+        BankAccount to = BankAccount.builder().state(AccountState.ACTIVE.getCode()).id(2L).accountNumber("A002").balance(new BigDecimal("50.00")).ver(1L).build();
+        // the cached balance is not enough, but the one in db is
+        cacheManager.getCache("accountEntity").put("A001", from.toBuilder().balance(new BigDecimal("10.00")).ver(1L).build());
+        cacheManager.getCache("accountEntity").put("A002", to);
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(from));
+        when(trans.transfer(any(), any(), any(), anyLong(), any(), any(), any())).thenAnswer(BankAccountTransferTest::transferred);
+        BankTransferDTO dto = service.transfer(new TransferRequest().setFromAccountNumber("A001").setToAccountNumber("A002").setAmount("30"));
+        assertEquals("70.000000", dto.getFrom().getBalance());
+        verify(repository, times(1)).findByAccountNumber("A001");
+        verify(repository, never()).findByAccountNumber("A002");
+    }
+}
@@ -5,23 +5,28 @@ import iorihuang.bankaccountmanager.dto.BankAccountDTO;
 import iorihuang.bankaccountmanager.dto.UpdateAccountRequest;
 import iorihuang.bankaccountmanager.exception.AccountError;
 import iorihuang.bankaccountmanager.exception.AccountException;
+import iorihuang.bankaccountmanager.exception.AccountExceptions;
 import iorihuang.bankaccountmanager.exception.error.AccountUpdateError;
 import iorihuang.bankaccountmanager.exception.exception.AccountNotFoundException;
 import iorihuang.bankaccountmanager.exception.exception.AccountParamException;
 import iorihuang.bankaccountmanager.exception.exception.UpdateAccountException;
+import iorihuang.bankaccountmanager.helper.retry.VersionRetryPolicy;
 import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdHelper;
 import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdProperties;
 import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.model.BankAccountChangeLog;
 import iorihuang.bankaccountmanager.model.bankaccount.AccountState;
 import iorihuang.bankaccountmanager.model.bankaccount.AccountType;
 import iorihuang.bankaccountmanager.repository.BankAccountRepository;
 import iorihuang.bankaccountmanager.repository.BankAccountTrans;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -31,6 +36,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class BankAccountUpdateTest {
@@ -62,9 +69,10 @@ class BankAccountUpdateTest {
         UpdateAccountRequest req = new UpdateAccountRequest();
         req.setOwnerName("李四");
         req.setContactInfo("13900000000");
-        when(trans.updateAccount(any(), any(), any(), anyLong(), any())).thenReturn(LocalDateTime.now());
+        when(trans.updateAccount(any(), any(), any(), anyLong(), any())).thenReturn(acc2);
         BankAccountDTO dto = service.updateAccount("A001", req);
         assertEquals("1", dto.getId());
+        assertEquals("李四", dto.getOwnerName());
         assertEquals("A001", dto.getAccountNumber());
     }
 
@@ -86,7 +94,7 @@ class BankAccountUpdateTest {
                 .deletedAt(LocalDateTime.now())
                 .build();
         when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(acc));
-        when(trans.updateAccount(any(), any(), any(), anyLong(), any())).thenReturn(LocalDateTime.now());
+        when(trans.updateAccount(any(), any(), any(), anyLong(), any())).thenReturn(acc);
         UpdateAccountRequest req = new UpdateAccountRequest();
         req.setOwnerName("张三");
         req.setContactInfo("13800000000");
@@ -103,7 +111,7 @@ class BankAccountUpdateTest {
         UpdateAccountRequest req = new UpdateAccountRequest();
         req.setOwnerName("李四");
         req.setContactInfo("13900000000");
-        when(trans.updateAccount(any(), any(), any(), anyLong(), any())).thenReturn(LocalDateTime.now());
+        when(trans.updateAccount(any(), any(), any(), anyLong(), any())).thenReturn(acc);
         assertThrows(UpdateAccountException.class, () -> service.updateAccount("A001", req));
     }
 
@@ -133,7 +141,60 @@ class BankAccountUpdateTest {
         UpdateAccountRequest req = new UpdateAccountRequest();
         req.setOwnerName("");
         req.setContactInfo("");
-        when(trans.updateAccount(any(), any(), any(), anyLong(), any())).thenReturn(LocalDateTime.now());
+        when(trans.updateAccount(any(), any(), any(), anyLong(), any())).thenReturn(acc);
         assertThrows(AccountParamException.class, () -> service.updateAccount("A001", req));
     }
+
+    @Test
+    void updateAccount_conflict_rebuildsChangeLog() throws AccountError, AccountException {
+        ReflectionTestUtils.setField(service, "versionRetryPolicy", new VersionRetryPolicy(3, 0, 0, null));
+        BankAccount stale = BankAccount.builder().id(1L).accountNumber("A001").ownerName("张三").contactInfo("13800000000").ver(1L).build();
+        // another update committed meanwhile
+        BankAccount latest = BankAccount.builder().id(1L).accountNumber("A001").ownerName("王五").contactInfo("13700000000").ver(2L).build();
+        BankAccount updated = BankAccount.builder().id(1L).accountNumber("A001").ownerName("李四").contactInfo("13900000000").ver(3L).build();
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(stale), Optional.of(latest));
+        when(trans.updateAccount(any(), any(), any(), anyLong(), any()))
+                .thenThrow(AccountExceptions.versionConflict("A001"))
+                .thenReturn(updated);
+        UpdateAccountRequest req = new UpdateAccountRequest();
+        req.setOwnerName("李四");
+        req.setContactInfo("13900000000");
+        assertEquals("李四", service.updateAccount("A001", req).getOwnerName());
+
+        ArgumentCaptor<BankAccount> account = ArgumentCaptor.forClass(BankAccount.class);
+        ArgumentCaptor<BankAccountChangeLog> changeLog = ArgumentCaptor.forClass(BankAccountChangeLog.class);
+        verify(trans, times(2)).updateAccount(account.capture(), any(), any(), anyLong(), changeLog.capture());
+        assertEquals(2L, account.getAllValues().get(1).getVer());
+        assertEquals("王五", changeLog.getAllValues().get(1).getBeforeOwnerName());
+        assertEquals("13700000000", changeLog.getAllValues().get(1).getBeforeContactInfo());
+    }
+
+    @Test
+    void updateAccount_conflict_noChangeAfterReread() throws AccountError, AccountException {
+        ReflectionTestUtils.setField(service, "versionRetryPolicy", new VersionRetryPolicy(3, 0, 0, null));
+        BankAccount stale = BankAccount.builder().id(1L).accountNumber("A001").ownerName("张三").contactInfo("13800000000").ver(1L).build();
+        // the same update committed meanwhile
+        BankAccount latest = BankAccount.builder().id(1L).accountNumber("A001").ownerName("李四").contactInfo("13900000000").ver(2L).build();
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(stale), Optional.of(latest));
+        when(trans.updateAccount(any(), any(), any(), anyLong(), any())).thenThrow(AccountExceptions.versionConflict("A001"));
+        UpdateAccountRequest req = new UpdateAccountRequest();
+        req.setOwnerName("李四");
+        req.setContactInfo("13900000000");
+        BankAccountDTO dto = service.updateAccount("A001", req);
+        assertEquals("李四", dto.getOwnerName());
+        verify(trans, times(1)).updateAccount(any(), any(), any(), anyLong(), any());
+    }
+
+    @Test
+    void updateAccount_conflict_closedAfterReread() throws AccountError, AccountException {
+        ReflectionTestUtils.setField(service, "versionRetryPolicy", new VersionRetryPolicy(3, 0, 0, null));
+        BankAccount stale = BankAccount.builder().id(1L).accountNumber("A001").ownerName("张三").contactInfo("13800000000").ver(1L).build();
+        BankAccount latest = stale.toBuilder().state(AccountState.CLOSED.getCode()).ver(2L).build();
+        when(repository.findByAccountNumber("A001")).thenReturn(Optional.of(stale), Optional.of(latest));
+        when(trans.updateAccount(any(), any(), any(), anyLong(), any())).thenThrow(AccountExceptions.versionConflict("A001"));
+        UpdateAccountRequest req = new UpdateAccountRequest();
+        req.setOwnerName("李四");
+        req.setContactInfo("13900000000");
+        assertThrows(UpdateAccountException.class, () -> service.updateAccount("A001", req));
+    }
 }
@@ -0,0 +1,219 @@
+package iorihuang.bankaccountmanager.service.ledger;
+
+import iorihuang.bankaccountmanager.exception.exception.AccountTransferException;
+import iorihuang.bankaccountmanager.helper.snowflakeid.SnowFlakeIdHelper;
+import iorihuang.bankaccountmanager.model.BankAccount;
+import iorihuang.bankaccountmanager.model.bankaccount.AccountState;
+import iorihuang.bankaccountmanager.repository.BankAccountTrans;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * engine and shards over a mocked database, with 2 shards: 10001 and 10003 are on shard 0, 10002 on shard 1
+ */
+class LedgerEngineTest {
+    @TempDir
+    Path dir;
+
+    private final Map<String, BankAccount> db = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+    private final AtomicLong seq = new AtomicLong(1000);
+    private BankAccountTrans trans;
+    private SnowFlakeIdHelper idHelper;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        trans = mock(BankAccountTrans.class);
+        when(trans.getAccountByAccountNumberWithNewTx(anyString())).thenAnswer(invocation -> {
+            String accountNumber = invocation.getArgument(0);
+            loads.computeIfAbsent(accountNumber, k -> new AtomicInteger()).incrementAndGet();
+            BankAccount account = db.get(accountNumber);
+            return Optional.ofNullable(null == account ? null : account.toBuilder().build());
+        });
+        doAnswer(invocation -> {
+            List<BankAccount> accounts = invocation.getArgument(0);
+            for (BankAccount account : accounts) {
+                db.computeIfPresent(account.getAccountNumber(), (k, v) -> v.toBuilder().balance(account.getBalance()).ver(account.getVer()).build());
+            }
+            return null;
+        }).when(trans).projectBalances(anyList(), anyList(), anyList());
+        idHelper = mock(SnowFlakeIdHelper.class);
+        when(idHelper.genId()).thenAnswer(invocation -> seq.incrementAndGet());
+    }
+
+    private void account(long id, String accountNumber, String balance, AccountState state) {
+        db.put(accountNumber, BankAccount.builder()
+                .id(id)
+                .accountNumber(accountNumber)
+                .balance(new BigDecimal(balance))
+                .state(state.getCode())
+                .ver(1L)
+                .updatedAt(LocalDateTime.now())
+                .build());
+    }
+
+    private LedgerProperties properties(String journal) {
+        LedgerProperties properties = new LedgerProperties();
+        properties.setShards(2);
+        properties.setMaxAccounts(1);
+        properties.setJournalPath(dir.resolve(journal).toString());
+        return properties;
+    }
+
+    private static LedgerJournal.Record record(LedgerJournal.Type type, long transferId, long accountId, String accountNumber, String amount, String balanceAfter, long version) {
+        return new LedgerJournal.Record(0, type, transferId, accountId, accountNumber, new BigDecimal(amount), new BigDecimal(balanceAfter), version, "counterparty", System.currentTimeMillis());
+    }
+
+    private void awaitBalance(String accountNumber, String balance) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (db.get(accountNumber).getBalance().compareTo(new BigDecimal(balance)) != 0) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "balance of " + accountNumber + " not projected: " + db.get(accountNumber).getBalance());
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void testRefundAfterSourceEvicted() throws Exception {
+        account(1, "10001", "100", AccountState.ACTIVE);
+        account(2, "10002", "0", AccountState.FROZEN);
+        account(3, "10003", "50", AccountState.ACTIVE);
+        // hold the credit on the destination shard until the source account is evicted
+        CountDownLatch creditLoad = new CountDownLatch(1);
+        when(trans.getAccountByAccountNumberWithNewTx("10002")).thenAnswer(invocation -> {
+            creditLoad.await(5, TimeUnit.SECONDS);
+            return Optional.of(db.get("10002").toBuilder().build());
+        });
+        BlockingQueue<String> projected = new LinkedBlockingQueue<>();
+        LedgerEngine engine = new LedgerEngine(properties("refund.journal"), trans, idHelper, idHelper, projected::addAll, null);
+        engine.start();
+        try {
+            CompletableFuture<LedgerTransferResult> future = engine.transfer("10001", "10002", new BigDecimal("10"));
+            // the debit is projected, then another account loaded by the shard evicts the source account
+            String accountNumber;
+            do {
+                accountNumber = projected.poll(5, TimeUnit.SECONDS);
+                Assertions.assertNotNull(accountNumber, "debit not projected");
+            } while (!"10001".equals(accountNumber));
+            Assertions.assertEquals(0, new BigDecimal("50").compareTo(engine.balanceOf("10003").get(5, TimeUnit.SECONDS)));
+            creditLoad.countDown();
+
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(AccountTransferException.class, e.getCause());
+            // the source account is loaded again for the refund
+            Assertions.assertEquals(2, loads.get("10001").get());
+            Assertions.assertEquals(0, new BigDecimal("100").compareTo(engine.balanceOf("10001").get(5, TimeUnit.SECONDS)));
+            awaitBalance("10001", "100");
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    void testRefundWithSourceLoaded() throws Exception {
+        account(1, "10001", "100", AccountState.ACTIVE);
+        account(2, "10002", "0", AccountState.FROZEN);
+        LedgerProperties properties = properties("loaded.journal");
+        properties.setMaxAccounts(100);
+        LedgerEngine engine = new LedgerEngine(properties, trans, idHelper, idHelper, null, null);
+        engine.start();
+        try {
+            CompletableFuture<LedgerTransferResult> future = engine.transfer("10001", "10002", new BigDecimal("10"));
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(AccountTransferException.class, e.getCause());
+            Assertions.assertEquals(0, new BigDecimal("100").compareTo(engine.balanceOf("10001").get(5, TimeUnit.SECONDS)));
+            awaitBalance("10001", "100");
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    void testCrossShardTransfer() throws Exception {
+        account(1, "10001", "100", AccountState.ACTIVE);
+        account(2, "10002", "0", AccountState.ACTIVE);
+        LedgerEngine engine = new LedgerEngine(properties("transfer.journal"), trans, idHelper, idHelper, null, null);
+        engine.start();
+        try {
+            LedgerTransferResult result = engine.transfer("10001", "10002", new BigDecimal("10")).get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals(0, new BigDecimal("90").compareTo(result.from().getBalance()));
+            Assertions.assertEquals(0, new BigDecimal("10").compareTo(result.to().getBalance()));
+            awaitBalance("10001", "90");
+            awaitBalance("10002", "10");
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRecover() throws Exception {
+        account(1, "10001", "100", AccountState.ACTIVE);
+        account(2, "10002", "10", AccountState.ACTIVE);
+        // the pending debit of 10003 is already projected
+        account(3, "10003", "47", AccountState.ACTIVE);
+        LedgerProperties properties = properties("recover.journal");
+        try (LedgerJournal journal = new LedgerJournal(properties.getJournalPath())) {
+            journal.append(List.of(
+                    record(LedgerJournal.Type.PENDING_DEBIT, 3, 3, "10003", "3", "47", 5),
+                    record(LedgerJournal.Type.DEBIT, 1, 1, "10001", "10", "90", 6),
+                    record(LedgerJournal.Type.CREDIT, 1, 2, "10002", "10", "20", 7),
+                    // credit of transfer 2 never journaled
+                    record(LedgerJournal.Type.DEBIT, 2, 1, "10001", "5", "85", 8)));
+        }
+        LedgerEngine engine = new LedgerEngine(properties, trans, idHelper, idHelper, null, null);
+        engine.start();
+        engine.close();
+
+        ArgumentCaptor<List<BankAccount>> captor = ArgumentCaptor.forClass(List.class);
+        verify(trans).projectBalances(captor.capture(), eq(List.of()), eq(List.of()));
+        Map<String, BigDecimal> balances = new ConcurrentHashMap<>();
+        captor.getValue().forEach(a -> balances.put(a.getAccountNumber(), a.getBalance()));
+        Assertions.assertEquals(3, balances.size());
+        // refunded on top of the later journaled balance
+        Assertions.assertEquals(0, new BigDecimal("90").compareTo(balances.get("10001")));
+        Assertions.assertEquals(0, new BigDecimal("20").compareTo(balances.get("10002")));
+        // refunded on top of the db balance
+        Assertions.assertEquals(0, new BigDecimal("50").compareTo(balances.get("10003")));
+        try (LedgerJournal journal = new LedgerJournal(properties.getJournalPath())) {
+            Assertions.assertTrue(journal.readAll().isEmpty());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRecoverPendingDebitFollowedByCredit() throws Exception {
+        account(1, "10001", "90", AccountState.ACTIVE);
+        account(2, "10002", "10", AccountState.ACTIVE);
+        LedgerProperties properties = properties("pending.journal");
+        try (LedgerJournal journal = new LedgerJournal(properties.getJournalPath())) {
+            journal.append(List.of(
+                    record(LedgerJournal.Type.PENDING_DEBIT, 1, 1, "10001", "10", "90", 5),
+                    record(LedgerJournal.Type.CREDIT, 1, 2, "10002", "10", "10", 6)));
+        }
+        LedgerEngine engine = new LedgerEngine(properties, trans, idHelper, idHelper, null, null);
+        engine.start();
+        engine.close();
+
+        ArgumentCaptor<List<BankAccount>> captor = ArgumentCaptor.forClass(List.class);
+        verify(trans).projectBalances(captor.capture(), eq(List.of()), eq(List.of()));
+        Assertions.assertEquals(1, captor.getValue().size());
+        Assertions.assertEquals("10002", captor.getValue().get(0).getAccountNumber());
+        Assertions.assertNull(loads.get("10001"));
+    }
+}
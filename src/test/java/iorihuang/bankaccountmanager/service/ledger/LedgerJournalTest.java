@@ -0,0 +1,94 @@
+package iorihuang.bankaccountmanager.service.ledger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+
+class LedgerJournalTest {
+    @TempDir
+    Path dir;
+
+    private static LedgerJournal.Record record(LedgerJournal.Type type, long transferId, String accountNumber, String amount, String balanceAfter) {
+        return new LedgerJournal.Record(0, type, transferId, 1L, accountNumber, new BigDecimal(amount), new BigDecimal(balanceAfter), 100L, "counterparty", System.currentTimeMillis());
+    }
+
+    @Test
+    void testAppendAndReadAll() throws Exception {
+        String path = dir.resolve("ledger.journal").toString();
+        try (LedgerJournal journal = new LedgerJournal(path)) {
+            List<LedgerJournal.Record> appended = journal.append(List.of(
+                    record(LedgerJournal.Type.DEBIT, 1, "A001", "10.50", "89.50"),
+                    record(LedgerJournal.Type.CREDIT, 1, "B001", "10.50", "20.50")));
+            Assertions.assertEquals(1, appended.get(0).seq());
+            Assertions.assertEquals(2, appended.get(1).seq());
+        }
+        try (LedgerJournal journal = new LedgerJournal(path)) {
+            List<LedgerJournal.Record> records = journal.readAll();
+            Assertions.assertEquals(2, records.size());
+            Assertions.assertEquals(LedgerJournal.Type.DEBIT, records.get(0).type());
+            Assertions.assertEquals("A001", records.get(0).accountNumber());
+            Assertions.assertEquals(0, new BigDecimal("89.50").compareTo(records.get(0).balanceAfter()));
+            Assertions.assertEquals(LedgerJournal.Type.CREDIT, records.get(1).type());
+            // seq continues after the records read
+            Assertions.assertEquals(3, journal.append(List.of(record(LedgerJournal.Type.REFUND, 2, "A001", "1", "90.50"))).get(0).seq());
+        }
+    }
+
+    @Test
+    void testTornTailIgnored() throws Exception {
+        String path = dir.resolve("torn.journal").toString();
+        try (LedgerJournal journal = new LedgerJournal(path)) {
+            journal.append(List.of(record(LedgerJournal.Type.DEBIT, 1, "A001", "10", "90")));
+            journal.append(List.of(record(LedgerJournal.Type.CREDIT, 1, "B001", "10", "20")));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        try (LedgerJournal journal = new LedgerJournal(path)) {
+            List<LedgerJournal.Record> records = journal.readAll();
+            Assertions.assertEquals(1, records.size());
+            Assertions.assertEquals(LedgerJournal.Type.DEBIT, records.get(0).type());
+        }
+    }
+
+    @Test
+    void testTruncate() throws Exception {
+        String path = dir.resolve("truncate.journal").toString();
+        try (LedgerJournal journal = new LedgerJournal(path)) {
+            journal.append(List.of(record(LedgerJournal.Type.DEBIT, 1, "A001", "10", "90")));
+            journal.truncate();
+            Assertions.assertTrue(journal.readAll().isEmpty());
+        }
+    }
+
+    @Test
+    void testCheckpointKeepsPendingDebits() throws Exception {
+        String path = dir.resolve("checkpoint.journal").toString();
+        try (LedgerJournal journal = new LedgerJournal(path)) {
+            List<LedgerJournal.Record> appended = journal.append(List.of(
+                    record(LedgerJournal.Type.DEBIT, 1, "A001", "10", "90"),
+                    record(LedgerJournal.Type.CREDIT, 1, "B001", "10", "20"),
+                    record(LedgerJournal.Type.DEBIT, 2, "A001", "5", "85")));
+            // not all records appended are projected
+            Assertions.assertFalse(journal.checkpoint(2, List.of(appended.get(2))));
+            Assertions.assertTrue(journal.checkpoint(3, List.of(appended.get(2))));
+            journal.append(List.of(record(LedgerJournal.Type.CREDIT, 2, "C001", "5", "5")));
+            // counted from the checkpoint
+            Assertions.assertFalse(journal.checkpoint(3, List.of()));
+        }
+        try (LedgerJournal journal = new LedgerJournal(path)) {
+            List<LedgerJournal.Record> records = journal.readAll();
+            Assertions.assertEquals(2, records.size());
+            Assertions.assertEquals(LedgerJournal.Type.PENDING_DEBIT, records.get(0).type());
+            Assertions.assertEquals(2, records.get(0).transferId());
+            Assertions.assertEquals(3, records.get(0).seq());
+            Assertions.assertEquals(LedgerJournal.Type.CREDIT, records.get(1).type());
+            Assertions.assertEquals(4, records.get(1).seq());
+        }
+    }
+}